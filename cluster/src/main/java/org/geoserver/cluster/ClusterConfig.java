@@ -28,4 +28,28 @@ public class ClusterConfig extends Properties {
     public int getSyncDelay() {
         return Integer.parseInt(getProperty("sync_delay", "5"));
     }
+
+    /**
+     * @return the longest time changes may be held back while new ones keep arriving, 
+     *  defaults to three times the sync delay
+     */
+    public int getSyncMaxDelay() {
+        String maxDelay = getProperty("sync_max_delay");
+        return maxDelay != null ? Integer.parseInt(maxDelay) : 3 * getSyncDelay();
+    }
+
+    /**
+     * @return is sharing of feature type schemas and CRS definitions between nodes enabled
+     */
+    public boolean isResourceCacheEnabled() {
+        return Boolean.valueOf(getProperty("resource_cache", "false"));
+    }
+
+    /**
+     * @return how often nodes compare their catalog with the master node and repair 
+     *  differences, 0 to disable
+     */
+    public int getAntiEntropyInterval() {
+        return Integer.parseInt(getProperty("anti_entropy_interval", "60"));
+    }
 }
@@ -106,6 +106,11 @@ public class ConfigChangeEvent extends Event {
      */
     Type type;
 
+    /**
+     * serialized state of the object, only set by synchronizers shipping the change itself
+     */
+    byte[] payload;
+
     public ConfigChangeEvent(String id, String name, Class<? extends Info> clazz, Type type) {
         this.id = id;
         this.name = name;
@@ -158,4 +163,12 @@ public class ConfigChangeEvent extends Event {
     public Type getChangeType() {
         return type;
     }
+
+    public byte[] getPayload() {
+        return payload;
+    }
+
+    public void setPayload(byte[] payload) {
+        this.payload = payload;
+    }
 }
@@ -13,6 +13,8 @@ public class Event implements Serializable {
 
     Serializable source;
 
+    Serializable target;
+
     /**
      * Set an identifier for the node on which the event originates.
      * @param source
@@ -29,4 +31,20 @@ public class Event implements Serializable {
         return source;
     }
 
+    /**
+     * Set an identifier for the only node the event is meant for, <code>null</code> for all
+     * nodes.
+     */
+    public void setTarget(Serializable target) {
+        this.target = target;
+    }
+
+    /**
+     * Get an identifier of the only node the event is meant for, <code>null</code> for all 
+     * nodes.
+     */
+    public Serializable getTarget() {
+        return target;
+    }
+
 }
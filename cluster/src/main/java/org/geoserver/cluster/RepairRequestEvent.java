@@ -0,0 +1,30 @@
+package org.geoserver.cluster;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.geoserver.catalog.CatalogInfo;
+
+/**
+ * Request for the current state of catalog objects, sent by a node that found its copy of
+ * them diverged from the node it repairs from.
+ */
+public class RepairRequestEvent extends Event {
+
+    /** serialVersionUID */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * ids of the requested objects, mapped to their catalog interface
+     */
+    LinkedHashMap<String, Class<? extends CatalogInfo>> objects =
+        new LinkedHashMap<String, Class<? extends CatalogInfo>>();
+
+    public void add(String id, Class<? extends CatalogInfo> clazz) {
+        objects.put(id, clazz);
+    }
+
+    public Map<String, Class<? extends CatalogInfo>> getObjects() {
+        return objects;
+    }
+}
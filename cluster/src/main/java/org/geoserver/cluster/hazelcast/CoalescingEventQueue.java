@@ -0,0 +1,189 @@
+package org.geoserver.cluster.hazelcast;
+
+import java.util.AbstractMap;
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.geoserver.catalog.Info;
+import org.geoserver.cluster.ConfigChangeEvent;
+import org.geoserver.cluster.ConfigChangeEvent.Type;
+import org.geoserver.cluster.Event;
+
+/**
+ * Event queue that keeps at most one pending change per object.
+ * <p>
+ * Config change events are keyed by object id and interface:
+ * <ul>
+ *   <li>repeated modifications collapse into the latest one, keeping their position</li>
+ *   <li>a modification following an add is folded into the add, carrying the latest payload</li>
+ *   <li>an add followed by a remove cancels out</li>
+ *   <li>a remove replaces any pending change and moves to the end of the queue, so that
+ *   removals still happen after the removal of dependent objects</li>
+ * </ul>
+ * Other events are queued as is. The queue is thread safe for a single consumer, its iterator 
+ * works on a snapshot so events may be queued while the queue is being processed. Events 
+ * arriving for an object whose pending event is being processed are queued after it.
+ * </p>
+ */
+public class CoalescingEventQueue extends AbstractQueue<Event> {
+
+    final LinkedHashMap<Object, Event> events = new LinkedHashMap<Object, Event>();
+
+    /** events handed out by an iterator and not removed yet, possibly being processed */
+    final Set<Event> taken = Collections.newSetFromMap(new IdentityHashMap<Event, Boolean>());
+
+    /** number of events offered */
+    long received;
+
+    /** number of events that were collapsed into, or cancelled by, another one */
+    long collapsed;
+
+    Object key(Event e) {
+        if (e instanceof ConfigChangeEvent) {
+            ConfigChangeEvent ce = (ConfigChangeEvent) e;
+            Class<? extends Info> clazz = ce.getObjectInterface();
+            if (ce.getObjectId() != null) {
+                return (clazz != null ? clazz : ce.getObjectClass()).getName() + ":"
+                    + ce.getObjectId();
+            }
+        }
+        // never coalesced
+        return new Object();
+    }
+
+    @Override
+    public synchronized boolean offer(Event e) {
+        if (e == null) {
+            throw new NullPointerException();
+        }
+        received++;
+
+        Object key = key(e);
+        Event prev = events.get(key);
+        if (prev == null) {
+            events.put(key, e);
+            return true;
+        }
+
+        int before = events.size();
+        ConfigChangeEvent p = (ConfigChangeEvent) prev;
+        ConfigChangeEvent c = (ConfigChangeEvent) e;
+        if (taken.contains(p)) {
+            // the pending event may already be applied, so the new one can't be dropped
+            events.put(key, c);
+        } else if (c.getChangeType() == Type.REMOVE) {
+            events.remove(key);
+            if (p.getChangeType() != Type.ADD) {
+                events.put(key, c);
+            }
+        } else if (c.getChangeType() == Type.MODIFY && p.getChangeType() == Type.ADD) {
+            ConfigChangeEvent add = new ConfigChangeEvent(c.getObjectId(), c.getObjectName(),
+                c.getObjectClass(), Type.ADD);
+            add.setWorkspaceId(c.getWorkspaceId());
+            add.setPayload(c.getPayload() != null ? c.getPayload() : p.getPayload());
+            add.setSource(c.getSource());
+            events.put(key, add);
+        } else if (c.getChangeType() == Type.MODIFY && p.getChangeType() == Type.MODIFY) {
+            // replacing the value keeps the insertion order
+            events.put(key, c);
+        } else {
+            // re-added after a removal, or added twice
+            events.remove(key);
+            events.put(key, c);
+        }
+        collapsed += before + 1 - events.size();
+        return true;
+    }
+
+    @Override
+    public synchronized Event poll() {
+        Iterator<Event> it = events.values().iterator();
+        if (!it.hasNext()) {
+            return null;
+        }
+        Event e = it.next();
+        it.remove();
+        taken.remove(e);
+        return e;
+    }
+
+    @Override
+    public synchronized Event peek() {
+        Iterator<Event> it = events.values().iterator();
+        return it.hasNext() ? it.next() : null;
+    }
+
+    @Override
+    public synchronized int size() {
+        return events.size();
+    }
+
+    @Override
+    public synchronized void clear() {
+        events.clear();
+        taken.clear();
+    }
+
+    @Override
+    public synchronized Iterator<Event> iterator() {
+        // single consumer, anything handed out by a previous iterator is done with
+        taken.clear();
+
+        final List<Map.Entry<Object, Event>> snapshot =
+            new ArrayList<Map.Entry<Object, Event>>(events.entrySet().size());
+        for (Map.Entry<Object, Event> entry : events.entrySet()) {
+            snapshot.add(new AbstractMap.SimpleImmutableEntry<Object, Event>(entry));
+        }
+        return new Iterator<Event>() {
+            int i = -1;
+
+            @Override
+            public boolean hasNext() {
+                return i + 1 < snapshot.size();
+            }
+
+            @Override
+            public Event next() {
+                Event e = snapshot.get(++i).getValue();
+                synchronized (CoalescingEventQueue.this) {
+                    taken.add(e);
+                }
+                return e;
+            }
+
+            @Override
+            public void remove() {
+                Map.Entry<Object, Event> entry = snapshot.get(i);
+                synchronized (CoalescingEventQueue.this) {
+                    taken.remove(entry.getValue());
+                    // only if it was not replaced in the mean time
+                    if (events.get(entry.getKey()) == entry.getValue()) {
+                        events.remove(entry.getKey());
+                    }
+                }
+            }
+        };
+    }
+
+    public synchronized long getReceived() {
+        return received;
+    }
+
+    public synchronized long getCollapsed() {
+        return collapsed;
+    }
+
+    /**
+     * Fraction of the received events that did not need to be processed on their own.
+     */
+    public synchronized double getCollapseRatio() {
+        return received == 0 ? 0 : collapsed / (double) received;
+    }
+}
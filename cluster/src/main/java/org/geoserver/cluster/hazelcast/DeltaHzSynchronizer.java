@@ -0,0 +1,416 @@
+package org.geoserver.cluster.hazelcast;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+import org.geoserver.catalog.Catalog;
+import org.geoserver.catalog.CatalogException;
+import org.geoserver.catalog.CatalogInfo;
+import org.geoserver.catalog.Info;
+import org.geoserver.catalog.LayerGroupInfo;
+import org.geoserver.catalog.LayerInfo;
+import org.geoserver.catalog.NamespaceInfo;
+import org.geoserver.catalog.ResourceInfo;
+import org.geoserver.catalog.StoreInfo;
+import org.geoserver.catalog.StyleInfo;
+import org.geoserver.catalog.WorkspaceInfo;
+import org.geoserver.catalog.event.CatalogAddEvent;
+import org.geoserver.catalog.event.CatalogPostModifyEvent;
+import org.geoserver.catalog.event.CatalogRemoveEvent;
+import org.geoserver.catalog.impl.ModificationProxy;
+import org.geoserver.cluster.ConfigChangeEvent;
+import org.geoserver.cluster.ConfigChangeEvent.Type;
+import org.geoserver.cluster.Event;
+import org.geoserver.cluster.RepairRequestEvent;
+import org.geoserver.config.GeoServer;
+import org.geoserver.config.GeoServerInfo;
+import org.geoserver.config.LoggingInfo;
+import org.geoserver.config.ServiceInfo;
+import org.geoserver.config.SettingsInfo;
+import org.geoserver.config.util.XStreamPersister;
+import org.geoserver.config.util.XStreamPersisterFactory;
+import org.geoserver.ows.util.OwsUtils;
+
+import com.yammer.metrics.Metrics;
+
+/**
+ * Synchronizer that ships the changed object along with each cluster event and applies it
+ * directly to the in memory catalog/configuration of the receiving node.
+ * <p>
+ * Unlike {@link EventHzSynchronizer} this synchronizer does not assume a shared data
+ * directory: added and modified objects are serialized with the GeoServer XStream persister
+ * and copied onto the local object with the same id, removed objects are looked up by id and
+ * removed. Changes are applied through the regular {@link Catalog} and {@link GeoServer}
+ * methods so that local listeners and persisters are notified, without the changes bouncing
+ * back into the cluster.
+ * </p>
+ * <p>
+ * A full {@link GeoServer#reload()} is only done when a change can not be applied, for
+ * instance a modification of an object this node does not know about. Messages lost along the 
+ * way are caught up by the optional {@link HzAntiEntropy} check.
+ * </p>
+ */
+public class DeltaHzSynchronizer extends HzSynchronizer {
+
+    /** set while applying remote changes, changes made by this thread are not dispatched */
+    final ThreadLocal<Boolean> applying = new ThreadLocal<Boolean>();
+
+    /** catalog repair, null if disabled */
+    HzAntiEntropy antiEntropy;
+
+    public DeltaHzSynchronizer(HzCluster cluster, GeoServer gs) {
+        super(cluster, gs);
+    }
+
+    /**
+     * Starts the periodic anti-entropy check, if enabled in the cluster configuration.
+     */
+    public void startAntiEntropy() {
+        int interval = configWatcher.get().getAntiEntropyInterval();
+        if (interval > 0) {
+            antiEntropy = new HzAntiEntropy(this, cluster.getHz());
+            // same executor as event processing, so repairs and events are never applied concurrently
+            executor.scheduleWithFixedDelay(antiEntropy, interval, interval, TimeUnit.SECONDS);
+        }
+    }
+
+    XStreamPersister persister() {
+        XStreamPersister xp = new XStreamPersisterFactory().createXMLPersister();
+        xp.setCatalog(gs.getCatalog());
+        return xp;
+    }
+
+    /**
+     * Serializes the state of an object for shipping to other nodes.
+     */
+    byte[] serialize(Info info) throws IOException {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        persister().save(ModificationProxy.unwrap(info), bout);
+        return bout.toByteArray();
+    }
+
+    /**
+     * Reads back an object serialized with {@link #serialize(Info)}.
+     */
+    <T extends Info> T deserialize(byte[] payload, Class<T> clazz) throws IOException {
+        return persister().load(new ByteArrayInputStream(payload), clazz);
+    }
+
+    @Override
+    ConfigChangeEvent newChangeEvent(Info subj, Type type) {
+        ConfigChangeEvent ev = super.newChangeEvent(subj, type);
+        if (type != Type.REMOVE) {
+            try {
+                ev.setPayload(serialize(subj));
+            } catch (Exception e) {
+                // peers will treat the event as a divergence
+                LOGGER.log(Level.WARNING, "Unable to serialize " + subj.getId(), e);
+            }
+        }
+        return ev;
+    }
+
+    @Override
+    public void handleAddEvent(CatalogAddEvent event) throws CatalogException {
+        changed(event.getSource());
+        super.handleAddEvent(event);
+    }
+
+    @Override
+    public void handlePostModifyEvent(CatalogPostModifyEvent event) throws CatalogException {
+        changed(event.getSource());
+        super.handlePostModifyEvent(event);
+    }
+
+    @Override
+    public void handleRemoveEvent(CatalogRemoveEvent event) throws CatalogException {
+        changed(event.getSource());
+        super.handleRemoveEvent(event);
+    }
+
+    void changed(CatalogInfo info) {
+        if (antiEntropy != null) {
+            antiEntropy.changed(info);
+        }
+    }
+
+    @Override
+    protected void dispatch(Event e) {
+        if (Boolean.TRUE.equals(applying.get())) {
+            return;
+        }
+        super.dispatch(e);
+    }
+
+    @Override
+    protected void processEventQueue(Queue<Event> q) throws Exception {
+        boolean diverged = false;
+
+        applying.set(Boolean.TRUE);
+        try {
+            Iterator<Event> it = q.iterator();
+            while (it.hasNext()) {
+                Event e = it.next();
+                it.remove();
+                if (e instanceof RepairRequestEvent) {
+                    respond((RepairRequestEvent) e);
+                    continue;
+                }
+                if (!(e instanceof ConfigChangeEvent) || diverged) {
+                    continue;
+                }
+
+                ConfigChangeEvent ce = (ConfigChangeEvent) e;
+                try {
+                    if (!apply(ce)) {
+                        LOGGER.warning(String.format("Unable to apply %s event for (%s, %s), "
+                            + "reloading", ce.getChangeType(), ce.getObjectId(),
+                            ce.getObjectInterface().getSimpleName()));
+                        diverged = true;
+                    }
+                } catch (Exception ex) {
+                    LOGGER.log(Level.WARNING, String.format("Failed to apply %s event for "
+                        + "(%s, %s), reloading", ce.getChangeType(), ce.getObjectId(),
+                        ce.getObjectInterface().getSimpleName()), ex);
+                    diverged = true;
+                }
+            }
+
+            if (diverged) {
+                // the remaining events are covered by the reload
+                q.clear();
+                reload();
+                if (antiEntropy != null) {
+                    antiEntropy.reset();
+                }
+                Metrics.newCounter(getClass(), "divergences").inc();
+            }
+        } finally {
+            applying.remove();
+            if (antiEntropy != null) {
+                // peers compare against the digest, publish it as soon as it changed
+                antiEntropy.refresh();
+            }
+        }
+    }
+
+    /**
+     * Sends the current state of the requested objects back to the requesting node, as adds so
+     * that they are applied whether the node has the object or not.
+     */
+    void respond(RepairRequestEvent request) {
+        Catalog cat = gs.getCatalog();
+        for (Map.Entry<String, Class<? extends CatalogInfo>> e : request.getObjects().entrySet()) {
+            CatalogInfo info = getCatalogInfo(cat, e.getValue(), e.getKey());
+            if (info != null) {
+                ConfigChangeEvent ev = newChangeEvent(info, Type.ADD);
+                ev.setTarget(request.getSource());
+                // bypass the check on changes being applied
+                super.dispatch(ev);
+            }
+        }
+    }
+
+    /**
+     * Removes catalog objects without notifying the cluster.
+     */
+    void removeLocally(List<CatalogInfo> infos) {
+        Catalog cat = gs.getCatalog();
+        applying.set(Boolean.TRUE);
+        try {
+            for (CatalogInfo info : infos) {
+                try {
+                    remove(cat, info);
+                } catch (Exception e) {
+                    LOGGER.log(Level.WARNING, "Unable to remove " + info.getId(), e);
+                }
+            }
+        } finally {
+            applying.remove();
+        }
+    }
+
+    /**
+     * Applies a single change to the local catalog/configuration.
+     *
+     * @return false if the change could not be applied and this node diverged from the sender
+     */
+    boolean apply(ConfigChangeEvent ce) throws Exception {
+        Class<? extends Info> clazz = ce.getObjectInterface();
+        Type t = ce.getChangeType();
+        if (t != Type.REMOVE && ce.getPayload() == null) {
+            return false;
+        }
+
+        if (CatalogInfo.class.isAssignableFrom(clazz)) {
+            return applyCatalogChange(ce, clazz, t);
+        }
+        return applyConfigChange(ce, clazz, t);
+    }
+
+    boolean applyCatalogChange(ConfigChangeEvent ce, Class<? extends Info> clazz, Type t)
+        throws Exception {
+        Catalog cat = gs.getCatalog();
+        CatalogInfo local = getCatalogInfo(cat, clazz, ce.getObjectId());
+
+        switch(t) {
+        case ADD:
+            if (local != null) {
+                // already there, treat it as a modification
+                return modify(cat, local, deserialize(ce.getPayload(), clazz), clazz);
+            }
+            add(cat, (CatalogInfo) deserialize(ce.getPayload(), clazz));
+            return true;
+        case MODIFY:
+            if (local == null) {
+                return false;
+            }
+            return modify(cat, local, deserialize(ce.getPayload(), clazz), clazz);
+        case REMOVE:
+            if (local != null) {
+                remove(cat, local);
+            }
+            return true;
+        default:
+            throw new IllegalStateException("Should not happen");
+        }
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    boolean modify(Catalog cat, CatalogInfo local, Info remote, Class<? extends Info> clazz) {
+        OwsUtils.copy(remote, local, (Class) clazz);
+        if (local instanceof WorkspaceInfo) {
+            cat.save((WorkspaceInfo) local);
+        } else if (local instanceof NamespaceInfo) {
+            cat.save((NamespaceInfo) local);
+        } else if (local instanceof StoreInfo) {
+            cat.save((StoreInfo) local);
+        } else if (local instanceof ResourceInfo) {
+            cat.save((ResourceInfo) local);
+        } else if (local instanceof LayerInfo) {
+            cat.save((LayerInfo) local);
+        } else if (local instanceof StyleInfo) {
+            cat.save((StyleInfo) local);
+        } else if (local instanceof LayerGroupInfo) {
+            cat.save((LayerGroupInfo) local);
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    void add(Catalog cat, CatalogInfo info) {
+        if (info instanceof WorkspaceInfo) {
+            cat.add((WorkspaceInfo) info);
+        } else if (info instanceof NamespaceInfo) {
+            cat.add((NamespaceInfo) info);
+        } else if (info instanceof StoreInfo) {
+            cat.add((StoreInfo) info);
+        } else if (info instanceof ResourceInfo) {
+            cat.add((ResourceInfo) info);
+        } else if (info instanceof LayerInfo) {
+            cat.add((LayerInfo) info);
+        } else if (info instanceof StyleInfo) {
+            cat.add((StyleInfo) info);
+        } else if (info instanceof LayerGroupInfo) {
+            cat.add((LayerGroupInfo) info);
+        } else {
+            throw new IllegalArgumentException("Unknown catalog object " + info);
+        }
+    }
+
+    void remove(Catalog cat, CatalogInfo info) {
+        if (info instanceof WorkspaceInfo) {
+            cat.remove((WorkspaceInfo) info);
+        } else if (info instanceof NamespaceInfo) {
+            cat.remove((NamespaceInfo) info);
+        } else if (info instanceof StoreInfo) {
+            cat.remove((StoreInfo) info);
+        } else if (info instanceof ResourceInfo) {
+            cat.remove((ResourceInfo) info);
+        } else if (info instanceof LayerInfo) {
+            cat.remove((LayerInfo) info);
+        } else if (info instanceof StyleInfo) {
+            cat.remove((StyleInfo) info);
+        } else if (info instanceof LayerGroupInfo) {
+            cat.remove((LayerGroupInfo) info);
+        } else {
+            throw new IllegalArgumentException("Unknown catalog object " + info);
+        }
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    boolean applyConfigChange(ConfigChangeEvent ce, Class<? extends Info> clazz, Type t)
+        throws Exception {
+        if (GeoServerInfo.class.isAssignableFrom(clazz)) {
+            GeoServerInfo global = gs.getGlobal();
+            OwsUtils.copy(deserialize(ce.getPayload(), GeoServerInfo.class), global,
+                GeoServerInfo.class);
+            gs.save(global);
+        } else if (LoggingInfo.class.isAssignableFrom(clazz)) {
+            LoggingInfo logging = gs.getLogging();
+            OwsUtils.copy(deserialize(ce.getPayload(), LoggingInfo.class), logging,
+                LoggingInfo.class);
+            gs.save(logging);
+        } else if (SettingsInfo.class.isAssignableFrom(clazz)) {
+            WorkspaceInfo ws = ce.getWorkspaceId() != null ?
+                gs.getCatalog().getWorkspace(ce.getWorkspaceId()) : null;
+            if (ce.getWorkspaceId() != null && ws == null) {
+                return false;
+            }
+            SettingsInfo local = ws != null ? gs.getSettings(ws) : gs.getSettings();
+            switch (t) {
+            case REMOVE:
+                if (local != null) {
+                    gs.remove(local);
+                }
+                break;
+            default:
+                SettingsInfo remote = deserialize(ce.getPayload(), SettingsInfo.class);
+                if (local != null) {
+                    OwsUtils.copy(remote, local, SettingsInfo.class);
+                    gs.save(local);
+                } else {
+                    gs.add(remote);
+                }
+            }
+        } else if (ServiceInfo.class.isAssignableFrom(clazz)) {
+            ServiceInfo local = gs.getService(ce.getObjectId(), ServiceInfo.class);
+            switch (t) {
+            case REMOVE:
+                if (local != null) {
+                    gs.remove(local);
+                }
+                break;
+            default:
+                ServiceInfo remote = deserialize(ce.getPayload(), ServiceInfo.class);
+                if (local != null) {
+                    // copy the properties of the specific service interface as well
+                    OwsUtils.copy(remote, local, (Class) serviceInterface(remote));
+                    gs.save(local);
+                } else {
+                    gs.add(remote);
+                }
+            }
+        } else {
+            throw new IllegalStateException("Unknown event type " + clazz);
+        }
+        return true;
+    }
+
+    Class<?> serviceInterface(ServiceInfo service) {
+        for (Class<?> i : ModificationProxy.unwrap(service).getClass().getInterfaces()) {
+            if (ServiceInfo.class.isAssignableFrom(i)) {
+                return i;
+            }
+        }
+        return ServiceInfo.class;
+    }
+}
@@ -9,12 +9,6 @@ import java.util.logging.Level;
 import org.geoserver.catalog.Catalog;
 import org.geoserver.catalog.CatalogInfo;
 import org.geoserver.catalog.Info;
-import org.geoserver.catalog.LayerGroupInfo;
-import org.geoserver.catalog.LayerInfo;
-import org.geoserver.catalog.NamespaceInfo;
-import org.geoserver.catalog.ResourceInfo;
-import org.geoserver.catalog.StoreInfo;
-import org.geoserver.catalog.StyleInfo;
 import org.geoserver.catalog.WorkspaceInfo;
 import org.geoserver.catalog.event.CatalogAddEvent;
 import org.geoserver.catalog.event.CatalogEvent;
@@ -65,28 +59,7 @@ public class EventHzSynchronizer extends HzSynchronizer {
 
                 if (CatalogInfo.class.isAssignableFrom(clazz)) {
                     //catalog event
-                    CatalogInfo subj = null;
-                    if (WorkspaceInfo.class.isAssignableFrom(clazz)) {
-                        subj = cat.getWorkspace(id);
-                    }
-                    else if (NamespaceInfo.class.isAssignableFrom(clazz)) {
-                        subj = cat.getNamespace(id);
-                    }
-                    else if (StoreInfo.class.isAssignableFrom(clazz)) {
-                        subj = cat.getStore(id, (Class<StoreInfo>) clazz);
-                    }
-                    else if (ResourceInfo.class.isAssignableFrom(clazz)) {
-                        subj = cat.getResource(id, (Class<ResourceInfo>) clazz);
-                    }
-                    else if (LayerInfo.class.isAssignableFrom(clazz)) {
-                        subj = cat.getLayer(id);
-                    }
-                    else if (StyleInfo.class.isAssignableFrom(clazz)) {
-                        subj = cat.getStyle(id);
-                    }
-                    else if (LayerGroupInfo.class.isAssignableFrom(clazz)) {
-                        subj = cat.getLayerGroup(id);
-                    }
+                    CatalogInfo subj = getCatalogInfo(cat, clazz, id);
                     Method notifyMethod;
                     CatalogEventImpl evt;
                     switch(t) {
@@ -1,7 +1,21 @@
 package org.geoserver.cluster.hazelcast;
 
+import java.io.ByteArrayInputStream;
 import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.w3c.dom.Attr;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hashing;
 import com.hazelcast.core.HazelcastInstance;
 
 public class HazelcastUtil {
@@ -15,4 +29,67 @@ public class HazelcastUtil {
         return addr.getAddress().getHostAddress()+":"+addr.getPort();
     }
 
+    /**
+     * MD5 of the {@link #canonical(byte[])} form of an XStream document, equal on every node for
+     * equal objects.
+     */
+    public static String contentHash(byte[] xml) throws Exception {
+        return Hashing.md5().hashString(canonical(xml), Charsets.UTF_8).toString();
+    }
+
+    /**
+     * Canonical form of an XStream document: attributes and map entries sorted, whitespace 
+     * between elements dropped.
+     */
+    public static String canonical(byte[] xml) throws Exception {
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(false);
+        Element root = factory.newDocumentBuilder().parse(new ByteArrayInputStream(xml))
+            .getDocumentElement();
+        StringBuilder sb = new StringBuilder();
+        canonical(root, sb);
+        return sb.toString();
+    }
+
+    static void canonical(Element e, StringBuilder sb) {
+        sb.append('<').append(e.getTagName());
+        NamedNodeMap attributes = e.getAttributes();
+        List<String> attrs = new ArrayList<String>();
+        for (int i = 0; i < attributes.getLength(); i++) {
+            Attr a = (Attr) attributes.item(i);
+            attrs.add(a.getName() + "=\"" + a.getValue() + "\"");
+        }
+        Collections.sort(attrs);
+        for (String a : attrs) {
+            sb.append(' ').append(a);
+        }
+        sb.append('>');
+
+        List<String> children = new ArrayList<String>();
+        boolean entries = true;
+        NodeList nodes = e.getChildNodes();
+        for (int i = 0; i < nodes.getLength(); i++) {
+            Node n = nodes.item(i);
+            if (n instanceof Element) {
+                StringBuilder child = new StringBuilder();
+                canonical((Element) n, child);
+                children.add(child.toString());
+                entries &= "entry".equals(((Element) n).getTagName());
+            } else if (n.getNodeType() == Node.TEXT_NODE || n.getNodeType() == Node.CDATA_SECTION_NODE) {
+                String text = n.getNodeValue().trim();
+                if (!text.isEmpty()) {
+                    children.add(text);
+                    entries = false;
+                }
+            }
+        }
+        // map entries come in hash order, other lists in their own order
+        if (entries) {
+            Collections.sort(children);
+        }
+        for (String child : children) {
+            sb.append(child);
+        }
+        sb.append("</").append(e.getTagName()).append('>');
+    }
 }
@@ -0,0 +1,388 @@
+package org.geoserver.cluster.hazelcast;
+
+import java.io.Serializable;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.geoserver.catalog.Catalog;
+import org.geoserver.catalog.CatalogInfo;
+import org.geoserver.catalog.LayerGroupInfo;
+import org.geoserver.catalog.LayerInfo;
+import org.geoserver.catalog.NamespaceInfo;
+import org.geoserver.catalog.ResourceInfo;
+import org.geoserver.catalog.StoreInfo;
+import org.geoserver.catalog.StyleInfo;
+import org.geoserver.catalog.WorkspaceInfo;
+import org.geoserver.cluster.ClusterConfig;
+import org.geoserver.cluster.RepairRequestEvent;
+import org.geotools.util.logging.Logging;
+
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.IMap;
+import com.hazelcast.core.Member;
+import com.yammer.metrics.Metrics;
+import com.yammer.metrics.core.Gauge;
+
+/**
+ * Periodic anti-entropy repair for the {@link DeltaHzSynchronizer}.
+ * <p>
+ * Every node keeps a digest of its catalog, a content hash of each workspace, namespace, store,
+ * resource, style, layer and layer group along with a version counter bumped on every catalog
+ * change, and publishes it in a cluster wide {@link IMap} whenever the version changed, on
+ * every check and once remote events are applied. Only the objects changed since the previous
+ * digest are hashed again. Hashes are computed on a canonical form of the XStream output, with
+ * map entries sorted, so that equal objects hash the same on every node.
+ * </p>
+ * <p>
+ * The oldest cluster member is taken as the reference. Other nodes compare their digest with
+ * the reference one and, for the differences found in two consecutive checks, remove the 
+ * objects the reference node does not have and request the current state of the others, which
+ * the reference node sends back as regular change events targeted at the requesting node.
+ * Objects changed locally too recently for the change to be in the reference digest (the max 
+ * sync delay, plus a check interval for clock differences, before the digest was published) are
+ * left alone, so that changes still in flight are not mistaken for divergences.
+ * </p>
+ */
+public class HzAntiEntropy implements Runnable {
+
+    static Logger LOGGER = Logging.getLogger("org.geoserver.cluster.hazelcast");
+
+    static final String DIGESTS = "geoserver.catalog.digests";
+
+    /** catalog interfaces covered, in dependency order */
+    static final List<Class<? extends CatalogInfo>> TYPES = Arrays.asList(
+        WorkspaceInfo.class, NamespaceInfo.class, StoreInfo.class, ResourceInfo.class,
+        StyleInfo.class, LayerInfo.class, LayerGroupInfo.class);
+
+    /**
+     * Content hashes of the catalog of a node.
+     */
+    public static class CatalogDigest implements Serializable {
+
+        /** serialVersionUID */
+        private static final long serialVersionUID = 1L;
+
+        long version;
+
+        /** time the digest was published, on the clock of its node */
+        long time;
+
+        /** object id to content hash */
+        HashMap<String, String> hashes = new HashMap<String, String>();
+
+        /** object id to catalog interface */
+        HashMap<String, Class<? extends CatalogInfo>> types =
+            new HashMap<String, Class<? extends CatalogInfo>>();
+
+        public long getVersion() {
+            return version;
+        }
+
+        public long getTime() {
+            return time;
+        }
+
+        public Map<String, String> getHashes() {
+            return hashes;
+        }
+    }
+
+    final DeltaHzSynchronizer sync;
+
+    final HazelcastInstance hz;
+
+    /** local catalog version, bumped on every change */
+    final AtomicLong version = new AtomicLong();
+
+    /** objects changed since the last digest, mapped to their catalog interface */
+    final Map<String, Class<? extends CatalogInfo>> dirty =
+        new ConcurrentHashMap<String, Class<? extends CatalogInfo>>();
+
+    /** time of the last local change of each object, dropped once older than the grace period */
+    final Map<String, Long> changedAt = new ConcurrentHashMap<String, Long>();
+
+    /** local digest, null until computed or after a reset */
+    CatalogDigest digest;
+
+    /** version of the last published digest */
+    long published = -1;
+
+    /** differences found by the previous check, object id to local and reference hash */
+    Map<String, String> suspects = new HashMap<String, String>();
+
+    /** time the current divergence was first found, 0 if in sync */
+    volatile long divergentSince;
+
+    public HzAntiEntropy(DeltaHzSynchronizer sync, HazelcastInstance hz) {
+        this.sync = sync;
+        this.hz = hz;
+
+        Metrics.newGauge(getClass(), "divergence-age", new Gauge<Long>() {
+            @Override
+            public Long value() {
+                long since = divergentSince;
+                return since == 0 ? 0 : (System.currentTimeMillis() - since) / 1000;
+            }
+        });
+    }
+
+    /**
+     * Records the change of a catalog object.
+     */
+    public void changed(CatalogInfo info) {
+        Class<? extends CatalogInfo> clazz = type(info.getClass());
+        if (clazz != null && info.getId() != null) {
+            dirty.put(info.getId(), clazz);
+            changedAt.put(info.getId(), System.currentTimeMillis());
+            version.incrementAndGet();
+        }
+    }
+
+    /**
+     * Drops the digest, the whole catalog is hashed again on the next check.
+     */
+    public void reset() {
+        synchronized (this) {
+            digest = null;
+        }
+        version.incrementAndGet();
+    }
+
+    @Override
+    public void run() {
+        try {
+            check();
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, "Catalog anti-entropy check failed", e);
+        }
+    }
+
+    /**
+     * Publishes the digest if the catalog changed since the last one, called once remote events
+     * have been applied so that other nodes don't compare against a stale digest.
+     */
+    public synchronized void refresh() {
+        try {
+            publish();
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, "Unable to publish the catalog digest", e);
+        }
+    }
+
+    synchronized void check() throws Exception {
+        CatalogDigest local = publish();
+
+        Set<Member> members = hz.getCluster().getMembers();
+        Member reference = members.iterator().next();
+        if (reference.localMember()) {
+            // drop the digests of nodes that left
+            Set<String> live = new HashSet<String>();
+            for (Member m : members) {
+                live.add(key(m.getInetSocketAddress()));
+            }
+            IMap<String, CatalogDigest> digests = hz.getMap(DIGESTS);
+            for (String key : new ArrayList<String>(digests.keySet())) {
+                if (!live.contains(key)) {
+                    digests.remove(key);
+                }
+            }
+            divergentSince = 0;
+            return;
+        }
+
+        IMap<String, CatalogDigest> digests = hz.getMap(DIGESTS);
+        CatalogDigest remote = digests.get(key(reference.getInetSocketAddress()));
+        if (remote == null) {
+            return;
+        }
+        compare(local, remote, reference);
+    }
+
+    /**
+     * Compares the local digest with the reference one and repairs the confirmed differences.
+     */
+    void compare(CatalogDigest local, CatalogDigest remote, Member reference) {
+        ClusterConfig config = sync.configWatcher.get();
+        long grace = (config.getSyncMaxDelay() + config.getAntiEntropyInterval()) * 1000L;
+
+        // differences, confirmed if found by the previous check as well and settled
+        Map<String, String> found = diff(local, remote);
+        Set<String> confirmed = new HashSet<String>();
+        for (Map.Entry<String, String> e : found.entrySet()) {
+            if (e.getValue().equals(suspects.get(e.getKey()))) {
+                Long changed = changedAt.get(e.getKey());
+                if (changed == null || changed + grace < remote.time) {
+                    confirmed.add(e.getKey());
+                }
+            }
+        }
+        suspects = found;
+
+        long expired = System.currentTimeMillis() - 2 * grace;
+        for (Map.Entry<String, Long> e : new ArrayList<Map.Entry<String, Long>>(changedAt.entrySet())) {
+            if (e.getValue() < expired) {
+                changedAt.remove(e.getKey());
+            }
+        }
+
+        if (found.isEmpty()) {
+            divergentSince = 0;
+        } else if (divergentSince == 0) {
+            divergentSince = System.currentTimeMillis();
+        }
+
+        if (!confirmed.isEmpty()) {
+            repair(confirmed, local, remote, reference);
+        }
+    }
+
+    /**
+     * Brings the local digest up to date and publishes it if the catalog changed.
+     */
+    CatalogDigest publish() throws Exception {
+        long v = version.get();
+        if (digest == null) {
+            digest = new CatalogDigest();
+            dirty.clear();
+            hashAll(digest);
+        } else if (!dirty.isEmpty()) {
+            Catalog cat = sync.gs.getCatalog();
+            for (String id : new ArrayList<String>(dirty.keySet())) {
+                Class<? extends CatalogInfo> clazz = dirty.remove(id);
+                CatalogInfo info = sync.getCatalogInfo(cat, clazz, id);
+                if (info != null) {
+                    digest.hashes.put(id, hash(info));
+                    digest.types.put(id, clazz);
+                } else {
+                    digest.hashes.remove(id);
+                    digest.types.remove(id);
+                }
+            }
+        }
+        if (v != published) {
+            digest.version = v;
+            digest.time = System.currentTimeMillis();
+            IMap<String, CatalogDigest> digests = hz.getMap(DIGESTS);
+            digests.put(key(HazelcastUtil.localAddress(hz)), digest);
+            published = v;
+        }
+        return digest;
+    }
+
+    void hashAll(CatalogDigest digest) throws Exception {
+        Catalog cat = sync.gs.getCatalog();
+        List<CatalogInfo> all = new ArrayList<CatalogInfo>();
+        all.addAll(cat.getWorkspaces());
+        all.addAll(cat.getNamespaces());
+        all.addAll(cat.getStores(StoreInfo.class));
+        all.addAll(cat.getResources(ResourceInfo.class));
+        all.addAll(cat.getStyles());
+        all.addAll(cat.getLayers());
+        all.addAll(cat.getLayerGroups());
+        for (CatalogInfo info : all) {
+            digest.hashes.put(info.getId(), hash(info));
+            digest.types.put(info.getId(), type(info.getClass()));
+        }
+    }
+
+    String hash(CatalogInfo info) throws Exception {
+        return HazelcastUtil.contentHash(sync.serialize(info));
+    }
+
+    /**
+     * Objects differing between two digests, mapped to their local and remote hashes.
+     */
+    static Map<String, String> diff(CatalogDigest local, CatalogDigest remote) {
+        Map<String, String> diff = new HashMap<String, String>();
+        Set<String> ids = new HashSet<String>(local.hashes.keySet());
+        ids.addAll(remote.hashes.keySet());
+        for (String id : ids) {
+            String lh = local.hashes.get(id);
+            String rh = remote.hashes.get(id);
+            if (lh == null || !lh.equals(rh)) {
+                diff.put(id, lh + "/" + rh);
+            }
+        }
+        return diff;
+    }
+
+    void repair(Set<String> ids, CatalogDigest local, CatalogDigest remote, Member reference) {
+        Catalog cat = sync.gs.getCatalog();
+
+        List<CatalogInfo> removed = new ArrayList<CatalogInfo>();
+        RepairRequestEvent request = new RepairRequestEvent();
+        List<String> requested = new ArrayList<String>();
+        for (String id : ids) {
+            if (remote.hashes.containsKey(id)) {
+                requested.add(id);
+            } else {
+                CatalogInfo info = sync.getCatalogInfo(cat, local.types.get(id), id);
+                if (info != null) {
+                    removed.add(info);
+                }
+            }
+        }
+
+        // dependent objects first when removing, last when adding
+        Collections.sort(removed, Collections.reverseOrder(BY_TYPE));
+        if (!removed.isEmpty()) {
+            LOGGER.info(String.format("Removing %d catalog objects not found on %s",
+                removed.size(), reference.getInetSocketAddress()));
+            sync.removeLocally(removed);
+        }
+
+        final Map<String, Class<? extends CatalogInfo>> types = remote.types;
+        Collections.sort(requested, new Comparator<String>() {
+            @Override
+            public int compare(String id1, String id2) {
+                return rank(types.get(id1)) - rank(types.get(id2));
+            }
+        });
+        for (String id : requested) {
+            request.add(id, remote.types.get(id));
+        }
+        if (!request.getObjects().isEmpty()) {
+            LOGGER.info(String.format("Requesting %d diverged catalog objects from %s",
+                request.getObjects().size(), reference.getInetSocketAddress()));
+            request.setTarget(reference.getInetSocketAddress());
+            sync.dispatch(request);
+        }
+        Metrics.newCounter(getClass(), "repaired").inc(ids.size());
+    }
+
+    static String key(InetSocketAddress addr) {
+        return addr.getAddress().getHostAddress() + ":" + addr.getPort();
+    }
+
+    static Class<? extends CatalogInfo> type(Class<?> clazz) {
+        for (Class<? extends CatalogInfo> type : TYPES) {
+            if (type.isAssignableFrom(clazz)) {
+                return type;
+            }
+        }
+        return null;
+    }
+
+    static int rank(Class<?> clazz) {
+        return TYPES.indexOf(type(clazz));
+    }
+
+    static final Comparator<CatalogInfo> BY_TYPE = new Comparator<CatalogInfo>() {
+        @Override
+        public int compare(CatalogInfo o1, CatalogInfo o2) {
+            return rank(o1.getClass()) - rank(o2.getClass());
+        }
+    };
+}
@@ -0,0 +1,345 @@
+package org.geoserver.cluster.hazelcast;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.geoserver.catalog.Catalog;
+import org.geoserver.catalog.FeatureTypeInfo;
+import org.geoserver.catalog.ResourcePool;
+import org.geoserver.catalog.impl.ModificationProxy;
+import org.geoserver.config.util.XStreamPersister;
+import org.geoserver.config.util.XStreamPersisterFactory;
+import org.geotools.feature.AttributeTypeBuilder;
+import org.geotools.feature.FeatureTypes;
+import org.geotools.feature.NameImpl;
+import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
+import org.geotools.referencing.CRS;
+import org.geotools.util.SimpleInternationalString;
+import org.geotools.util.logging.Logging;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.AttributeDescriptor;
+import org.opengis.feature.type.FeatureType;
+import org.opengis.feature.type.GeometryDescriptor;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+import org.opengis.util.InternationalString;
+
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.IMap;
+import com.yammer.metrics.Metrics;
+
+/**
+ * Resource pool sharing the result of expensive lookups with the other nodes of the cluster.
+ * <p>
+ * Simple feature type schemas and CRS decode results computed by any node are kept in cluster
+ * wide {@link IMap}s, so that a node joining the cluster warms its caches from its peers rather
+ * than opening every store and hitting the EPSG database again. Schemas are keyed by feature
+ * type id and stamped with a content hash of the feature type configuration, an entry is only
+ * used if the local configuration has the same stamp. Schemas holding restrictions other than
+ * a field length, or user data that can't be serialized, are not shared. Entries are dropped
+ * when the catalog clears the feature type, which happens on the catalog events fired for local
+ * changes as well as for the {@link org.geoserver.cluster.ConfigChangeEvent}s received from the
+ * cluster.
+ * </p>
+ * <p>
+ * Parsed styles are not shared, GeoTools styles are not serializable and encoding them back
+ * to SLD would cost as much as parsing the original file.
+ * </p>
+ */
+public class HzResourcePool extends ResourcePool {
+
+    static Logger LOGGER = Logging.getLogger("org.geoserver.cluster.hazelcast");
+
+    static final String FEATURE_TYPES = "geoserver.resources.featureTypes";
+    static final String CRSS = "geoserver.resources.crs";
+
+    /**
+     * Serializable form of a simple feature type.
+     */
+    static class SchemaEntry implements Serializable {
+
+        /** serialVersionUID */
+        private static final long serialVersionUID = 2L;
+
+        /** content hash of the feature type configuration the schema was built from */
+        String stamp;
+
+        String namespace;
+        String name;
+        String description;
+        String defaultGeometry;
+        HashMap<Object, Object> userData;
+        List<AttributeEntry> attributes = new ArrayList<AttributeEntry>();
+
+        /**
+         * @return the entry, or null if the type can not be rebuilt as is from the entry
+         */
+        static SchemaEntry create(String stamp, SimpleFeatureType type) {
+            SchemaEntry entry = new SchemaEntry();
+            entry.stamp = stamp;
+            entry.namespace = type.getName().getNamespaceURI();
+            entry.name = type.getName().getLocalPart();
+            entry.description = string(type.getDescription());
+            if (type.getGeometryDescriptor() != null) {
+                entry.defaultGeometry = type.getGeometryDescriptor().getLocalName();
+            }
+            entry.userData = serializable(type.getUserData());
+            if (entry.userData == null) {
+                return null;
+            }
+            for (AttributeDescriptor ad : type.getAttributeDescriptors()) {
+                AttributeEntry a = AttributeEntry.create(ad);
+                if (a == null) {
+                    return null;
+                }
+                entry.attributes.add(a);
+            }
+            return entry;
+        }
+
+        SimpleFeatureType toFeatureType() throws Exception {
+            SimpleFeatureTypeBuilder tb = new SimpleFeatureTypeBuilder();
+            tb.setName(new NameImpl(namespace, name));
+            if (description != null) {
+                tb.setDescription(new SimpleInternationalString(description));
+            }
+            for (AttributeEntry a : attributes) {
+                tb.add(a.toDescriptor());
+            }
+            if (defaultGeometry != null) {
+                tb.setDefaultGeometry(defaultGeometry);
+            }
+            SimpleFeatureType type = tb.buildFeatureType();
+            type.getUserData().putAll(userData);
+            return type;
+        }
+    }
+
+    static class AttributeEntry implements Serializable {
+
+        /** serialVersionUID */
+        private static final long serialVersionUID = 2L;
+
+        String name;
+        Class<?> binding;
+        boolean nillable;
+        int minOccurs;
+        int maxOccurs;
+        int length = -1;
+        Serializable defaultValue;
+        String description;
+        String crs;
+        HashMap<Object, Object> userData;
+
+        /**
+         * @return the entry, or null if the attribute can not be rebuilt as is from the entry
+         */
+        static AttributeEntry create(AttributeDescriptor ad) {
+            AttributeEntry a = new AttributeEntry();
+            a.name = ad.getLocalName();
+            a.binding = ad.getType().getBinding();
+            a.nillable = ad.isNillable();
+            a.minOccurs = ad.getMinOccurs();
+            a.maxOccurs = ad.getMaxOccurs();
+            a.description = string(ad.getType().getDescription());
+
+            // field lengths are the only restrictions stores set up
+            int restrictions = ad.getType().getRestrictions().size();
+            if (restrictions > 0) {
+                a.length = FeatureTypes.getFieldLength(ad);
+                if (restrictions > 1 || a.length < 0) {
+                    return null;
+                }
+            }
+            if (ad.getDefaultValue() != null) {
+                if (!(ad.getDefaultValue() instanceof Serializable)) {
+                    return null;
+                }
+                a.defaultValue = (Serializable) ad.getDefaultValue();
+            }
+            if (ad instanceof GeometryDescriptor) {
+                CoordinateReferenceSystem c = ((GeometryDescriptor) ad).getCoordinateReferenceSystem();
+                a.crs = c != null ? c.toWKT() : null;
+            }
+            a.userData = serializable(ad.getUserData());
+            return a.userData != null ? a : null;
+        }
+
+        AttributeDescriptor toDescriptor() throws Exception {
+            AttributeTypeBuilder ab = new AttributeTypeBuilder();
+            ab.setBinding(binding);
+            ab.setNillable(nillable);
+            ab.setMinOccurs(minOccurs);
+            ab.setMaxOccurs(maxOccurs);
+            if (length >= 0) {
+                ab.setLength(length);
+            }
+            if (defaultValue != null) {
+                ab.setDefaultValue(defaultValue);
+            }
+            if (description != null) {
+                ab.setDescription(description);
+            }
+            if (crs != null) {
+                ab.setCRS(CRS.parseWKT(crs));
+            }
+            AttributeDescriptor ad = ab.buildDescriptor(name);
+            ad.getUserData().putAll(userData);
+            return ad;
+        }
+    }
+
+    static String string(InternationalString s) {
+        return s != null ? s.toString() : null;
+    }
+
+    /**
+     * @return a copy of the user data, or null if it holds entries that can't be serialized
+     */
+    static HashMap<Object, Object> serializable(Map<Object, Object> userData) {
+        HashMap<Object, Object> copy = new HashMap<Object, Object>();
+        for (Map.Entry<Object, Object> e : userData.entrySet()) {
+            if (!(e.getKey() instanceof Serializable) 
+                || (e.getValue() != null && !(e.getValue() instanceof Serializable))) {
+                return null;
+            }
+            copy.put(e.getKey(), e.getValue());
+        }
+        return copy;
+    }
+
+    final IMap<String, SchemaEntry> sharedFeatureTypes;
+    final IMap<String, String> sharedCRSs;
+
+    /** near cache of the shared entries, keyed like the shared map */
+    final Map<String, FeatureType> featureTypes = new ConcurrentHashMap<String, FeatureType>();
+    final Map<String, CoordinateReferenceSystem> crss =
+        new ConcurrentHashMap<String, CoordinateReferenceSystem>();
+
+    final Catalog catalog;
+
+    public HzResourcePool(Catalog catalog, HazelcastInstance hz) {
+        super(catalog);
+        this.catalog = catalog;
+        sharedFeatureTypes = hz.getMap(FEATURE_TYPES);
+        sharedCRSs = hz.getMap(CRSS);
+    }
+
+    static String key(FeatureTypeInfo info, boolean handleProjectionPolicy) {
+        return info.getId() + ":" + handleProjectionPolicy;
+    }
+
+    /**
+     * Content hash of the XStream form of the feature type configuration, equal on every node
+     * for the same configuration.
+     */
+    String stamp(FeatureTypeInfo info) throws IOException {
+        XStreamPersister xp = new XStreamPersisterFactory().createXMLPersister();
+        xp.setCatalog(catalog);
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        xp.save(ModificationProxy.unwrap(info), bout);
+        try {
+            return HazelcastUtil.contentHash(bout.toByteArray());
+        } catch (Exception e) {
+            throw new IOException("Unable to hash " + info.prefixedName(), e);
+        }
+    }
+
+    @Override
+    public FeatureType getFeatureType(FeatureTypeInfo info, boolean handleProjectionPolicy)
+            throws IOException {
+        if (info.getId() == null) {
+            // not in the catalog yet
+            return super.getFeatureType(info, handleProjectionPolicy);
+        }
+
+        String key = key(info, handleProjectionPolicy);
+        FeatureType ft = featureTypes.get(key);
+        if (ft != null) {
+            return ft;
+        }
+
+        String stamp = stamp(info);
+        SchemaEntry shared = sharedFeatureTypes.get(key);
+        if (shared != null && stamp.equals(shared.stamp)) {
+            try {
+                ft = shared.toFeatureType();
+                featureTypes.put(key, ft);
+                Metrics.newCounter(getClass(), "shared-hits").inc();
+                return ft;
+            } catch (Exception e) {
+                LOGGER.log(Level.FINE, "Unable to rebuild shared schema of " + info.prefixedName(), e);
+            }
+        }
+
+        ft = super.getFeatureType(info, handleProjectionPolicy);
+        if (ft instanceof SimpleFeatureType) {
+            SchemaEntry entry = SchemaEntry.create(stamp, (SimpleFeatureType) ft);
+            if (entry != null) {
+                sharedFeatureTypes.put(key, entry);
+            }
+            featureTypes.put(key, ft);
+        }
+        return ft;
+    }
+
+    @Override
+    public void clear(FeatureTypeInfo info) {
+        if (info.getId() != null) {
+            for (boolean handleProjectionPolicy : new boolean[] { true, false }) {
+                String key = key(info, handleProjectionPolicy);
+                featureTypes.remove(key);
+                sharedFeatureTypes.remove(key);
+            }
+        }
+        super.clear(info);
+    }
+
+    @Override
+    public CoordinateReferenceSystem getCRS(String srs) throws IOException {
+        if (srs == null) {
+            return super.getCRS(srs);
+        }
+        CoordinateReferenceSystem crs = crss.get(srs);
+        if (crs != null) {
+            return crs;
+        }
+
+        String wkt = sharedCRSs.get(srs);
+        if (wkt != null) {
+            try {
+                crs = CRS.parseWKT(wkt);
+                crss.put(srs, crs);
+                Metrics.newCounter(getClass(), "shared-hits").inc();
+                return crs;
+            } catch (Exception e) {
+                LOGGER.log(Level.FINE, "Unable to parse shared definition of " + srs, e);
+            }
+        }
+
+        crs = super.getCRS(srs);
+        if (crs != null) {
+            try {
+                sharedCRSs.put(srs, crs.toWKT());
+            } catch (UnsupportedOperationException e) {
+                // not formattable as WKT, only kept locally
+            }
+            crss.put(srs, crs);
+        }
+        return crs;
+    }
+
+    @Override
+    public void dispose() {
+        featureTypes.clear();
+        crss.clear();
+        super.dispose();
+    }
+}
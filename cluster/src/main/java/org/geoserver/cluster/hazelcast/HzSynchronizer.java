@@ -4,20 +4,29 @@ import static org.geoserver.cluster.hazelcast.HazelcastUtil.*;
 
 import java.util.List;
 import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import org.geoserver.catalog.Catalog;
 import org.geoserver.catalog.CatalogException;
+import org.geoserver.catalog.CatalogInfo;
 import org.geoserver.catalog.Info;
+import org.geoserver.catalog.LayerGroupInfo;
+import org.geoserver.catalog.LayerInfo;
+import org.geoserver.catalog.NamespaceInfo;
+import org.geoserver.catalog.ResourceInfo;
+import org.geoserver.catalog.StoreInfo;
+import org.geoserver.catalog.StyleInfo;
 import org.geoserver.catalog.WorkspaceInfo;
 import org.geoserver.catalog.event.CatalogAddEvent;
 import org.geoserver.catalog.event.CatalogEvent;
 import org.geoserver.catalog.event.CatalogPostModifyEvent;
 import org.geoserver.catalog.event.CatalogRemoveEvent;
+import org.geoserver.cluster.ClusterConfig;
 import org.geoserver.cluster.ConfigChangeEvent;
 import org.geoserver.cluster.Event;
 import org.geoserver.cluster.GeoServerSynchronizer;
@@ -33,14 +42,19 @@ import com.hazelcast.core.ITopic;
 import com.hazelcast.core.Message;
 import com.hazelcast.core.MessageListener;
 import com.yammer.metrics.Metrics;
+import com.yammer.metrics.core.Gauge;
+import com.yammer.metrics.core.Histogram;
+import com.yammer.metrics.core.Timer;
+import com.yammer.metrics.core.TimerContext;
 
 /**
  * Base hazelcast based synchronizer that does event collapsing.
  * <p>
- * This synchronizer maintains a thread safe queue that is populated with events as they occur.
- * Upon receiving of an event a new runnable is scheduled and run after a short delay 
- * (default 5 sec). The runnable calls the {@link #processEventQueue(Queue)} method to be 
- * implemented by subclasses. 
+ * This synchronizer maintains a thread safe {@link CoalescingEventQueue} that is populated with
+ * events as they occur, keeping a single pending event per object. A single flush is scheduled
+ * a short delay (default 5 sec) after the last event received, postponed as long as events 
+ * keep arriving but never further than the max delay after the first pending event. The flush 
+ * calls the {@link #processEventQueue(Queue)} method to be implemented by subclasses. 
  * </p>
  * <p>
  * This synchronizer events messages received from the same source.
@@ -58,11 +72,26 @@ public abstract class HzSynchronizer extends GeoServerSynchronizer implements Me
     ITopic<Event> topic;
     
     /** event queue */
-    Queue<Event> queue;
+    CoalescingEventQueue queue;
 
     /** event processor */
     ScheduledExecutorService executor;
 
+    /** pending flush of the queue, may be null even if one is pending */
+    ScheduledFuture<?> flush;
+
+    /** whether a flush is pending */
+    boolean flushPending;
+
+    /** time the first event waiting for the pending flush was received */
+    long firstPending;
+
+    /** time taken to process the queue */
+    Timer applyTimer;
+
+    /** time between the first event of a flush being received and the flush completing */
+    Histogram latency;
+
     /** geoserver configuration */
     protected GeoServer gs;
     
@@ -77,9 +106,24 @@ public abstract class HzSynchronizer extends GeoServerSynchronizer implements Me
         topic = cluster.getHz().getTopic("geoserver.config");
         topic.addMessageListener(this);
         
-        queue = new ConcurrentLinkedQueue<Event>();
+        queue = new CoalescingEventQueue();
         executor = getNewExecutor();
 
+        Metrics.newGauge(getClass(), "queue-depth", new Gauge<Integer>() {
+            @Override
+            public Integer value() {
+                return queue.size();
+            }
+        });
+        Metrics.newGauge(getClass(), "collapse-ratio", new Gauge<Double>() {
+            @Override
+            public Double value() {
+                return queue.getCollapseRatio();
+            }
+        });
+        applyTimer = Metrics.newTimer(getClass(), "apply", TimeUnit.MILLISECONDS, TimeUnit.SECONDS);
+        latency = Metrics.newHistogram(getClass(), "latency", true);
+
         gs.addListener(this);
         gs.getCatalog().addListener(this);
     }
@@ -93,31 +137,83 @@ public abstract class HzSynchronizer extends GeoServerSynchronizer implements Me
             LOGGER.finer("Skipping message generated locally " + message);
             return;
         }
+        if (e.getTarget() != null && !localAddress(cluster.getHz()).equals(e.getTarget())) {
+            LOGGER.finer("Skipping message targeted at another node " + message);
+            return;
+        }
         if (LOGGER.isLoggable(Level.FINE)) {
             LOGGER.fine("Message recieved: " + message);
         }
 
-        //queue the event to be processed
+        //queue the event to be processed, collapsing it with pending events for the same object
         queue.add(message.getMessageObject());
 
-        //schedule job to process the event with a short delay
-        executor.schedule(new Runnable() {
+        scheduleFlush();
+    }
+
+    /**
+     * (Re)schedules the flush of the queue after the sync delay, without postponing it past the 
+     * max delay after the first pending event.
+     */
+    synchronized void scheduleFlush() {
+        ClusterConfig config = configWatcher.get();
+        long now = System.currentTimeMillis();
+        long delay = config.getSyncDelay() * 1000L;
+
+        if (!flushPending) {
+            firstPending = now;
+            delay = Math.min(delay, config.getSyncMaxDelay() * 1000L);
+        }
+        else {
+            long remaining = firstPending + config.getSyncMaxDelay() * 1000L - now;
+            if (remaining <= delay) {
+                // capped, keep the flush already scheduled
+                return;
+            }
+            if (flush != null) {
+                flush.cancel(false);
+            }
+        }
+
+        flushPending = true;
+        flush = executor.schedule(new Runnable() {
             @Override
             public void run() {
-                if (queue.isEmpty()) {
-                    return;
-                }
-
-                try {
-                    processEventQueue(queue);
-                }
-                catch(Exception e) {
-                    LOGGER.log(Level.WARNING, "Event processing failed", e);
-                }
-
-                Metrics.newCounter(getClass(), "reloads").inc();
+                flush();
             }
-        }, configWatcher.get().getSyncDelay(), TimeUnit.SECONDS);
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    void flush() {
+        long first;
+        synchronized (this) {
+            flushPending = false;
+            flush = null;
+            first = firstPending;
+        }
+        if (queue.isEmpty()) {
+            return;
+        }
+
+        TimerContext ctx = applyTimer.time();
+        try {
+            processEventQueue(queue);
+        }
+        catch(Exception e) {
+            LOGGER.log(Level.WARNING, "Event processing failed", e);
+        }
+        finally {
+            ctx.stop();
+        }
+        latency.update(System.currentTimeMillis() - first);
+    }
+
+    /**
+     * Reloads the whole configuration, counted by the "reloads" metric.
+     */
+    protected void reload() throws Exception {
+        gs.reload();
+        Metrics.newCounter(getClass(), "reloads").inc();
     }
 
     protected void dispatch(Event e) {
@@ -140,6 +236,35 @@ public abstract class HzSynchronizer extends GeoServerSynchronizer implements Me
      */
     protected abstract void processEventQueue(Queue<Event> q) throws Exception;
 
+    /**
+     * Looks up a catalog object by id, based on the interface of the object.
+     */
+    @SuppressWarnings("unchecked")
+    CatalogInfo getCatalogInfo(Catalog cat, Class<? extends Info> clazz, String id) {
+        if (WorkspaceInfo.class.isAssignableFrom(clazz)) {
+            return cat.getWorkspace(id);
+        }
+        else if (NamespaceInfo.class.isAssignableFrom(clazz)) {
+            return cat.getNamespace(id);
+        }
+        else if (StoreInfo.class.isAssignableFrom(clazz)) {
+            return cat.getStore(id, (Class<StoreInfo>) clazz);
+        }
+        else if (ResourceInfo.class.isAssignableFrom(clazz)) {
+            return cat.getResource(id, (Class<ResourceInfo>) clazz);
+        }
+        else if (LayerInfo.class.isAssignableFrom(clazz)) {
+            return cat.getLayer(id);
+        }
+        else if (StyleInfo.class.isAssignableFrom(clazz)) {
+            return cat.getStyle(id);
+        }
+        else if (LayerGroupInfo.class.isAssignableFrom(clazz)) {
+            return cat.getLayerGroup(id);
+        }
+        return null;
+    }
+
     ConfigChangeEvent newChangeEvent(CatalogEvent evt, Type type) {
         return newChangeEvent(evt.getSource(), type);
     }
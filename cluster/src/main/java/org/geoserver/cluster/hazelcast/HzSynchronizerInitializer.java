@@ -2,6 +2,8 @@ package org.geoserver.cluster.hazelcast;
 
 import java.util.logging.Logger;
 
+import org.geoserver.catalog.Catalog;
+import org.geoserver.catalog.ResourcePool;
 import org.geoserver.cluster.ClusterConfig;
 import org.geoserver.cluster.ClusterConfigWatcher;
 import org.geoserver.config.GeoServer;
@@ -35,8 +37,15 @@ public class HzSynchronizerInitializer implements GeoServerInitializer {
             return;
         }
         
-        @SuppressWarnings("unused")
         HazelcastInstance hz = cluster.getHz();
+
+        if (config.isResourceCacheEnabled()) {
+            Catalog catalog = geoServer.getCatalog();
+            ResourcePool pool = catalog.getResourcePool();
+            catalog.setResourcePool(new HzResourcePool(catalog, hz));
+            pool.dispose();
+            LOGGER.info("Hazelcast resource cache enabled");
+        }
         
         HzSynchronizer syncher = null;
         
@@ -44,12 +53,18 @@ public class HzSynchronizerInitializer implements GeoServerInitializer {
         if ("event".equalsIgnoreCase(method)) {
             syncher = new EventHzSynchronizer(cluster, geoServer);
         }
+        else if ("delta".equalsIgnoreCase(method)) {
+            syncher = new DeltaHzSynchronizer(cluster, geoServer);
+        }
         else {
             method = "reload"; 
             syncher = new ReloadHzSynchronizer(cluster, geoServer);
         }
         
         syncher.initialize(configWatcher);
+        if (syncher instanceof DeltaHzSynchronizer) {
+            ((DeltaHzSynchronizer) syncher).startAntiEntropy();
+        }
         LOGGER.info("Hazelcast synchronizer method is " + method);
     }
     
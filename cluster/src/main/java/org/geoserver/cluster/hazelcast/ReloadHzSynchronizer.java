@@ -28,7 +28,7 @@ public class ReloadHzSynchronizer extends HzSynchronizer {
         //lock during event processing
         eventLock.set(true);
         try {
-            gs.reload();
+            reload();
         } catch (Exception e) {
             LOGGER.log(Level.WARNING, "Reload failed", e);
         }
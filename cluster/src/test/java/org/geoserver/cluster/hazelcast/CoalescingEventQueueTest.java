@@ -0,0 +1,94 @@
+package org.geoserver.cluster.hazelcast;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.util.Iterator;
+
+import org.geoserver.catalog.impl.LayerInfoImpl;
+import org.geoserver.catalog.impl.StyleInfoImpl;
+import org.geoserver.cluster.ConfigChangeEvent;
+import org.geoserver.cluster.ConfigChangeEvent.Type;
+import org.geoserver.cluster.Event;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CoalescingEventQueueTest {
+
+    CoalescingEventQueue queue;
+
+    @Before
+    public void setUp() {
+        queue = new CoalescingEventQueue();
+    }
+
+    ConfigChangeEvent layer(String id, Type type) {
+        return new ConfigChangeEvent(id, id, LayerInfoImpl.class, type);
+    }
+
+    @Test
+    public void testModifyCollapses() {
+        ConfigChangeEvent first = layer("l1", Type.MODIFY);
+        ConfigChangeEvent style = new ConfigChangeEvent("s1", "s1", StyleInfoImpl.class, Type.MODIFY);
+        ConfigChangeEvent last = layer("l1", Type.MODIFY);
+        queue.add(first);
+        queue.add(style);
+        queue.add(last);
+
+        assertThat(queue.size(), is(2));
+        // latest event, original position
+        assertThat(queue.poll(), is(sameInstance((Event) last)));
+        assertThat(queue.poll(), is(sameInstance((Event) style)));
+        assertThat(queue.getCollapsed(), is(1L));
+        assertThat(queue.getReceived(), is(3L));
+    }
+
+    @Test
+    public void testAddRemoveCancels() {
+        queue.add(layer("l1", Type.ADD));
+        queue.add(layer("l1", Type.MODIFY));
+        queue.add(layer("l1", Type.REMOVE));
+
+        assertTrue(queue.isEmpty());
+        assertThat(queue.getCollapsed(), is(3L));
+    }
+
+    @Test
+    public void testAddModifyKeepsAdd() {
+        ConfigChangeEvent modify = layer("l1", Type.MODIFY);
+        modify.setPayload(new byte[] { 1 });
+        queue.add(layer("l1", Type.ADD));
+        queue.add(modify);
+
+        ConfigChangeEvent e = (ConfigChangeEvent) queue.poll();
+        assertThat(e.getChangeType(), is(Type.ADD));
+        assertThat(e.getPayload(), is(modify.getPayload()));
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void testRemoveMovesLast() {
+        queue.add(layer("l1", Type.MODIFY));
+        queue.add(layer("l2", Type.MODIFY));
+        queue.add(layer("l1", Type.REMOVE));
+
+        assertThat(((ConfigChangeEvent) queue.poll()).getObjectId(), is("l2"));
+        ConfigChangeEvent e = (ConfigChangeEvent) queue.poll();
+        assertThat(e.getObjectId(), is("l1"));
+        assertThat(e.getChangeType(), is(Type.REMOVE));
+    }
+
+    @Test
+    public void testQueuedWhileProcessing() {
+        queue.add(layer("l1", Type.ADD));
+
+        Iterator<Event> it = queue.iterator();
+        it.next();
+        // arrives while the add is being applied, must not cancel it
+        queue.add(layer("l1", Type.REMOVE));
+        it.remove();
+
+        assertThat(queue.size(), is(1));
+        assertThat(((ConfigChangeEvent) queue.poll()).getChangeType(), is(Type.REMOVE));
+    }
+}
@@ -0,0 +1,131 @@
+package org.geoserver.cluster.hazelcast;
+
+import static org.easymock.EasyMock.*;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+
+import org.geoserver.catalog.Info;
+import org.geoserver.catalog.LayerInfo;
+import org.geoserver.catalog.impl.LayerInfoImpl;
+import org.geoserver.cluster.ConfigChangeEvent;
+import org.geoserver.cluster.ConfigChangeEvent.Type;
+import org.geoserver.cluster.Event;
+import org.junit.Test;
+
+import com.hazelcast.core.Message;
+import com.hazelcast.core.MessageListener;
+
+/**
+ * Test that the delta synchronizer applies shipped objects to the local catalog, and only
+ * reloads when it can't.
+ */
+public class DeltaHzSynchronizerRecvTest extends HzSynchronizerTest {
+
+    /** stands in for the XStream payloads, keyed by the payload bytes */
+    Map<String, Info> payloads = new HashMap<String, Info>();
+
+    @Override
+    protected HzSynchronizer getSynchronizer() {
+        return new DeltaHzSynchronizer(cluster, getGeoServer()) {
+
+            @Override
+            ScheduledExecutorService getNewExecutor() {
+                return getMockExecutor();
+            }
+
+            @Override
+            byte[] serialize(Info info) throws IOException {
+                payloads.put(info.getId(), info);
+                return info.getId().getBytes();
+            }
+
+            @Override
+            <T extends Info> T deserialize(byte[] payload, Class<T> clazz) throws IOException {
+                return clazz.cast(payloads.get(new String(payload)));
+            }
+        };
+    }
+
+    void mockMessage(ConfigChangeEvent evt) {
+        evt.setSource(remoteAddress);
+        Message<Event> msg = new Message<Event>(TOPIC_NAME, evt);
+        for (MessageListener<Event> listener : captureTopicListener.getValues()) {
+            listener.onMessage(msg);
+        }
+    }
+
+    ConfigChangeEvent layerEvent(String layerId, String layerName, LayerInfo remote, Type type) {
+        ConfigChangeEvent evt = new ConfigChangeEvent(layerId, layerName, LayerInfoImpl.class, type);
+        if (remote != null) {
+            payloads.put(layerId, remote);
+            evt.setPayload(layerId.getBytes());
+        }
+        return evt;
+    }
+
+    @Test
+    public void testModifyLayer() throws Exception {
+        final String layerId = "Layer-TEST";
+        LayerInfo local = createNiceMock(LayerInfo.class);
+        LayerInfo remote = createNiceMock(LayerInfo.class);
+
+        expect(getCatalog().getLayer(layerId)).andReturn(local);
+        getCatalog().save(local); expectLastCall();
+        replay(local, remote);
+
+        HzSynchronizer sync = getSynchronizer();
+        sync.initialize(configWatcher);
+        mockMessage(layerEvent(layerId, "testLayer", remote, Type.MODIFY));
+        waitForSync();
+
+        verify(local, remote);
+    }
+
+    @Test
+    public void testModifyUnknownLayerReloads() throws Exception {
+        final String layerId = "Layer-TEST";
+        LayerInfo remote = createNiceMock(LayerInfo.class);
+
+        expect(getCatalog().getLayer(layerId)).andReturn(null);
+        getGeoServer().reload(); expectLastCall();
+        replay(remote);
+
+        HzSynchronizer sync = getSynchronizer();
+        sync.initialize(configWatcher);
+        mockMessage(layerEvent(layerId, "testLayer", remote, Type.MODIFY));
+        waitForSync();
+
+        verify(remote);
+    }
+
+    @Test
+    public void testRemoveUnknownLayerIgnored() throws Exception {
+        final String layerId = "Layer-TEST";
+
+        expect(getCatalog().getLayer(layerId)).andReturn(null);
+        replay();
+
+        HzSynchronizer sync = getSynchronizer();
+        sync.initialize(configWatcher);
+        mockMessage(layerEvent(layerId, "testLayer", null, Type.REMOVE));
+        waitForSync();
+
+        verify();
+    }
+
+    @Test
+    public void testMissingPayloadReloads() throws Exception {
+        getGeoServer().reload(); expectLastCall();
+        replay();
+
+        HzSynchronizer sync = getSynchronizer();
+        sync.initialize(configWatcher);
+        mockMessage(layerEvent("Layer-TEST", "testLayer", null, Type.ADD));
+        waitForSync();
+
+        verify();
+    }
+}
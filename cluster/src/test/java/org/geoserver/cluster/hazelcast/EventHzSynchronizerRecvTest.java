@@ -100,11 +100,7 @@ public class EventHzSynchronizerRecvTest extends HzSynchronizerRecvTest {
     protected void expectationTestMultipleChange(GeoServerInfo gsInfo,
             String globalId, LayerInfo layerInfo, String layerId) throws Exception{
         
-        expectationTestContactChange(gsInfo, globalId);
-        expectationTestContactChange(gsInfo, globalId);
-        expectationTestContactChange(gsInfo, globalId);
-        expectationTestDisableLayer(layerInfo, null, layerId);
-        expectationTestDisableLayer(layerInfo, null, layerId);
+        // repeated modifications collapse within a sync
         expectationTestContactChange(gsInfo, globalId);
         expectationTestDisableLayer(layerInfo, null, layerId);
         expectationTestDisableLayer(layerInfo, null, layerId);
@@ -114,7 +110,6 @@ public class EventHzSynchronizerRecvTest extends HzSynchronizerRecvTest {
     protected void expectationTestTwoAddressChangeNoPause(GeoServerInfo gsInfo,
             String globalId) throws Exception {
         expectationTestContactChange(gsInfo, globalId);
-        expectationTestContactChange(gsInfo, globalId);
     }
 
     @Override
@@ -129,7 +124,7 @@ public class EventHzSynchronizerRecvTest extends HzSynchronizerRecvTest {
     protected void expectationTestTwoLayerChangeNoPause(final LayerInfo layerInfo,
             String layerId) throws Exception {
         expect(getCatalog().getLayer(layerId) ).andReturn(layerInfo).anyTimes();
-        expectCatalogFire(layerInfo, layerId, Type.MODIFY).times(2);
+        expectCatalogFire(layerInfo, layerId, Type.MODIFY).times(1);
     }
 
     @Override
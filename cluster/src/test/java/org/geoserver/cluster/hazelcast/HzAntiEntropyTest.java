@@ -0,0 +1,199 @@
+package org.geoserver.cluster.hazelcast;
+
+import static org.easymock.EasyMock.*;
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+
+import org.geoserver.catalog.CatalogInfo;
+import org.geoserver.catalog.DataStoreInfo;
+import org.geoserver.catalog.FeatureTypeInfo;
+import org.geoserver.catalog.LayerInfo;
+import org.geoserver.catalog.StoreInfo;
+import org.geoserver.catalog.WorkspaceInfo;
+import org.geoserver.catalog.impl.DataStoreInfoImpl;
+import org.geoserver.cluster.Event;
+import org.geoserver.cluster.RepairRequestEvent;
+import org.geoserver.cluster.hazelcast.HzAntiEntropy.CatalogDigest;
+import org.junit.Test;
+
+import com.hazelcast.core.Member;
+
+public class HzAntiEntropyTest extends HzSynchronizerTest {
+
+    static final int INTERVAL = 60;
+
+    List<CatalogInfo> removed = new ArrayList<CatalogInfo>();
+
+    List<Event> dispatched = new ArrayList<Event>();
+
+    @Override
+    protected HzSynchronizer getSynchronizer() {
+        return new DeltaHzSynchronizer(cluster, getGeoServer()) {
+            @Override
+            ScheduledExecutorService getNewExecutor() {
+                return getMockExecutor();
+            }
+
+            @Override
+            void removeLocally(List<CatalogInfo> infos) {
+                removed.addAll(infos);
+            }
+
+            @Override
+            protected void dispatch(Event e) {
+                dispatched.add(e);
+            }
+        };
+    }
+
+    HzAntiEntropy antiEntropy(Object... mocks) {
+        expect(clusterConfig.getAntiEntropyInterval()).andStubReturn(INTERVAL);
+        replay(mocks);
+        HzSynchronizer sync = getSynchronizer();
+        sync.initialize(configWatcher);
+        return new HzAntiEntropy((DeltaHzSynchronizer) sync, hz);
+    }
+
+    Member reference() {
+        Member reference = createNiceMock(Member.class);
+        expect(reference.getInetSocketAddress()).andStubReturn(remoteAddress);
+        org.easymock.EasyMock.replay(reference);
+        return reference;
+    }
+
+    static CatalogDigest digest(long time, String... idsAndHashes) {
+        CatalogDigest digest = new CatalogDigest();
+        digest.time = time;
+        for (int i = 0; i < idsAndHashes.length; i += 2) {
+            digest.hashes.put(idsAndHashes[i], idsAndHashes[i + 1]);
+            digest.types.put(idsAndHashes[i], LayerInfo.class);
+        }
+        return digest;
+    }
+
+    static LayerInfo layer(String id) {
+        LayerInfo layer = createNiceMock(LayerInfo.class);
+        expect(layer.getId()).andStubReturn(id);
+        return layer;
+    }
+
+    @Test
+    public void testDiff() {
+        CatalogDigest local = new CatalogDigest();
+        local.hashes.put("same", "a");
+        local.hashes.put("changed", "b");
+        local.hashes.put("localOnly", "c");
+
+        CatalogDigest remote = new CatalogDigest();
+        remote.hashes.put("same", "a");
+        remote.hashes.put("changed", "x");
+        remote.hashes.put("remoteOnly", "d");
+
+        Map<String, String> diff = HzAntiEntropy.diff(local, remote);
+        assertThat(diff.size(), is(3));
+        assertThat(diff.get("changed"), is("b/x"));
+        assertThat(diff.get("localOnly"), is("c/null"));
+        assertThat(diff.get("remoteOnly"), is("null/d"));
+    }
+
+    @Test
+    public void testDependencyOrder() {
+        assertThat(HzAntiEntropy.type(DataStoreInfoImpl.class), 
+            is(equalTo((Object) StoreInfo.class)));
+        assertTrue(HzAntiEntropy.rank(WorkspaceInfo.class) < HzAntiEntropy.rank(DataStoreInfo.class));
+        assertTrue(HzAntiEntropy.rank(DataStoreInfo.class) < HzAntiEntropy.rank(FeatureTypeInfo.class));
+        assertTrue(HzAntiEntropy.rank(FeatureTypeInfo.class) < HzAntiEntropy.rank(LayerInfo.class));
+    }
+
+    @Test
+    public void testRepairConfirmedDifferences() throws Exception {
+        LayerInfo extra = layer("extra");
+        expect(getCatalog().getLayer("extra")).andReturn(extra);
+        HzAntiEntropy antiEntropy = antiEntropy(extra);
+        Member reference = reference();
+
+        long now = System.currentTimeMillis();
+        CatalogDigest local = digest(now, "same", "a", "stale", "b", "extra", "c");
+        CatalogDigest remote = digest(now, "same", "a", "stale", "x", "missing", "d");
+
+        // first sighting, may still be in flight
+        antiEntropy.compare(local, remote, reference);
+        assertTrue(removed.isEmpty());
+        assertTrue(dispatched.isEmpty());
+        assertTrue(antiEntropy.divergentSince > 0);
+
+        antiEntropy.compare(local, remote, reference);
+        assertEquals(Arrays.<CatalogInfo>asList(extra), removed);
+        assertThat(dispatched.size(), is(1));
+        RepairRequestEvent request = (RepairRequestEvent) dispatched.get(0);
+        assertEquals(new HashSet<String>(Arrays.asList("stale", "missing")), 
+            request.getObjects().keySet());
+        assertEquals(remoteAddress, request.getTarget());
+        verify(extra);
+    }
+
+    @Test
+    public void testObjectAddedBetweenDigests() throws Exception {
+        LayerInfo added = layer("added");
+        expect(getCatalog().getLayer("added")).andReturn(added);
+        HzAntiEntropy antiEntropy = antiEntropy(added);
+        Member reference = reference();
+
+        // added here after the reference digest was computed, the reference has yet to apply it
+        long published = System.currentTimeMillis();
+        antiEntropy.changed(added);
+        CatalogDigest local = digest(published, "same", "a", "added", "b");
+        CatalogDigest remote = digest(published, "same", "a");
+
+        antiEntropy.compare(local, remote, reference);
+        antiEntropy.compare(local, remote, reference);
+        assertTrue(removed.isEmpty());
+        assertTrue(dispatched.isEmpty());
+
+        // still missing from a digest published well after the change, a real divergence
+        long grace = (3 * SYNC_DELAY + INTERVAL) * 1000L;
+        remote = digest(published + grace + 1000, "same", "a");
+        antiEntropy.compare(local, remote, reference);
+        assertEquals(Arrays.<CatalogInfo>asList(added), removed);
+        verify(added);
+    }
+
+    @Test
+    public void testDigestInSync() throws Exception {
+        HzAntiEntropy antiEntropy = antiEntropy();
+        Member reference = reference();
+
+        CatalogDigest local = digest(0, "same", "a");
+        antiEntropy.compare(local, digest(0, "same", "x"), reference);
+        assertTrue(antiEntropy.divergentSince > 0);
+
+        // fixed in the meantime, by events
+        antiEntropy.compare(local, digest(0, "same", "a"), reference);
+        antiEntropy.compare(local, digest(0, "same", "a"), reference);
+        assertThat(antiEntropy.divergentSince, is(0L));
+        assertTrue(removed.isEmpty());
+        assertTrue(dispatched.isEmpty());
+    }
+
+    @Test
+    public void testCanonicalForm() throws Exception {
+        String a = "<layer>\n  <name>roads</name>\n  <metadata>\n"
+            + "    <entry key=\"b\">2</entry>\n    <entry key=\"a\">1</entry>\n  </metadata>\n</layer>";
+        String b = "<layer><name>roads</name><metadata>"
+            + "<entry key=\"a\">1</entry><entry key=\"b\">2</entry></metadata></layer>";
+        String c = "<layer><name>roads</name><metadata>"
+            + "<entry key=\"a\">1</entry><entry key=\"b\">3</entry></metadata></layer>";
+
+        assertThat(HazelcastUtil.canonical(a.getBytes("UTF-8")), 
+            is(HazelcastUtil.canonical(b.getBytes("UTF-8"))));
+        assertThat(HazelcastUtil.canonical(a.getBytes("UTF-8")), 
+            is(not(HazelcastUtil.canonical(c.getBytes("UTF-8")))));
+    }
+}
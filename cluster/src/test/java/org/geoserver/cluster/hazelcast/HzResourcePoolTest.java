@@ -0,0 +1,166 @@
+package org.geoserver.cluster.hazelcast;
+
+import static org.easymock.EasyMock.*;
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import org.geoserver.catalog.Catalog;
+import org.geoserver.catalog.DataStoreInfo;
+import org.geoserver.catalog.FeatureTypeInfo;
+import org.geoserver.catalog.NamespaceInfo;
+import org.geoserver.catalog.WorkspaceInfo;
+import org.geoserver.catalog.impl.CatalogImpl;
+import org.geoserver.catalog.impl.DataStoreInfoImpl;
+import org.geoserver.catalog.impl.FeatureTypeInfoImpl;
+import org.geoserver.catalog.impl.NamespaceInfoImpl;
+import org.geoserver.cluster.hazelcast.HzResourcePool.SchemaEntry;
+import org.geotools.feature.FeatureTypes;
+import org.geotools.feature.NameImpl;
+import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
+import org.geotools.referencing.CRS;
+import org.geotools.referencing.crs.DefaultGeographicCRS;
+import org.geotools.util.SimpleInternationalString;
+import org.junit.Before;
+import org.junit.Test;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.FeatureType;
+
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.IMap;
+import com.vividsolutions.jts.geom.Point;
+
+public class HzResourcePoolTest {
+
+    Catalog catalog;
+
+    IMap<String, SchemaEntry> featureTypes;
+
+    HzResourcePool pool;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        catalog = new CatalogImpl();
+        featureTypes = createMock(IMap.class);
+        IMap<String, String> crss = createNiceMock(IMap.class);
+        HazelcastInstance hz = createMock(HazelcastInstance.class);
+        expect(hz.<String, SchemaEntry>getMap(HzResourcePool.FEATURE_TYPES)).andReturn(featureTypes);
+        expect(hz.<String, String>getMap(HzResourcePool.CRSS)).andReturn(crss);
+        replay(hz, crss);
+        pool = new HzResourcePool(catalog, hz);
+    }
+
+    SimpleFeatureType featureType() {
+        SimpleFeatureTypeBuilder tb = new SimpleFeatureTypeBuilder();
+        tb.setName(new NameImpl("http://test", "test"));
+        tb.setDescription(new SimpleInternationalString("a test type"));
+        tb.length(32).add("name", String.class);
+        tb.nillable(false).add("count", Integer.class);
+        tb.crs(DefaultGeographicCRS.WGS84).add("geom", Point.class);
+        tb.setDefaultGeometry("geom");
+        SimpleFeatureType type = tb.buildFeatureType();
+        type.getUserData().put("origin", "test");
+        type.getDescriptor("count").getUserData().put("precision", 10);
+        return type;
+    }
+
+    FeatureTypeInfo featureTypeInfo(String title) {
+        WorkspaceInfo ws = catalog.getFactory().createWorkspace();
+        ws.setName("test");
+        NamespaceInfo ns = catalog.getFactory().createNamespace();
+        ns.setPrefix("test");
+        ns.setURI("http://test");
+        DataStoreInfo ds = catalog.getFactory().createDataStore();
+        ds.setName("store");
+        ds.setWorkspace(ws);
+        FeatureTypeInfo info = catalog.getFactory().createFeatureType();
+        ((FeatureTypeInfoImpl) info).setId("FeatureTypeInfo-1");
+        ((DataStoreInfoImpl) ds).setId("DataStoreInfo-1");
+        ((NamespaceInfoImpl) ns).setId("NamespaceInfo-1");
+        info.setName("test");
+        info.setNativeName("test");
+        info.setTitle(title);
+        info.setNamespace(ns);
+        info.setStore(ds);
+        info.setEnabled(true);
+        return info;
+    }
+
+    @Test
+    public void testSchemaEntryRoundTrip() throws Exception {
+        SimpleFeatureType type = featureType();
+
+        // goes through java serialization when put in the cluster map
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bout);
+        out.writeObject(SchemaEntry.create("42", type));
+        out.close();
+        SchemaEntry entry = (SchemaEntry) new ObjectInputStream(
+            new ByteArrayInputStream(bout.toByteArray())).readObject();
+
+        assertThat(entry.stamp, is("42"));
+        SimpleFeatureType copy = entry.toFeatureType();
+        assertThat(copy.getName(), is(type.getName()));
+        assertThat(copy.getDescription().toString(), is("a test type"));
+        assertThat(copy.getUserData().get("origin"), is((Object) "test"));
+        assertThat(copy.getAttributeCount(), is(3));
+        assertThat(FeatureTypes.getFieldLength(copy.getDescriptor("name")), is(32));
+        assertThat(copy.getDescriptor("count").isNillable(), is(false));
+        assertThat(copy.getDescriptor("count").getType().getBinding(), 
+            is(equalTo((Object) Integer.class)));
+        assertThat(copy.getDescriptor("count").getUserData().get("precision"), is((Object) 10));
+        assertThat(copy.getGeometryDescriptor().getLocalName(), is("geom"));
+        assertTrue(CRS.equalsIgnoreMetadata(DefaultGeographicCRS.WGS84, 
+            copy.getCoordinateReferenceSystem()));
+    }
+
+    @Test
+    public void testUnsupportedSchemaNotShared() throws Exception {
+        SimpleFeatureType type = featureType();
+        type.getUserData().put("handle", new Object());
+        assertNull(SchemaEntry.create("42", type));
+
+        type = featureType();
+        type.getDescriptor("name").getUserData().put("handle", new Object());
+        assertNull(SchemaEntry.create("42", type));
+    }
+
+    @Test
+    public void testStamp() throws Exception {
+        // same configuration, distinct objects as on two nodes
+        String stamp = pool.stamp(featureTypeInfo("Test"));
+        assertThat(pool.stamp(featureTypeInfo("Test")), is(stamp));
+        assertThat(pool.stamp(featureTypeInfo("Changed")), is(not(stamp)));
+    }
+
+    @Test
+    public void testSharedSchema() throws Exception {
+        FeatureTypeInfo info = featureTypeInfo("Test");
+        SimpleFeatureType type = featureType();
+        String key = HzResourcePool.key(info, true);
+        expect(featureTypes.get(key)).andReturn(SchemaEntry.create(pool.stamp(info), type));
+        replay(featureTypes);
+
+        // rebuilt from the shared entry, without opening the store
+        FeatureType ft = pool.getFeatureType(info, true);
+        assertThat(ft.getName(), is(type.getName()));
+        assertSame(ft, pool.getFeatureType(info, true));
+        verify(featureTypes);
+    }
+
+    @Test
+    public void testClear() throws Exception {
+        FeatureTypeInfo info = featureTypeInfo("Test");
+        expect(featureTypes.remove(HzResourcePool.key(info, true))).andReturn(null);
+        expect(featureTypes.remove(HzResourcePool.key(info, false))).andReturn(null);
+        replay(featureTypes);
+
+        pool.clear(info);
+        verify(featureTypes);
+    }
+}
@@ -66,6 +66,7 @@ public abstract class HzSynchronizerTest {
         expect(configWatcher.get()).andStubReturn(clusterConfig);
         
         expect(clusterConfig.getSyncDelay()).andStubReturn(SYNC_DELAY);
+        expect(clusterConfig.getSyncMaxDelay()).andStubReturn(3 * SYNC_DELAY);
         
         catalog = createMock(Catalog.class);
         geoServer = createMock(GeoServer.class);
@@ -0,0 +1,407 @@
+package org.geogig.geoserver.config;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.Nullable;
+import javax.sql.DataSource;
+
+import org.geogig.geoserver.config.LogEvent.Severity;
+import org.geotools.util.logging.Logging;
+
+/**
+ * Writes log events to the {@code logging_event} and {@code logging_event_exception} tables in a
+ * background thread, so that callers don't wait on the logs database.
+ * <p>
+ * Events are kept in a bounded ring buffer and written in batches, using JDBC batch statements
+ * for consecutive events with no exception. When the buffer fills up the {@link OverflowPolicy}
+ * decides whether to drop the event or make the caller wait.
+ * <p>
+ * The tables are the ones created by the logback {@code DBAppender} scripts, which is what used to
+ * write them.
+ */
+class AsyncLogWriter {
+
+    private static final Logger LOGGER = Logging.getLogger(AsyncLogWriter.class);
+
+    public enum OverflowPolicy {
+        /**
+         * Drop {@code DEBUG} events once the buffer is 80% full, {@code INFO} ones when it's full,
+         * and make callers logging {@code ERROR} events wait for space, for up to a second
+         */
+        DISCARD_DEBUG,
+        /**
+         * Drop any event when the buffer is full
+         */
+        DISCARD,
+        /**
+         * Make callers wait until there's space in the buffer
+         */
+        BLOCK
+    }
+
+    static final int DEFAULT_QUEUE_SIZE = 8192;
+
+    static final int DEFAULT_BATCH_SIZE = 100;
+
+    private static final String LOGGER_NAME = LogStore.class.getName();
+
+    /**
+     * What logback's {@code CallerData} uses for unavailable caller information
+     */
+    private static final String NA = "?";
+
+    private static final short EXCEPTION_FLAG = 0x02;
+
+    private static final int MAX_TRACE_LINE = 254;
+
+    private static final String INSERT_EVENT = "INSERT INTO logging_event (timestmp, formatted_message, logger_name, level_string, thread_name, reference_flag, caller_filename, caller_class, caller_method, caller_line) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String INSERT_EXCEPTION = "INSERT INTO logging_event_exception (event_id, i, trace_line) VALUES (?, ?, ?)";
+
+    private static class Entry {
+
+        final long timestamp;
+
+        final Severity severity;
+
+        final String message;
+
+        final String threadName;
+
+        @Nullable
+        final List<String> traceLines;
+
+        Entry(Severity severity, String message, @Nullable Throwable exception) {
+            this.timestamp = System.currentTimeMillis();
+            this.severity = severity;
+            this.message = message;
+            this.threadName = Thread.currentThread().getName();
+            this.traceLines = exception == null ? null : traceLines(exception);
+        }
+    }
+
+    private final DataSource dataSource;
+
+    private final OverflowPolicy policy;
+
+    private final int batchSize;
+
+    /**
+     * Ring buffer, guarded by {@code this}
+     */
+    private final Entry[] buffer;
+
+    private int head, count;
+
+    private boolean closed;
+
+    /**
+     * Number of events accepted and written, to let {@link #flush(long)} wait for the events
+     * accepted before it was called
+     */
+    private long accepted, written;
+
+    private final AtomicLong dropped = new AtomicLong();
+
+    private final AtomicLong stored = new AtomicLong();
+
+    private final Thread worker;
+
+    AsyncLogWriter(DataSource dataSource, int queueSize, int batchSize, OverflowPolicy policy) {
+        checkArgument(queueSize > 0, "queueSize must be > 0: %s", queueSize);
+        checkArgument(batchSize > 0, "batchSize must be > 0: %s", batchSize);
+        this.dataSource = dataSource;
+        this.buffer = new Entry[queueSize];
+        this.batchSize = batchSize;
+        this.policy = policy;
+        this.worker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                processQueue();
+            }
+        }, "geogig-security-log-writer");
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    public void append(Severity severity, String message, @Nullable Throwable exception) {
+        Entry entry = new Entry(severity, message, exception);
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            if (!makeRoom(severity)) {
+                dropped.incrementAndGet();
+                return;
+            }
+            buffer[(head + count) % buffer.length] = entry;
+            count++;
+            accepted++;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Applies the overflow policy, called holding the lock
+     *
+     * @return whether there's room for the event
+     */
+    private boolean makeRoom(Severity severity) {
+        final int capacity = buffer.length;
+        if (count < capacity) {
+            if (policy == OverflowPolicy.DISCARD_DEBUG && severity == Severity.DEBUG) {
+                return count < capacity * 0.8;
+            }
+            return true;
+        }
+        switch (policy) {
+        case DISCARD:
+            return false;
+        case DISCARD_DEBUG:
+            if (severity != Severity.ERROR) {
+                return false;
+            }
+            return await(TimeUnit.SECONDS.toMillis(1));
+        case BLOCK:
+            return await(0);
+        default:
+            throw new IllegalStateException();
+        }
+    }
+
+    private boolean await(long timeoutMillis) {
+        final long deadline = System.currentTimeMillis() + timeoutMillis;
+        try {
+            while (count == buffer.length && !closed) {
+                long wait = timeoutMillis == 0 ? 0 : deadline - System.currentTimeMillis();
+                if (timeoutMillis > 0 && wait <= 0) {
+                    return false;
+                }
+                wait(wait);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        return !closed;
+    }
+
+    /**
+     * @return the number of events waiting to be written
+     */
+    public synchronized int getQueueDepth() {
+        return count;
+    }
+
+    /**
+     * @return the number of events discarded because the buffer was full, or the database
+     *         failed to write them
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * @return the number of events successfully written to the database
+     */
+    public long getStored() {
+        return stored.get();
+    }
+
+    /**
+     * Waits until the events appended before this call are written, for up to {@code timeout}
+     * milliseconds
+     */
+    public synchronized void flush(long timeout) {
+        final long target = accepted;
+        final long deadline = System.currentTimeMillis() + timeout;
+        try {
+            while (written < target && worker.isAlive()) {
+                long wait = deadline - System.currentTimeMillis();
+                if (wait <= 0) {
+                    return;
+                }
+                wait(wait);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Stops accepting events, writes the pending ones and stops the writer thread
+     */
+    public void close() {
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        try {
+            worker.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void processQueue() {
+        List<Entry> batch = new ArrayList<Entry>(batchSize);
+        while (true) {
+            synchronized (this) {
+                while (count == 0 && !closed) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (count == 0) {
+                    return;// closed and drained
+                }
+                while (count > 0 && batch.size() < batchSize) {
+                    batch.add(buffer[head]);
+                    buffer[head] = null;
+                    head = (head + 1) % buffer.length;
+                    count--;
+                }
+                // wake up producers waiting for room
+                notifyAll();
+            }
+            try {
+                write(batch);
+                stored.addAndGet(batch.size());
+            } catch (SQLException | RuntimeException e) {
+                dropped.addAndGet(batch.size());
+                LOGGER.log(Level.WARNING, "Error writing " + batch.size()
+                        + " events to the security logs database", e);
+            }
+            synchronized (this) {
+                written += batch.size();
+                notifyAll();
+            }
+            batch.clear();
+        }
+    }
+
+    private void write(List<Entry> batch) throws SQLException {
+        try (Connection c = dataSource.getConnection()) {
+            final boolean autoCommit = c.getAutoCommit();
+            c.setAutoCommit(false);
+            try (PreparedStatement batchInsert = c.prepareStatement(INSERT_EVENT)) {
+                int pending = 0;
+                for (Entry e : batch) {
+                    if (e.traceLines == null) {
+                        bind(batchInsert, e);
+                        batchInsert.addBatch();
+                        pending++;
+                    } else {
+                        // keep event ids in log order
+                        if (pending > 0) {
+                            batchInsert.executeBatch();
+                            pending = 0;
+                        }
+                        insertWithException(c, e);
+                    }
+                }
+                if (pending > 0) {
+                    batchInsert.executeBatch();
+                }
+                c.commit();
+            } catch (SQLException | RuntimeException e) {
+                c.rollback();
+                throw e;
+            } finally {
+                c.setAutoCommit(autoCommit);
+            }
+        }
+    }
+
+    private void insertWithException(Connection c, Entry e) throws SQLException {
+        final long eventId;
+        try (PreparedStatement ps = c.prepareStatement(INSERT_EVENT,
+                Statement.RETURN_GENERATED_KEYS)) {
+            bind(ps, e);
+            ps.executeUpdate();
+            try (ResultSet keys = ps.getGeneratedKeys()) {
+                eventId = keys.next() ? generatedId(keys) : lastEventId(c);
+            }
+        }
+        try (PreparedStatement ps = c.prepareStatement(INSERT_EXCEPTION)) {
+            short i = 0;
+            for (String line : e.traceLines) {
+                ps.setLong(1, eventId);
+                ps.setShort(2, i++);
+                ps.setString(3, line);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+    }
+
+    /**
+     * Some drivers return all the inserted columns, others a single one with a driver specific
+     * name
+     */
+    private static long generatedId(ResultSet keys) throws SQLException {
+        try {
+            return keys.getLong("event_id");
+        } catch (SQLException notFound) {
+            return keys.getLong(1);
+        }
+    }
+
+    /**
+     * Fall back for drivers not returning generated keys, this is the only thread writing to the
+     * table
+     */
+    private static long lastEventId(Connection c) throws SQLException {
+        try (Statement st = c.createStatement()) {
+            try (ResultSet rs = st.executeQuery("SELECT max(event_id) FROM logging_event")) {
+                rs.next();
+                return rs.getLong(1);
+            }
+        }
+    }
+
+    private static void bind(PreparedStatement ps, Entry e) throws SQLException {
+        ps.setLong(1, e.timestamp);
+        ps.setString(2, e.message);
+        ps.setString(3, LOGGER_NAME);
+        ps.setString(4, e.severity.toString());
+        ps.setString(5, e.threadName);
+        ps.setShort(6, e.traceLines == null ? 0 : EXCEPTION_FLAG);
+        ps.setString(7, NA);
+        ps.setString(8, NA);
+        ps.setString(9, NA);
+        ps.setString(10, NA);
+    }
+
+    private static List<String> traceLines(Throwable exception) {
+        List<String> lines = new ArrayList<String>();
+        boolean cause = false;
+        for (Throwable t = exception; t != null && lines.size() < Short.MAX_VALUE; t = t
+                .getCause()) {
+            lines.add(truncate((cause ? "Caused by: " : "") + t.toString()));
+            for (StackTraceElement element : t.getStackTrace()) {
+                lines.add(truncate("\tat " + element));
+            }
+            cause = true;
+        }
+        return lines.size() > Short.MAX_VALUE ? lines.subList(0, Short.MAX_VALUE) : lines;
+    }
+
+    private static String truncate(String line) {
+        return line.length() > MAX_TRACE_LINE ? line.substring(0, MAX_TRACE_LINE) : line;
+    }
+}
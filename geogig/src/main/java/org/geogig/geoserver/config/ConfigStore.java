@@ -14,9 +14,13 @@ import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.Reader;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.logging.Level;
@@ -25,6 +29,8 @@ import java.util.regex.Pattern;
 
 import org.geoserver.platform.resource.Paths;
 import org.geoserver.platform.resource.Resource;
+import org.geoserver.platform.resource.ResourceListener;
+import org.geoserver.platform.resource.ResourceNotification;
 import org.geoserver.platform.resource.ResourceStore;
 import org.geoserver.platform.resource.Resources;
 import org.geotools.util.logging.Logging;
@@ -33,6 +39,8 @@ import com.google.common.base.Charsets;
 import com.google.common.base.Function;
 import com.google.common.base.Predicate;
 import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableMap;
 import com.thoughtworks.xstream.XStream;
 
 /**
@@ -50,6 +58,13 @@ import com.thoughtworks.xstream.XStream;
  * <p>
  * {@code RepositoryInfo} instances deserialized from XML have its id set by {@link XStream}, and
  * {@link #save(RepositoryInfo)} knows its an existing instance and replaces its file.
+ * <p>
+ * The parsed repositories are kept in memory, indexed by id, name and location, so that
+ * {@link #getRepositories()} and the lookups don't list and parse the config directory on each
+ * call. The snapshot is dropped when a repository is saved or deleted, or when the config
+ * directory changes behind our back, as notified by the {@link ResourceStore}, and lazily rebuilt
+ * on the next read. Callers get copies, so modifying a returned instance doesn't alter the
+ * snapshot until it's {@link #save(RepositoryInfo) saved}.
  * 
  *
  */
@@ -65,10 +80,63 @@ public class ConfigStore {
 
     private static final String CONFIG_DIR_NAME = "geogig/config/repos";
 
+    /**
+     * XStream instances are thread safe once configured
+     */
+    private static final XStream XSTREAM = createXStream();
+
+    /**
+     * Immutable view of the configured repositories
+     */
+    private static class Snapshot {
+
+        final ImmutableMap<String, RepositoryInfo> byId;
+
+        final ImmutableListMultimap<String, RepositoryInfo> byName;
+
+        final ImmutableMap<String, RepositoryInfo> byLocation;
+
+        Snapshot(List<RepositoryInfo> repositories) {
+            Map<String, RepositoryInfo> byId = new LinkedHashMap<String, RepositoryInfo>();
+            ImmutableListMultimap.Builder<String, RepositoryInfo> byName = ImmutableListMultimap
+                    .builder();
+            Map<String, RepositoryInfo> byLocation = new HashMap<String, RepositoryInfo>();
+            for (RepositoryInfo info : repositories) {
+                if (byId.containsKey(info.getId())) {
+                    LOGGER.warning("Ignoring duplicate repository id " + info.getId());
+                    continue;
+                }
+                byId.put(info.getId(), info);
+                byName.put(info.getName(), info);
+                if (!byLocation.containsKey(info.getLocation())) {
+                    byLocation.put(info.getLocation(), info);
+                }
+            }
+            this.byId = ImmutableMap.copyOf(byId);
+            this.byName = byName.build();
+            this.byLocation = ImmutableMap.copyOf(byLocation);
+        }
+    }
+
     private ResourceStore resourceLoader;
 
     private final ReadWriteLock lock;
 
+    /**
+     * Incremented on every change to the config directory, so that a snapshot built while a change
+     * happens is not published
+     */
+    private final AtomicLong modCount = new AtomicLong();
+
+    private volatile Snapshot snapshot;
+
+    private final ResourceListener configListener = new ResourceListener() {
+        @Override
+        public void changed(ResourceNotification notify) {
+            invalidate();
+        }
+    };
+
     public ConfigStore(ResourceStore resourceLoader) {
         checkNotNull(resourceLoader, "resourceLoader");
         this.resourceLoader = resourceLoader;
@@ -76,6 +144,7 @@ public class ConfigStore {
             throw new IllegalStateException("Unable to create config directory " + CONFIG_DIR_NAME);
         }
         this.lock = new ReentrantReadWriteLock();
+        getConfigRoot().addListener(configListener);
     }
 
     /**
@@ -96,10 +165,11 @@ public class ConfigStore {
 
         lock.writeLock().lock();
         try (OutputStream out = resource(info.getId()).out()) {
-            getConfigredXstream().toXML(info, new OutputStreamWriter(out, Charsets.UTF_8));
+            XSTREAM.toXML(info, new OutputStreamWriter(out, Charsets.UTF_8));
         } catch (IOException e) {
             throw Throwables.propagate(e);
         } finally {
+            invalidate();
             lock.writeLock().unlock();
         }
         return info;
@@ -112,6 +182,7 @@ public class ConfigStore {
         try {
             return resource(id).delete();
         } finally {
+            invalidate();
             lock.writeLock().unlock();
         }
     }
@@ -144,24 +215,92 @@ public class ConfigStore {
     }
 
     /**
-     * Loads and returns all <b>valid</b> {@link RepositoryInfo}'s from
+     * Returns all <b>valid</b> {@link RepositoryInfo}'s from
      * {@code <data-dir>/geogig/config/repos/}; any xml file that can't be parsed is ignored.
      */
     public List<RepositoryInfo> getRepositories() {
-        lock.writeLock().lock();
+        return copy(snapshot().byId.values());
+    }
+
+    /**
+     * @return the repositories with the given name, which is only unique per parent directory
+     */
+    public List<RepositoryInfo> getRepositoriesByName(final String name) {
+        checkNotNull(name, "provided a null name");
+        return copy(snapshot().byName.get(name));
+    }
+
+    /**
+     * @return the repository at the given {@link RepositoryInfo#getLocation() location}, or
+     *         {@code null}
+     */
+    public RepositoryInfo getRepositoryByLocation(final String location) {
+        checkNotNull(location, "provided a null location");
+        RepositoryInfo info = snapshot().byLocation.get(location);
+        return info == null ? null : copy(info);
+    }
+
+    private Snapshot snapshot() {
+        Snapshot current = snapshot;
+        if (current == null) {
+            current = loadSnapshot();
+        }
+        return current;
+    }
+
+    private Snapshot loadSnapshot() {
+        lock.readLock().lock();
         try {
-            Resource configRoot = getConfigRoot();
-            List<Resource> list = configRoot.list();
-            if (null == list) {
-                return newArrayList();
+            final long count = modCount.get();
+            Snapshot current = snapshot;
+            if (current != null) {
+                return current;
+            }
+            current = new Snapshot(loadRepositories());
+            synchronized (modCount) {
+                // don't publish it if the config changed while loading
+                if (modCount.get() == count) {
+                    snapshot = current;
+                }
             }
-            Iterator<Resource> xmlfiles = filter(list.iterator(), FILENAMEFILTER);
-            return newArrayList(filter(transform(xmlfiles, LOADER), notNull()));
+            return current;
         } finally {
-            lock.writeLock().unlock();
+            lock.readLock().unlock();
         }
     }
 
+    private List<RepositoryInfo> loadRepositories() {
+        Resource configRoot = getConfigRoot();
+        List<Resource> list = configRoot.list();
+        if (null == list) {
+            return newArrayList();
+        }
+        Iterator<Resource> xmlfiles = filter(list.iterator(), FILENAMEFILTER);
+        return newArrayList(filter(transform(xmlfiles, LOADER), notNull()));
+    }
+
+    private void invalidate() {
+        synchronized (modCount) {
+            modCount.incrementAndGet();
+            snapshot = null;
+        }
+    }
+
+    private static List<RepositoryInfo> copy(Iterable<RepositoryInfo> infos) {
+        List<RepositoryInfo> copies = newArrayList();
+        for (RepositoryInfo info : infos) {
+            copies.add(copy(info));
+        }
+        return copies;
+    }
+
+    private static RepositoryInfo copy(RepositoryInfo info) {
+        RepositoryInfo copy = new RepositoryInfo(info.getId());
+        copy.setName(info.getName());
+        copy.setParentDirectory(info.getParentDirectory());
+        return copy;
+    }
+
     /**
      * Loads the security whitelist.
      */
@@ -186,7 +325,7 @@ public class ConfigStore {
             return newArrayList();
         }
         try (Reader reader = new InputStreamReader(input.in(), Charsets.UTF_8)) {
-            return (List<WhitelistRule>) getConfigredXstream().fromXML(reader);
+            return (List<WhitelistRule>) XSTREAM.fromXML(reader);
         } catch (Exception e) {
             String msg = "Unable to load whitelist " + input.name();
             LOGGER.log(Level.WARNING, msg, e);
@@ -201,7 +340,7 @@ public class ConfigStore {
         checkNotNull(whitelist);
         lock.writeLock().lock();
         try (OutputStream out = whitelistResource().out()) {
-            getConfigredXstream().toXML(whitelist, new OutputStreamWriter(out, Charsets.UTF_8));
+            XSTREAM.toXML(whitelist, new OutputStreamWriter(out, Charsets.UTF_8));
         } catch (IOException e) {
             throw Throwables.propagate(e);
         } finally {
@@ -212,11 +351,18 @@ public class ConfigStore {
 
     /**
      * Loads a {@link RepositoryInfo} by {@link RepositoryInfo#getId() id} from its xml file under
-     * {@code <data-dir>/geogig/config/repos/}
+     * {@code <data-dir>/geogig/config/repos/}, or from memory if it has already been parsed
      */
     public RepositoryInfo load(final String id) throws IOException {
         checkNotNull(id, "provided a null id");
         checkIdFormat(id);
+        Snapshot current = snapshot;
+        if (current != null) {
+            RepositoryInfo info = current.byId.get(id);
+            if (info != null) {
+                return copy(info);
+            }
+        }
         lock.readLock().lock();
         try {
             Resource resource = resource(id);
@@ -235,7 +381,7 @@ public class ConfigStore {
         }
         RepositoryInfo info;
         try (Reader reader = new InputStreamReader(input.in(), Charsets.UTF_8)) {
-            info = (RepositoryInfo) getConfigredXstream().fromXML(reader);
+            info = (RepositoryInfo) XSTREAM.fromXML(reader);
         } catch (Exception e) {
             String msg = "Unable to load repo config " + input.name();
             LOGGER.log(Level.WARNING, msg, e);
@@ -247,7 +393,7 @@ public class ConfigStore {
         return info;
     }
 
-    private static XStream getConfigredXstream() {
+    private static XStream createXStream() {
         XStream xStream = new XStream();
         xStream.alias("RepositoryInfo", RepositoryInfo.class);
         return xStream;
@@ -0,0 +1,120 @@
+package org.geogig.geoserver.config;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+
+import org.geogig.geoserver.config.LogEvent.Severity;
+
+import com.google.common.base.Objects;
+
+/**
+ * Criteria for {@link LogStore#getLogEntries(LogQuery)}.
+ * <p>
+ * Results are always sorted by decreasing event id (i.e. newest first). Paging is done by keyset:
+ * to get the next page set {@link #setBefore(Long) before} to the event id of the last entry of
+ * the current one, which unlike an offset doesn't get slower the further the page is.
+ */
+public class LogQuery implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private Long before;
+
+    private Set<Severity> severities;
+
+    private String repoUrl;
+
+    private Long since;
+
+    private Long until;
+
+    private int limit = 100;
+
+    /**
+     * @return the event id results are limited to be lower than, {@code null} for the first page
+     */
+    @Nullable
+    public Long getBefore() {
+        return before;
+    }
+
+    public LogQuery setBefore(@Nullable Long eventId) {
+        this.before = eventId;
+        return this;
+    }
+
+    @Nullable
+    public Set<Severity> getSeverities() {
+        return severities;
+    }
+
+    public LogQuery setSeverities(@Nullable Severity... severities) {
+        this.severities = severities == null || severities.length == 0 ? null : EnumSet
+                .copyOf(Arrays.asList(severities));
+        return this;
+    }
+
+    @Nullable
+    public String getRepoUrl() {
+        return repoUrl;
+    }
+
+    /**
+     * Limits the results to the events of the given repository. Note there's no index this filter
+     * can use: it's a prefix match on the message, checked on each row the other criteria select,
+     * so combine it with a {@link #setSince(Long) time range} when querying large logs.
+     */
+    public LogQuery setRepoUrl(@Nullable String repoUrl) {
+        this.repoUrl = repoUrl;
+        return this;
+    }
+
+    /**
+     * @return the inclusive lower bound for the event timestamps, in milliseconds since the epoch
+     */
+    @Nullable
+    public Long getSince() {
+        return since;
+    }
+
+    public LogQuery setSince(@Nullable Long timestamp) {
+        this.since = timestamp;
+        return this;
+    }
+
+    /**
+     * @return the exclusive upper bound for the event timestamps, in milliseconds since the epoch
+     */
+    @Nullable
+    public Long getUntil() {
+        return until;
+    }
+
+    public LogQuery setUntil(@Nullable Long timestamp) {
+        this.until = timestamp;
+        return this;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public LogQuery setLimit(int limit) {
+        checkArgument(limit >= 0, "limit must be >= 0: %s", limit);
+        this.limit = limit;
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this).add("before", before).add("severities", severities)
+                .add("repo", repoUrl).add("since", since).add("until", until)
+                .add("limit", limit).toString();
+    }
+}
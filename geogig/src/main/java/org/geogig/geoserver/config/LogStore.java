@@ -1,9 +1,11 @@
 package org.geogig.geoserver.config;
 
 import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
 import static org.geogig.geoserver.config.LogStoreInitializer.copySampleInitSript;
 import static org.geogig.geoserver.config.LogStoreInitializer.createDefaultConfig;
+import static org.geogig.geoserver.config.LogStoreInitializer.createTimestampIndex;
 import static org.geogig.geoserver.config.LogStoreInitializer.newDataSource;
 import static org.geogig.geoserver.config.LogStoreInitializer.runScript;
 import static org.geogig.geoserver.config.LogStoreInitializer.saveConfig;
@@ -19,11 +21,19 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import javax.annotation.Nullable;
 import javax.sql.DataSource;
@@ -33,25 +43,23 @@ import org.geoserver.config.GeoServer;
 import org.geoserver.config.impl.GeoServerLifecycleHandler;
 import org.geoserver.platform.resource.Resource;
 import org.geoserver.platform.resource.ResourceStore;
+import org.geotools.util.logging.Logging;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 
-import ch.qos.logback.classic.Level;
-import ch.qos.logback.classic.Logger;
-import ch.qos.logback.classic.LoggerContext;
-import ch.qos.logback.classic.db.DBAppender;
-import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
-import ch.qos.logback.core.db.DataSourceConnectionSource;
-import ch.qos.logback.core.util.StatusPrinter;
-
 import com.google.common.base.Preconditions;
 import com.google.common.base.Splitter;
 import com.google.common.base.Strings;
 import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 public class LogStore implements GeoServerLifecycleHandler, InitializingBean {
 
+    private static final Logger LOGGER = Logging.getLogger(LogStore.class);
+
+    private static final String SELECT_EVENTS = "SELECT event_id, timestmp, level_string, formatted_message FROM logging_event";
+
     private static final char MSG_FIELD_SEPARATOR = '|';
 
     static final String PROP_ENABLED = "enabled";
@@ -70,11 +78,34 @@ public class LogStore implements GeoServerLifecycleHandler, InitializingBean {
 
     static final String PROP_RUN_SCRIPT = "runInitScript";
 
+    static final String PROP_QUEUE_SIZE = "queueSize";
+
+    static final String PROP_BATCH_SIZE = "batchSize";
+
+    static final String PROP_OVERFLOW_POLICY = "overflowPolicy";
+
+    static final String PROP_RETENTION_DAYS = "retentionDays";
+
+    /**
+     * How long {@link #getFullSize()} relies on the last count plus the events written since
+     */
+    private static final long COUNT_TTL = TimeUnit.MINUTES.toMillis(5);
+
+    /**
+     * Max number of event ids deleted per statement by {@link #prune(long)}
+     */
+    static final int PRUNE_BATCH_SIZE = 10000;
+
+    /**
+     * How long to wait for the pending events to be written before querying the database
+     */
+    private static final long FLUSH_TIMEOUT = 5000;
+
     static final String CONFIG_DIR_NAME = "geogig/config/security";
 
     static final String CONFIG_FILE_NAME = "logstore.properties";
 
-    private Logger LOGBACKLOGGER;
+    private AsyncLogWriter writer;
 
     private File configFile;
 
@@ -84,6 +115,15 @@ public class LogStore implements GeoServerLifecycleHandler, InitializingBean {
 
     private volatile boolean enabled;
 
+    private ScheduledExecutorService retentionExecutor;
+
+    /**
+     * Last {@code count(*)}, when it was taken, and the number of events the writer had stored then
+     */
+    private volatile long countedAt, storedAtCount;
+
+    private volatile int counted = -1;
+
     public LogStore(ResourceStore resourceStore) {
         this.resourceStore = resourceStore;
     }
@@ -133,8 +173,16 @@ public class LogStore implements GeoServerLifecycleHandler, InitializingBean {
         if (dataSource != null) {
             DataSource dataSource = this.dataSource;
             this.dataSource = null;
-            this.LOGBACKLOGGER = null;
             this.configFile = null;
+            if (retentionExecutor != null) {
+                retentionExecutor.shutdownNow();
+                retentionExecutor = null;
+            }
+            if (writer != null) {
+                writer.close();
+                writer = null;
+            }
+            counted = -1;
             LogStoreInitializer.dispose(dataSource);
         }
     }
@@ -166,8 +214,13 @@ public class LogStore implements GeoServerLifecycleHandler, InitializingBean {
                 properties.setProperty(PROP_RUN_SCRIPT, "false");
                 saveConfig(properties, configFile);
             }
+            createTimestampIndex(dataSource);
 
-            LOGBACKLOGGER = createLogger(dataSource);
+            writer = createWriter(dataSource, properties);
+            int retentionDays = intProperty(properties, PROP_RETENTION_DAYS, 0);
+            if (retentionDays > 0) {
+                scheduleRetention(retentionDays);
+            }
         }
         this.enabled = enabled;
     }
@@ -192,31 +245,76 @@ public class LogStore implements GeoServerLifecycleHandler, InitializingBean {
     public void debug(@Nullable String repoUrl, @Nullable CharSequence message) {
         if (enabled && message != null) {
             String msg = buildMessage(repoUrl, message);
-            LOGBACKLOGGER.debug(msg);
+            writer.append(Severity.DEBUG, msg, null);
         }
     }
 
     public void info(@Nullable String repoUrl, @Nullable CharSequence message) {
         if (enabled && message != null) {
             String msg = buildMessage(repoUrl, message);
-            LOGBACKLOGGER.info(msg);
+            writer.append(Severity.INFO, msg, null);
         }
     }
 
     public void error(@Nullable String repoUrl, @Nullable CharSequence message, Throwable exception) {
         if (enabled && message != null) {
             String msg = buildMessage(repoUrl, message);
-            LOGBACKLOGGER.error(msg, exception);
+            writer.append(Severity.ERROR, msg, exception);
+        }
+    }
+
+    /**
+     * @return the number of log events waiting to be written to the database
+     */
+    public int getQueueDepth() {
+        AsyncLogWriter writer = this.writer;
+        return writer == null ? 0 : writer.getQueueDepth();
+    }
+
+    /**
+     * @return the number of log events discarded because the write queue was full or the
+     *         database failed
+     */
+    public long getDroppedEvents() {
+        AsyncLogWriter writer = this.writer;
+        return writer == null ? 0 : writer.getDropped();
+    }
+
+    /**
+     * Waits for the events logged so far to be written to the database, so they're seen by the
+     * queries that follow
+     */
+    private void flush() {
+        AsyncLogWriter writer = this.writer;
+        if (writer != null) {
+            writer.flush(FLUSH_TIMEOUT);
         }
     }
 
+    /**
+     * @return the number of log events in the database. The actual {@code count(*)} is only run
+     *         every few minutes, or after old events are pruned, in between the events written
+     *         since are added to the last count, so it may be off if other processes share the
+     *         database.
+     */
     public int getFullSize() {
+        checkState(enabled, "LogStore has not been initialized");
+        flush();
+        final long stored = writer.getStored();
+        if (counted >= 0 && System.currentTimeMillis() - countedAt < COUNT_TTL) {
+            return (int) (counted + stored - storedAtCount);
+        }
         try (Connection c = dataSource.getConnection()) {
             String sql = "SELECT count(*) from logging_event";
-            try (ResultSet rs = c.createStatement().executeQuery(sql)) {
-                rs.next();
-                int fullSize = rs.getInt(1);
-                return fullSize;
+            try (Statement st = c.createStatement()) {
+                try (ResultSet rs = st.executeQuery(sql)) {
+                    rs.next();
+                    int fullSize = rs.getInt(1);
+                    storedAtCount = stored;
+                    countedAt = System.currentTimeMillis();
+                    counted = fullSize;
+                    return fullSize;
+                }
             }
         } catch (SQLException e) {
             throw Throwables.propagate(e);
@@ -241,26 +339,88 @@ public class LogStore implements GeoServerLifecycleHandler, InitializingBean {
         checkState(enabled, "LogStore has not been initialized");
         checkArgument(offset >= 0);
         checkArgument(limit >= 0);
+        flush();
 
-        StringBuilder sql = new StringBuilder(
-                "SELECT event_id, timestmp, level_string, formatted_message FROM logging_event ");
-        if (severity != null) {
-            sql.append("WHERE level_string IN(");
-            for (Iterator<Severity> it = Arrays.asList(severity).iterator(); it.hasNext();) {
-                Severity s = it.next();
-                sql.append('\'').append(s.toString()).append('\'');
-                if (it.hasNext()) {
-                    sql.append(", ");
-                }
+        StringBuilder sql = new StringBuilder(SELECT_EVENTS);
+        List<Object> params = new ArrayList<Object>();
+        if (severity != null && severity.length > 0) {
+            sql.append(" WHERE");
+            appendSeverities(sql, params, Arrays.asList(severity));
+        }
+        sql.append(" ORDER BY event_id DESC LIMIT ? OFFSET ?");
+        params.add(limit);
+        params.add(offset);
+        return query(sql.toString(), params);
+    }
+
+    /**
+     * Queries log entries using keyset pagination, see {@link LogQuery}
+     */
+    public List<LogEvent> getLogEntries(final LogQuery query) {
+        checkState(enabled, "LogStore has not been initialized");
+        checkNotNull(query);
+        flush();
+
+        StringBuilder sql = new StringBuilder(SELECT_EVENTS);
+        List<Object> params = new ArrayList<Object>();
+        String and = " WHERE";
+        if (query.getBefore() != null) {
+            sql.append(and).append(" event_id < ?");
+            params.add(query.getBefore());
+            and = " AND";
+        }
+        if (query.getSeverities() != null) {
+            sql.append(and);
+            appendSeverities(sql, params, query.getSeverities());
+            and = " AND";
+        }
+        if (query.getRepoUrl() != null) {
+            // messages are <repoUrl>|<user>|<message>
+            sql.append(and).append(" formatted_message LIKE ? ESCAPE '!'");
+            params.add(escapeLike(url(query.getRepoUrl())) + MSG_FIELD_SEPARATOR + "%");
+            and = " AND";
+        }
+        if (query.getSince() != null) {
+            sql.append(and).append(" timestmp >= ?");
+            params.add(query.getSince());
+            and = " AND";
+        }
+        if (query.getUntil() != null) {
+            sql.append(and).append(" timestmp < ?");
+            params.add(query.getUntil());
+            and = " AND";
+        }
+        sql.append(" ORDER BY event_id DESC LIMIT ?");
+        params.add(query.getLimit());
+        return query(sql.toString(), params);
+    }
+
+    private static void appendSeverities(StringBuilder sql, List<Object> params,
+            Collection<Severity> severities) {
+        sql.append(" level_string IN(");
+        for (Iterator<Severity> it = severities.iterator(); it.hasNext();) {
+            sql.append('?');
+            params.add(it.next().toString());
+            if (it.hasNext()) {
+                sql.append(", ");
             }
-            sql.append(")");
         }
-        sql.append(" ORDER BY event_id DESC LIMIT ").append(limit);
-        sql.append(" OFFSET ").append(offset);
+        sql.append(")");
+    }
+
+    private static String escapeLike(String value) {
+        return value.replace("!", "!!").replace("%", "!%").replace("_", "!_");
+    }
+
+    private List<LogEvent> query(String sql, List<Object> params) {
         try (Connection c = dataSource.getConnection()) {
-            try (ResultSet rs = c.createStatement().executeQuery(sql.toString())) {
-                List<LogEvent> events = parseEventList(rs, c);
-                return events;
+            try (PreparedStatement ps = c.prepareStatement(sql)) {
+                for (int i = 0; i < params.size(); i++) {
+                    ps.setObject(i + 1, params.get(i));
+                }
+                try (ResultSet rs = ps.executeQuery()) {
+                    return parseEventList(rs, c);
+                }
             }
         } catch (SQLException e) {
             throw Throwables.propagate(e);
@@ -269,6 +429,7 @@ public class LogStore implements GeoServerLifecycleHandler, InitializingBean {
 
     @Nullable
     public String getStackTrace(long eventId) {
+        flush();
         try (Connection c = dataSource.getConnection()) {
             return getStackTrace(eventId, c);
         } catch (SQLException e) {
@@ -358,38 +519,105 @@ public class LogStore implements GeoServerLifecycleHandler, InitializingBean {
         return configFile;
     }
 
-    private static Logger createLogger(DataSource dataSource) {
-        LoggerContext lc = new LoggerContext();
-        PatternLayoutEncoder ple = new PatternLayoutEncoder();
-
-        ple.setPattern("%d{\"yyyy-MM-dd'T'HH:mm:ss.SSS\"},%level,%msg%n");
-        ple.setContext(lc);
-        ple.start();
-
-        DataSourceConnectionSource connectionSource = new DataSourceConnectionSource();
-        connectionSource.setContext(lc);
-        connectionSource.setDataSource(dataSource);
-        connectionSource.start();
-
-        DBAppender dbAppender = new DBAppender();
-        dbAppender.setContext(lc);
-        dbAppender.setConnectionSource(connectionSource);
-        dbAppender.start();
+    private void scheduleRetention(final int retentionDays) {
+        retentionExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setDaemon(true).setNameFormat("geogig-security-log-retention-%d").build());
+        retentionExecutor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    long threshold = System.currentTimeMillis()
+                            - TimeUnit.DAYS.toMillis(retentionDays);
+                    prune(threshold);
+                } catch (RuntimeException e) {
+                    LOGGER.log(Level.WARNING,
+                            "Error pruning old security log events", e);
+                }
+            }
+        }, 1, 60, TimeUnit.MINUTES);
+    }
 
-        // ConsoleAppender<ILoggingEvent> consoleAppender = new ConsoleAppender<ILoggingEvent>();
-        // consoleAppender.setContext(lc);
-        // consoleAppender.setTarget("System.err");
-        // consoleAppender.setEncoder(ple);
-        // consoleAppender.start();
+    /**
+     * Deletes the log events older than {@code threshold}, along with their exceptions and
+     * properties, in batches of at most {@code batchSize} event ids so a large backlog doesn't
+     * turn into a single long running transaction that locks the tables for the log writer
+     *
+     * @return the number of events deleted
+     */
+    int prune(final long threshold) {
+        return prune(threshold, PRUNE_BATCH_SIZE);
+    }
 
-        lc.start();
+    int prune(final long threshold, final int batchSize) {
+        checkState(enabled, "LogStore has not been initialized");
+        checkArgument(batchSize > 0);
+        try (Connection c = dataSource.getConnection()) {
+            // event ids grow with time, delete by primary key rather than timestamp
+            final long minId;
+            final long maxId;
+            try (PreparedStatement ps = c.prepareStatement("SELECT min(event_id), max(event_id) "
+                    + "FROM logging_event WHERE timestmp < ?")) {
+                ps.setLong(1, threshold);
+                try (ResultSet rs = ps.executeQuery()) {
+                    rs.next();
+                    minId = rs.getLong(1);
+                    if (rs.wasNull()) {
+                        return 0;
+                    }
+                    maxId = rs.getLong(2);
+                }
+            }
+            int deleted = 0;
+            for (long from = minId; from <= maxId; from += batchSize) {
+                final long to = Math.min(maxId, from + batchSize - 1);
+                for (String table : new String[] { "logging_event_exception",
+                        "logging_event_property", "logging_event" }) {
+                    try (PreparedStatement ps = c.prepareStatement("DELETE FROM " + table
+                            + " WHERE event_id >= ? AND event_id <= ?")) {
+                        ps.setLong(1, from);
+                        ps.setLong(2, to);
+                        int count = ps.executeUpdate();
+                        if ("logging_event".equals(table)) {
+                            deleted += count;
+                        }
+                    }
+                }
+            }
+            // force a new count
+            counted = -1;
+            LOGGER.fine(String.format("Pruned %d security log events up to event %d", deleted,
+                    maxId));
+            return deleted;
+        } catch (SQLException e) {
+            throw Throwables.propagate(e);
+        }
+    }
 
-        Logger logger = lc.getLogger(LogStore.class);
-        // logger.addAppender(consoleAppender);
-        logger.addAppender(dbAppender);
-        logger.setLevel(Level.DEBUG);
+    private static AsyncLogWriter createWriter(DataSource dataSource, Properties properties) {
+        int queueSize = intProperty(properties, PROP_QUEUE_SIZE, AsyncLogWriter.DEFAULT_QUEUE_SIZE);
+        int batchSize = intProperty(properties, PROP_BATCH_SIZE, AsyncLogWriter.DEFAULT_BATCH_SIZE);
+        String policy = properties.getProperty(PROP_OVERFLOW_POLICY,
+                AsyncLogWriter.OverflowPolicy.DISCARD_DEBUG.toString());
+        AsyncLogWriter.OverflowPolicy overflowPolicy;
+        try {
+            overflowPolicy = AsyncLogWriter.OverflowPolicy.valueOf(policy.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException(String.format("Invalid %s: '%s', expected one of %s",
+                    PROP_OVERFLOW_POLICY, policy,
+                    Arrays.toString(AsyncLogWriter.OverflowPolicy.values())));
+        }
+        return new AsyncLogWriter(dataSource, queueSize, batchSize, overflowPolicy);
+    }
 
-        StatusPrinter.print(lc);
-        return logger;
+    private static int intProperty(Properties properties, String name, int defaultValue) {
+        String value = properties.getProperty(name);
+        if (Strings.isNullOrEmpty(value)) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Can't parse " + name + " as an int: " + value, e);
+        }
     }
 }
@@ -3,9 +3,13 @@ package org.geogig.geoserver.config;
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static org.geogig.geoserver.config.LogStore.PROP_DRIVER_CLASS;
+import static org.geogig.geoserver.config.LogStore.PROP_BATCH_SIZE;
 import static org.geogig.geoserver.config.LogStore.PROP_ENABLED;
 import static org.geogig.geoserver.config.LogStore.PROP_MAX_CONNECTIONS;
+import static org.geogig.geoserver.config.LogStore.PROP_OVERFLOW_POLICY;
 import static org.geogig.geoserver.config.LogStore.PROP_PASSWORD;
+import static org.geogig.geoserver.config.LogStore.PROP_QUEUE_SIZE;
+import static org.geogig.geoserver.config.LogStore.PROP_RETENTION_DAYS;
 import static org.geogig.geoserver.config.LogStore.PROP_RUN_SCRIPT;
 import static org.geogig.geoserver.config.LogStore.PROP_SCRIPT;
 import static org.geogig.geoserver.config.LogStore.PROP_URL;
@@ -24,13 +28,16 @@ import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
 import java.net.URL;
 import java.sql.Connection;
+import java.sql.DatabaseMetaData;
 import java.sql.DriverManager;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.SQLFeatureNotSupportedException;
 import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Properties;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import javax.sql.DataSource;
@@ -175,6 +182,14 @@ class LogStoreInitializer {
                 .append(": Database initialization DDL script file\n#")
                 .append(PROP_RUN_SCRIPT)
                 .append(": Boolean indicating whether to execute the init script. If true, and succeeded, its value will automatically be set to false afterwards\n#")
+                .append(PROP_QUEUE_SIZE)
+                .append(": max number of log events waiting to be written, defaults to 8192\n#")
+                .append(PROP_BATCH_SIZE)
+                .append(": max number of log events written in a single batch, defaults to 100\n#")
+                .append(PROP_RETENTION_DAYS)
+                .append(": number of days to keep log events for, older ones are deleted every hour. Unset or 0 to keep them forever\n#")
+                .append(PROP_OVERFLOW_POLICY)
+                .append(": what to do when the queue is full. DISCARD_DEBUG (default) drops DEBUG events when 80% full and INFO ones when full, DISCARD drops any event, BLOCK makes the caller wait\n#")
                 .append("If using SQLite, the ")
                 .append(PROP_MAX_CONNECTIONS)
                 .append(" option has no effect and a single connection is used among all threads.\n")
@@ -216,6 +231,47 @@ class LogStoreInitializer {
         }
     }
 
+    /**
+     * Creates the index on {@code logging_event.timestmp} used by the time range filters and
+     * retention if it's not there. The init scripts create it, but they only run once, so
+     * databases created before it was added to the scripts would never get it. It's the
+     * equivalent of running:
+     *
+     * <pre>
+     * <code>
+     * CREATE INDEX logging_event_timestmp ON logging_event (timestmp);
+     * </code>
+     * </pre>
+     *
+     * Failures are only logged, e.g. if the database user has no rights to alter the schema, in
+     * which case the statement above should be run by hand.
+     */
+    static void createTimestampIndex(DataSource ds) {
+        try (Connection connection = ds.getConnection()) {
+            DatabaseMetaData metaData = connection.getMetaData();
+            String table = "logging_event";
+            if (metaData.storesUpperCaseIdentifiers()) {
+                table = table.toUpperCase();
+            }
+            try (ResultSet rs = metaData.getIndexInfo(null, null, table, false, true)) {
+                while (rs.next()) {
+                    if ("timestmp".equalsIgnoreCase(rs.getString("COLUMN_NAME"))
+                            && rs.getInt("ORDINAL_POSITION") == 1) {
+                        return;
+                    }
+                }
+            }
+            String sql = "CREATE INDEX logging_event_timestmp ON logging_event (timestmp)";
+            LOGGER.info("Creating missing security logs index: " + sql);
+            try (Statement st = connection.createStatement()) {
+                st.execute(sql);
+            }
+        } catch (SQLException e) {
+            LOGGER.log(Level.WARNING, "Unable to create the index on logging_event.timestmp, "
+                    + "queries by time and retention will scan the whole table", e);
+        }
+    }
+
     private static List<String> parseStatements(URL script) {
         List<String> lines;
         try {
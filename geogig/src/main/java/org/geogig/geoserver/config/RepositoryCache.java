@@ -5,28 +5,150 @@ import static java.lang.String.format;
 import java.io.File;
 import java.io.IOException;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import org.geoserver.platform.GeoServerExtensions;
 import org.geotools.util.logging.Logging;
 import org.locationtech.geogig.api.GeoGIG;
+import org.locationtech.geogig.api.Ref;
+import org.locationtech.geogig.api.plumbing.RefParse;
+import org.locationtech.geogig.repository.Repository;
 
+import com.google.common.base.Splitter;
+import com.google.common.base.Stopwatch;
 import com.google.common.base.Throwables;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
 import com.google.common.cache.RemovalListener;
 import com.google.common.cache.RemovalNotification;
+import com.google.common.cache.Weigher;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
+/**
+ * Pool of open {@link GeoGIG} repository instances.
+ * <p>
+ * Opening a repository opens its object databases and indexes, which may take a while, so
+ * repositories are kept open as long as the pool is not full, instead of being closed after a
+ * period of inactivity. When it's full, the least recently used repository is closed, except for
+ * the pinned ones which are never evicted. Configured through the following system properties,
+ * context parameters or environment variables:
+ * <ul>
+ * <li>{@code GEOGIG_REPOSITORY_POOL_SIZE}: max number of open repositories, not counting the
+ * pinned ones, defaults to {@code 64}
+ * <li>{@code GEOGIG_REPOSITORY_POOL_PINNED}: comma separated list of repository ids or names to
+ * keep open, or {@code *} for all of them
+ * <li>{@code GEOGIG_REPOSITORY_POOL_HEALTHCHECK}: seconds between health checks, {@code 0} to
+ * disable them, defaults to {@code 60}
+ * </ul>
+ * At startup the configured repositories are opened in the background, pinned ones first, up to
+ * the pool size. Health checks close the repositories whose directory is gone or that can't
+ * resolve {@code HEAD} anymore, pinned ones are opened again.
+ */
 class RepositoryCache {
 
     private static final Logger LOGGER = Logging.getLogger(RepositoryCache.class);
 
-    private LoadingCache<String, GeoGIG> repoCache;
+    static final String POOL_SIZE_PROPERTY = "GEOGIG_REPOSITORY_POOL_SIZE";
+
+    static final String PINNED_PROPERTY = "GEOGIG_REPOSITORY_POOL_PINNED";
+
+    static final String HEALTHCHECK_PROPERTY = "GEOGIG_REPOSITORY_POOL_HEALTHCHECK";
+
+    static final int DEFAULT_POOL_SIZE = 64;
+
+    static final int DEFAULT_HEALTHCHECK_SECONDS = 60;
+
+    /**
+     * Per repository usage statistics
+     */
+    public static class RepositoryStats {
+
+        private final AtomicLong hits = new AtomicLong();
+
+        private final AtomicLong misses = new AtomicLong();
+
+        private final AtomicLong warmUps = new AtomicLong();
+
+        private volatile long openTimeMillis;
+
+        /**
+         * @return the number of requests served by an already open repository
+         */
+        public long getHits() {
+            return hits.get();
+        }
+
+        /**
+         * @return the number of requests that had to open the repository
+         */
+        public long getMisses() {
+            return misses.get();
+        }
+
+        /**
+         * @return the number of times the repository was opened in the background, at startup or
+         *         after failing a health check
+         */
+        public long getWarmUps() {
+            return warmUps.get();
+        }
+
+        /**
+         * @return how long it took to open the repository the last time, in milliseconds
+         */
+        public long getOpenTimeMillis() {
+            return openTimeMillis;
+        }
+    }
+
+    private final RepositoryManager repoManager;
+
+    private final LoadingCache<String, GeoGIG> repoCache;
+
+    private final ConcurrentMap<String, RepositoryStats> stats = new ConcurrentHashMap<String, RepositoryStats>();
+
+    /**
+     * Ids or names of the repositories never evicted, or {@code *}
+     */
+    private final Set<String> pinned;
+
+    /**
+     * Ids of the pinned repositories, resolved before loading them so that the weigher doesn't
+     * need to look up the repository names
+     */
+    private final Set<String> pinnedIds = Collections
+            .newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    private final int maxSize;
+
+    private final ScheduledExecutorService executor;
 
     public RepositoryCache(final RepositoryManager repoManager) {
+        this(repoManager, intProperty(POOL_SIZE_PROPERTY, DEFAULT_POOL_SIZE), pinnedProperty(),
+                intProperty(HEALTHCHECK_PROPERTY, DEFAULT_HEALTHCHECK_SECONDS));
+    }
+
+    RepositoryCache(final RepositoryManager repoManager, final int maxSize,
+            final Set<String> pinned, final int healthCheckSeconds) {
+        this.repoManager = repoManager;
+        this.maxSize = maxSize;
+        this.pinned = pinned;
 
         RemovalListener<String, GeoGIG> listener = new RemovalListener<String, GeoGIG>() {
             @Override
@@ -36,7 +158,8 @@ class RepositoryCache {
                 if (geogig != null) {
                     try {
                         URL location = geogig.getRepository().getLocation();
-                        LOGGER.fine(format("Closing cached GeoGig repository instance %s", location));
+                        LOGGER.fine(format("Closing cached GeoGig repository instance %s (%s)",
+                                location, notification.getCause()));
                         geogig.close();
                         LOGGER.finer(format("Closed cached GeoGig repository instance %s", location));
                     } catch (RuntimeException e) {
@@ -54,12 +177,16 @@ class RepositoryCache {
 
             @Override
             public GeoGIG load(final String repoId) throws Exception {
+                Stopwatch sw = Stopwatch.createStarted();
                 try {
                     RepositoryInfo repoInfo = manager.get(repoId);
                     String repoLocation = repoInfo.getLocation();
                     File repoDir = new File(repoLocation);
                     GeoGIG geogig = new GeoGIG(repoDir);
                     geogig.getRepository();
+                    sw.stop();
+                    stats(repoId).openTimeMillis = sw.elapsed(TimeUnit.MILLISECONDS);
+                    LOGGER.fine(format("Opened GeoGig repository %s in %s", repoLocation, sw));
                     return geogig;
                 } catch (Exception e) {
                     LOGGER.log(Level.WARNING,
@@ -69,14 +196,45 @@ class RepositoryCache {
             }
         };
 
+        // pinned repositories weigh nothing so they're never evicted
+        Weigher<String, GeoGIG> weigher = new Weigher<String, GeoGIG>() {
+            @Override
+            public int weigh(String repoId, GeoGIG geogig) {
+                return pinnedIds.contains(repoId) ? 0 : 1;
+            }
+        };
+
+        // a single segment, Guava splits the max weight across segments and would close
+        // repositories well before the pool is full
         repoCache = CacheBuilder.newBuilder()//
-                .softValues()//
-                .expireAfterAccess(5, TimeUnit.MINUTES)//
+                .concurrencyLevel(1)//
+                .maximumWeight(maxSize)//
+                .weigher(weigher)//
                 .removalListener(listener)//
                 .build(loader);
+
+        executor = Executors.newScheduledThreadPool(1, new ThreadFactoryBuilder()
+                .setDaemon(true).setNameFormat("geogig-repository-pool-%d").build());
+        if (healthCheckSeconds > 0) {
+            executor.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    checkHealth();
+                }
+            }, healthCheckSeconds, healthCheckSeconds, TimeUnit.SECONDS);
+        }
     }
 
     public GeoGIG get(String repositoryId) throws IOException {
+        GeoGIG cached = repoCache.getIfPresent(repositoryId);
+        if (cached != null) {
+            stats(repositoryId).hits.incrementAndGet();
+            return cached;
+        }
+        stats(repositoryId).misses.incrementAndGet();
+        if (!pinned.isEmpty()) {
+            resolvePinned(repoInfo(repositoryId));
+        }
         try {
             return repoCache.get(repositoryId);
         } catch (ExecutionException e) {
@@ -88,9 +246,150 @@ class RepositoryCache {
 
     public void invalidate(final String repoId) {
         repoCache.invalidate(repoId);
+        stats.remove(repoId);
+        // the repository may be renamed before it's opened again
+        pinnedIds.remove(repoId);
     }
 
     public void invalidateAll() {
         repoCache.invalidateAll();
     }
+
+    /**
+     * Stops the warm ups and health checks and closes all the repositories
+     */
+    public void dispose() {
+        executor.shutdownNow();
+        invalidateAll();
+    }
+
+    /**
+     * @return usage statistics of the repository, {@code null} if it was never requested
+     */
+    public RepositoryStats getStats(String repoId) {
+        return stats.get(repoId);
+    }
+
+    /**
+     * @return the ids of the currently open repositories
+     */
+    public Set<String> getOpenRepositories() {
+        return ImmutableSet.copyOf(repoCache.asMap().keySet());
+    }
+
+    private RepositoryStats stats(String repoId) {
+        RepositoryStats repoStats = stats.get(repoId);
+        if (repoStats == null) {
+            RepositoryStats existing = stats.putIfAbsent(repoId, repoStats = new RepositoryStats());
+            if (existing != null) {
+                repoStats = existing;
+            }
+        }
+        return repoStats;
+    }
+
+    /**
+     * Opens the given repositories in the background, pinned ones first, up to the pool size
+     */
+    public void warmUp(final Collection<RepositoryInfo> repositories) {
+        final List<String> ids = new ArrayList<String>();
+        final List<String> unpinned = new ArrayList<String>();
+        for (RepositoryInfo info : repositories) {
+            if (resolvePinned(info)) {
+                ids.add(info.getId());
+            } else {
+                unpinned.add(info.getId());
+            }
+        }
+        ids.addAll(unpinned.subList(0, Math.min(maxSize, unpinned.size())));
+        for (final String repoId : ids) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        if (repoCache.getIfPresent(repoId) == null) {
+                            stats(repoId).warmUps.incrementAndGet();
+                            repoCache.get(repoId);
+                        }
+                    } catch (Exception e) {
+                        // already logged by the loader
+                    }
+                }
+            });
+        }
+    }
+
+    void checkHealth() {
+        for (Map.Entry<String, GeoGIG> e : repoCache.asMap().entrySet()) {
+            final String repoId = e.getKey();
+            if (!isHealthy(e.getValue())) {
+                LOGGER.warning(format("GeoGig repository %s failed its health check, closing it",
+                        repoId));
+                repoCache.invalidate(repoId);
+                if (pinnedIds.contains(repoId)) {
+                    warmUp(Collections.singleton(repoInfo(repoId)));
+                }
+            }
+        }
+    }
+
+    private boolean isHealthy(GeoGIG geogig) {
+        try {
+            Repository repository = geogig.getRepository();
+            if (repository == null) {
+                return false;
+            }
+            URL location = repository.getLocation();
+            if (location != null && "file".equals(location.getProtocol())
+                    && !new File(location.toURI()).exists()) {
+                return false;
+            }
+            geogig.command(RefParse.class).setName(Ref.HEAD).call();
+            return true;
+        } catch (Exception e) {
+            LOGGER.log(Level.FINE, "Repository health check failed", e);
+            return false;
+        }
+    }
+
+    private RepositoryInfo repoInfo(String repoId) {
+        try {
+            return repoManager.get(repoId);
+        } catch (Exception e) {
+            return new RepositoryInfo(repoId);
+        }
+    }
+
+    /**
+     * Records whether the repository is pinned, by id or name, before it's loaded
+     */
+    private boolean resolvePinned(RepositoryInfo info) {
+        boolean isPinned = pinned.contains("*") || pinned.contains(info.getId())
+                || (info.getName() != null && pinned.contains(info.getName()));
+        if (isPinned) {
+            pinnedIds.add(info.getId());
+        }
+        return isPinned;
+    }
+
+    private static Set<String> pinnedProperty() {
+        String value = GeoServerExtensions.getProperty(PINNED_PROPERTY);
+        if (value == null) {
+            return Collections.emptySet();
+        }
+        return ImmutableSet.copyOf(Splitter.on(',').trimResults().omitEmptyStrings().split(value));
+    }
+
+    private static int intProperty(String name, int defaultValue) {
+        String value = GeoServerExtensions.getProperty(name);
+        if (value != null) {
+            try {
+                return Integer.parseInt(value.trim());
+            } catch (NumberFormatException e) {
+                LOGGER.warning(format("Invalid value for %s: '%s', using default %d", name, value,
+                        defaultValue));
+            }
+        }
+        return defaultValue;
+    }
 }
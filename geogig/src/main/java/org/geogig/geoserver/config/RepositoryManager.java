@@ -9,9 +9,15 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.Serializable;
+import java.net.URISyntaxException;
+import java.net.URL;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.Nullable;
 
 import org.geoserver.catalog.CascadeDeleteVisitor;
 import org.geoserver.catalog.Catalog;
@@ -22,6 +28,7 @@ import org.geoserver.catalog.LayerInfo;
 import org.geoserver.catalog.util.CloseableIterator;
 import org.geoserver.platform.GeoServerExtensions;
 import org.geoserver.web.GeoServerApplication;
+import org.geotools.util.logging.Logging;
 import org.locationtech.geogig.api.ContextBuilder;
 import org.locationtech.geogig.api.GeoGIG;
 import org.locationtech.geogig.api.GlobalContextBuilder;
@@ -33,7 +40,6 @@ import org.locationtech.geogig.geotools.data.GeoGigDataStoreFactory;
 import org.locationtech.geogig.repository.Repository;
 import org.opengis.filter.Filter;
 
-import com.google.common.base.Objects;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Supplier;
 import com.google.common.collect.Lists;
@@ -55,6 +61,8 @@ public class RepositoryManager {
         }
     }
 
+    private static final Logger LOGGER = Logging.getLogger(RepositoryManager.class);
+
     private ConfigStore store;
 
     private final RepositoryCache repoCache;
@@ -71,7 +79,7 @@ public class RepositoryManager {
 
     static void close() {
         if (INSTANCE != null) {
-            INSTANCE.repoCache.invalidateAll();
+            INSTANCE.repoCache.dispose();
             INSTANCE = null;
         }
     }
@@ -84,6 +92,11 @@ public class RepositoryManager {
         checkNotNull(store);
         this.store = store;
         this.repoCache = new RepositoryCache(this);
+        try {
+            this.repoCache.warmUp(getAll());
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Error opening the configured GeoGig repositories", e);
+        }
     }
 
     public List<RepositoryInfo> getAll() {
@@ -232,14 +245,29 @@ public class RepositoryManager {
         }
     }
 
+    /**
+     * @param location the location of a repository, as returned by {@link Repository#getLocation()}
+     * @return the configured repository at that location, or {@code null} if there's none
+     */
+    public @Nullable RepositoryInfo findByLocation(URL location) {
+        File dir;
+        try {
+            dir = new File(location.toURI());
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            return null;
+        }
+        if (dir.getName().endsWith(".geogig")) {
+            dir = dir.getParentFile();
+        }
+        return store.getRepositoryByLocation(dir.getAbsolutePath());
+    }
+
     RepositoryInfo findOrCreateByLocation(final String repositoryDirectory) {
-        List<RepositoryInfo> repos = getAll();
-        for (RepositoryInfo info : repos) {
-            if (Objects.equal(info.getLocation(), repositoryDirectory)) {
-                return info;
-            }
+        RepositoryInfo info = store.getRepositoryByLocation(repositoryDirectory);
+        if (info != null) {
+            return info;
         }
-        RepositoryInfo info = new RepositoryInfo();
+        info = new RepositoryInfo();
         info.setLocation(repositoryDirectory);
         return save(info);
     }
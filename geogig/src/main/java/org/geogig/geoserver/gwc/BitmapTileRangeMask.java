@@ -0,0 +1,185 @@
+/* Copyright (c) 2014 OpenPlans. All rights reserved.
+ * This code is licensed under the GNU GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geogig.geoserver.gwc;
+
+import java.util.BitSet;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.geoserver.gwc.layer.GeoServerTileLayer;
+import org.geoserver.platform.GeoServerExtensions;
+import org.geowebcache.grid.GridSubset;
+import org.geowebcache.storage.TileRangeMask;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.prep.PreparedGeometry;
+
+/**
+ * A {@link TileRangeMask} that rasterizes the mask geometry into a bit set per zoom level, the
+ * first time the level is looked up, so that {@link #lookup} is a constant time bit test.
+ * <p>
+ * Rasterization subdivides the level's tile coverage recursively, discarding the blocks of tiles
+ * the geometry does not intersect and filling in the ones it contains, so only the tiles along the
+ * geometry boundary are tested on their own. The result matches {@link GeometryTileRangeMask},
+ * tile bounds are expanded by the size of a tile on each direction.
+ * <p>
+ * Levels covering more than {@link #MAX_TILES_PROPERTY} tiles (defaults to
+ * {@link #DEFAULT_MAX_TILES}) are not rasterized, lookups on them fall back to testing each tile
+ * against the prepared geometry.
+ */
+class BitmapTileRangeMask implements TileRangeMask {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BitmapTileRangeMask.class);
+
+    /**
+     * System property, context parameter, or environment variable setting the maximum number of
+     * tiles of a zoom level to be rasterized
+     */
+    static final String MAX_TILES_PROPERTY = "GEOGIG_GWC_MASK_MAX_TILES";
+
+    /**
+     * 4M tiles, 512KB bit set
+     */
+    static final int DEFAULT_MAX_TILES = 1 << 22;
+
+    /**
+     * Marks a level that's too big to be rasterized
+     */
+    private static final BitSet FALLBACK = new BitSet(0);
+
+    private final GeometryTileRangeMask geometryMask;
+
+    private final long[][] byLevelTileCoverage;
+
+    private final int maxTiles;
+
+    /**
+     * Rasterized levels, {@code null} until first looked up
+     */
+    private final AtomicReferenceArray<BitSet> levels;
+
+    BitmapTileRangeMask(GeometryTileRangeMask geometryMask, int maxTiles) {
+        this.geometryMask = geometryMask;
+        this.byLevelTileCoverage = geometryMask.getGridCoverages();
+        this.maxTiles = maxTiles;
+        this.levels = new AtomicReferenceArray<BitSet>(byLevelTileCoverage.length);
+    }
+
+    @Override
+    public long[][] getGridCoverages() {
+        return byLevelTileCoverage.clone();
+    }
+
+    @Override
+    public boolean lookup(final long tileX, final long tileY, final int level) {
+        final long[] levelCoverage = byLevelTileCoverage[level];
+        final long minTileX = levelCoverage[0];
+        final long minTileY = levelCoverage[1];
+        final long maxTileX = levelCoverage[2];
+        final long maxTileY = levelCoverage[3];
+        if (tileX < minTileX || tileX > maxTileX || tileY < minTileY || tileY > maxTileY) {
+            return false;
+        }
+        BitSet raster = levels.get(level);
+        if (raster == null) {
+            raster = rasterize(level);
+        }
+        if (raster == FALLBACK) {
+            return geometryMask.lookup(tileX, tileY, level);
+        }
+        final long width = maxTileX - minTileX + 1;
+        return raster.get((int) ((tileY - minTileY) * width + (tileX - minTileX)));
+    }
+
+    private synchronized BitSet rasterize(final int level) {
+        BitSet raster = levels.get(level);
+        if (raster != null) {
+            return raster;
+        }
+        final long[] coverage = byLevelTileCoverage[level];
+        final long numTiles = (coverage[2] - coverage[0] + 1) * (coverage[3] - coverage[1] + 1);
+        if (numTiles > maxTiles) {
+            LOGGER.debug("Not rasterizing mask at level {}, {} tiles is over the {} tiles limit",
+                    level, numTiles, maxTiles);
+            raster = FALLBACK;
+        } else {
+            raster = new BitSet((int) numTiles);
+            fill(raster, level, coverage[0], coverage[1], coverage[2], coverage[3]);
+        }
+        levels.set(level, raster);
+        return raster;
+    }
+
+    /**
+     * Sets the bits of the tiles in the block {@code minX, minY, maxX, maxY} of the given level
+     * that are to be included in the mask
+     */
+    private void fill(BitSet raster, int level, long minX, long minY, long maxX, long maxY) {
+        final GridSubset gridSubset = geometryMask.getGridSubset();
+        final PreparedGeometry mask = geometryMask.getPreparedMask();
+        final GeometryFactory factory = geometryMask.getGeometryMask().getFactory();
+
+        Envelope block = GeometryTileRangeMask.toEnvelope(gridSubset.boundsFromIndex(new long[] {
+                minX, minY, level }));
+        block.expandToInclude(GeometryTileRangeMask.toEnvelope(gridSubset
+                .boundsFromIndex(new long[] { maxX, maxY, level })));
+
+        final double tileWidth = block.getWidth() / (maxX - minX + 1);
+        final double tileHeight = block.getHeight() / (maxY - minY + 1);
+        Envelope expanded = new Envelope(block);
+        expanded.expandBy(tileWidth, tileHeight);
+
+        if (!mask.intersects(factory.toGeometry(expanded))) {
+            return;
+        }
+        final boolean singleTile = minX == maxX && minY == maxY;
+        if (singleTile || mask.contains(factory.toGeometry(block))) {
+            setAll(raster, level, minX, minY, maxX, maxY);
+            return;
+        }
+        if (maxX - minX >= maxY - minY) {
+            long midX = (minX + maxX) >>> 1;
+            fill(raster, level, minX, minY, midX, maxY);
+            fill(raster, level, midX + 1, minY, maxX, maxY);
+        } else {
+            long midY = (minY + maxY) >>> 1;
+            fill(raster, level, minX, minY, maxX, midY);
+            fill(raster, level, minX, midY + 1, maxX, maxY);
+        }
+    }
+
+    private void setAll(BitSet raster, int level, long minX, long minY, long maxX, long maxY) {
+        final long[] coverage = byLevelTileCoverage[level];
+        final long width = coverage[2] - coverage[0] + 1;
+        for (long y = minY; y <= maxY; y++) {
+            long row = (y - coverage[1]) * width - coverage[0];
+            raster.set((int) (row + minX), (int) (row + maxX + 1));
+        }
+    }
+
+    public static TileRangeMask build(GeoServerTileLayer tileLayer, GridSubset gridSubset,
+            Geometry geomInGridsetCrs) {
+
+        GeometryTileRangeMask geometryMask = GeometryTileRangeMask.build(tileLayer, gridSubset,
+                geomInGridsetCrs);
+        return new BitmapTileRangeMask(geometryMask, maxTiles());
+    }
+
+    static int maxTiles() {
+        String value = GeoServerExtensions.getProperty(MAX_TILES_PROPERTY);
+        if (value != null) {
+            try {
+                return Integer.parseInt(value.trim());
+            } catch (NumberFormatException e) {
+                LOGGER.warn("Invalid value for {}: '{}', using default {}", MAX_TILES_PROPERTY,
+                        value, DEFAULT_MAX_TILES);
+            }
+        }
+        return DEFAULT_MAX_TILES;
+    }
+}
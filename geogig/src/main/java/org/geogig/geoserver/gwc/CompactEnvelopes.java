@@ -0,0 +1,211 @@
+/* Copyright (c) 2014 OpenPlans. All rights reserved.
+ * This code is licensed under the GNU GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geogig.geoserver.gwc;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.geotools.geometry.jts.JTS;
+
+import com.google.common.primitives.Doubles;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.Polygon;
+import com.vividsolutions.jts.operation.union.CascadedPolygonUnion;
+
+/**
+ * Accumulates envelopes in a single {@code double[]} as {@code minx, miny, maxx, maxy} tuples,
+ * merging overlapping envelopes as it grows.
+ * <p>
+ * Every time the buffer doubles its size since the last compaction, envelopes are sorted by
+ * {@code minx} and swept, merging each envelope with the following ones it overlaps as long as
+ * the merged envelope is no larger than the sum of both. If the number of envelopes is still over
+ * {@code maxEnvelopes} after a compaction, the accumulator degrades to the bounds of all the
+ * envelopes added, and so does the {@link #buildGeometry built geometry}.
+ */
+class CompactEnvelopes {
+
+    /**
+     * Default maximum number of envelopes to hold, 3.2MB worth of ordinates
+     */
+    public static final int DEFAULT_MAX_ENVELOPES = 100000;
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private double[] ordinates = new double[4 * INITIAL_CAPACITY];
+
+    private int size;
+
+    private int compactAt = INITIAL_CAPACITY;
+
+    private final int maxEnvelopes;
+
+    private final Envelope bounds = new Envelope();
+
+    private boolean degraded;
+
+    public CompactEnvelopes() {
+        this(DEFAULT_MAX_ENVELOPES);
+    }
+
+    public CompactEnvelopes(int maxEnvelopes) {
+        this.maxEnvelopes = maxEnvelopes;
+    }
+
+    public void add(Envelope env) {
+        bounds.expandToInclude(env);
+        if (degraded) {
+            return;
+        }
+        if (size == compactAt) {
+            compact();
+            if (size > maxEnvelopes) {
+                degraded = true;
+                ordinates = null;
+                size = 0;
+                return;
+            }
+            compactAt = Math.max(INITIAL_CAPACITY, 2 * size);
+        }
+        ordinates = Doubles.ensureCapacity(ordinates, 4 * (size + 1), 4 * INITIAL_CAPACITY);
+        final int i = 4 * size;
+        ordinates[i] = env.getMinX();
+        ordinates[i + 1] = env.getMinY();
+        ordinates[i + 2] = env.getMaxX();
+        ordinates[i + 3] = env.getMaxY();
+        size++;
+    }
+
+    public boolean isEmpty() {
+        return bounds.isNull();
+    }
+
+    /**
+     * @return the number of envelopes held
+     */
+    public int size() {
+        return degraded ? 1 : size;
+    }
+
+    /**
+     * @return whether too many envelopes were added and only their bounds were kept
+     */
+    public boolean isDegraded() {
+        return degraded;
+    }
+
+    /**
+     * @return the cascaded union of the envelopes, or the bounds of all of them if
+     *         {@link #isDegraded() degraded}
+     */
+    public Geometry buildGeometry(GeometryFactory factory) {
+        if (isEmpty()) {
+            return factory.createGeometryCollection(null);
+        }
+        if (degraded) {
+            return JTS.toGeometry(bounds, factory);
+        }
+        compact();
+        List<Polygon> polygons = new ArrayList<Polygon>(size);
+        Envelope env = new Envelope();
+        for (int i = 0; i < size; i++) {
+            final int o = 4 * i;
+            env.init(ordinates[o], ordinates[o + 2], ordinates[o + 1], ordinates[o + 3]);
+            polygons.add(JTS.toGeometry(env, factory));
+        }
+        Geometry union = CascadedPolygonUnion.union(polygons);
+        return union == null ? factory.createGeometryCollection(null) : union;
+    }
+
+    /**
+     * Sorts the envelopes by {@code minx} and merges the overlapping ones that don't grow larger
+     * than their combined areas
+     */
+    void compact() {
+        if (size < 2) {
+            return;
+        }
+        final double[] o = ordinates;
+        sort(o, 0, size - 1);
+        final boolean[] merged = new boolean[size];
+        for (int i = 0; i < size; i++) {
+            if (merged[i]) {
+                continue;
+            }
+            final int a = 4 * i;
+            for (int j = i + 1; j < size && o[4 * j] <= o[a + 2]; j++) {
+                if (merged[j]) {
+                    continue;
+                }
+                final int b = 4 * j;
+                if (o[b + 1] > o[a + 3] || o[b + 3] < o[a + 1]) {
+                    continue;// no overlap on y
+                }
+                double minx = o[a], miny = Math.min(o[a + 1], o[b + 1]);
+                double maxx = Math.max(o[a + 2], o[b + 2]), maxy = Math.max(o[a + 3], o[b + 3]);
+                double mergedArea = (maxx - minx) * (maxy - miny);
+                if (mergedArea <= area(o, a) + area(o, b)) {
+                    o[a + 1] = miny;
+                    o[a + 2] = maxx;
+                    o[a + 3] = maxy;
+                    merged[j] = true;
+                }
+            }
+        }
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            if (!merged[i]) {
+                if (count != i) {
+                    System.arraycopy(o, 4 * i, o, 4 * count, 4);
+                }
+                count++;
+            }
+        }
+        size = count;
+    }
+
+    private static double area(double[] o, int offset) {
+        return (o[offset + 2] - o[offset]) * (o[offset + 3] - o[offset + 1]);
+    }
+
+    /**
+     * In place quicksort of the {@code [lo, hi]} envelopes by {@code minx}
+     */
+    private static void sort(double[] o, int lo, int hi) {
+        while (lo < hi) {
+            final double pivot = o[4 * ((lo + hi) >>> 1)];
+            int i = lo, j = hi;
+            while (i <= j) {
+                while (o[4 * i] < pivot) {
+                    i++;
+                }
+                while (o[4 * j] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(o, i++, j--);
+                }
+            }
+            // recurse on the smaller side to bound the stack depth
+            if (j - lo < hi - i) {
+                sort(o, lo, j);
+                lo = i;
+            } else {
+                sort(o, i, hi);
+                hi = j;
+            }
+        }
+    }
+
+    private static void swap(double[] o, int i, int j) {
+        final int a = 4 * i, b = 4 * j;
+        for (int k = 0; k < 4; k++) {
+            double t = o[a + k];
+            o[a + k] = o[b + k];
+            o[b + k] = t;
+        }
+    }
+}
@@ -11,21 +11,45 @@ import org.geowebcache.storage.TileRangeMask;
 
 import com.vividsolutions.jts.geom.Envelope;
 import com.vividsolutions.jts.geom.Geometry;
-
+import com.vividsolutions.jts.geom.prep.PreparedGeometry;
+import com.vividsolutions.jts.geom.prep.PreparedGeometryFactory;
+
+/**
+ * A {@link TileRangeMask} that tests each tile against the mask geometry.
+ * <p>
+ * A tile is included if the mask intersects the tile bounds expanded by the size of a tile on
+ * each direction. Lookups are expensive at high zoom levels, see {@link BitmapTileRangeMask} for
+ * a mask that rasterizes the geometry once per zoom level and uses this one as a fall back.
+ */
 class GeometryTileRangeMask implements TileRangeMask {
 
-    private Geometry geometryMask;
+    private final Geometry geometryMask;
+
+    private final PreparedGeometry preparedMask;
 
-    private GridSubset gridSubset;
+    private final GridSubset gridSubset;
 
-    private long[][] byLevelTileCoverage;
+    private final long[][] byLevelTileCoverage;
 
     GeometryTileRangeMask(Geometry geometryMask, GridSubset gridSubset, long[][] byLevelTileCoverage) {
         this.geometryMask = geometryMask;
+        this.preparedMask = PreparedGeometryFactory.prepare(geometryMask);
         this.gridSubset = gridSubset;
         this.byLevelTileCoverage = byLevelTileCoverage;
     }
 
+    Geometry getGeometryMask() {
+        return geometryMask;
+    }
+
+    PreparedGeometry getPreparedMask() {
+        return preparedMask;
+    }
+
+    GridSubset getGridSubset() {
+        return gridSubset;
+    }
+
     @Override
     public long[][] getGridCoverages() {
         return byLevelTileCoverage.clone();
@@ -34,7 +58,7 @@ class GeometryTileRangeMask implements TileRangeMask {
     @Override
     public boolean lookup(final long tileX, final long tileY, final int level) {
 
-        final long[] levelCoverage = getGridCoverages()[level];
+        final long[] levelCoverage = byLevelTileCoverage[level];
         final long minxTileX = levelCoverage[0];
         final long maxTileX = levelCoverage[2];
         final long minTileY = levelCoverage[1];
@@ -53,13 +77,13 @@ class GeometryTileRangeMask implements TileRangeMask {
 
         Geometry expandedTileBoundsGeom = geometryMask.getFactory().toGeometry(tileBounds);
 
-        boolean intersects = geometryMask.intersects(expandedTileBoundsGeom);
+        boolean intersects = preparedMask.intersects(expandedTileBoundsGeom);
 
         return intersects;
     }
 
-    public static TileRangeMask build(GeoServerTileLayer tileLayer, GridSubset gridSubset,
-            Geometry geomInGridsetCrs) {
+    public static GeometryTileRangeMask build(GeoServerTileLayer tileLayer,
+            GridSubset gridSubset, Geometry geomInGridsetCrs) {
 
         BoundingBox maskBounds = toBoundingBox(geomInGridsetCrs.getEnvelopeInternal());
         long[][] byLevelTileCoverage = gridSubset.getCoverageIntersections(maskBounds);
@@ -71,7 +95,7 @@ class GeometryTileRangeMask implements TileRangeMask {
         return new BoundingBox(env.getMinX(), env.getMinY(), env.getMaxX(), env.getMaxY());
     }
 
-    private static Envelope toEnvelope(BoundingBox bounds) {
+    static Envelope toEnvelope(BoundingBox bounds) {
         return new Envelope(bounds.getMinX(), bounds.getMaxX(), bounds.getMinY(), bounds.getMaxY());
     }
 }
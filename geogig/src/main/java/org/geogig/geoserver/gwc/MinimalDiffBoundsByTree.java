@@ -0,0 +1,85 @@
+/* Copyright (c) 2014 OpenPlans. All rights reserved.
+ * This code is licensed under the GNU GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geogig.geoserver.gwc;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.util.Map;
+import java.util.Set;
+
+import org.locationtech.geogig.api.AbstractGeoGigOp;
+import org.locationtech.geogig.api.ObjectId;
+import org.locationtech.geogig.api.RevTree;
+import org.locationtech.geogig.api.plumbing.ResolveTreeish;
+import org.locationtech.geogig.api.plumbing.diff.PreOrderDiffWalk;
+import org.locationtech.geogig.storage.ObjectDatabase;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableSet;
+import com.vividsolutions.jts.geom.Geometry;
+
+/**
+ * Computes the {@link MinimalDiffBounds "approximate minimal bounds"} difference between two
+ * {@link RevTree trees} for several feature trees at once, in a single traversal of the diff.
+ * <p>
+ * Both tree-ishes and the names of the root tree's children of interest are mandatory. The result
+ * maps each requested tree name to its minimal bounds geometry, which is empty if the tree is not
+ * affected by the diff.
+ */
+public class MinimalDiffBoundsByTree extends AbstractGeoGigOp<Map<String, Geometry>> {
+
+    private String oldVersion;
+
+    private String newVersion;
+
+    private Set<String> treeNames;
+
+    public MinimalDiffBoundsByTree setOldVersion(String oldTreeish) {
+        this.oldVersion = oldTreeish;
+        return this;
+    }
+
+    public MinimalDiffBoundsByTree setNewVersion(String newTreeish) {
+        this.newVersion = newTreeish;
+        return this;
+    }
+
+    public MinimalDiffBoundsByTree setTreeNames(Set<String> treeNames) {
+        this.treeNames = ImmutableSet.copyOf(treeNames);
+        return this;
+    }
+
+    @Override
+    protected Map<String, Geometry> _call() {
+        checkArgument(oldVersion != null, "old version not provided");
+        checkArgument(newVersion != null, "new version not provided");
+        checkArgument(treeNames != null && !treeNames.isEmpty(), "tree names not provided");
+
+        RevTree left = resolveTree(oldVersion);
+        RevTree right = resolveTree(newVersion);
+
+        ObjectDatabase leftSource = resolveSafeDb(left);
+        ObjectDatabase rightSource = resolveSafeDb(right);
+
+        PreOrderDiffWalk visitor = new PreOrderDiffWalk(left, right, leftSource, rightSource);
+        TreeDiffBoundsConsumer consumer = new TreeDiffBoundsConsumer(treeNames);
+        visitor.walk(consumer);
+        return consumer.buildGeometries();
+    }
+
+    private ObjectDatabase resolveSafeDb(RevTree tree) {
+        if (objectDatabase().exists(tree.getId())) {
+            return objectDatabase();
+        }
+        return stagingDatabase();
+    }
+
+    private RevTree resolveTree(String refSpec) {
+        Optional<ObjectId> id = command(ResolveTreeish.class).setTreeish(refSpec).call();
+        checkState(id.isPresent(), "%s did not resolve to a tree", refSpec);
+        return stagingDatabase().getTree(id.get());
+    }
+}
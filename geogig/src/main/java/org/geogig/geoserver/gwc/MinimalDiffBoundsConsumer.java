@@ -12,7 +12,6 @@ import java.util.List;
 
 import javax.annotation.Nullable;
 
-import org.geotools.geometry.jts.JTS;
 import org.locationtech.geogig.api.Bounded;
 import org.locationtech.geogig.api.Bucket;
 import org.locationtech.geogig.api.Node;
@@ -35,9 +34,14 @@ class MinimalDiffBoundsConsumer implements PreOrderDiffWalk.Consumer {
     private CompactMultiPoint points = new CompactMultiPoint();
 
     /**
-     * Accumulates non punctual differences (i.e. bounding polygons)
+     * Accumulates non punctual, non linear differences (i.e. bounding boxes) to save heap
      */
-    private List<Geometry> nonPoints = new LinkedList<Geometry>();
+    private CompactEnvelopes envelopes = new CompactEnvelopes();
+
+    /**
+     * Accumulates orthogonal line differences (i.e. bounding boxes of zero area)
+     */
+    private List<Geometry> lines = new LinkedList<Geometry>();
 
     private Predicate<Node> treeNodeFilter = Predicates.alwaysTrue();
 
@@ -64,8 +68,12 @@ class MinimalDiffBoundsConsumer implements PreOrderDiffWalk.Consumer {
      *         traversing the diff
      */
     public Geometry buildGeometry() {
-        List<Geometry> geomList = nonPoints;
-        nonPoints = null;
+        List<Geometry> geomList = lines;
+        lines = null;
+        if (!envelopes.isEmpty()) {
+            geomList.add(envelopes.buildGeometry(GEOM_FACTORY));
+        }
+        envelopes = null;
         if (!points.isEmpty()) {
             geomList.add(points);
         }
@@ -134,14 +142,14 @@ class MinimalDiffBoundsConsumer implements PreOrderDiffWalk.Consumer {
                 cs.add(env.getMinX(), env.getMinY());
                 cs.add(env.getMaxX(), env.getMinY());
             }
-            nonPoints.add(GEOM_FACTORY.createLineString(cs));
+            lines.add(GEOM_FACTORY.createLineString(cs));
         } else {
-            nonPoints.add(JTS.toGeometry(env, GEOM_FACTORY));
+            envelopes.add(env);
         }
     }
 
     private boolean isOrthoLine(Envelope env) {
-        return env.getArea() == 0D && env.getWidth() > 0D || env.getHeight() > 0D;
+        return env.getArea() == 0D && (env.getWidth() > 0D || env.getHeight() > 0D);
     }
 
     private boolean isPoint(Envelope env) {
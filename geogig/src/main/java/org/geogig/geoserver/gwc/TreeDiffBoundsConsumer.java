@@ -0,0 +1,121 @@
+/* Copyright (c) 2014 OpenPlans. All rights reserved.
+ * This code is licensed under the GNU GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geogig.geoserver.gwc;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+
+import org.locationtech.geogig.api.Bucket;
+import org.locationtech.geogig.api.Node;
+import org.locationtech.geogig.api.NodeRef;
+import org.locationtech.geogig.api.plumbing.diff.PreOrderDiffWalk;
+
+import com.vividsolutions.jts.geom.Geometry;
+
+/**
+ * A {@link PreOrderDiffWalk.Consumer} that computes the minimal diff bounds of several of the root
+ * tree's children at once, dispatching the traversal of each tree of interest to its own
+ * {@link MinimalDiffBoundsConsumer} and skipping the trees nobody asked for.
+ */
+class TreeDiffBoundsConsumer implements PreOrderDiffWalk.Consumer {
+
+    private final Map<String, MinimalDiffBoundsConsumer> consumers;
+
+    /**
+     * Consumer for the tree being traversed, {@code null} while at the root tree level
+     */
+    private MinimalDiffBoundsConsumer current;
+
+    /**
+     * The tree nodes {@link #current} was engaged for, to know when its traversal is finished
+     */
+    private Node currentLeft, currentRight;
+
+    public TreeDiffBoundsConsumer(Set<String> treeNames) {
+        checkArgument(!treeNames.isEmpty(), "no tree names provided");
+        consumers = new HashMap<String, MinimalDiffBoundsConsumer>();
+        for (String treeName : treeNames) {
+            consumers.put(treeName, new MinimalDiffBoundsConsumer());
+        }
+    }
+
+    /**
+     * @return the minimal bounds geometry for each of the requested tree names, possibly empty if
+     *         the tree wasn't affected by the diff
+     */
+    public Map<String, Geometry> buildGeometries() {
+        Map<String, Geometry> geometries = new HashMap<String, Geometry>();
+        for (Map.Entry<String, MinimalDiffBoundsConsumer> e : consumers.entrySet()) {
+            geometries.put(e.getKey(), e.getValue().buildGeometry());
+        }
+        return geometries;
+    }
+
+    @Override
+    public void feature(@Nullable Node left, @Nullable Node right) {
+        if (current != null) {
+            current.feature(left, right);
+        }
+    }
+
+    @Override
+    public boolean tree(@Nullable Node left, @Nullable Node right) {
+        if (current != null) {
+            return current.tree(left, right);
+        }
+        final String name = left == null ? right.getName() : left.getName();
+        if (NodeRef.ROOT.equals(name)) {
+            return true;
+        }
+        MinimalDiffBoundsConsumer consumer = consumers.get(name);
+        if (consumer == null) {
+            return false;
+        }
+        boolean traverse = consumer.tree(left, right);
+        if (traverse) {
+            current = consumer;
+            currentLeft = left;
+            currentRight = right;
+        }
+        return traverse;
+    }
+
+    @Override
+    public void endTree(@Nullable Node left, @Nullable Node right) {
+        if (current == null) {
+            return;
+        }
+        if (left == currentLeft && right == currentRight) {
+            current = null;
+            currentLeft = null;
+            currentRight = null;
+        } else {
+            current.endTree(left, right);
+        }
+    }
+
+    @Override
+    public boolean bucket(int bucketIndex, int bucketDepth, @Nullable Bucket left,
+            @Nullable Bucket right) {
+        if (current == null) {
+            // root tree buckets, keep going to find the trees of interest
+            return true;
+        }
+        return current.bucket(bucketIndex, bucketDepth, left, right);
+    }
+
+    @Override
+    public void endBucket(int bucketIndex, int bucketDepth, @Nullable Bucket left,
+            @Nullable Bucket right) {
+        if (current != null) {
+            current.endBucket(bucketIndex, bucketDepth, left, right);
+        }
+    }
+}
@@ -4,11 +4,18 @@
  */
 package org.geogig.geoserver.gwc;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
 
 import org.geoserver.catalog.LayerInfo;
 import org.geoserver.catalog.ResourceInfo;
@@ -30,15 +37,16 @@ import org.geowebcache.storage.TileRange;
 import org.geowebcache.storage.TileRangeMask;
 import org.locationtech.geogig.api.Context;
 import org.locationtech.geogig.api.ObjectId;
-import org.locationtech.geogig.api.Ref;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
 import org.opengis.referencing.operation.MathTransform;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.common.base.Optional;
 import com.google.common.base.Stopwatch;
 import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Sets;
 import com.vividsolutions.jts.geom.Geometry;
 import com.vividsolutions.jts.io.WKTWriter;
 import com.vividsolutions.jts.operation.buffer.BufferOp;
@@ -49,42 +57,79 @@ class TruncateHelper {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(TruncateHelper.class);
 
-    public static void issueTruncateTasks(Context context, Optional<Ref> oldRef,
-            Optional<Ref> newRef, GeoServerTileLayer tileLayer, TileBreeder breeder) {
-
-        final ObjectId oldCommit = oldRef.isPresent() ? oldRef.get().getObjectId() : ObjectId.NULL;
-        final ObjectId newCommit = newRef.isPresent() ? newRef.get().getObjectId() : ObjectId.NULL;
+    /**
+     * Minimal diff bounds by tree name of recently computed diffs, keyed by
+     * {@code <oldCommit>..<newCommit>}. Commit ids are content hashes, so a given pair yields the
+     * same bounds on any repository.
+     */
+    private static final Cache<String, ConcurrentMap<String, Geometry>> DIFF_BOUNDS = CacheBuilder
+            .newBuilder().maximumSize(32).build();
 
-        final String tileLayerName = tileLayer.getName();
-        final String layerTreeName = tileLayer.getLayerInfo().getResource().getNativeName();
+    /**
+     * Computes the minimal bounds geometry of each of the given feature trees for the change
+     * {@code oldCommit...newCommit}, walking the diff once for all the trees not computed yet.
+     * 
+     * @return the minimal bounds by tree name, in the trees native CRS, possibly empty if the tree
+     *         is not affected by the change
+     */
+    public static Map<String, Geometry> computeDiffBounds(Context context, ObjectId oldCommit,
+            ObjectId newCommit, Set<String> treeNames) {
 
-        LOGGER.debug(
-                "Computing minimal bounds geometry on layer '{}' (tree '{}') for change {}...{} ",
-                tileLayerName, layerTreeName, oldCommit, newCommit);
-        final Geometry minimalBounds;
-        Stopwatch sw = Stopwatch.createStarted();
+        final String key = oldCommit + ".." + newCommit;
+        ConcurrentMap<String, Geometry> computed;
         try {
-            MinimalDiffBounds geomBuildCommand = context.command(MinimalDiffBounds.class)
-                    .setOldVersion(oldCommit.toString()).setNewVersion(newCommit.toString());
-
-            geomBuildCommand.setTreeNameFilter(layerTreeName);
+            computed = DIFF_BOUNDS.get(key, new Callable<ConcurrentMap<String, Geometry>>() {
+                @Override
+                public ConcurrentMap<String, Geometry> call() {
+                    return new ConcurrentHashMap<String, Geometry>();
+                }
+            });
+        } catch (ExecutionException e) {
+            throw Throwables.propagate(e.getCause());
+        }
 
-            minimalBounds = geomBuildCommand.call();
-            sw.stop();
-            if (minimalBounds.isEmpty()) {
-                LOGGER.debug("Feature tree '{}' not affected by change {}...{} (took {})",
-                        layerTreeName, oldCommit, newCommit, sw);
-                return;
-            }
-            if (LOGGER.isDebugEnabled()) {
-                LOGGER.debug("Minimal bounds on layer '{}' computed in {}: {}", tileLayerName, sw,
-                        formattedWKT(minimalBounds));
+        Set<String> missing = Sets.difference(treeNames, computed.keySet()).immutableCopy();
+        if (!missing.isEmpty()) {
+            LOGGER.debug("Computing minimal bounds geometry on trees {} for change {}...{} ",
+                    missing, oldCommit, newCommit);
+            Stopwatch sw = Stopwatch.createStarted();
+            try {
+                Map<String, Geometry> bounds = context.command(MinimalDiffBoundsByTree.class)
+                        .setOldVersion(oldCommit.toString()).setNewVersion(newCommit.toString())
+                        .setTreeNames(missing).call();
+                computed.putAll(bounds);
+                sw.stop();
+                LOGGER.debug("Minimal bounds on trees {} computed in {}", missing, sw);
+            } catch (Exception e) {
+                sw.stop();
+                LOGGER.error("Error computing minimal bounds for {}...{} on trees {} after {}",
+                        oldCommit, newCommit, missing, sw);
+                throw Throwables.propagate(e);
             }
-        } catch (Exception e) {
-            sw.stop();
-            LOGGER.error("Error computing minimal bounds for {}...{} on layer '{}' after {}",
-                    oldCommit, newCommit, tileLayerName, sw);
-            throw Throwables.propagate(e);
+        }
+        Map<String, Geometry> bounds = new HashMap<String, Geometry>();
+        for (String treeName : treeNames) {
+            bounds.put(treeName, computed.get(treeName));
+        }
+        return bounds;
+    }
+
+    /**
+     * Schedules the truncation of all the gridsets, styles and formats of the tile layer, masked by
+     * the minimal bounds of the change on the layer's feature tree as returned by
+     * {@link #computeDiffBounds}
+     */
+    public static void issueTruncateTasks(GeoServerTileLayer tileLayer, Geometry minimalBounds,
+            TruncateScheduler scheduler) {
+
+        final String tileLayerName = tileLayer.getName();
+        if (minimalBounds.isEmpty()) {
+            LOGGER.debug("Layer '{}' not affected by change", tileLayerName);
+            return;
+        }
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("Minimal bounds on layer '{}': {}", tileLayerName,
+                    formattedWKT(minimalBounds));
         }
         final Set<String> gridSubsets = tileLayer.getGridSubsets();
 
@@ -104,11 +149,7 @@ class TruncateHelper {
             }
             geomInGridsetCrs = bufferAndSimplifyBySizeOfSmallerTile(geomInGridsetCrs, gridSetCrs,
                     gridSubset);
-            try {
-                truncate(tileLayer, gridsetId, geomInGridsetCrs, breeder);
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
+            scheduler.schedule(tileLayer, gridsetId, geomInGridsetCrs);
         }
     }
 
@@ -166,7 +207,13 @@ class TruncateHelper {
         return w.write(geometry);
     }
 
-    private static void truncate(final GeoServerTileLayer tileLayer, final String gridsetId,
+    /**
+     * Issues the truncate tasks for all the styles and formats of the tile layer on the given
+     * gridset
+     * 
+     * @return the dispatched tasks
+     */
+    static List<GWCTask> truncate(final GeoServerTileLayer tileLayer, final String gridsetId,
             final Geometry geomInGridsetCrs, final TileBreeder breeder) {
 
         final List<MimeType> mimeTypes = tileLayer.getMimeTypes();
@@ -176,6 +223,7 @@ class TruncateHelper {
 
         GridSubset gridSubset = tileLayer.getGridSubset(gridsetId);
 
+        List<GWCTask> tasks = new ArrayList<GWCTask>();
         for (String style : cachedStyles) {
             Map<String, String> parameters;
             if (style.isEmpty() || style.equals(defaultStyle)) {
@@ -185,12 +233,14 @@ class TruncateHelper {
             }
 
             for (MimeType mime : mimeTypes) {
-                truncate(breeder, tileLayer, gridSubset, mime, parameters, geomInGridsetCrs);
+                tasks.addAll(Arrays.asList(truncate(breeder, tileLayer, gridSubset, mime,
+                        parameters, geomInGridsetCrs)));
             }
         }
+        return tasks;
     }
 
-    private static void truncate(TileBreeder breeder, GeoServerTileLayer tileLayer,
+    private static GWCTask[] truncate(TileBreeder breeder, GeoServerTileLayer tileLayer,
             GridSubset gridSubset, MimeType mimeType, Map<String, String> parameters,
             Geometry geomInGridsetCrs) {
 
@@ -203,7 +253,7 @@ class TruncateHelper {
             zoomStop = gridSubset.getGridSet().getNumLevels() - 1;
         }
 
-        TileRangeMask rasterMask = GeometryTileRangeMask.build(tileLayer, gridSubset,
+        TileRangeMask rasterMask = BitmapTileRangeMask.build(tileLayer, gridSubset,
                 geomInGridsetCrs);
 
         String layerName = tileLayer.getName();
@@ -219,10 +269,10 @@ class TruncateHelper {
         try {
             GWCTask[] tasks = breeder.createTasks(tileRange, TYPE.TRUNCATE, 1, false);
             breeder.dispatchTasks(tasks);
+            return tasks;
         } catch (GeoWebCacheException e) {
             throw Throwables.propagate(e);
         }
-
     }
 
     private static Geometry transformToGridsetCrs(Geometry minimalBounds,
@@ -0,0 +1,363 @@
+/* Copyright (c) 2014 OpenPlans. All rights reserved.
+ * This code is licensed under the GNU GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.geogig.geoserver.gwc;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.geoserver.gwc.layer.GeoServerTileLayer;
+import org.geoserver.platform.GeoServerExtensions;
+import org.geowebcache.GeoWebCacheExtensions;
+import org.geowebcache.seed.GWCTask;
+import org.geowebcache.seed.GWCTask.STATE;
+import org.geowebcache.seed.TileBreeder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Stopwatch;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.operation.union.UnaryUnionOp;
+
+/**
+ * Accumulates the truncate masks of a tile layer and gridset for a short period of time, and
+ * issues a single set of truncate tasks with their union, so that a burst of ref updates doesn't
+ * flood the {@link TileBreeder} with overlapping truncates.
+ * <p>
+ * The first mask scheduled for a layer and gridset starts the delay, set through the
+ * {@link #DELAY_PROPERTY} system property, context parameter, or environment variable in
+ * milliseconds (defaults to {@link #DEFAULT_DELAY}). Masks scheduled before the truncate is issued
+ * are merged into the pending one, and so are the masks of the truncate tasks previously issued for
+ * the same layer and gridset that are still queued in the {@link TileBreeder}, which get terminated.
+ */
+class TruncateScheduler {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TruncateScheduler.class);
+
+    static final String DELAY_PROPERTY = "GEOGIG_GWC_TRUNCATE_DELAY";
+
+    static final long DEFAULT_DELAY = 1000;
+
+    /**
+     * Milliseconds between checks for finished truncate tasks while there are any running
+     */
+    static final long COLLECT_INTERVAL = 250;
+
+    private static class Pending {
+
+        private GeoServerTileLayer tileLayer;
+
+        private final String gridsetId;
+
+        private final List<Geometry> masks = new ArrayList<Geometry>();
+
+        Pending(GeoServerTileLayer tileLayer, String gridsetId) {
+            this.tileLayer = tileLayer;
+            this.gridsetId = gridsetId;
+        }
+    }
+
+    /**
+     * The last truncate issued for a layer and gridset
+     */
+    private static class Issued {
+
+        private final Geometry mask;
+
+        private final List<GWCTask> tasks;
+
+        Issued(Geometry mask, List<GWCTask> tasks) {
+            this.mask = mask;
+            this.tasks = tasks;
+        }
+    }
+
+    private final ScheduledExecutorService executor;
+
+    private final long delay;
+
+    /**
+     * Pending truncates keyed by {@code <layer name>#<gridset id>}
+     */
+    private final Map<String, Pending> pending = new LinkedHashMap<String, Pending>();
+
+    /**
+     * Number of flushes issuing truncate tasks, guarded by {@link #pending}
+     */
+    private int flushing;
+
+    /**
+     * Last truncate issued by layer and gridset, only accessed by {@link #flush()}
+     */
+    private final Map<String, Issued> lastIssued = new HashMap<String, Issued>();
+
+    /**
+     * Tasks issued and not finished yet, to account for the tiles they remove
+     */
+    private final List<GWCTask> running = new ArrayList<GWCTask>();
+
+    /**
+     * Whether a check for finished tasks is scheduled, guarded by {@link #running}
+     */
+    private boolean collecting;
+
+    private final AtomicLong scheduled = new AtomicLong();
+
+    private final AtomicLong issued = new AtomicLong();
+
+    private final AtomicLong tilesRemoved = new AtomicLong();
+
+    TruncateScheduler(ScheduledExecutorService executor, long delay) {
+        this.executor = executor;
+        this.delay = delay;
+    }
+
+    TruncateScheduler(ScheduledExecutorService executor) {
+        this(executor, delay());
+    }
+
+    /**
+     * Schedules the truncation of the tile layer's gridset masked by {@code geomInGridsetCrs},
+     * merging it with the pending one for the same layer and gridset, if any
+     */
+    public void schedule(GeoServerTileLayer tileLayer, String gridsetId, Geometry geomInGridsetCrs) {
+        final String key = tileLayer.getName() + "#" + gridsetId;
+        final boolean first;
+        synchronized (pending) {
+            first = pending.isEmpty();
+            Pending p = pending.get(key);
+            if (p == null) {
+                p = new Pending(tileLayer, gridsetId);
+                pending.put(key, p);
+            } else {
+                // may have been reconfigured in the mean time
+                p.tileLayer = tileLayer;
+            }
+            p.masks.add(geomInGridsetCrs);
+        }
+        scheduled.incrementAndGet();
+        if (first) {
+            executor.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        flush();
+                    } catch (RuntimeException e) {
+                        LOGGER.error("Error issuing GWC truncate tasks", e);
+                    }
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Issues the truncate tasks for all the pending layers and gridsets
+     */
+    synchronized void flush() {
+        final List<Map.Entry<String, Pending>> flushed;
+        synchronized (pending) {
+            flushed = new ArrayList<Map.Entry<String, Pending>>(pending.entrySet());
+            pending.clear();
+            flushing++;
+        }
+        try {
+            issue(flushed);
+        } finally {
+            synchronized (pending) {
+                flushing--;
+                pending.notifyAll();
+            }
+        }
+    }
+
+    private void issue(List<Map.Entry<String, Pending>> flushed) {
+        collectFinished();
+        if (flushed.isEmpty()) {
+            return;
+        }
+
+        TileBreeder breeder = GeoWebCacheExtensions.bean(TileBreeder.class);
+        if (breeder == null) {
+            LOGGER.debug("TileBreeder not found, discarding {} truncates", flushed.size());
+            return;
+        }
+        Stopwatch sw = Stopwatch.createStarted();
+        int merged = 0;
+        for (Map.Entry<String, Pending> e : flushed) {
+            final String key = e.getKey();
+            final Pending p = e.getValue();
+            List<Geometry> masks = new ArrayList<Geometry>(p.masks);
+            Issued previous = lastIssued.remove(key);
+            if (previous != null && terminateQueued(previous, breeder)) {
+                masks.add(previous.mask);
+                merged++;
+            }
+            Geometry mask = masks.size() == 1 ? masks.get(0) : UnaryUnionOp.union(masks);
+            try {
+                List<GWCTask> tasks = TruncateHelper.truncate(p.tileLayer, p.gridsetId, mask,
+                        breeder);
+                lastIssued.put(key, new Issued(mask, tasks));
+                synchronized (running) {
+                    running.addAll(tasks);
+                }
+                issued.incrementAndGet();
+            } catch (RuntimeException ex) {
+                LOGGER.error("Error truncating layer {} on gridset {}", p.tileLayer.getName(),
+                        p.gridsetId, ex);
+            }
+        }
+        scheduleCollect();
+        LOGGER.debug(
+                "Issued {} GWC truncates in {}, {} merged with queued ones, {} masks scheduled, {} tiles removed so far",
+                flushed.size(), sw.stop(), merged, scheduled.get(), tilesRemoved.get());
+    }
+
+    /**
+     * Terminates the tasks of a previously issued truncate that haven't started yet.
+     * 
+     * @return {@code true} if any task was terminated, and hence its mask has to be truncated
+     *         again
+     */
+    private boolean terminateQueued(Issued previous, TileBreeder breeder) {
+        boolean terminated = false;
+        for (GWCTask task : previous.tasks) {
+            STATE state = task.getState();
+            if (state == STATE.UNSET || state == STATE.READY) {
+                terminated |= breeder.terminateGWCTask(task.getTaskId());
+            }
+        }
+        return terminated;
+    }
+
+    /**
+     * Periodically accounts for the tiles removed by the running tasks until all of them are
+     * finished
+     */
+    private void scheduleCollect() {
+        synchronized (running) {
+            if (collecting || running.isEmpty()) {
+                return;
+            }
+            collecting = true;
+        }
+        executor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                boolean more;
+                try {
+                    collectFinished();
+                } finally {
+                    synchronized (running) {
+                        collecting = false;
+                        more = !running.isEmpty();
+                    }
+                }
+                if (more) {
+                    scheduleCollect();
+                }
+            }
+        }, COLLECT_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    private void collectFinished() {
+        synchronized (running) {
+            boolean removed = false;
+            for (Iterator<GWCTask> it = running.iterator(); it.hasNext();) {
+                GWCTask task = it.next();
+                STATE state = task.getState();
+                if (state == STATE.DONE || state == STATE.DEAD) {
+                    tilesRemoved.addAndGet(task.getTilesDone());
+                    it.remove();
+                    removed = true;
+                }
+            }
+            if (removed) {
+                running.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Waits for the pending truncates to be issued and for the issued tasks to finish.
+     * 
+     * @return {@code true} if there's no truncate left, {@code false} if the timeout elapsed first
+     */
+    public boolean awaitIdle(long timeout, TimeUnit unit) throws InterruptedException {
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (pending) {
+            while (!pending.isEmpty() || flushing > 0) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(pending, remaining);
+            }
+        }
+        synchronized (running) {
+            collectFinished();
+            while (!running.isEmpty()) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                // tasks don't notify when done, check again at least every collect interval
+                TimeUnit.NANOSECONDS.timedWait(running,
+                        Math.min(remaining, TimeUnit.MILLISECONDS.toNanos(COLLECT_INTERVAL)));
+                collectFinished();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the number of layer and gridset truncates waiting to be issued
+     */
+    public int getQueueDepth() {
+        synchronized (pending) {
+            return pending.size();
+        }
+    }
+
+    /**
+     * @return the number of masks scheduled, before merging
+     */
+    public long getScheduled() {
+        return scheduled.get();
+    }
+
+    /**
+     * @return the number of layer and gridset truncates issued, after merging
+     */
+    public long getIssued() {
+        return issued.get();
+    }
+
+    /**
+     * @return the number of tiles removed by the finished truncate tasks
+     */
+    public long getTilesRemoved() {
+        collectFinished();
+        return tilesRemoved.get();
+    }
+
+    static long delay() {
+        String value = GeoServerExtensions.getProperty(DELAY_PROPERTY);
+        if (value != null) {
+            try {
+                return Long.parseLong(value.trim());
+            } catch (NumberFormatException e) {
+                LOGGER.warn("Invalid value for {}: '{}', using default {}", DELAY_PROPERTY, value,
+                        DEFAULT_DELAY);
+            }
+        }
+        return DEFAULT_DELAY;
+    }
+}
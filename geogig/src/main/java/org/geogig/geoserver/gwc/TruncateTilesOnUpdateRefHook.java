@@ -9,12 +9,25 @@ import static com.google.common.base.Preconditions.checkState;
 import static org.geoserver.catalog.Predicates.and;
 import static org.geoserver.catalog.Predicates.equal;
 
+import java.io.IOException;
 import java.io.Serializable;
+import java.net.URL;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor.CallerRunsPolicy;
+import java.util.concurrent.TimeUnit;
 
 import javax.annotation.Nullable;
 
+import org.geogig.geoserver.config.RepositoryInfo;
+import org.geogig.geoserver.config.RepositoryManager;
 import org.geoserver.catalog.Catalog;
 import org.geoserver.catalog.DataStoreInfo;
 import org.geoserver.catalog.LayerInfo;
@@ -22,10 +35,10 @@ import org.geoserver.catalog.StoreInfo;
 import org.geoserver.catalog.util.CloseableIterator;
 import org.geoserver.gwc.GWC;
 import org.geoserver.gwc.layer.GeoServerTileLayer;
-import org.geowebcache.GeoWebCacheExtensions;
-import org.geowebcache.seed.TileBreeder;
 import org.locationtech.geogig.api.AbstractGeoGigOp;
 import org.locationtech.geogig.api.Context;
+import org.locationtech.geogig.api.GeoGIG;
+import org.locationtech.geogig.api.ObjectId;
 import org.locationtech.geogig.api.Ref;
 import org.locationtech.geogig.api.SymRef;
 import org.locationtech.geogig.api.hooks.CannotRunGeogigOperationException;
@@ -35,6 +48,7 @@ import org.locationtech.geogig.api.plumbing.RefParse;
 import org.locationtech.geogig.api.plumbing.UpdateRef;
 import org.locationtech.geogig.geotools.data.GeoGigDataStore;
 import org.locationtech.geogig.geotools.data.GeoGigDataStoreFactory;
+import org.locationtech.geogig.repository.Repository;
 import org.opengis.filter.Filter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -43,6 +57,8 @@ import com.google.common.base.Optional;
 import com.google.common.base.Stopwatch;
 import com.google.common.collect.LinkedListMultimap;
 import com.google.common.collect.ListMultimap;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.vividsolutions.jts.geom.Geometry;
 
 /**
  * A "classpath" command hook that hooks onto the {@link UpdateRef} command and truncates GWC tiles
@@ -66,6 +82,32 @@ public class TruncateTilesOnUpdateRefHook implements CommandHook {
     private static final Filter GEOGIG_LAYERINFO_FILTER = and(equal("enabled", Boolean.TRUE),
             equal("resource.store.type", GeoGigDataStoreFactory.DISPLAY_NAME));
 
+    /**
+     * Bounded executor running the truncation of the layers affected by a ref update in the
+     * background. Falls back to running the truncation in the calling thread when the queue is full.
+     */
+    private static final ThreadPoolExecutor EXECUTOR;
+    static {
+        int threads = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2));
+        ThreadFactory threadFactory = new ThreadFactoryBuilder().setDaemon(true)
+                .setNameFormat("geogig-gwc-truncate-%d").build();
+        EXECUTOR = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(100), threadFactory, new CallerRunsPolicy());
+        EXECUTOR.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Merges the truncates issued for the same layer and gridset by ref updates in close succession
+     */
+    private static final TruncateScheduler SCHEDULER = new TruncateScheduler(
+            Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setDaemon(true)
+                    .setNameFormat("geogig-gwc-truncate-scheduler-%d").build()));
+
+    /**
+     * Number of truncations submitted to {@link #EXECUTOR} and not finished, guarded by itself
+     */
+    private static final int[] IN_FLIGHT = new int[1];
+
     @Override
     public boolean appliesTo(Class<? extends AbstractGeoGigOp<?>> clazz) {
         return UpdateRef.class.equals(clazz);
@@ -133,31 +175,135 @@ public class TruncateTilesOnUpdateRefHook implements CommandHook {
             return (T) retVal;
         }
 
-        List<LayerInfo> affectedLayers;
         final String newRefName = newValue.get().getName();
-        Stopwatch sw = Stopwatch.createStarted();
-        affectedLayers = findAffectedLayers(mediator, command.context(), newRefName);
-        LOGGER.debug("GWC geogig truncate post-hook found {} affected layers on branch {} in {}.",
-                affectedLayers.size(), refName, sw.stop());
+        final ObjectId oldCommit = oldValue.isPresent() ? oldValue.get().getObjectId()
+                : ObjectId.NULL;
+        final ObjectId newCommit = newValue.isPresent() ? newValue.get().getObjectId()
+                : ObjectId.NULL;
+
+        final String repoId = findRepositoryId(command.context());
+        if (repoId == null) {
+            // can't reacquire the repository later, truncate while the command's one is open
+            LOGGER.debug("Repository of ref '{}' not configured in GeoServer, truncating inline",
+                    refName);
+            try {
+                truncate(mediator, command.context(), newRefName, oldCommit, newCommit);
+            } catch (RuntimeException e) {
+                LOGGER.error("Error truncating tiles for ref '{}' change {}...{}", refName,
+                        oldCommit, newCommit, e);
+            }
+            return (T) retVal;
+        }
 
-        for (LayerInfo layer : affectedLayers) {
-            truncate(mediator, command.context(), layer, oldValue, newValue);
+        // don't make the client wait for the truncation. The command's repository may be closed
+        // or evicted by the time it runs, so get it from the RepositoryManager
+        synchronized (IN_FLIGHT) {
+            IN_FLIGHT[0]++;
         }
+        EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    GeoGIG geogig = RepositoryManager.get().getRepository(repoId);
+                    truncate(mediator, geogig.getContext(), newRefName, oldCommit, newCommit);
+                } catch (IOException | RuntimeException e) {
+                    LOGGER.error("Error truncating tiles for ref '{}' change {}...{}", refName,
+                            oldCommit, newCommit, e);
+                } finally {
+                    synchronized (IN_FLIGHT) {
+                        IN_FLIGHT[0]--;
+                        IN_FLIGHT.notifyAll();
+                    }
+                }
+            }
+        });
         return (T) retVal;
     }
 
-    private void truncate(GWC mediator, Context geogigContext, LayerInfo layer,
-            Optional<Ref> oldValue, Optional<Ref> newValue) {
+    /**
+     * @return the id of the repository the command runs on, or {@code null} if it's not one
+     *         configured in GeoServer
+     */
+    @Nullable
+    private static String findRepositoryId(Context context) {
+        Repository repository = context.repository();
+        URL location = repository == null ? null : repository.getLocation();
+        if (location == null) {
+            return null;
+        }
+        try {
+            RepositoryInfo info = RepositoryManager.get().findByLocation(location);
+            return info == null ? null : info.getId();
+        } catch (RuntimeException e) {
+            LOGGER.debug("Can't look up the repository at {}", location, e);
+            return null;
+        }
+    }
+
+    /**
+     * Waits for the truncations running in the background to issue their truncate tasks, and for
+     * those tasks to finish.
+     * 
+     * @return {@code true} if all of them finished, {@code false} if the timeout elapsed first
+     */
+    static boolean awaitIdle(long timeout, TimeUnit unit) throws InterruptedException {
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (IN_FLIGHT) {
+            while (IN_FLIGHT[0] > 0) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(IN_FLIGHT, remaining);
+            }
+        }
+        long remaining = Math.max(0, deadline - System.nanoTime());
+        return SCHEDULER.awaitIdle(remaining, TimeUnit.NANOSECONDS);
+    }
+
+    private void truncate(GWC mediator, Context context, String newRefName, ObjectId oldCommit,
+            ObjectId newCommit) {
 
-        GeoServerTileLayer tileLayer = mediator.getTileLayer(layer);
-        if (tileLayer == null) {
+        final Stopwatch total = Stopwatch.createStarted();
+        Stopwatch sw = Stopwatch.createStarted();
+        List<LayerInfo> affectedLayers = findAffectedLayers(mediator, context, newRefName);
+        LOGGER.debug("GWC geogig truncate post-hook found {} affected layers on branch {} in {}.",
+                affectedLayers.size(), newRefName, sw.stop());
+        if (affectedLayers.isEmpty()) {
             return;
         }
 
-        TileBreeder breeder = GeoWebCacheExtensions.bean(TileBreeder.class);
-        checkState(breeder != null);// if GWC wasn't installed it should have returned earlier
-        TruncateHelper.issueTruncateTasks(geogigContext, oldValue, newValue, tileLayer, breeder);
+        Map<LayerInfo, GeoServerTileLayer> tileLayers = new LinkedHashMap<LayerInfo, GeoServerTileLayer>();
+        Set<String> treeNames = new HashSet<String>();
+        for (LayerInfo layer : affectedLayers) {
+            GeoServerTileLayer tileLayer = mediator.getTileLayer(layer);
+            if (tileLayer != null) {
+                tileLayers.put(layer, tileLayer);
+                treeNames.add(treeName(layer));
+            }
+        }
+        if (tileLayers.isEmpty()) {
+            return;
+        }
+
+        sw.reset().start();
+        Map<String, Geometry> diffBounds = TruncateHelper.computeDiffBounds(context, oldCommit,
+                newCommit, treeNames);
+        final Stopwatch boundsTime = sw.stop();
+
+        for (Map.Entry<LayerInfo, GeoServerTileLayer> e : tileLayers.entrySet()) {
+            Geometry minimalBounds = diffBounds.get(treeName(e.getKey()));
+            TruncateHelper.issueTruncateTasks(e.getValue(), minimalBounds, SCHEDULER);
+        }
+        LOGGER.info(
+                "GWC geogig truncate on branch {} for change {}...{}: {} layers, {} trees, diff bounds computed in {}, total {}. {} truncates pending, {} tiles removed so far",
+                newRefName, oldCommit, newCommit, tileLayers.size(), treeNames.size(),
+                boundsTime, total.stop(), SCHEDULER.getQueueDepth(),
+                SCHEDULER.getTilesRemoved());
+    }
 
+    private static String treeName(LayerInfo layer) {
+        return layer.getResource().getNativeName();
     }
 
     private List<LayerInfo> findAffectedLayers(GWC mediator, Context context, String newRefName) {
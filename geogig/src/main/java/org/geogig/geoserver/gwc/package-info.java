@@ -14,8 +14,13 @@
  * For the affected tile layers, the {@link org.geogig.geoserver.gwc.MinimalDiffBounds} command is used to compute
  * the so called "minimal bounds" of the diff between the old and new trees pointed by the ref update and
  * the layer's tree path, which is a geometry that's big enough to cover the changes but much smaller than
- * the whole bounds, so that the number of tiles truncated is minimized.
+ * the whole bounds, so that the number of tiles truncated is minimized. The
+ * {@link org.geogig.geoserver.gwc.MinimalDiffBoundsByTree} variant computes it for all the affected layers'
+ * trees in a single diff traversal, and the results are kept for the layers and gridsets sharing a tree.
+ * The truncation runs on a bounded background executor so that the client updating the ref doesn't wait.
  * <p>
  * That geometry is then used as a mask to issue GWC truncate tasks for each of the layer's configured gridset and styles.
+ * The {@link org.geogig.geoserver.gwc.BitmapTileRangeMask mask} rasterizes the geometry once per zoom level, so that
+ * looking up whether a tile is to be truncated doesn't involve a geometry operation.
  */
 package org.geogig.geoserver.gwc;
\ No newline at end of file
@@ -2,7 +2,10 @@ package org.geogig.geoserver.web.security;
 
 import java.util.Arrays;
 import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.wicket.Component;
 import org.apache.wicket.ResourceReference;
@@ -17,6 +20,7 @@ import org.apache.wicket.model.Model;
 import org.apache.wicket.util.file.File;
 import org.geogig.geoserver.config.LogEvent;
 import org.geogig.geoserver.config.LogEvent.Severity;
+import org.geogig.geoserver.config.LogQuery;
 import org.geogig.geoserver.config.LogStore;
 import org.geoserver.platform.GeoServerExtensions;
 import org.geoserver.web.GeoServerBasePage;
@@ -182,6 +186,48 @@ public class SecurityLogsPanel extends GeoServerTablePanel<LogEvent> {
             return logStore;
         }
 
+        /**
+         * Event id of the entry right before a given offset, as seen on the pages already
+         * retrieved, so that the following pages are queried by keyset instead of by offset
+         */
+        private transient Map<Integer, Long> cursors;
+
+        @Override
+        public Iterator<LogEvent> iterator(int first, int count) {
+            if (getSort() != null || isFiltered()) {
+                // sorting and keyword filtering are done in memory
+                return super.iterator(first, count);
+            }
+            if (cursors == null || cursors.size() > 100) {
+                cursors = new HashMap<Integer, Long>();
+            }
+            LogStore logStore = logStore();
+            List<LogEvent> page;
+            Long before = first == 0 ? null : cursors.get(first);
+            if (first == 0 || before != null) {
+                page = logStore.getLogEntries(new LogQuery().setBefore(before).setLimit(count));
+            } else {
+                page = logStore.getLogEntries(first, count);
+            }
+            if (!page.isEmpty()) {
+                cursors.put(first + page.size(), page.get(page.size() - 1).getEventId());
+            }
+            return page.iterator();
+        }
+
+        @Override
+        public int size() {
+            if (isFiltered()) {
+                return super.size();
+            }
+            return fullSize();
+        }
+
+        private boolean isFiltered() {
+            String[] keywords = getKeywords();
+            return keywords != null && keywords.length > 0;
+        }
+
         @Override
         protected List<LogEvent> getItems() {
             // if (items == null) {
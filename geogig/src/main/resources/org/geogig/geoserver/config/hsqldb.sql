@@ -46,3 +46,7 @@ CREATE TABLE logging_event_exception (
   trace_line VARCHAR(256) NOT NULL,
   PRIMARY KEY(event_id, i),
   FOREIGN KEY (event_id) REFERENCES logging_event(event_id));
+
+-- used by the time range filters and retention. LogStore creates it on startup if missing,
+-- for databases created before it was added here, or run it by hand if the user can't alter the schema
+CREATE INDEX logging_event_timestmp ON logging_event (timestmp);
@@ -61,3 +61,9 @@ CREATE TABLE logging_event_exception
     FOREIGN KEY (event_id) REFERENCES logging_event(event_id)
   );
 COMMIT;
+
+BEGIN;
+-- used by the time range filters and retention. LogStore creates it on startup if missing,
+-- for databases created before it was added here, or run it by hand if the user can't alter the schema
+CREATE INDEX logging_event_timestmp ON logging_event (timestmp);
+COMMIT;
@@ -226,6 +226,94 @@ public class AbstractLogStoreTest {
         assertEquals(3, logStore.getFullSize());
     }
 
+    @Test
+    public void testKeysetQuery() throws Exception {
+        logStore.afterPropertiesSet();
+
+        Throwable ex = new RuntimeException("test exception");
+        ex.fillInStackTrace();
+
+        logStore.debug(repoUrl, "debug message 1");
+        logStore.error(repoUrl, "error message 1", ex);
+        logStore.info(repoUrl, "info message 1");
+        logStore.debug("/home/testuser/repos/other", "debug message 2");
+        logStore.error(repoUrl, "error message 2", ex);
+        logStore.info(repoUrl, "info message 2");
+
+        List<LogEvent> page = logStore.getLogEntries(new LogQuery().setLimit(4));
+        assertEquals(4, page.size());
+        assertEquals("info message 2", page.get(0).getMessage());
+
+        long last = page.get(3).getEventId();
+        page = logStore.getLogEntries(new LogQuery().setBefore(last).setLimit(4));
+        assertEquals(2, page.size());
+        assertEquals("error message 1", page.get(0).getMessage());
+        assertEquals("debug message 1", page.get(1).getMessage());
+
+        assertEquals(2, logStore.getLogEntries(new LogQuery().setSeverities(ERROR)).size());
+        assertEquals(1,
+                logStore.getLogEntries(new LogQuery().setSeverities(DEBUG).setRepoUrl(repoUrl))
+                        .size());
+        assertEquals(5, logStore.getLogEntries(new LogQuery().setRepoUrl(repoUrl)).size());
+        assertEquals(0,
+                logStore.getLogEntries(new LogQuery().setSince(System.currentTimeMillis() + 1000))
+                        .size());
+    }
+
+    @Test
+    public void testPrune() throws Exception {
+        logStore.afterPropertiesSet();
+
+        logStore.info(repoUrl, "info message 1");
+        Throwable ex = new RuntimeException("test exception");
+        ex.fillInStackTrace();
+        logStore.error(repoUrl, "error message 1", ex);
+        assertEquals(2, logStore.getFullSize());
+        long errorId = logStore.getLogEntries(0, 1).get(0).getEventId();
+
+        Thread.sleep(10);
+        final long threshold = System.currentTimeMillis();
+        logStore.info(repoUrl, "info message 2");
+
+        assertEquals(2, logStore.prune(threshold));
+        assertEquals(1, logStore.getFullSize());
+        assertEquals("info message 2", logStore.getLogEntries(0, 10).get(0).getMessage());
+        assertNull(logStore.getStackTrace(errorId));
+    }
+
+    @Test
+    public void testPruneInBatches() throws Exception {
+        logStore.afterPropertiesSet();
+
+        for (int i = 0; i < 25; i++) {
+            logStore.info(repoUrl, "info message " + i);
+        }
+        assertEquals(25, logStore.getFullSize());
+
+        Thread.sleep(10);
+        final long threshold = System.currentTimeMillis();
+        logStore.info(repoUrl, "info message 25");
+
+        assertEquals(25, logStore.prune(threshold, 10));
+        assertEquals(1, logStore.getFullSize());
+        assertEquals("info message 25", logStore.getLogEntries(0, 10).get(0).getMessage());
+        assertEquals(0, logStore.prune(threshold, 10));
+    }
+
+    @Test
+    public void testWritesInBackground() throws Exception {
+        logStore.afterPropertiesSet();
+
+        for (int i = 0; i < 500; i++) {
+            logStore.info(repoUrl, "info message " + i);
+        }
+        // queries wait for the pending events
+        assertEquals(500, logStore.getFullSize());
+        assertEquals(0, logStore.getQueueDepth());
+        assertEquals(0, logStore.getDroppedEvents());
+        assertEquals("info message 499", logStore.getLogEntries(0, 1).get(0).getMessage());
+    }
+
     protected void runScript(String driverClassName, String jdbcUrl, URL script, String user,
             String password) {
         List<String> statements = parseStatements(script);
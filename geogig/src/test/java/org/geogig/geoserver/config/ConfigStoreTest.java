@@ -202,6 +202,41 @@ public class ConfigStoreTest {
         assertEquals(expected, new HashSet<RepositoryInfo>(all));
     }
 
+    @Test
+    public void getRepositoriesReflectsChanges() {
+        store.save(dummy(1));
+        assertEquals(1, store.getRepositories().size());
+        store.save(dummy(2));
+        assertEquals(2, store.getRepositories().size());
+        assertTrue(store.delete(dummy(1).getId()));
+        assertEquals(Sets.newHashSet(dummy(2)), new HashSet<RepositoryInfo>(store.getRepositories()));
+    }
+
+    @Test
+    public void getRepositoriesReturnsCopies() throws Exception {
+        store.save(dummy(1));
+        RepositoryInfo info = store.getRepositories().get(0);
+        info.setName("modified");
+        assertEquals("name-1", store.getRepositories().get(0).getName());
+        assertEquals("name-1", store.load(info.getId()).getName());
+    }
+
+    @Test
+    public void getRepositoriesByNameAndLocation() {
+        store.save(dummy(1));
+        store.save(dummy(2));
+        RepositoryInfo same = dummy(3);
+        same.setName("name-1");
+        store.save(same);
+
+        assertEquals(Sets.newHashSet(dummy(1), same),
+                new HashSet<RepositoryInfo>(store.getRepositoriesByName("name-1")));
+        assertTrue(store.getRepositoriesByName("name-4").isEmpty());
+
+        assertEquals(dummy(2), store.getRepositoryByLocation(dummy(2).getLocation()));
+        assertNull(store.getRepositoryByLocation(dummy(4).getLocation()));
+    }
+
     @Test
     public void delete() throws Exception {
         final String dummyId = "94bcb762-9ee9-4b43-a912-063509966988";
@@ -0,0 +1,167 @@
+package org.geogig.geoserver.config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.locationtech.geogig.api.GeoGIG;
+import org.locationtech.geogig.api.porcelain.InitOp;
+
+import com.google.common.collect.ImmutableSet;
+
+public class RepositoryCacheTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private RepositoryManager manager;
+
+    private RepositoryCache cache;
+
+    @Before
+    public void before() throws Exception {
+        manager = mock(RepositoryManager.class);
+        for (int i = 1; i <= 24; i++) {
+            String name = "repo" + i;
+            File dir = tempFolder.newFolder(name);
+            GeoGIG geogig = new GeoGIG(dir);
+            try {
+                geogig.command(InitOp.class).call();
+            } finally {
+                geogig.close();
+            }
+            RepositoryInfo info = new RepositoryInfo(name + "-id");
+            info.setLocation(dir.getAbsolutePath());
+            when(manager.get(info.getId())).thenReturn(info);
+        }
+    }
+
+    @After
+    public void after() {
+        if (cache != null) {
+            cache.dispose();
+        }
+    }
+
+    private RepositoryCache cache(int maxSize, Set<String> pinned) {
+        // no background health checks, run them explicitly
+        return cache = new RepositoryCache(manager, maxSize, pinned, 0);
+    }
+
+    @Test
+    public void testStats() throws Exception {
+        cache(2, Collections.<String> emptySet());
+        GeoGIG geogig = cache.get("repo1-id");
+        assertSame(geogig, cache.get("repo1-id"));
+        assertSame(geogig, cache.get("repo1-id"));
+
+        RepositoryCache.RepositoryStats stats = cache.getStats("repo1-id");
+        assertEquals(1, stats.getMisses());
+        assertEquals(2, stats.getHits());
+        assertEquals(0, stats.getWarmUps());
+    }
+
+    @Test
+    public void testWarmUpNotCountedAsRequests() throws Exception {
+        cache(2, Collections.<String> emptySet());
+        cache.warmUp(Collections.singleton(manager.get("repo1-id")));
+        awaitOpen("repo1-id");
+
+        cache.get("repo1-id");
+        RepositoryCache.RepositoryStats stats = cache.getStats("repo1-id");
+        assertEquals(1, stats.getWarmUps());
+        assertEquals(0, stats.getMisses());
+        assertEquals(1, stats.getHits());
+    }
+
+    @Test
+    public void testEviction() throws Exception {
+        cache(1, Collections.<String> emptySet());
+        cache.get("repo1-id");
+        cache.get("repo2-id");
+        assertEquals(ImmutableSet.of("repo2-id"), cache.getOpenRepositories());
+    }
+
+    @Test
+    public void testPoolSize() throws Exception {
+        cache(22, Collections.<String> emptySet());
+        Set<String> expected = new HashSet<String>();
+        for (int i = 1; i <= 22; i++) {
+            cache.get("repo" + i + "-id");
+            expected.add("repo" + i + "-id");
+        }
+        // all of them kept open up to the pool size
+        assertEquals(expected, cache.getOpenRepositories());
+
+        cache.get("repo23-id");
+        assertEquals(22, cache.getOpenRepositories().size());
+        assertFalse(cache.getOpenRepositories().contains("repo1-id"));
+    }
+
+    @Test
+    public void testPinnedNotEvicted() throws Exception {
+        // pinned by name
+        cache(1, ImmutableSet.of("repo1"));
+        GeoGIG pinned = cache.get("repo1-id");
+        cache.get("repo2-id");
+        cache.get("repo3-id");
+        assertEquals(ImmutableSet.of("repo1-id", "repo3-id"), cache.getOpenRepositories());
+        assertSame(pinned, cache.get("repo1-id"));
+    }
+
+    @Test
+    public void testHealthCheck() throws Exception {
+        cache(2, Collections.<String> emptySet());
+        cache.get("repo1-id");
+        cache.get("repo2-id");
+        cache.checkHealth();
+        assertEquals(ImmutableSet.of("repo1-id", "repo2-id"), cache.getOpenRepositories());
+
+        delete(new File(tempFolder.getRoot(), "repo1"));
+        cache.checkHealth();
+        assertEquals(ImmutableSet.of("repo2-id"), cache.getOpenRepositories());
+    }
+
+    @Test
+    public void testDispose() throws Exception {
+        cache(2, Collections.<String> emptySet());
+        cache.get("repo1-id");
+        cache.dispose();
+        assertTrue(cache.getOpenRepositories().isEmpty());
+        cache = null;
+    }
+
+    private void awaitOpen(String repoId) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (!cache.getOpenRepositories().contains(repoId)) {
+            assertTrue("repository not opened in time", System.nanoTime() < deadline);
+            Thread.sleep(10);
+        }
+        assertNotNull(cache.getStats(repoId));
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        assertTrue(file.delete());
+    }
+}
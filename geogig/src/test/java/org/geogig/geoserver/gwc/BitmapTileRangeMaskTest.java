@@ -0,0 +1,57 @@
+package org.geogig.geoserver.gwc;
+
+import static org.junit.Assert.assertEquals;
+
+import org.geowebcache.grid.GridSetBroker;
+import org.geowebcache.grid.GridSubset;
+import org.geowebcache.grid.GridSubsetFactory;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.io.WKTReader;
+
+public class BitmapTileRangeMaskTest {
+
+    private GridSubset gridSubset;
+
+    private Geometry mask;
+
+    @Before
+    public void before() throws Exception {
+        GridSetBroker broker = new GridSetBroker(false, false);
+        gridSubset = GridSubsetFactory.createGridSubSet(broker.WORLD_EPSG4326);
+        mask = new WKTReader().read("MULTIPOLYGON(((-10 -10, 20 -10, 20 5, -10 -10)),"
+                + "((100 40, 101 40, 101 41, 100 41, 100 40)))");
+    }
+
+    @Test
+    public void testSameAsGeometryMask() {
+        GeometryTileRangeMask geometryMask = GeometryTileRangeMask.build(null, gridSubset, mask);
+        BitmapTileRangeMask bitmapMask = new BitmapTileRangeMask(geometryMask,
+                BitmapTileRangeMask.DEFAULT_MAX_TILES);
+        assertSameLookups(geometryMask, bitmapMask, 8);
+    }
+
+    @Test
+    public void testFallback() {
+        GeometryTileRangeMask geometryMask = GeometryTileRangeMask.build(null, gridSubset, mask);
+        // only the first levels are rasterized
+        BitmapTileRangeMask bitmapMask = new BitmapTileRangeMask(geometryMask, 64);
+        assertSameLookups(geometryMask, bitmapMask, 8);
+    }
+
+    private void assertSameLookups(GeometryTileRangeMask expected, BitmapTileRangeMask actual,
+            int maxLevel) {
+        long[][] coverages = gridSubset.getCoverages();
+        for (int z = 0; z <= maxLevel; z++) {
+            long[] coverage = coverages[z];
+            for (long x = coverage[0]; x <= coverage[2]; x++) {
+                for (long y = coverage[1]; y <= coverage[3]; y++) {
+                    assertEquals("tile " + x + "," + y + "," + z, expected.lookup(x, y, z),
+                            actual.lookup(x, y, z));
+                }
+            }
+        }
+    }
+}
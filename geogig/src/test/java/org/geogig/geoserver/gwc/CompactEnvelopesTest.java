@@ -0,0 +1,69 @@
+package org.geogig.geoserver.gwc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+
+public class CompactEnvelopesTest {
+
+    private final GeometryFactory factory = new GeometryFactory();
+
+    @Test
+    public void testEmpty() {
+        CompactEnvelopes envelopes = new CompactEnvelopes();
+        assertTrue(envelopes.isEmpty());
+        assertTrue(envelopes.buildGeometry(factory).isEmpty());
+    }
+
+    @Test
+    public void testMergesContained() {
+        CompactEnvelopes envelopes = new CompactEnvelopes();
+        envelopes.add(new Envelope(0, 10, 0, 10));
+        envelopes.add(new Envelope(20, 30, 20, 30));
+        envelopes.add(new Envelope(1, 2, 1, 2));
+        envelopes.add(new Envelope(5, 10, 5, 10));
+        envelopes.compact();
+        assertEquals(2, envelopes.size());
+
+        Geometry geom = envelopes.buildGeometry(factory);
+        assertEquals(200, geom.getArea(), 1e-9);
+    }
+
+    @Test
+    public void testDoesNotGrowDisjoint() {
+        CompactEnvelopes envelopes = new CompactEnvelopes();
+        // overlapping diagonally, merging them would add area not covered by either
+        envelopes.add(new Envelope(0, 10, 0, 10));
+        envelopes.add(new Envelope(9, 19, 9, 19));
+        envelopes.compact();
+        assertEquals(2, envelopes.size());
+        assertEquals(199, envelopes.buildGeometry(factory).getArea(), 1e-9);
+    }
+
+    @Test
+    public void testDegradesToBounds() {
+        CompactEnvelopes envelopes = new CompactEnvelopes(10);
+        for (int i = 0; i < 2000; i++) {
+            envelopes.add(new Envelope(2 * i, 2 * i + 1, 0, 1));
+        }
+        assertTrue(envelopes.isDegraded());
+        Geometry geom = envelopes.buildGeometry(factory);
+        assertEquals(new Envelope(0, 3999, 0, 1), geom.getEnvelopeInternal());
+    }
+
+    @Test
+    public void testCompactsWhileGrowing() {
+        CompactEnvelopes envelopes = new CompactEnvelopes(10);
+        for (int i = 0; i < 5000; i++) {
+            envelopes.add(new Envelope(0, 10, 0, 10));
+        }
+        assertFalse(envelopes.isDegraded());
+        assertEquals(100, envelopes.buildGeometry(factory).getArea(), 1e-9);
+    }
+}
@@ -2,8 +2,10 @@ package org.geogig.geoserver.gwc;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import org.geogig.geoserver.GeoGigTestData;
 import org.geogig.geoserver.GeoGigTestData.CatalogBuilder;
@@ -147,8 +149,8 @@ public class GWCIntegrationTest extends GeoServerSystemTestSupport {
                 .add()//
                 .commit("moved LINESTRING(-10 0, 10 0) to LINESTRING(0 10, 0 -10)");
 
-        // give the hook some time to run
-        Thread.sleep(100);
+        // wait for the hook to issue the truncate tasks and for them to finish
+        assertTrue(TruncateTilesOnUpdateRefHook.awaitIdle(30, TimeUnit.SECONDS));
         result = pointsLayer.getTile(tile);
         cacheResult = result.getCacheResult();
         assertEquals(CacheResult.MISS, cacheResult);
@@ -0,0 +1,84 @@
+package org.geogig.geoserver.gwc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.geoserver.gwc.layer.GeoServerTileLayer;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.io.WKTReader;
+
+public class TruncateSchedulerTest {
+
+    private ScheduledExecutorService executor;
+
+    private TruncateScheduler scheduler;
+
+    private GeoServerTileLayer points, lines;
+
+    @Before
+    public void before() {
+        executor = mock(ScheduledExecutorService.class);
+        scheduler = new TruncateScheduler(executor, 500);
+        points = mock(GeoServerTileLayer.class);
+        when(points.getName()).thenReturn("points");
+        lines = mock(GeoServerTileLayer.class);
+        when(lines.getName()).thenReturn("lines");
+    }
+
+    private Geometry geom(String wkt) throws Exception {
+        return new WKTReader().read(wkt);
+    }
+
+    @Test
+    public void testMergesSameLayerAndGridset() throws Exception {
+        scheduler.schedule(points, "EPSG:4326", geom("POINT(0 0)"));
+        scheduler.schedule(points, "EPSG:4326", geom("POINT(1 1)"));
+        scheduler.schedule(points, "EPSG:900913", geom("POINT(0 0)"));
+        scheduler.schedule(lines, "EPSG:4326", geom("POINT(0 0)"));
+
+        assertEquals(3, scheduler.getQueueDepth());
+        assertEquals(4, scheduler.getScheduled());
+        // a single flush scheduled for the whole burst
+        verify(executor, times(1)).schedule(any(Runnable.class), eq(500L),
+                eq(TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testFlushStartsNewWindow() throws Exception {
+        scheduler.schedule(points, "EPSG:4326", geom("POINT(0 0)"));
+        // no TileBreeder in this context, pending truncates are discarded
+        scheduler.flush();
+        assertEquals(0, scheduler.getQueueDepth());
+
+        scheduler.schedule(points, "EPSG:4326", geom("POINT(0 0)"));
+        assertEquals(1, scheduler.getQueueDepth());
+        verify(executor, times(2)).schedule(any(Runnable.class), anyLong(),
+                any(TimeUnit.class));
+    }
+
+    @Test
+    public void testAwaitIdle() throws Exception {
+        assertTrue(scheduler.awaitIdle(0, TimeUnit.MILLISECONDS));
+
+        scheduler.schedule(points, "EPSG:4326", geom("POINT(0 0)"));
+        // the mock executor never runs the flush
+        assertFalse(scheduler.awaitIdle(10, TimeUnit.MILLISECONDS));
+
+        scheduler.flush();
+        assertTrue(scheduler.awaitIdle(10, TimeUnit.MILLISECONDS));
+    }
+}
@@ -5,6 +5,7 @@
  package org.opengeo.gsr.core.feature;
 
 import java.io.IOException;
+import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -13,21 +14,43 @@ import net.sf.json.util.JSONBuilder;
 import org.geotools.feature.FeatureCollection;
 import org.geotools.feature.FeatureIterator;
 import org.geotools.feature.FeatureTypes;
+import org.opengeo.gsr.core.format.JsonStreamWriter;
+import org.opengeo.gsr.core.format.JsonStreamWriter.Key;
 import org.opengeo.gsr.core.geometry.GeometryEncoder;
 import org.opengeo.gsr.core.geometry.GeometryTypeEnum;
+import org.opengeo.gsr.core.geometry.Quantization;
 import org.opengeo.gsr.core.geometry.SpatialReference;
 import org.opengeo.gsr.core.geometry.SpatialReferenceEncoder;
 import org.opengeo.gsr.core.geometry.SpatialReferences;
 import org.opengis.feature.Feature;
 import org.opengis.feature.GeometryAttribute;
 import org.opengis.feature.Property;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
 import org.opengis.feature.type.FeatureType;
 import org.opengis.feature.type.GeometryDescriptor;
 import org.opengis.feature.type.GeometryType;
 import org.opengis.feature.type.PropertyDescriptor;
 import org.opengis.referencing.FactoryException;
 
+import com.vividsolutions.jts.simplify.DouglasPeuckerSimplifier;
+
 public class FeatureEncoder {
+    private static final Key OBJECT_ID_FIELD_NAME = new Key("objectIdFieldName");
+    private static final Key GLOBAL_ID_FIELD_NAME = new Key("globalIdFieldName");
+    private static final Key GEOMETRY_TYPE = new Key("geometryType");
+    private static final Key SPATIAL_REFERENCE = new Key("spatialReference");
+    private static final Key FIELDS = new Key("fields");
+    private static final Key FEATURES = new Key("features");
+    private static final Key OBJECT_IDS = new Key("objectIds");
+    private static final Key GEOMETRY = new Key("geometry");
+    private static final Key ATTRIBUTES = new Key("attributes");
+    private static final Key OBJECTID = new Key("objectid");
+    private static final Key EXCEEDED_TRANSFER_LIMIT = new Key("exceededTransferLimit");
+    private static final Key TRANSFORM = new Key("transform");
+    private static final Key DISPLAY_FIELD_NAME = new Key("displayFieldName");
+    private static final Key FIELD_ALIASES = new Key("fieldAliases");
+
     private FeatureEncoder() {
         throw new RuntimeException("Feature encoder has only static methods, no need to instantiate it.");
     }
@@ -171,6 +194,342 @@ public class FeatureEncoder {
         json.endObject();
     }
     
+    /**
+     * Streaming version of {@link #featuresToJson(FeatureCollection, JSONBuilder, boolean)},
+     * producing the same output.
+     */
+    public static
+    <T extends FeatureType, F extends org.opengis.feature.Feature>
+    void featuresToJson(FeatureCollection<T, F> collection, JsonStreamWriter json, boolean returnGeometry)
+    throws IOException
+    {
+        featuresToJson(collection, json, returnGeometry, -1);
+    }
+
+    /**
+     * Writes at most {@code maxFeatures} features of the collection, followed by
+     * {@code "exceededTransferLimit": true} if the collection has more. The collection is expected
+     * to be limited to {@code maxFeatures + 1} features, so that the check doesn't read more than
+     * one extra feature.
+     * 
+     * @param maxFeatures the number of features to write, or a negative number for all of them
+     */
+    public static
+    <T extends FeatureType, F extends org.opengis.feature.Feature>
+    void featuresToJson(FeatureCollection<T, F> collection, JsonStreamWriter json, boolean returnGeometry, int maxFeatures)
+    throws IOException
+    {
+        featuresToJson(collection, json, returnGeometry, maxFeatures, 0, null);
+    }
+
+    /**
+     * Same as {@link #featuresToJson(FeatureCollection, JsonStreamWriter, boolean, int)},
+     * generalizing and quantizing the geometries on the way.
+     * 
+     * @param maxAllowableOffset the Douglas-Peucker distance tolerance the geometries are
+     *        simplified with, in the units of the collection's CRS, or 0 to leave them as is
+     * @param quantization the quantization parameters of the output, or {@code null} to write the
+     *        actual coordinates
+     */
+    public static
+    <T extends FeatureType, F extends org.opengis.feature.Feature>
+    void featuresToJson(FeatureCollection<T, F> collection, JsonStreamWriter json, boolean returnGeometry, int maxFeatures, double maxAllowableOffset, Quantization quantization)
+    throws IOException
+    {
+        T schema = collection.getSchema();
+        json.object()
+          .key(OBJECT_ID_FIELD_NAME).value("objectid")
+          .key(GLOBAL_ID_FIELD_NAME).value("");
+
+        if (returnGeometry) {
+            GeometryDescriptor geometryDescriptor = schema.getGeometryDescriptor();
+            if (geometryDescriptor == null) throw new RuntimeException("No geometry descriptor for type " + schema + "; " + schema.getDescriptors());
+            GeometryType geometryType = geometryDescriptor.getType();
+            if (geometryType == null) throw new RuntimeException("No geometry type for type " + schema);
+            Class<?> binding = geometryType.getBinding();
+            if (binding == null) throw new RuntimeException("No binding for geometry type " + schema);
+            GeometryTypeEnum geometryTypeEnum = GeometryTypeEnum.forJTSClass(binding);
+            json.key(GEOMETRY_TYPE).value(geometryTypeEnum.getGeometryType());
+        }
+
+        if (schema.getCoordinateReferenceSystem() != null) {
+            try {
+                SpatialReference sr = SpatialReferences.fromCRS(schema.getCoordinateReferenceSystem());
+                json.key(SPATIAL_REFERENCE);
+                SpatialReferenceEncoder.toJson(sr, json);
+            } catch (FactoryException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        if (returnGeometry && quantization != null) {
+            json.key(TRANSFORM);
+            quantization.transformToJson(json);
+        }
+
+        json.key(FIELDS).array();
+        for (PropertyDescriptor desc : schema.getDescriptors()) {
+            if (schema.getGeometryDescriptor() != null && !desc.getName().equals(schema.getGeometryDescriptor().getName())) {
+                descriptorToJson(desc, json);
+            }
+        }
+        json.endArray();
+
+        json.key(FEATURES);
+        json.array();
+        boolean exceededTransferLimit = false;
+        FeatureIterator<F> iterator = collection.features();
+        try {
+            AttributeKeys keys = new AttributeKeys();
+            int count = 0;
+            while (iterator.hasNext()) {
+                if (maxFeatures >= 0 && count++ == maxFeatures) {
+                    exceededTransferLimit = true;
+                    break;
+                }
+                F feature = iterator.next();
+                if (feature instanceof SimpleFeature) {
+                    simpleFeatureToJson((SimpleFeature) feature, keys, json, returnGeometry, maxAllowableOffset, quantization);
+                } else {
+                    featureToJson(feature, json, returnGeometry, maxAllowableOffset, quantization);
+                }
+            }
+        } finally {
+            iterator.close();
+        }
+        json.endArray();
+        if (exceededTransferLimit) {
+            json.key(EXCEEDED_TRANSFER_LIMIT).value(true);
+        }
+        json.endObject();
+    }
+
+    /**
+     * Streaming version of {@link #featureToJson(org.opengis.feature.Feature, JSONBuilder, boolean)}
+     */
+    public static void featureToJson(org.opengis.feature.Feature feature, JsonStreamWriter json, boolean returnGeometry) throws IOException {
+        featureToJson(feature, json, returnGeometry, 0, null);
+    }
+
+    private static void featureToJson(org.opengis.feature.Feature feature, JsonStreamWriter json, boolean returnGeometry, double maxAllowableOffset, Quantization quantization) throws IOException {
+        GeometryAttribute geometry = feature.getDefaultGeometryProperty();
+        json.object();
+        if (returnGeometry) {
+            json.key(GEOMETRY);
+            geometryToJson(geometry == null ? null : geometry.getValue(), maxAllowableOffset, quantization, json);
+        }
+        json.key(ATTRIBUTES);
+        json.object();
+        json.key(OBJECTID);
+        objectIdToJson(feature.getIdentifier().getID(), json);
+        for (Property prop : feature.getProperties()) {
+            if (geometry == null || !prop.getName().equals(geometry.getName())) {
+                json.key(prop.getName().getLocalPart());
+                attributeToJson(prop.getValue(), json);
+            }
+        }
+        json.endObject();
+        json.endObject();
+    }
+
+    /**
+     * Attribute name keys of the last simple feature type seen, so that they're encoded once per
+     * collection rather than once per feature
+     */
+    private static class AttributeKeys {
+        private SimpleFeatureType type;
+        private Key[] keys;
+        private int geometryIndex;
+
+        Key[] keys(SimpleFeatureType featureType) {
+            if (featureType != type) {
+                type = featureType;
+                keys = new Key[featureType.getAttributeCount()];
+                for (int i = 0; i < keys.length; i++) {
+                    keys[i] = new Key(featureType.getDescriptor(i).getLocalName());
+                }
+                GeometryDescriptor geometry = featureType.getGeometryDescriptor();
+                geometryIndex = geometry == null ? -1 : featureType.indexOf(geometry.getName());
+            }
+            return keys;
+        }
+    }
+
+    private static void simpleFeatureToJson(SimpleFeature feature, AttributeKeys attributeKeys, JsonStreamWriter json, boolean returnGeometry, double maxAllowableOffset, Quantization quantization) throws IOException {
+        final Key[] keys = attributeKeys.keys(feature.getFeatureType());
+        final int geometryIndex = attributeKeys.geometryIndex;
+        json.object();
+        if (returnGeometry) {
+            json.key(GEOMETRY);
+            geometryToJson(feature.getDefaultGeometry(), maxAllowableOffset, quantization, json);
+        }
+        json.key(ATTRIBUTES);
+        json.object();
+        json.key(OBJECTID);
+        objectIdToJson(feature.getID(), json);
+        for (int i = 0; i < keys.length; i++) {
+            if (i != geometryIndex) {
+                json.key(keys[i]);
+                attributeToJson(feature.getAttribute(i), json);
+            }
+        }
+        json.endObject();
+        json.endObject();
+    }
+
+    private static void geometryToJson(Object geometry, double maxAllowableOffset, Quantization quantization, JsonStreamWriter json) throws IOException {
+        if (geometry == null) {
+            json.nullValue();
+        } else {
+            com.vividsolutions.jts.geom.Geometry g = (com.vividsolutions.jts.geom.Geometry) geometry;
+            if (maxAllowableOffset > 0 && g.getDimension() > 0) {
+                g = DouglasPeuckerSimplifier.simplify(g, maxAllowableOffset);
+            }
+            GeometryEncoder.toJson(g, quantization, json);
+        }
+    }
+
+    private static void attributeToJson(Object value, JsonStreamWriter json) throws IOException {
+        if (value == null) {
+            json.nullValue();
+        } else if (value instanceof String) {
+            json.value((String) value);
+        } else if (value instanceof Number) {
+            json.value((Number) value);
+        } else if (value instanceof java.util.Date) {
+            json.value(((java.util.Date) value).getTime());
+        } else if (value instanceof Boolean) {
+            json.value(((Boolean) value).booleanValue() ? 1 : 0);
+        } else {
+            json.value(value.toString());
+        }
+    }
+
+    private static void objectIdToJson(String featureId, JsonStreamWriter json) throws IOException {
+        // same as adaptId, without the regular expression
+        final int start = featureId.lastIndexOf('.') + 1;
+        final int end = featureId.length();
+        boolean digits = start > 0 ? start < end : end > 0;
+        for (int i = start; digits && i < end; i++) {
+            char c = featureId.charAt(i);
+            digits = c >= '0' && c <= '9';
+        }
+        if (digits) {
+            json.value(start == 0 ? featureId : featureId.substring(start));
+        } else {
+            json.value((long) featureId.hashCode());
+        }
+    }
+
+    public static void descriptorToJson(PropertyDescriptor field, JsonStreamWriter json) throws IOException {
+        json.object();
+        json.key("name").value(field.getName().getLocalPart());
+
+        FieldTypeEnum type = FieldTypeEnum.forClass(field.getType().getBinding());
+        json.key("type").value(type.getFieldType());
+        json.key("alias").value(field.getName().toString());
+
+        int length = FeatureTypes.getFieldLength(field);
+
+        // String, Date, GlobalID, GUID and XML
+        switch (type) {
+            case STRING:
+            case DATE:
+            case GUID:
+            case GLOBAL_ID:
+            case XML:
+                json.key("length").value(length == -1 ? 4000 : length);
+                json.key("editable").value("false");
+                break;
+            default:
+                // length and editable are optional
+        }
+        json.key("nullable").value(field.isNillable() ? "true" : "false");
+        json.key("domain").nullValue();
+
+        json.endObject();
+    }
+
+    /**
+     * Writes the result of a statistics query, a table with the group by fields followed by the
+     * statistics.
+     * 
+     * @param schema the feature type the statistics were computed on
+     * @param rows the values of the group by fields followed by the ones of the statistics, for
+     *        each group
+     */
+    public static void statisticsToJson(FeatureType schema, List<String> groupByFields, List<OutStatistic> statistics, List<Object[]> rows, boolean exceededTransferLimit, JsonStreamWriter json) throws IOException {
+        final int columns = groupByFields.size() + statistics.size();
+        final Key[] keys = new Key[columns];
+        final FieldTypeEnum[] types = new FieldTypeEnum[columns];
+        for (int i = 0; i < columns; i++) {
+            if (i < groupByFields.size()) {
+                keys[i] = new Key(groupByFields.get(i));
+                types[i] = FieldTypeEnum.forClass(schema.getDescriptor(groupByFields.get(i)).getType().getBinding());
+            } else {
+                OutStatistic statistic = statistics.get(i - groupByFields.size());
+                keys[i] = new Key(statistic.getOutStatisticFieldName());
+                PropertyDescriptor field = schema.getDescriptor(statistic.getOnStatisticField());
+                types[i] = statistic.getStatisticType().fieldType(
+                        field == null ? FieldTypeEnum.OID : FieldTypeEnum.forClass(field.getType().getBinding()));
+            }
+        }
+
+        json.object();
+        json.key(DISPLAY_FIELD_NAME).value("");
+        json.key(FIELD_ALIASES).object();
+        for (Key key : keys) {
+            json.key(key).value(key.getName());
+        }
+        json.endObject();
+        json.key(FIELDS).array();
+        for (int i = 0; i < columns; i++) {
+            json.object()
+              .key("name").value(keys[i].getName())
+              .key("type").value(types[i].getFieldType())
+              .key("alias").value(keys[i].getName())
+            .endObject();
+        }
+        json.endArray();
+        json.key(FEATURES).array();
+        for (Object[] row : rows) {
+            json.object().key(ATTRIBUTES).object();
+            for (int i = 0; i < columns; i++) {
+                json.key(keys[i]);
+                attributeToJson(row[i], json);
+            }
+            json.endObject().endObject();
+        }
+        json.endArray();
+        if (exceededTransferLimit) {
+            json.key(EXCEEDED_TRANSFER_LIMIT).value(true);
+        }
+        json.endObject();
+    }
+
+    public static <T extends FeatureType, F extends Feature>
+    void featureIdSetToJson(FeatureCollection<T, F> features, JsonStreamWriter json) throws IOException
+    {
+        json.object();
+        json.key(OBJECT_ID_FIELD_NAME);
+        json.value("objectid"); // TODO: Advertise "real" identifier property
+
+        FeatureIterator<F> iterator = features.features();
+        try {
+            json.key(OBJECT_IDS);
+            json.array();
+            while (iterator.hasNext()) {
+                F feature = iterator.next();
+                objectIdToJson(feature.getIdentifier().getID(), json);
+            }
+            json.endArray();
+        } finally {
+            iterator.close();
+        }
+
+        json.endObject();
+    }
+
     private final static Pattern featureIDPattern = Pattern.compile("^(?:.*\\.)?(\\p{Digit}+)$");
     private static Object adaptId(String featureId) {
         Matcher matcher = featureIDPattern.matcher(featureId);
@@ -0,0 +1,81 @@
+/* Copyright (c) 2013 - 2014 Boundless - http://boundlessgeo.com All rights reserved.
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.opengeo.gsr.core.feature;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import net.sf.json.JSONArray;
+import net.sf.json.JSONException;
+import net.sf.json.JSONObject;
+
+/**
+ * One of the {@code outStatistics} of a query, e.g.
+ * {@code {"statisticType":"sum","onStatisticField":"population","outStatisticFieldName":"total"}}
+ */
+public class OutStatistic {
+    private final StatisticType statisticType;
+
+    private final String onStatisticField;
+
+    private final String outStatisticFieldName;
+
+    public OutStatistic(StatisticType statisticType, String onStatisticField, String outStatisticFieldName) {
+        this.statisticType = statisticType;
+        this.onStatisticField = onStatisticField;
+        this.outStatisticFieldName = outStatisticFieldName;
+    }
+
+    public StatisticType getStatisticType() {
+        return statisticType;
+    }
+
+    public String getOnStatisticField() {
+        return onStatisticField;
+    }
+
+    public String getOutStatisticFieldName() {
+        return outStatisticFieldName;
+    }
+
+    /**
+     * Parses the {@code outStatistics} query parameter, a JSON array of statistic definitions.
+     * Statistics without an {@code outStatisticFieldName} are named after their type and field.
+     */
+    public static List<OutStatistic> fromJson(String text) {
+        final JSONArray array;
+        try {
+            array = JSONArray.fromObject(text);
+        } catch (JSONException e) {
+            throw new IllegalArgumentException("'outStatistics' must be a JSON array; was " + text);
+        }
+        if (array.isEmpty()) {
+            throw new IllegalArgumentException("'outStatistics' must not be empty");
+        }
+        List<OutStatistic> statistics = new ArrayList<OutStatistic>(array.size());
+        for (int i = 0; i < array.size(); i++) {
+            if (!(array.get(i) instanceof JSONObject)) {
+                throw new IllegalArgumentException("Statistic definitions must be JSON objects; was " + array.get(i));
+            }
+            JSONObject json = array.getJSONObject(i);
+            if (!json.has("statisticType") || !json.has("onStatisticField")) {
+                throw new IllegalArgumentException("Statistic definitions must have a statisticType and an onStatisticField; was " + json);
+            }
+            StatisticType type = StatisticType.fromRequestString(json.getString("statisticType"));
+            String field = json.getString("onStatisticField");
+            String name = json.optString("outStatisticFieldName", "");
+            if (name.isEmpty()) {
+                name = type.getStatisticType() + "_" + field;
+            }
+            statistics.add(new OutStatistic(type, field, name));
+        }
+        return statistics;
+    }
+
+    @Override
+    public String toString() {
+        return statisticType.getStatisticType() + "(" + onStatisticField + ") as " + outStatisticFieldName;
+    }
+}
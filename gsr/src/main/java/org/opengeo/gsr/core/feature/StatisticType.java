@@ -0,0 +1,212 @@
+/* Copyright (c) 2013 - 2014 Boundless - http://boundlessgeo.com All rights reserved.
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.opengeo.gsr.core.feature;
+
+import java.io.IOException;
+
+import org.geotools.factory.CommonFactoryFinder;
+import org.geotools.feature.FeatureCollection;
+import org.geotools.feature.FeatureIterator;
+import org.geotools.feature.visitor.AverageVisitor;
+import org.geotools.feature.visitor.CalcResult;
+import org.geotools.feature.visitor.CountVisitor;
+import org.geotools.feature.visitor.FeatureCalc;
+import org.geotools.feature.visitor.MaxVisitor;
+import org.geotools.feature.visitor.MinVisitor;
+import org.geotools.feature.visitor.SumVisitor;
+import org.opengis.feature.Feature;
+import org.opengis.feature.type.FeatureType;
+import org.opengis.filter.FilterFactory2;
+import org.opengis.filter.expression.Expression;
+
+/**
+ * The {@code statisticType}s of the query {@code outStatistics}, computed with feature visitors
+ * so that stores able to (e.g. JDBC ones) turn them into SQL aggregates.
+ * <p>
+ * There is no visitor for the variance, it's computed reading the values once with an
+ * {@link Accumulator} instead.
+ */
+public enum StatisticType {
+    COUNT("count") {
+        @Override
+        public Object compute(FeatureCollection<? extends FeatureType, ? extends Feature> features, Expression field) throws IOException {
+            return count(features, field);
+        }
+
+        @Override
+        public FieldTypeEnum fieldType(FieldTypeEnum fieldType) {
+            return FieldTypeEnum.INTEGER;
+        }
+    },
+
+    SUM("sum") {
+        @Override
+        public Object compute(FeatureCollection<? extends FeatureType, ? extends Feature> features, Expression field) throws IOException {
+            return visit(features, new SumVisitor(field));
+        }
+    },
+
+    MIN("min") {
+        @Override
+        public Object compute(FeatureCollection<? extends FeatureType, ? extends Feature> features, Expression field) throws IOException {
+            return visit(features, new MinVisitor(field));
+        }
+
+        @Override
+        public FieldTypeEnum fieldType(FieldTypeEnum fieldType) {
+            return fieldType;
+        }
+    },
+
+    MAX("max") {
+        @Override
+        public Object compute(FeatureCollection<? extends FeatureType, ? extends Feature> features, Expression field) throws IOException {
+            return visit(features, new MaxVisitor(field));
+        }
+
+        @Override
+        public FieldTypeEnum fieldType(FieldTypeEnum fieldType) {
+            return fieldType;
+        }
+    },
+
+    AVG("avg") {
+        @Override
+        public Object compute(FeatureCollection<? extends FeatureType, ? extends Feature> features, Expression field) throws IOException {
+            return visit(features, new AverageVisitor(field));
+        }
+    },
+
+    STDDEV("stddev") {
+        @Override
+        public Object compute(FeatureCollection<? extends FeatureType, ? extends Feature> features, Expression field) throws IOException {
+            Double variance = variance(features, field);
+            return variance == null ? null : Math.sqrt(variance);
+        }
+    },
+
+    VAR("var") {
+        @Override
+        public Object compute(FeatureCollection<? extends FeatureType, ? extends Feature> features, Expression field) throws IOException {
+            return variance(features, field);
+        }
+    };
+
+    /**
+     * Running count, mean and sum of squared differences from the mean of the values of a field
+     * (Welford's algorithm, which unlike the sum of squares doesn't lose the variance to
+     * cancellation when values are large compared to their spread)
+     */
+    static final class Accumulator {
+        private final Expression field;
+
+        private long count;
+
+        private boolean numeric = true;
+
+        private double mean;
+
+        private double m2;
+
+        Accumulator(Expression field) {
+            this.field = field;
+        }
+
+        void add(Object feature) {
+            Object value = field.evaluate(feature);
+            if (value == null) {
+                return;
+            }
+            count++;
+            if (value instanceof Number) {
+                double x = ((Number) value).doubleValue();
+                double delta = x - mean;
+                mean += delta / count;
+                m2 += delta * (x - mean);
+            } else {
+                numeric = false;
+            }
+        }
+
+        /**
+         * @return the sample variance, {@code null} if there's no numeric value
+         */
+        Double variance() {
+            if (!numeric || count == 0) {
+                return null;
+            }
+            return count == 1 ? 0d : m2 / (count - 1);
+        }
+    }
+
+    private static final FilterFactory2 FILTERS = CommonFactoryFinder.getFilterFactory2();
+
+    private final String statisticType;
+
+    private StatisticType(String statisticType) {
+        this.statisticType = statisticType;
+    }
+
+    public String getStatisticType() {
+        return statisticType;
+    }
+
+    /**
+     * @param field the field the statistic is computed on, or {@code null} to count features
+     * @return the value of the statistic, or {@code null} if there is none (e.g. no feature)
+     */
+    public abstract Object compute(FeatureCollection<? extends FeatureType, ? extends Feature> features, Expression field) throws IOException;
+
+    /**
+     * @return the type of the statistic, computed on a field of type {@code fieldType}
+     */
+    public FieldTypeEnum fieldType(FieldTypeEnum fieldType) {
+        return FieldTypeEnum.DOUBLE;
+    }
+
+    public static StatisticType fromRequestString(String statisticType) {
+        for (StatisticType type : values()) {
+            if (type.statisticType.equalsIgnoreCase(statisticType)) {
+                return type;
+            }
+        }
+        throw new IllegalArgumentException("Unrecognized statisticType: " + statisticType);
+    }
+
+    private static Object visit(FeatureCollection<? extends FeatureType, ? extends Feature> features, FeatureCalc visitor) throws IOException {
+        features.accepts(visitor, null);
+        CalcResult result = visitor.getResult();
+        return result == null ? null : result.getValue();
+    }
+
+    /**
+     * Counts the features with a non null {@code field}, all of them if {@code field} is
+     * {@code null}
+     */
+    private static int count(FeatureCollection<? extends FeatureType, ? extends Feature> features, Expression field) throws IOException {
+        if (field != null) {
+            features = features.subCollection(FILTERS.not(FILTERS.isNull(field)));
+        }
+        CountVisitor visitor = new CountVisitor();
+        features.accepts(visitor, null);
+        return visitor.getResult().toInt();
+    }
+
+    /**
+     * Sample variance, in a single pass over the values without keeping them in memory
+     */
+    private static Double variance(FeatureCollection<? extends FeatureType, ? extends Feature> features, Expression field) throws IOException {
+        Accumulator accumulator = new Accumulator(field);
+        FeatureIterator<? extends Feature> it = features.features();
+        try {
+            while (it.hasNext()) {
+                accumulator.add(it.next());
+            }
+        } finally {
+            it.close();
+        }
+        return accumulator.variance();
+    }
+}
@@ -0,0 +1,431 @@
+/* Copyright (c) 2013 - 2014 Boundless - http://boundlessgeo.com All rights reserved.
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.opengeo.gsr.core.format;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+
+/**
+ * Streaming JSON writer producing UTF-8 straight into an {@link OutputStream}.
+ * <p>
+ * Meant for large responses, like query results, where going through {@code JSONBuilder} costs a
+ * boxed object and a {@code String} per number. Numbers are written as primitives, and property
+ * names known in advance can be encoded once as {@link Key}s. The output is the same as
+ * {@code JSONBuilder}'s: same number formatting and string escaping.
+ * <p>
+ * Not thread safe. {@link #flush()} must be called once done, closing the underlying stream is up
+ * to the caller.
+ */
+public class JsonStreamWriter {
+
+    /**
+     * A property name, quoted, escaped and UTF-8 encoded along with its trailing colon
+     */
+    public static final class Key {
+        private final byte[] bytes;
+
+        private final String name;
+
+        public Key(String name) {
+            this.name = name;
+            ByteArrayOutputStream out = new ByteArrayOutputStream(name.length() + 3);
+            JsonStreamWriter writer = new JsonStreamWriter(out, 64);
+            try {
+                writer.writeString(name);
+                writer.writeByte(':');
+                writer.flush();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            this.bytes = out.toByteArray();
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    private static final byte[] HEX = "0123456789abcdef".getBytes();
+
+    private static final byte[] NULL = { 'n', 'u', 'l', 'l' };
+
+    private static final byte[] TRUE = { 't', 'r', 'u', 'e' };
+
+    private static final byte[] FALSE = { 'f', 'a', 'l', 's', 'e' };
+
+    private static final byte[] MIN_LONG = Long.toString(Long.MIN_VALUE).getBytes();
+
+    private final OutputStream out;
+
+    private final byte[] buffer;
+
+    private int position;
+
+    /**
+     * Whether the current object or array already has a member, indexed by depth
+     */
+    private boolean[] hasMembers = new boolean[16];
+
+    private int depth;
+
+    private boolean afterKey;
+
+    public JsonStreamWriter(OutputStream out) {
+        this(out, 8192);
+    }
+
+    public JsonStreamWriter(OutputStream out, int bufferSize) {
+        this.out = out;
+        this.buffer = new byte[bufferSize];
+    }
+
+    public JsonStreamWriter object() throws IOException {
+        beforeValue();
+        writeByte('{');
+        push();
+        return this;
+    }
+
+    public JsonStreamWriter endObject() throws IOException {
+        pop();
+        writeByte('}');
+        return this;
+    }
+
+    public JsonStreamWriter array() throws IOException {
+        beforeValue();
+        writeByte('[');
+        push();
+        return this;
+    }
+
+    public JsonStreamWriter endArray() throws IOException {
+        pop();
+        writeByte(']');
+        return this;
+    }
+
+    public JsonStreamWriter key(Key key) throws IOException {
+        beforeKey();
+        writeBytes(key.bytes);
+        return this;
+    }
+
+    public JsonStreamWriter key(String name) throws IOException {
+        beforeKey();
+        writeString(name);
+        writeByte(':');
+        return this;
+    }
+
+    public JsonStreamWriter value(String value) throws IOException {
+        if (value == null) {
+            return nullValue();
+        }
+        beforeValue();
+        writeString(value);
+        return this;
+    }
+
+    public JsonStreamWriter value(long value) throws IOException {
+        beforeValue();
+        writeLong(value);
+        return this;
+    }
+
+    public JsonStreamWriter value(boolean value) throws IOException {
+        beforeValue();
+        writeBytes(value ? TRUE : FALSE);
+        return this;
+    }
+
+    /**
+     * Writes a double the way {@code JSONBuilder} does, except for non finite values which are
+     * written as {@code null} instead of failing
+     */
+    public JsonStreamWriter value(double value) throws IOException {
+        beforeValue();
+        writeDouble(value);
+        return this;
+    }
+
+    public JsonStreamWriter value(Number value) throws IOException {
+        if (value == null) {
+            return nullValue();
+        }
+        if (value instanceof Integer || value instanceof Long || value instanceof Short
+                || value instanceof Byte) {
+            return value(value.longValue());
+        }
+        if (value instanceof Double) {
+            return value(value.doubleValue());
+        }
+        beforeValue();
+        if (value instanceof Float) {
+            writeFloat(value.floatValue());
+        } else if (value instanceof BigDecimal || value instanceof BigInteger) {
+            writeAscii(stripTrailingZeros(value.toString()));
+        } else {
+            writeDouble(value.doubleValue());
+        }
+        return this;
+    }
+
+    public JsonStreamWriter nullValue() throws IOException {
+        beforeValue();
+        writeBytes(NULL);
+        return this;
+    }
+
+    /**
+     * Writes the buffered output to the underlying stream and flushes it
+     */
+    public void flush() throws IOException {
+        flushBuffer();
+        out.flush();
+    }
+
+    private void push() {
+        depth++;
+        if (depth == hasMembers.length) {
+            hasMembers = Arrays.copyOf(hasMembers, depth * 2);
+        }
+        hasMembers[depth] = false;
+    }
+
+    private void pop() {
+        if (depth == 0) {
+            throw new IllegalStateException("No open object or array");
+        }
+        afterKey = false;
+        depth--;
+    }
+
+    private void beforeKey() throws IOException {
+        if (hasMembers[depth]) {
+            writeByte(',');
+        }
+        hasMembers[depth] = true;
+        afterKey = true;
+    }
+
+    private void beforeValue() throws IOException {
+        if (afterKey) {
+            afterKey = false;
+            return;
+        }
+        if (hasMembers[depth]) {
+            writeByte(',');
+        }
+        hasMembers[depth] = true;
+    }
+
+    private void writeDouble(double value) throws IOException {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            writeBytes(NULL);
+        } else if (value == (long) value && Math.abs(value) < 1e7) {
+            // what Double.toString() would write in plain notation, minus the ".0"
+            writeLong((long) value);
+        } else {
+            writeAscii(stripTrailingZeros(Double.toString(value)));
+        }
+    }
+
+    /**
+     * Floats are formatted with their own shortest representation, widening them to double would
+     * write e.g. {@code 1.1f} as {@code 1.100000023841858}
+     */
+    private void writeFloat(float value) throws IOException {
+        if (Float.isNaN(value) || Float.isInfinite(value)) {
+            writeBytes(NULL);
+        } else if (value == (long) value && Math.abs(value) < 1e7) {
+            writeLong((long) value);
+        } else {
+            writeAscii(stripTrailingZeros(Float.toString(value)));
+        }
+    }
+
+    /**
+     * Same as json-lib's {@code JSONUtils.numberToString}
+     */
+    private static String stripTrailingZeros(String s) {
+        if (s.indexOf('.') > 0 && s.indexOf('e') < 0 && s.indexOf('E') < 0) {
+            int end = s.length();
+            while (s.charAt(end - 1) == '0') {
+                end--;
+            }
+            if (s.charAt(end - 1) == '.') {
+                end--;
+            }
+            return s.substring(0, end);
+        }
+        return s;
+    }
+
+    private void writeLong(long value) throws IOException {
+        if (value == Long.MIN_VALUE) {
+            writeBytes(MIN_LONG);
+            return;
+        }
+        if (value < 0) {
+            writeByte('-');
+            value = -value;
+        }
+        ensureCapacity(19);
+        int digits = 1;
+        for (long v = value; v >= 10; v /= 10) {
+            digits++;
+        }
+        int end = position + digits;
+        for (int i = end - 1; i >= position; i--) {
+            buffer[i] = (byte) ('0' + (value % 10));
+            value /= 10;
+        }
+        position = end;
+    }
+
+    /**
+     * Writes a quoted string, escaped the same way json-lib's {@code JSONUtils.quote} does
+     */
+    private void writeString(String s) throws IOException {
+        writeByte('"');
+        final int length = s.length();
+        char previous = 0;
+        for (int i = 0; i < length; i++) {
+            final char c = s.charAt(i);
+            switch (c) {
+            case '\\':
+            case '"':
+                writeByte('\\');
+                writeByte(c);
+                break;
+            case '/':
+                if (previous == '<') {
+                    writeByte('\\');
+                }
+                writeByte(c);
+                break;
+            case '\b':
+                writeEscape('b');
+                break;
+            case '\t':
+                writeEscape('t');
+                break;
+            case '\n':
+                writeEscape('n');
+                break;
+            case '\f':
+                writeEscape('f');
+                break;
+            case '\r':
+                writeEscape('r');
+                break;
+            default:
+                if (c < ' ') {
+                    writeUnicodeEscape(c);
+                } else if (c < 0x80) {
+                    writeByte(c);
+                } else {
+                    i = writeUtf8(s, i, c);
+                }
+            }
+            previous = c;
+        }
+        writeByte('"');
+    }
+
+    private void writeEscape(char c) throws IOException {
+        writeByte('\\');
+        writeByte(c);
+    }
+
+    private void writeUnicodeEscape(char c) throws IOException {
+        ensureCapacity(6);
+        buffer[position++] = '\\';
+        buffer[position++] = 'u';
+        buffer[position++] = HEX[(c >> 12) & 0xF];
+        buffer[position++] = HEX[(c >> 8) & 0xF];
+        buffer[position++] = HEX[(c >> 4) & 0xF];
+        buffer[position++] = HEX[c & 0xF];
+    }
+
+    /**
+     * @return the index of the last char consumed
+     */
+    private int writeUtf8(String s, int i, char c) throws IOException {
+        ensureCapacity(4);
+        if (c < 0x800) {
+            buffer[position++] = (byte) (0xC0 | (c >> 6));
+            buffer[position++] = (byte) (0x80 | (c & 0x3F));
+        } else if (Character.isHighSurrogate(c) && i + 1 < s.length()
+                && Character.isLowSurrogate(s.charAt(i + 1))) {
+            int cp = Character.toCodePoint(c, s.charAt(i + 1));
+            buffer[position++] = (byte) (0xF0 | (cp >> 18));
+            buffer[position++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+            buffer[position++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+            buffer[position++] = (byte) (0x80 | (cp & 0x3F));
+            return i + 1;
+        } else if (Character.isSurrogate(c)) {
+            // unpaired, same replacement as the UTF-8 encoder
+            buffer[position++] = '?';
+        } else {
+            buffer[position++] = (byte) (0xE0 | (c >> 12));
+            buffer[position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+            buffer[position++] = (byte) (0x80 | (c & 0x3F));
+        }
+        return i;
+    }
+
+    private void writeAscii(String s) throws IOException {
+        final int length = s.length();
+        ensureCapacity(length);
+        if (length > buffer.length) {
+            out.write(s.getBytes("US-ASCII"));
+            return;
+        }
+        for (int i = 0; i < length; i++) {
+            buffer[position++] = (byte) s.charAt(i);
+        }
+    }
+
+    private void writeByte(int b) throws IOException {
+        if (position == buffer.length) {
+            flushBuffer();
+        }
+        buffer[position++] = (byte) b;
+    }
+
+    private void writeBytes(byte[] bytes) throws IOException {
+        ensureCapacity(bytes.length);
+        if (bytes.length > buffer.length) {
+            out.write(bytes);
+            return;
+        }
+        System.arraycopy(bytes, 0, buffer, position, bytes.length);
+        position += bytes.length;
+    }
+
+    private void ensureCapacity(int length) throws IOException {
+        if (position + length > buffer.length) {
+            flushBuffer();
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        if (position > 0) {
+            out.write(buffer, 0, position);
+            position = 0;
+        }
+    }
+}
@@ -4,6 +4,12 @@
  */
 package org.opengeo.gsr.core.geometry;
 
+import java.io.IOException;
+
+import org.opengeo.gsr.core.format.JsonStreamWriter;
+import org.opengeo.gsr.core.format.JsonStreamWriter.Key;
+
+import com.vividsolutions.jts.geom.CoordinateSequence;
 import com.vividsolutions.jts.geom.Envelope;
 import com.vividsolutions.jts.geom.Geometry;
 import com.vividsolutions.jts.geom.GeometryFactory;
@@ -15,6 +21,14 @@ import net.sf.json.util.JSONBuilder;
 import net.sf.json.util.JSONStringer;
 
 public final class GeometryEncoder {
+    private static final Key X = new Key("x");
+    private static final Key Y = new Key("y");
+    private static final Key POINTS = new Key("points");
+    private static final Key PATHS = new Key("paths");
+    private static final Key RINGS = new Key("rings");
+    private static final Key GEOMETRY_TYPE = new Key("geometryType");
+    private static final Key GEOMETRIES = new Key("geometries");
+
     private GeometryEncoder() {
         throw new RuntimeException("Geometry encoder has only static methods, no need to instantiate it.");
     }
@@ -136,6 +150,174 @@ public final class GeometryEncoder {
         }
     }
 
+    /**
+     * Streaming version of {@link #toJson(Geometry, JSONBuilder)}, producing the same output.
+     * Coordinates are read from the geometries' {@link CoordinateSequence}s and written as
+     * primitives.
+     */
+    public static void toJson(com.vividsolutions.jts.geom.Geometry geom, JsonStreamWriter json) throws IOException {
+        if (geom instanceof com.vividsolutions.jts.geom.Point) {
+            com.vividsolutions.jts.geom.Point p = (com.vividsolutions.jts.geom.Point) geom;
+            json.object()
+              .key(X).value(p.getX())
+              .key(Y).value(p.getY())
+            .endObject();
+        } else if (geom instanceof com.vividsolutions.jts.geom.MultiPoint) {
+            com.vividsolutions.jts.geom.MultiPoint mpoint = (com.vividsolutions.jts.geom.MultiPoint) geom;
+            json.object();
+            json.key(POINTS);
+            json.array();
+            for (int i = 0; i < mpoint.getNumGeometries(); i++) {
+                com.vividsolutions.jts.geom.Point p = (com.vividsolutions.jts.geom.Point) mpoint.getGeometryN(i);
+                json.array().value(p.getX()).value(p.getY()).endArray();
+            }
+            json.endArray();
+            json.endObject();
+        } else if (geom instanceof com.vividsolutions.jts.geom.LineString) {
+            com.vividsolutions.jts.geom.LineString line = (com.vividsolutions.jts.geom.LineString) geom;
+            json.object();
+            json.key(PATHS);
+            json.array();
+            coordinatesToJson(line.getCoordinateSequence(), json);
+            json.endArray();
+            json.endObject();
+        } else if (geom instanceof com.vividsolutions.jts.geom.MultiLineString) {
+            com.vividsolutions.jts.geom.MultiLineString mline = (com.vividsolutions.jts.geom.MultiLineString) geom;
+            json.object();
+            json.key(PATHS);
+            json.array();
+            for (int i = 0; i < mline.getNumGeometries(); i++) {
+                com.vividsolutions.jts.geom.LineString line = (com.vividsolutions.jts.geom.LineString) mline.getGeometryN(i);
+                coordinatesToJson(line.getCoordinateSequence(), json);
+            }
+            json.endArray();
+            json.endObject();
+        } else if (geom instanceof com.vividsolutions.jts.geom.Polygon) {
+            com.vividsolutions.jts.geom.Polygon polygon = (com.vividsolutions.jts.geom.Polygon) geom;
+            json.object();
+            json.key(RINGS);
+            json.array();
+            coordinatesToJson(polygon.getExteriorRing().getCoordinateSequence(), json);
+            for (int i = 0; i < polygon.getNumInteriorRing(); i++) {
+                coordinatesToJson(polygon.getInteriorRingN(i).getCoordinateSequence(), json);
+            }
+            json.endArray();
+            json.endObject();
+        } else if (geom instanceof com.vividsolutions.jts.geom.MultiPolygon) {
+            com.vividsolutions.jts.geom.MultiPolygon mpoly = (com.vividsolutions.jts.geom.MultiPolygon) geom;
+            toJson(mpoly.getGeometryN(0), json);
+        } else if (geom instanceof com.vividsolutions.jts.geom.GeometryCollection) {
+            com.vividsolutions.jts.geom.GeometryCollection collection = (com.vividsolutions.jts.geom.GeometryCollection) geom;
+            String geometryType = determineGeometryType(collection);
+            json.object()
+              .key(GEOMETRY_TYPE).value(geometryType)
+              .key(GEOMETRIES).array();
+            for (int i = 0; i < collection.getNumGeometries(); i++) {
+                toJson(collection.getGeometryN(i), json);
+            }
+            json.endArray();
+            json.endObject();
+        } else {
+          throw new IllegalStateException("Geometry encoding not yet supported for " + geom.getGeometryType());
+        }
+    }
+
+    private static void coordinatesToJson(CoordinateSequence coords, JsonStreamWriter json) throws IOException {
+        json.array();
+        for (int i = 0, n = coords.size(); i < n; i++) {
+            json.array().value(coords.getX(i)).value(coords.getY(i)).endArray();
+        }
+        json.endArray();
+    }
+
+    /**
+     * Writes the geometry with integer coordinates, as described by {@code quantization}. Points
+     * are written as is, the vertices of multipoints, paths and rings as offsets from the previous
+     * one, skipping the ones that fall in the same cell.
+     * 
+     * @param quantization the quantization parameters, or {@code null} to write the geometry as
+     *        {@link #toJson(Geometry, JsonStreamWriter)} does
+     */
+    public static void toJson(com.vividsolutions.jts.geom.Geometry geom, Quantization quantization, JsonStreamWriter json) throws IOException {
+        if (quantization == null) {
+            toJson(geom, json);
+        } else if (geom instanceof com.vividsolutions.jts.geom.Point) {
+            com.vividsolutions.jts.geom.Point p = (com.vividsolutions.jts.geom.Point) geom;
+            json.object()
+              .key(X).value(quantization.x(p.getX()))
+              .key(Y).value(quantization.y(p.getY()))
+            .endObject();
+        } else if (geom instanceof com.vividsolutions.jts.geom.MultiPoint) {
+            json.object();
+            json.key(POINTS);
+            quantizedCoordinatesToJson(geom.getFactory().getCoordinateSequenceFactory().create(geom.getCoordinates()), quantization, json);
+            json.endObject();
+        } else if (geom instanceof com.vividsolutions.jts.geom.LineString) {
+            com.vividsolutions.jts.geom.LineString line = (com.vividsolutions.jts.geom.LineString) geom;
+            json.object();
+            json.key(PATHS);
+            json.array();
+            quantizedCoordinatesToJson(line.getCoordinateSequence(), quantization, json);
+            json.endArray();
+            json.endObject();
+        } else if (geom instanceof com.vividsolutions.jts.geom.MultiLineString) {
+            com.vividsolutions.jts.geom.MultiLineString mline = (com.vividsolutions.jts.geom.MultiLineString) geom;
+            json.object();
+            json.key(PATHS);
+            json.array();
+            for (int i = 0; i < mline.getNumGeometries(); i++) {
+                com.vividsolutions.jts.geom.LineString line = (com.vividsolutions.jts.geom.LineString) mline.getGeometryN(i);
+                quantizedCoordinatesToJson(line.getCoordinateSequence(), quantization, json);
+            }
+            json.endArray();
+            json.endObject();
+        } else if (geom instanceof com.vividsolutions.jts.geom.Polygon) {
+            com.vividsolutions.jts.geom.Polygon polygon = (com.vividsolutions.jts.geom.Polygon) geom;
+            json.object();
+            json.key(RINGS);
+            json.array();
+            quantizedCoordinatesToJson(polygon.getExteriorRing().getCoordinateSequence(), quantization, json);
+            for (int i = 0; i < polygon.getNumInteriorRing(); i++) {
+                quantizedCoordinatesToJson(polygon.getInteriorRingN(i).getCoordinateSequence(), quantization, json);
+            }
+            json.endArray();
+            json.endObject();
+        } else if (geom instanceof com.vividsolutions.jts.geom.MultiPolygon) {
+            com.vividsolutions.jts.geom.MultiPolygon mpoly = (com.vividsolutions.jts.geom.MultiPolygon) geom;
+            toJson(mpoly.getGeometryN(0), quantization, json);
+        } else if (geom instanceof com.vividsolutions.jts.geom.GeometryCollection) {
+            com.vividsolutions.jts.geom.GeometryCollection collection = (com.vividsolutions.jts.geom.GeometryCollection) geom;
+            String geometryType = determineGeometryType(collection);
+            json.object()
+              .key(GEOMETRY_TYPE).value(geometryType)
+              .key(GEOMETRIES).array();
+            for (int i = 0; i < collection.getNumGeometries(); i++) {
+                toJson(collection.getGeometryN(i), quantization, json);
+            }
+            json.endArray();
+            json.endObject();
+        } else {
+          throw new IllegalStateException("Geometry encoding not yet supported for " + geom.getGeometryType());
+        }
+    }
+
+    private static void quantizedCoordinatesToJson(CoordinateSequence coords, Quantization quantization, JsonStreamWriter json) throws IOException {
+        json.array();
+        long previousX = 0, previousY = 0;
+        for (int i = 0, n = coords.size(); i < n; i++) {
+            long x = quantization.x(coords.getX(i));
+            long y = quantization.y(coords.getY(i));
+            if (i == 0) {
+                json.array().value(x).value(y).endArray();
+            } else if (x != previousX || y != previousY) {
+                json.array().value(x - previousX).value(y - previousY).endArray();
+            }
+            previousX = x;
+            previousY = y;
+        }
+        json.endArray();
+    }
+
     private static void embeddedCoordinateToJson(com.vividsolutions.jts.geom.Coordinate coord, JSONBuilder json) {
         json.array()
           .value(coord.x)
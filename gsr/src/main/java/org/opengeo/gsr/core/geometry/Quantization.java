@@ -0,0 +1,112 @@
+/* Copyright (c) 2013 - 2014 Boundless - http://boundlessgeo.com All rights reserved.
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.opengeo.gsr.core.geometry;
+
+import java.io.IOException;
+
+import net.sf.json.JSONException;
+import net.sf.json.JSONObject;
+
+import org.opengeo.gsr.core.format.JsonStreamWriter;
+import org.opengeo.gsr.core.format.JsonStreamWriter.Key;
+
+import com.vividsolutions.jts.geom.Envelope;
+
+/**
+ * The {@code quantizationParameters} of a query: coordinates are written as integers, counting
+ * {@code tolerance} sized cells from a corner of the {@code extent}, and paths, rings and
+ * multipoints are delta encoded.
+ * <p>
+ * In {@code view} mode geometries are also generalized to the tolerance, unless another
+ * {@code maxAllowableOffset} is requested.
+ */
+public final class Quantization {
+    private static final Key ORIGIN_POSITION = new Key("originPosition");
+    private static final Key SCALE = new Key("scale");
+    private static final Key TRANSLATE = new Key("translate");
+
+    private final boolean viewMode;
+
+    private final boolean upperLeft;
+
+    private final double tolerance;
+
+    private final double originX;
+
+    private final double originY;
+
+    public Quantization(boolean viewMode, boolean upperLeft, double tolerance, Envelope extent) {
+        if (!(tolerance > 0) || Double.isInfinite(tolerance)) {
+            throw new IllegalArgumentException("Quantization tolerance must be positive; was " + tolerance);
+        }
+        this.viewMode = viewMode;
+        this.upperLeft = upperLeft;
+        this.tolerance = tolerance;
+        this.originX = extent.getMinX();
+        this.originY = upperLeft ? extent.getMaxY() : extent.getMinY();
+    }
+
+    /**
+     * Parses the {@code quantizationParameters} query parameter, e.g.
+     * {@code {"mode":"view","originPosition":"upperLeft","tolerance":1,"extent":{"xmin":...}}}
+     */
+    public static Quantization fromJson(String text) {
+        final JSONObject json;
+        try {
+            json = JSONObject.fromObject(text);
+        } catch (JSONException e) {
+            throw new IllegalArgumentException("'quantizationParameters' must be a JSON object; was " + text);
+        }
+        String mode = json.optString("mode", "view");
+        if (!"view".equals(mode) && !"edit".equals(mode)) {
+            throw new IllegalArgumentException("Unrecognized quantization mode: " + mode);
+        }
+        String originPosition = json.optString("originPosition", "upperLeft");
+        if (!"upperLeft".equals(originPosition) && !"bottomLeft".equals(originPosition)) {
+            throw new IllegalArgumentException("Unrecognized quantization origin position: " + originPosition);
+        }
+        if (!json.has("extent")) {
+            throw new IllegalArgumentException("'quantizationParameters' must have an extent; was " + text);
+        }
+        final Envelope extent;
+        try {
+            extent = GeometryEncoder.jsonToEnvelope(json.getJSONObject("extent"));
+        } catch (JSONException e) {
+            throw new IllegalArgumentException("Invalid quantization extent: " + json.get("extent"));
+        }
+        double tolerance = json.optDouble("tolerance", 1);
+        return new Quantization("view".equals(mode), "upperLeft".equals(originPosition), tolerance, extent);
+    }
+
+    /**
+     * @return whether geometries are meant for display, and can be generalized to the tolerance
+     */
+    public boolean isViewMode() {
+        return viewMode;
+    }
+
+    public double getTolerance() {
+        return tolerance;
+    }
+
+    public long x(double x) {
+        return Math.round((x - originX) / tolerance);
+    }
+
+    public long y(double y) {
+        return Math.round((upperLeft ? originY - y : y - originY) / tolerance);
+    }
+
+    /**
+     * Writes the {@code transform} clients use to turn the integer coordinates back into real ones
+     */
+    public void transformToJson(JsonStreamWriter json) throws IOException {
+        json.object();
+        json.key(ORIGIN_POSITION).value(upperLeft ? "upperLeft" : "bottomLeft");
+        json.key(SCALE).array().value(tolerance).value(tolerance).value(0).value(0).endArray();
+        json.key(TRANSLATE).array().value(originX).value(originY).value(0).value(0).endArray();
+        json.endObject();
+    }
+}
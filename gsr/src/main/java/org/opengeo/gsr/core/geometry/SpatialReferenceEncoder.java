@@ -4,7 +4,10 @@
  */
  package org.opengeo.gsr.core.geometry;
 
+import java.io.IOException;
+
 import org.geotools.referencing.CRS;
+import org.opengeo.gsr.core.format.JsonStreamWriter;
 import org.opengis.referencing.FactoryException;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
 
@@ -28,6 +31,20 @@ public class SpatialReferenceEncoder {
         }
     }
 
+    public static void toJson(SpatialReference sr, JsonStreamWriter json) throws IOException {
+        if (sr instanceof SpatialReferenceWKID) {
+            final SpatialReferenceWKID wkid = (SpatialReferenceWKID) sr;
+            json.object()
+              .key("wkid").value(wkid.getWkid())
+            .endObject();
+        } else if (sr instanceof SpatialReferenceWKT) {
+            SpatialReferenceWKT wkt = (SpatialReferenceWKT) sr;
+            json.object()
+              .key("wkt").value(wkt.getWkt())
+            .endObject();
+        }
+    }
+
     public static CoordinateReferenceSystem coordinateReferenceSystemFromJSON(JSON json) {
         if (!(json instanceof JSONObject)) {
             throw new JSONException("Spatial Reference must be encoded as JSON Object: was " + json);
@@ -136,12 +136,15 @@ public class LayerResource extends Resource {
                 // supportsRollbackOnFailureParameter - false as we cannot edit at all through GSR
                 json.key("supportsRollbackOnFailureParameter").value("false");
 
-                // supportsStatistics - may be able to implement with aggregate functions
-                json.key("supportsStatistics").value("false");
+                // supportsStatistics - outStatistics are computed with aggregate visitors
+                json.key("supportsStatistics").value("true");
 
                 // supportsAdvancedQueries - not implemented yet (no queries at all.) implement using SortBy
                 json.key("supportsAdvancedQueries").value("false");
 
+                // maxRecordCount - queries return at most this many features, see exceededTransferLimit
+                json.key("maxRecordCount").value(entry.getMaxRecordCount());
+
                 // for feature layers only
                 if (schema.getGeometryDescriptor() != null) {
                     // geometryType
@@ -154,13 +157,13 @@ public class LayerResource extends Resource {
 
                     // extent - layer extent (includes srs info)
                     json.key("extent");
-                    GeometryEncoder.envelopeToJson(entry.boundingBox, json);
+                    GeometryEncoder.envelopeToJson(entry.getBoundingBox(), json);
 
                     // drawingInfo (renderer, transparency, labelingInfo)
                     json.key("drawingInfo");
                     {	json.object();
                         json.key("renderer");
-                        StyleEncoder.encodeRenderer(json, entry.renderer);
+                        StyleEncoder.encodeRenderer(json, entry.getRenderer());
 
                         // transparency - not supported
                         json.key("transparency").value(0);
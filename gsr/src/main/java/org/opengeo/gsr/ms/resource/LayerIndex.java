@@ -0,0 +1,174 @@
+/* Copyright (c) 2013 - 2014 Boundless - http://boundlessgeo.com All rights reserved.
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.opengeo.gsr.ms.resource;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.geoserver.catalog.Catalog;
+import org.geoserver.catalog.CatalogException;
+import org.geoserver.catalog.CatalogInfo;
+import org.geoserver.catalog.LayerInfo;
+import org.geoserver.catalog.Predicates;
+import org.geoserver.catalog.ResourceInfo;
+import org.geoserver.catalog.StoreInfo;
+import org.geoserver.catalog.WorkspaceInfo;
+import org.geoserver.catalog.event.CatalogAddEvent;
+import org.geoserver.catalog.event.CatalogEvent;
+import org.geoserver.catalog.event.CatalogListener;
+import org.geoserver.catalog.event.CatalogModifyEvent;
+import org.geoserver.catalog.event.CatalogPostModifyEvent;
+import org.geoserver.catalog.event.CatalogRemoveEvent;
+import org.geoserver.catalog.util.CloseableIterator;
+
+/**
+ * Per workspace index of the {@link LayerOrTable} entries, by id.
+ * <p>
+ * A workspace is indexed on first use, and dropped from the index when one of its layers,
+ * resources or stores is added, removed or modified. Changes to any other kind of catalog object
+ * (e.g. styles, which the renderers are built from) drop the whole index.
+ */
+class LayerIndex implements CatalogListener {
+    private static final Logger LOGGER = org.geotools.util.logging.Logging.getLogger(LayerIndex.class);
+
+    /**
+     * Entries of a workspace, indexed by id. Layers that could not be represented as a
+     * {@link LayerOrTable} have a {@code null} entry, so that they don't shift the ids of the
+     * following ones.
+     */
+    static class Workspace {
+        final List<LayerOrTable> entries;
+
+        Workspace(List<LayerOrTable> entries) {
+            this.entries = entries;
+        }
+
+        LayerOrTable get(int id) {
+            return id >= 0 && id < entries.size() ? entries.get(id) : null;
+        }
+    }
+
+    private final ConcurrentMap<String, Workspace> workspaces = new ConcurrentHashMap<String, Workspace>();
+
+    /**
+     * Incremented on every invalidation, so that a workspace indexed while the catalog changes is
+     * not kept
+     */
+    private final AtomicLong generation = new AtomicLong();
+
+    /**
+     * @param catalog the catalog this index listens to, not kept so that it can be garbage
+     *        collected while the index is in use
+     */
+    Workspace workspace(Catalog catalog, String workspaceName) {
+        Workspace workspace = workspaces.get(workspaceName);
+        if (workspace == null) {
+            final long current = generation.get();
+            workspace = build(catalog, workspaceName);
+            synchronized (generation) {
+                if (generation.get() == current) {
+                    workspaces.put(workspaceName, workspace);
+                }
+            }
+        }
+        return workspace;
+    }
+
+    private Workspace build(Catalog catalog, String workspaceName) {
+        List<LayerInfo> layersInWorkspace = new ArrayList<LayerInfo>();
+        CloseableIterator<LayerInfo> layers = catalog.list(LayerInfo.class, Predicates.equal("resource.store.workspace.name", workspaceName));
+        try {
+            while (layers.hasNext()) {
+                LayerInfo l = layers.next();
+                // enabled() also checks the resource and store are enabled
+                if (l.enabled() && l.getType() == LayerInfo.Type.VECTOR) {
+                    layersInWorkspace.add(l);
+                }
+            }
+        } finally {
+            layers.close();
+        }
+        // sort for "consistent" order
+        Collections.sort(layersInWorkspace, LayerNameComparator.INSTANCE);
+
+        List<LayerOrTable> entries = new ArrayList<LayerOrTable>(layersInWorkspace.size());
+        int idCounter = 0;
+        for (LayerInfo l : layersInWorkspace) {
+            LayerOrTable entry = null;
+            try {
+                entry = LayersAndTables.entry(l, idCounter);
+            } catch (Exception e) {
+                LOGGER.log(Level.WARNING, "Skipping layer " + l, e);
+            }
+            entries.add(entry);
+            idCounter++;
+        }
+        return new Workspace(Collections.unmodifiableList(entries));
+    }
+
+    private void invalidate(String workspaceName) {
+        synchronized (generation) {
+            generation.incrementAndGet();
+            if (workspaceName == null) {
+                workspaces.clear();
+            } else {
+                workspaces.remove(workspaceName);
+            }
+        }
+    }
+
+    private void invalidate(CatalogEvent event) {
+        CatalogInfo source = event.getSource();
+        WorkspaceInfo workspace = null;
+        try {
+            if (source instanceof LayerInfo) {
+                workspace = ((LayerInfo) source).getResource().getStore().getWorkspace();
+            } else if (source instanceof ResourceInfo) {
+                workspace = ((ResourceInfo) source).getStore().getWorkspace();
+            } else if (source instanceof StoreInfo) {
+                workspace = ((StoreInfo) source).getWorkspace();
+            }
+        } catch (RuntimeException e) {
+            // incomplete object, play safe
+            workspace = null;
+        }
+        invalidate(workspace == null ? null : workspace.getName());
+    }
+
+    @Override
+    public void handleAddEvent(CatalogAddEvent event) throws CatalogException {
+        invalidate(event);
+    }
+
+    @Override
+    public void handleRemoveEvent(CatalogRemoveEvent event) throws CatalogException {
+        invalidate(event);
+    }
+
+    /**
+     * Drops the workspace the object is in before the change, the post modify event drops the one
+     * it's in after it
+     */
+    @Override
+    public void handleModifyEvent(CatalogModifyEvent event) throws CatalogException {
+        invalidate(event);
+    }
+
+    @Override
+    public void handlePostModifyEvent(CatalogPostModifyEvent event) throws CatalogException {
+        invalidate(event);
+    }
+
+    @Override
+    public void reloaded() {
+        invalidate((String) null);
+    }
+}
@@ -168,18 +168,18 @@ public class LayerListResource extends Resource {
                 ScaleRange range = ScaleRange.extract(layerOrTable.layer.getDefaultStyle().getStyle());
                 json.key("minScale").value(range.minScale);
                 json.key("maxScale").value(range.maxScale);
-                if (layerOrTable.boundingBox != null) {
+                if (layerOrTable.getBoundingBox() != null) {
                     json.key("extent");
                     try {
                         CoordinateReferenceSystem WEB_MERCATOR = CRS.decode("EPSG:3857");
-                        GeometryEncoder.referencedEnvelopeToJson(layerOrTable.boundingBox, SpatialReferences.fromCRS(WEB_MERCATOR), json);
+                        GeometryEncoder.referencedEnvelopeToJson(layerOrTable.getBoundingBox(), SpatialReferences.fromCRS(WEB_MERCATOR), json);
                     } catch (FactoryException e) {
                         LOGGER.log(Level.WARNING, "Omitting bbox because we couldn't find EPSG:3857", e);
                     }
                 }
                 json.key("drawingInfo");
                 json.object().key("renderer");
-                StyleEncoder.encodeRenderer(json, layerOrTable.renderer);
+                StyleEncoder.encodeRenderer(json, layerOrTable.getRenderer());
                 json.endObject();
             }
             DimensionInfo time = (DimensionInfo) layer.getResource().getMetadata().get(ResourceInfo.TIME);
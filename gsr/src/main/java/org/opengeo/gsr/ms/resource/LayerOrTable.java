@@ -4,24 +4,113 @@
  */
  package org.opengeo.gsr.ms.resource;
 
+import java.io.IOException;
+
 import org.opengeo.gsr.core.geometry.GeometryTypeEnum;
 import org.opengeo.gsr.core.renderer.Renderer;
+import org.opengeo.gsr.core.renderer.StyleEncoder;
+import org.geoserver.catalog.FeatureTypeInfo;
 import org.geoserver.catalog.LayerInfo;
+import org.geoserver.catalog.ResourceInfo;
+import org.geoserver.platform.GeoServerExtensions;
 import org.geotools.geometry.jts.ReferencedEnvelope;
 
+/**
+ * A GSR layer (with a geometry type) or table.
+ * <p>
+ * The bounding box and renderer are computed on first use, and shared by the copies made with
+ * {@link #withLayer(LayerInfo)}.
+ */
 public class LayerOrTable {
+    /**
+     * Number of features returned by a query when the layer doesn't set a limit, overridden by
+     * the {@code GSR_MAX_RECORD_COUNT} system property, environment variable or servlet context
+     * parameter
+     */
+    public static final int DEFAULT_MAX_RECORD_COUNT = 1000;
+
     public final LayerInfo layer;
     public final int id;
     public final GeometryTypeEnum gtype;
-    public final ReferencedEnvelope boundingBox;
-    public final Renderer renderer;
 
-    LayerOrTable(LayerInfo layer, int id, GeometryTypeEnum gtype, ReferencedEnvelope boundingBox, Renderer renderer) {
+    private final Details details;
+
+    /**
+     * Lazily computed properties, shared among the copies of an entry
+     */
+    private static class Details {
+        private final LayerInfo layer;
+        private volatile boolean boundingBoxComputed;
+        private volatile ReferencedEnvelope boundingBox;
+        private volatile Renderer renderer;
+
+        Details(LayerInfo layer) {
+            this.layer = layer;
+        }
+    }
+
+    LayerOrTable(LayerInfo layer, int id, GeometryTypeEnum gtype) {
+        this(layer, id, gtype, new Details(layer));
+    }
+
+    private LayerOrTable(LayerInfo layer, int id, GeometryTypeEnum gtype, Details details) {
         this.layer = layer;
         this.id = id;
         this.gtype = gtype;
-        this.boundingBox = boundingBox;
-        this.renderer = renderer;
+        this.details = details;
+    }
+
+    /**
+     * @return a copy of this entry for {@code layer}, the same layer as seen by another catalog
+     *         (e.g. one applying the security restrictions of the current user)
+     */
+    LayerOrTable withLayer(LayerInfo layer) {
+        return layer == this.layer ? this : new LayerOrTable(layer, id, gtype, details);
+    }
+
+    /**
+     * @return the lat/lon bounds of the layer in spherical mercator, or {@code null} if not
+     *         available
+     */
+    public ReferencedEnvelope getBoundingBox() {
+        if (!details.boundingBoxComputed) {
+            details.boundingBox = LayersAndTables.sphericalMercator(details.layer,
+                    details.layer.getResource().getLatLonBoundingBox());
+            details.boundingBoxComputed = true;
+        }
+        return details.boundingBox;
+    }
+
+    public Renderer getRenderer() throws IOException {
+        Renderer renderer = details.renderer;
+        if (renderer == null) {
+            renderer = StyleEncoder.effectiveRenderer(details.layer);
+            details.renderer = renderer;
+        }
+        return renderer;
+    }
+
+    /**
+     * @return the maximum number of features returned by a query, the "maximum number of features"
+     *         of the feature type if set, the default one otherwise
+     */
+    public int getMaxRecordCount() {
+        ResourceInfo resource = layer.getResource();
+        if (resource instanceof FeatureTypeInfo && ((FeatureTypeInfo) resource).getMaxFeatures() > 0) {
+            return ((FeatureTypeInfo) resource).getMaxFeatures();
+        }
+        String value = GeoServerExtensions.getProperty("GSR_MAX_RECORD_COUNT");
+        if (value != null) {
+            try {
+                int maxRecordCount = Integer.parseInt(value.trim());
+                if (maxRecordCount > 0) {
+                    return maxRecordCount;
+                }
+            } catch (NumberFormatException e) {
+                // fall back on the default
+            }
+        }
+        return DEFAULT_MAX_RECORD_COUNT;
     }
 
     @Override public String toString() {
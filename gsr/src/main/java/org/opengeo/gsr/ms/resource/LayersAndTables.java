@@ -5,13 +5,12 @@
 package org.opengeo.gsr.ms.resource;
 
 import org.opengeo.gsr.core.geometry.GeometryTypeEnum;
-import org.opengeo.gsr.core.renderer.Renderer;
-import org.opengeo.gsr.core.renderer.StyleEncoder;
 import org.geoserver.catalog.Catalog;
 import org.geoserver.catalog.CoverageInfo;
 import org.geoserver.catalog.FeatureTypeInfo;
 import org.geoserver.catalog.ResourceInfo;
 import org.geoserver.catalog.LayerInfo;
+import org.geoserver.platform.GeoServerExtensions;
 import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.geotools.referencing.CRS;
 import org.opengis.feature.type.GeometryDescriptor;
@@ -23,12 +22,27 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+/**
+ * GSR layers and tables of a workspace.
+ * <p>
+ * Entries are looked up in a {@link LayerIndex} kept per catalog, built from the raw catalog and
+ * kept up to date through catalog events, so that resolving a layer id doesn't go through the whole
+ * catalog. Ids are thus the same for all users, and the entries returned are resolved through the
+ * catalog given to the lookup methods, so that the layers the current user can't access are
+ * left out.
+ */
 public class LayersAndTables {
     private static final Logger LOGGER = org.geotools.util.logging.Logging.getLogger(LayersAndTables.class);
 
+    private static final Map<Catalog, LayerIndex> INDEXES = new WeakHashMap<Catalog, LayerIndex>();
+
+    private static volatile CoordinateReferenceSystem LON_LAT, WEB_MERCATOR;
+
     public final List<LayerOrTable> layers;
     public final List<LayerOrTable> tables;
 
@@ -47,23 +61,9 @@ public class LayersAndTables {
      * @throws IOException 
      */
     public static LayerOrTable find(Catalog catalog, String workspaceName, Integer id) throws IOException{
-        // short list all layers
-        List<LayerInfo> layersInWorkspace = new ArrayList<LayerInfo>();
-        for (LayerInfo l : catalog.getLayers()) {
-            if (l.enabled() && l.getType() == LayerInfo.Type.VECTOR &&
-                    l.getResource().getStore().getWorkspace().getName().equals(workspaceName)) {
-                layersInWorkspace.add(l);
-            }
-        }
-        // sort for "consistent" order
-        Collections.sort(layersInWorkspace, LayerNameComparator.INSTANCE);
-
-        // retrieve indicated layer as LayerOrTable
-        if (id < layersInWorkspace.size()){
-            LayerInfo resource = layersInWorkspace.get(id);
-            return entry(resource, id);
-        }
-        return null; // not found
+        Catalog rawCatalog = rawCatalog(catalog);
+        LayerOrTable entry = index(rawCatalog).workspace(rawCatalog, workspaceName).get(id);
+        return entry == null ? null : visible(catalog, rawCatalog, entry);
     }
 
     public static ReferencedEnvelope sphericalMercator(LayerInfo layer, ReferencedEnvelope boundingBox){
@@ -71,13 +71,15 @@ public class LayersAndTables {
             return null; // bounds not available
         }
         try {
-            CoordinateReferenceSystem lonLat = CRS.decode("EPSG:4326");
-            CoordinateReferenceSystem WEB_MERCATOR = CRS.decode("EPSG:3857");
+            if (WEB_MERCATOR == null) {
+                LON_LAT = CRS.decode("EPSG:4326");
+                WEB_MERCATOR = CRS.decode("EPSG:3857");
+            }
             double minx = Math.max(boundingBox.getMinX(),  -180);
             double maxx = Math.min(boundingBox.getMaxX(),   180);
             double miny = Math.max(boundingBox.getMinY(), -85);
             double maxy = Math.min(boundingBox.getMaxY(),  85);
-            ReferencedEnvelope sphericalMercatorBoundingBox = new ReferencedEnvelope(minx, maxx, miny, maxy, lonLat);
+            ReferencedEnvelope sphericalMercatorBoundingBox = new ReferencedEnvelope(minx, maxx, miny, maxy, LON_LAT);
             sphericalMercatorBoundingBox = sphericalMercatorBoundingBox.transform(WEB_MERCATOR, true);
             return sphericalMercatorBoundingBox;
         } catch (FactoryException factoryException) {
@@ -92,7 +94,7 @@ public class LayersAndTables {
      * Create LayerOrTable entry for layer.
      * <p>
      * Will return null, and log a warning if layer could not be represented
-     * as LayerOrTable.
+     * as LayerOrTable. The bounding box and renderer are computed on first use.
      * 
      * @param layer
      * @param idCounter
@@ -100,11 +102,9 @@ public class LayersAndTables {
      */
     public static LayerOrTable entry(LayerInfo layer, int idCounter) throws IOException {
         ResourceInfo resource = layer.getResource();
-        ReferencedEnvelope boundingBox = sphericalMercator(layer, resource.getLatLonBoundingBox());
-        Renderer renderer = StyleEncoder.effectiveRenderer(layer);
 
         if (resource instanceof CoverageInfo) {
-            return new LayerOrTable(layer, idCounter, GeometryTypeEnum.POLYGON, boundingBox, renderer);
+            return new LayerOrTable(layer, idCounter, GeometryTypeEnum.POLYGON);
         } else if (resource instanceof FeatureTypeInfo) {
             final GeometryTypeEnum gtype;
             GeometryDescriptor gDesc = ((FeatureTypeInfo)resource).getFeatureType().getGeometryDescriptor();
@@ -115,11 +115,7 @@ public class LayersAndTables {
                 gtype = GeometryTypeEnum.forJTSClass(gDesc.getType().getBinding());
             }
 
-            if (gtype == null) {
-                return new LayerOrTable(layer, idCounter, gtype, boundingBox, renderer);
-            } else {
-                return new LayerOrTable(layer, idCounter, gtype, boundingBox, renderer);
-            }
+            return new LayerOrTable(layer, idCounter, gtype);
         }
         return null; // Skipping layer
     }
@@ -132,32 +128,51 @@ public class LayersAndTables {
     public static LayersAndTables find(Catalog catalog, String workspaceName) {
         List<LayerOrTable> layers = new ArrayList<LayerOrTable>();
         List<LayerOrTable> tables = new ArrayList<LayerOrTable>();
-        int idCounter = 0;
-        List<LayerInfo> layersInWorkspace = new ArrayList<LayerInfo>();
-        for (LayerInfo l : catalog.getLayers()) {
-            if (l.enabled() && l.getType() == LayerInfo.Type.VECTOR && l.getResource().getStore().getWorkspace().getName().equals(workspaceName)) {
-                layersInWorkspace.add(l);
+        Catalog rawCatalog = rawCatalog(catalog);
+        for (LayerOrTable entry : index(rawCatalog).workspace(rawCatalog, workspaceName).entries) {
+            if (entry != null) {
+                entry = visible(catalog, rawCatalog, entry);
             }
-        }
-        Collections.sort(layersInWorkspace, LayerNameComparator.INSTANCE);
-        for (LayerInfo l : layersInWorkspace) {
-            try {
-                LayerOrTable entry = entry( l, idCounter);
-                if (entry != null){
-                    if (entry.gtype != null){
-                        layers.add(entry);
-                    } else {
-                        tables.add(entry);
-                    }
+            if (entry != null){
+                if (entry.gtype != null){
+                    layers.add(entry);
+                } else {
+                    tables.add(entry);
                 }
-            } catch (Exception e) {
-                LOGGER.log(Level.WARNING, "Skipping layer " + l, e);
-            } 
-            idCounter++;
+            }
         }
         return new LayersAndTables(Collections.unmodifiableList(layers), Collections.unmodifiableList(tables));
     }
 
+    /**
+     * @return the entry for the layer as seen by {@code catalog}, or {@code null} if it can't see
+     *         it
+     */
+    private static LayerOrTable visible(Catalog catalog, Catalog rawCatalog, LayerOrTable entry) {
+        if (catalog == rawCatalog) {
+            return entry;
+        }
+        LayerInfo layer = catalog.getLayer(entry.layer.getId());
+        return layer == null ? null : entry.withLayer(layer);
+    }
+
+    private static Catalog rawCatalog(Catalog catalog) {
+        Object rawCatalog = GeoServerExtensions.bean("rawCatalog");
+        return rawCatalog instanceof Catalog ? (Catalog) rawCatalog : catalog;
+    }
+
+    private static LayerIndex index(Catalog rawCatalog) {
+        synchronized (INDEXES) {
+            LayerIndex index = INDEXES.get(rawCatalog);
+            if (index == null) {
+                index = new LayerIndex();
+                rawCatalog.addListener(index);
+                INDEXES.put(rawCatalog, index);
+            }
+            return index;
+        }
+    }
+
     @Override
     public String toString() {
         return layers.toString() + ";" + tables.toString();
@@ -24,6 +24,7 @@ import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.NoSuchElementException;
 
@@ -33,7 +34,6 @@ import net.sf.json.util.JSONBuilder;
 import net.sf.json.util.JSONStringer;
 
 import org.geoserver.catalog.Catalog;
-import org.geoserver.catalog.LayerInfo;
 import org.geoserver.catalog.StyleInfo;
 import org.geoserver.catalog.WorkspaceInfo;
 import org.geotools.styling.Style;
@@ -44,7 +44,6 @@ import org.opengeo.gsr.core.renderer.ClassBreakInfo;
 import org.opengeo.gsr.core.renderer.ClassBreaksRenderer;
 import org.opengeo.gsr.core.renderer.Renderer;
 import org.opengeo.gsr.core.renderer.SimpleRenderer;
-import org.opengeo.gsr.core.renderer.StyleEncoder;
 import org.opengeo.gsr.core.renderer.UniqueValueInfo;
 import org.opengeo.gsr.core.renderer.UniqueValueRenderer;
 import org.opengeo.gsr.core.symbol.MarkerSymbol;
@@ -110,19 +109,22 @@ public class LegendResource extends Resource {
             throw new NoSuchElementException("No workspace known by name: " + workspaceName);
         }
         
-        List<LayerInfo> layersInWorkspace = new ArrayList<LayerInfo>();
-        for (LayerInfo l : catalog.getLayers()) {
-            if (l.getType() == LayerInfo.Type.VECTOR && l.getResource().getStore().getWorkspace().getName().equals(workspaceName)) {
-                layersInWorkspace.add(l);
+        // same ids as the layers resource
+        LayersAndTables layersAndTables = LayersAndTables.find(catalog, workspaceName);
+        List<LayerOrTable> layersInWorkspace = new ArrayList<LayerOrTable>(layersAndTables.layers);
+        layersInWorkspace.addAll(layersAndTables.tables);
+        Collections.sort(layersInWorkspace, new Comparator<LayerOrTable>() {
+            @Override
+            public int compare(LayerOrTable a, LayerOrTable b) {
+                return a.id < b.id ? -1 : (a.id == b.id ? 0 : 1);
             }
-        }
-        Collections.sort(layersInWorkspace, LayerNameComparator.INSTANCE);
+        });
         return new JsonLegendRepresentation(layersInWorkspace);
     }
     
     private final static class JsonLegendRepresentation extends OutputRepresentation {
-        private final List<LayerInfo> layers;
-        public JsonLegendRepresentation(List<LayerInfo> layers) {
+        private final List<LayerOrTable> layers;
+        public JsonLegendRepresentation(List<LayerOrTable> layers) {
             super(MediaType.APPLICATION_JSON);
             this.layers = layers;
         }
@@ -132,15 +134,15 @@ public class LegendResource extends Resource {
             Writer writer = new OutputStreamWriter(outputStream, "UTF-8");
             JSONBuilder json = new JSONBuilder(writer);
             json.object().key("layers").array();
-            for (int i = 0; i < layers.size(); i++) {
+            for (LayerOrTable layer : layers) {
                 json.object();
-                json.key("layerId").value(i);
-                json.key("layerName").value(layers.get(i).getName());
+                json.key("layerId").value(layer.id);
+                json.key("layerName").value(layer.layer.getName());
                 json.key("layerType").value("Feature Layer");
                 json.key("minScale").value(0);
                 json.key("maxScale").value(0);
                 json.key("legend").array();
-                Renderer renderer = StyleEncoder.effectiveRenderer(layers.get(i));
+                Renderer renderer = layer.getRenderer();
                 if (renderer instanceof SimpleRenderer) {
                     SimpleRenderer simpleRenderer = (SimpleRenderer) renderer;
                     encodeSymbol(json, simpleRenderer.getLabel(), simpleRenderer.getSymbol());
@@ -4,24 +4,25 @@
  */
  package org.opengeo.gsr.ms.resource;
 
+import java.awt.RenderingHints;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
-import java.io.Writer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import net.sf.json.JSONException;
 import net.sf.json.JSONObject;
 import net.sf.json.JSONSerializer;
-import net.sf.json.util.JSONBuilder;
 
 import org.geoserver.catalog.Catalog;
 import org.geoserver.catalog.DimensionInfo;
@@ -30,18 +31,27 @@ import org.geoserver.catalog.LayerInfo;
 import org.geoserver.catalog.ResourceInfo;
 import org.geotools.data.FeatureSource;
 import org.geotools.data.Query;
+import org.geotools.data.QueryCapabilities;
 import org.geotools.factory.CommonFactoryFinder;
+import org.geotools.factory.Hints;
+import org.geotools.feature.FeatureCollection;
+import org.geotools.feature.visitor.UniqueVisitor;
 import org.geotools.filter.text.cql2.CQLException;
 import org.geotools.filter.text.ecql.ECQL;
 import org.geotools.geometry.jts.JTS;
+import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.geotools.referencing.CRS;
 import org.geotools.temporal.object.DefaultInstant;
 import org.geotools.temporal.object.DefaultPeriod;
 import org.geotools.temporal.object.DefaultPosition;
 import org.opengeo.gsr.core.exception.ServiceError;
 import org.opengeo.gsr.core.feature.FeatureEncoder;
+import org.opengeo.gsr.core.feature.OutStatistic;
+import org.opengeo.gsr.core.feature.StatisticType;
 import org.opengeo.gsr.core.format.GeoServicesJsonFormat;
+import org.opengeo.gsr.core.format.JsonStreamWriter;
 import org.opengeo.gsr.core.geometry.GeometryEncoder;
+import org.opengeo.gsr.core.geometry.Quantization;
 import org.opengeo.gsr.core.geometry.SpatialReferenceEncoder;
 import org.opengeo.gsr.core.geometry.SpatialRelationship;
 import org.opengis.feature.Feature;
@@ -50,7 +60,9 @@ import org.opengis.feature.type.GeometryDescriptor;
 import org.opengis.feature.type.PropertyDescriptor;
 import org.opengis.filter.Filter;
 import org.opengis.filter.FilterFactory2;
+import org.opengis.filter.expression.Expression;
 import org.opengis.filter.identity.FeatureId;
+import org.opengis.filter.sort.SortBy;
 import org.opengis.referencing.FactoryException;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
 import org.opengis.referencing.operation.MathTransform;
@@ -119,34 +131,23 @@ public class QueryResource extends Resource {
         if (!"json".equals(format)) throw new IllegalArgumentException("json is the only supported format");
         String workspace = (String) getRequest().getAttributes().get("workspace");
 
-        LayersAndTables layersAndTables = LayersAndTables.find(catalog, workspace);
-        
         String layerOrTableId = (String) getRequest().getAttributes().get("layerOrTable");
         Integer layerOrTableIndex = Integer.valueOf(layerOrTableId);
-        LayerInfo l = null;
-        for (LayerOrTable layerOrTable : layersAndTables.layers) {
-            if (layerOrTable.id == layerOrTableIndex) {
-                l = layerOrTable.layer;
-                break;
-            }
-        }
-
-        if (l == null) {
-            for (LayerOrTable layerOrTable : layersAndTables.tables) {
-                if (layerOrTable.id == layerOrTableIndex) {
-                    l = layerOrTable.layer;
-                    break;
-                }
-            }
+        LayerOrTable layerOrTable;
+        try {
+            layerOrTable = LayersAndTables.find(catalog, workspace, layerOrTableIndex);
+        } catch (IOException e) {
+            throw new NoSuchElementException("Unavailable table or layer in workspace \"" + workspace + "\" for id " + layerOrTableId + ":" + e);
         }
 
-        if (null == l) {
-            throw new NoSuchElementException("No table or layer in workspace \"" + workspace + " for id " + layerOrTableId + "\" of " + layersAndTables);
+        if (null == layerOrTable) {
+            throw new NoSuchElementException("No table or layer in workspace \"" + workspace + "\" for id " + layerOrTableId);
         }
+        LayerInfo l = layerOrTable.layer;
 
         FeatureTypeInfo featureType = (FeatureTypeInfo) l.getResource();
         if (null == featureType) {
-            throw new NoSuchElementException("No table or layer in workspace \"" + workspace + " for id " + layerOrTableId + "\" of " + layersAndTables);
+            throw new NoSuchElementException("No table or layer in workspace \"" + workspace + "\" for id " + layerOrTableId);
         }
 
         final String geometryProperty;
@@ -167,7 +168,10 @@ public class QueryResource extends Resource {
         }
         
         Form form = getRequest().getResourceRef().getQueryAsForm();
-        if (!(form.getNames().contains("geometryType") && form.getNames().contains("geometry"))) {
+        // statistics are usually computed on the whole layer, or on a where clause
+        final boolean statistics = form.getNames().contains("outStatistics");
+        final boolean hasGeometry = form.getNames().contains("geometryType") && form.getNames().contains("geometry");
+        if (!hasGeometry && !statistics) {
             throw new IllegalArgumentException("'geometry' and 'geometryType' parameters are mandatory");
         }
         
@@ -181,11 +185,14 @@ public class QueryResource extends Resource {
         String objectIdsText = form.getFirstValue("objectIds");
         Filter objectIdFilter = parseObjectIdFilter(objectIdsText);
 
-        String geometryTypeName = form.getFirstValue("geometryType", "GeometryPoint");
-        String geometryText = form.getFirstValue("geometry");
-        final CoordinateReferenceSystem inSR = parseSpatialReference(inSRText, geometryText);
-        String relatePattern = form.getFirstValue("relationParam");
-        Filter filter = buildGeometryFilter(geometryTypeName, geometryProperty, geometryText, spatialRel, relatePattern, inSR, nativeCRS);
+        Filter filter = Filter.INCLUDE;
+        if (hasGeometry) {
+            String geometryTypeName = form.getFirstValue("geometryType", "GeometryPoint");
+            String geometryText = form.getFirstValue("geometry");
+            final CoordinateReferenceSystem inSR = parseSpatialReference(inSRText, geometryText);
+            String relatePattern = form.getFirstValue("relationParam");
+            filter = buildGeometryFilter(geometryTypeName, geometryProperty, geometryText, spatialRel, relatePattern, inSR, nativeCRS);
+        }
         
         if (form.getNames().contains("time")) {
             filter = FILTERS.and(filter, parseTemporalFilter(temporalProperty, form.getFirstValue("time")));
@@ -211,6 +218,18 @@ public class QueryResource extends Resource {
             filter = FILTERS.and(children);
         }
         
+        if (statistics) {
+            List<OutStatistic> outStatistics = OutStatistic.fromJson(form.getFirstValue("outStatistics"));
+            String groupByText = form.getFirstValue("groupByFieldsForStatistics");
+            List<String> groupByFields = new ArrayList<String>();
+            if (groupByText != null && !groupByText.trim().isEmpty()) {
+                for (String field : groupByText.split(",")) {
+                    groupByFields.add(field.trim());
+                }
+            }
+            return new JsonStatisticsRepresentation(featureType, filter, outStatistics, groupByFields, layerOrTable.getMaxRecordCount());
+        }
+
         String returnGeometryText = form.getFirstValue("returnGeometry", "true");
         final boolean returnGeometry;
         if ("true".equalsIgnoreCase(returnGeometryText)) {
@@ -234,7 +253,57 @@ public class QueryResource extends Resource {
             throw new IllegalArgumentException("Unrecognized value for returnIdsOnly parameter: " + returnIdsOnlyText);
         }
 
-        return new JsonQueryRepresentation(featureType, filter, returnIdsOnly, returnGeometry, properties, outSR);
+        final int maxRecordCount = layerOrTable.getMaxRecordCount();
+        final int resultOffset = parseCount("resultOffset", form.getFirstValue("resultOffset"), 0);
+        final int resultRecordCount = Math.min(maxRecordCount,
+                parseCount("resultRecordCount", form.getFirstValue("resultRecordCount"), maxRecordCount));
+
+        final Quantization quantization;
+        String quantizationText = form.getFirstValue("quantizationParameters");
+        if (quantizationText == null || quantizationText.trim().isEmpty()) {
+            quantization = null;
+        } else {
+            quantization = Quantization.fromJson(quantizationText);
+        }
+        double maxAllowableOffset = parseDistance("maxAllowableOffset", form.getFirstValue("maxAllowableOffset"));
+        if (maxAllowableOffset == 0 && quantization != null && quantization.isViewMode()) {
+            // no point in sending the vertices that end up in the same cell
+            maxAllowableOffset = quantization.getTolerance();
+        }
+
+        return new JsonQueryRepresentation(featureType, filter, returnIdsOnly, returnGeometry, properties, outSR, resultOffset, resultRecordCount, maxAllowableOffset, quantization);
+    }
+
+    private static double parseDistance(String parameter, String text) {
+        if (text == null || text.trim().isEmpty()) {
+            return 0;
+        }
+        final double value;
+        try {
+            value = Double.parseDouble(text.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("'" + parameter + "' parameter must be a number; was " + text);
+        }
+        if (value < 0 || Double.isNaN(value) || Double.isInfinite(value)) {
+            throw new IllegalArgumentException("'" + parameter + "' parameter must be a positive number; was " + text);
+        }
+        return value;
+    }
+
+    private static int parseCount(String parameter, String text, int defaultValue) {
+        if (text == null || text.trim().isEmpty()) {
+            return defaultValue;
+        }
+        final int value;
+        try {
+            value = Integer.parseInt(text.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("'" + parameter + "' parameter must be an integer; was " + text);
+        }
+        if (value < 0) {
+            throw new IllegalArgumentException("'" + parameter + "' parameter must not be negative; was " + text);
+        }
+        return value;
     }
     
     private String[] parseOutFields(String outFieldsText) {
@@ -265,8 +334,19 @@ public class QueryResource extends Resource {
         private final boolean returnGeometry;
         private final CoordinateReferenceSystem outCRS;
         private final String[] properties;
+        private final int resultOffset;
+        private final int resultRecordCount;
+        private final double maxAllowableOffset;
+        private final Quantization quantization;
         
-        public JsonQueryRepresentation(FeatureTypeInfo featureType, Filter geometryFilter, boolean returnIdsOnly, boolean returnGeometry, String[] properties, CoordinateReferenceSystem outCRS) {
+        /**
+         * @param resultOffset number of features to skip
+         * @param resultRecordCount maximum number of features returned, ids only requests are not
+         *        limited
+         * @param maxAllowableOffset generalization distance, in the units of the output CRS, or 0
+         * @param quantization quantization parameters of the output geometries, or {@code null}
+         */
+        public JsonQueryRepresentation(FeatureTypeInfo featureType, Filter geometryFilter, boolean returnIdsOnly, boolean returnGeometry, String[] properties, CoordinateReferenceSystem outCRS, int resultOffset, int resultRecordCount, double maxAllowableOffset, Quantization quantization) {
             super(MediaType.APPLICATION_JAVASCRIPT);
             this.featureType = featureType;
             this.geometryFilter = geometryFilter;
@@ -274,13 +354,16 @@ public class QueryResource extends Resource {
             this.returnGeometry = returnGeometry;
             this.outCRS = outCRS;
             this.properties = properties;
+            this.resultOffset = resultOffset;
+            this.resultRecordCount = resultRecordCount;
+            this.maxAllowableOffset = maxAllowableOffset;
+            this.quantization = quantization;
             LOG.info("Created JsonQueryRepresentation with " + Arrays.asList(featureType, geometryFilter, returnIdsOnly, returnGeometry, outCRS, properties == null ? null : Arrays.<String>asList(properties)));
         }
         
         @Override
         public void write(OutputStream outputStream) throws IOException {
-            Writer writer = new OutputStreamWriter(outputStream, "UTF-8");
-            JSONBuilder json = new JSONBuilder(writer);
+            JsonStreamWriter json = new JsonStreamWriter(outputStream);
             FeatureSource<? extends FeatureType, ? extends Feature> source =
                     featureType.getFeatureSource(null, null);
             final String[] effectiveProperties = adjustProperties(returnGeometry, properties, source.getSchema());
@@ -297,13 +380,84 @@ public class QueryResource extends Resource {
             if (returnIdsOnly) {
                 FeatureEncoder.featureIdSetToJson(source.getFeatures(query), json);
             } else {
+                page(query, source.getQueryCapabilities());
                 final boolean reallyReturnGeometry = returnGeometry || properties == null;
-                FeatureEncoder.featuresToJson(source.getFeatures(query), json, reallyReturnGeometry);
+                double simplification = 0;
+                if (reallyReturnGeometry && maxAllowableOffset > 0 && !generalize(query, source.getSupportedHints())) {
+                    simplification = maxAllowableOffset;
+                }
+                FeatureEncoder.featuresToJson(source.getFeatures(query), json, reallyReturnGeometry, resultRecordCount, simplification, quantization);
             }
-            writer.flush();
-            writer.close();
+            json.flush();
+            outputStream.close();
         }
         
+        /**
+         * Limits the query to the requested page, plus one feature to tell whether the transfer
+         * limit is exceeded. Features are sorted in natural (primary key) order when the store
+         * supports it, so that pages are stable and the store can skip the offset on its side.
+         */
+        private void page(Query query, QueryCapabilities capabilities) {
+            SortBy[] naturalOrder = new SortBy[] { SortBy.NATURAL_ORDER };
+            if (capabilities.supportsSorting(naturalOrder)) {
+                query.setSortBy(naturalOrder);
+            }
+            if (resultOffset > 0) {
+                query.setStartIndex(resultOffset);
+            }
+            query.setMaxFeatures(resultRecordCount == Integer.MAX_VALUE ? resultRecordCount : resultRecordCount + 1);
+        }
+
+        /**
+         * Asks the store to generalize the geometries, the way the renderer does, if it can
+         * 
+         * @return whether the store will, otherwise the geometries are simplified while encoded
+         */
+        private boolean generalize(Query query, Set<RenderingHints.Key> supportedHints) {
+            final Hints.Key hint;
+            if (supportedHints.contains(Hints.GEOMETRY_DISTANCE)) {
+                hint = Hints.GEOMETRY_DISTANCE;
+            } else if (supportedHints.contains(Hints.GEOMETRY_SIMPLIFICATION)) {
+                hint = Hints.GEOMETRY_SIMPLIFICATION;
+            } else {
+                return false;
+            }
+            double distance = nativeDistance(maxAllowableOffset);
+            if (distance <= 0) {
+                return false;
+            }
+            Hints hints = query.getHints() == null ? new Hints() : query.getHints();
+            hints.put(hint, distance);
+            query.setHints(hints);
+            return true;
+        }
+
+        /**
+         * Converts a distance in the output CRS to the native one the store works with, based on
+         * the ratio of the width of the native bounds in both.
+         * 
+         * @return the distance in native units, or 0 if it could not be converted
+         */
+        private double nativeDistance(double distance) {
+            ReferencedEnvelope bounds = featureType.getNativeBoundingBox();
+            CoordinateReferenceSystem targetCRS = outCRS != null ? outCRS : featureType.getCRS();
+            if (bounds == null || bounds.getCoordinateReferenceSystem() == null || targetCRS == null
+                    || CRS.equalsIgnoreMetadata(bounds.getCoordinateReferenceSystem(), targetCRS)) {
+                return distance;
+            }
+            try {
+                ReferencedEnvelope target = bounds.transform(targetCRS, true);
+                if (bounds.getWidth() > 0 && target.getWidth() > 0) {
+                    return distance * bounds.getWidth() / target.getWidth();
+                }
+            } catch (TransformException e) {
+                LOG.log(Level.FINE, "Unable to convert generalization distance to native units", e);
+            } catch (FactoryException e) {
+                LOG.log(Level.FINE, "Unable to convert generalization distance to native units", e);
+            }
+            return 0;
+        }
+
         private String[] adjustProperties(boolean addGeometry, String[] originalProperties, FeatureType schema) {
             if (originalProperties == null) {
                 return null;
@@ -338,6 +492,155 @@ public class QueryResource extends Resource {
         }
     }
     
+    /**
+     * Computes the {@code outStatistics} of the features matching the filter with feature visitors,
+     * which stores like the JDBC ones run as SQL aggregates.
+     * <p>
+     * The distinct values of the {@code groupByFieldsForStatistics} are looked up with
+     * {@link UniqueVisitor}s, one field after the other, and the statistics are computed for each
+     * combination, up to {@code maxRecordCount} of them (there's no group by visitor in this
+     * GeoTools version to get them all in one aggregate query).
+     */
+    private static class JsonStatisticsRepresentation extends OutputRepresentation {
+        private final FeatureTypeInfo featureType;
+        private final Filter filter;
+        private final List<OutStatistic> statistics;
+        private final List<String> groupByFields;
+        private final int maxRecordCount;
+
+        public JsonStatisticsRepresentation(FeatureTypeInfo featureType, Filter filter, List<OutStatistic> statistics, List<String> groupByFields, int maxRecordCount) {
+            super(MediaType.APPLICATION_JAVASCRIPT);
+            this.featureType = featureType;
+            this.filter = filter;
+            this.statistics = statistics;
+            this.groupByFields = groupByFields;
+            this.maxRecordCount = maxRecordCount;
+            LOG.info("Created JsonStatisticsRepresentation with " + Arrays.asList(featureType, filter, statistics, groupByFields));
+        }
+
+        @Override
+        public void write(OutputStream outputStream) throws IOException {
+            FeatureSource<? extends FeatureType, ? extends Feature> source =
+                    featureType.getFeatureSource(null, null);
+            FeatureType schema = source.getSchema();
+
+            Set<String> properties = new LinkedHashSet<String>();
+            List<String> groupBy = new ArrayList<String>(groupByFields.size());
+            for (String field : groupByFields) {
+                field = resolveProperty(field, schema);
+                groupBy.add(field);
+                properties.add(field);
+            }
+            List<OutStatistic> resolved = new ArrayList<OutStatistic>(statistics.size());
+            List<Expression> fields = new ArrayList<Expression>(statistics.size());
+            for (OutStatistic statistic : statistics) {
+                String field = statistic.getOnStatisticField();
+                if ("*".equals(field) || "objectid".equalsIgnoreCase(field)) {
+                    // the object id is not an attribute, but it's never null either
+                    if (statistic.getStatisticType() != StatisticType.COUNT) {
+                        throw new IllegalArgumentException("Only count is supported on " + field);
+                    }
+                    fields.add(null);
+                } else {
+                    field = resolveProperty(field, schema);
+                    fields.add(FILTERS.property(field));
+                    properties.add(field);
+                }
+                resolved.add(new OutStatistic(statistic.getStatisticType(), field, statistic.getOutStatisticFieldName()));
+            }
+
+            List<Object[]> groups = new ArrayList<Object[]>();
+            groups(source, filter, groupBy, new Object[groupBy.size()], 0, groups);
+            final boolean exceededTransferLimit = groups.size() > maxRecordCount;
+            if (exceededTransferLimit) {
+                groups = groups.subList(0, maxRecordCount);
+            }
+
+            List<Object[]> rows = new ArrayList<Object[]>(groups.size());
+            for (Object[] group : groups) {
+                Filter groupFilter = filter;
+                for (int i = 0; i < group.length; i++) {
+                    groupFilter = FILTERS.and(groupFilter, equalTo(groupBy.get(i), group[i]));
+                }
+                // all the visitors and the variance need
+                FeatureCollection<? extends FeatureType, ? extends Feature> features =
+                        source.getFeatures(new Query(featureType.getName(), groupFilter, properties.toArray(new String[properties.size()])));
+                Object[] row = Arrays.copyOf(group, group.length + resolved.size());
+                for (int i = 0; i < resolved.size(); i++) {
+                    row[group.length + i] = resolved.get(i).getStatisticType().compute(features, fields.get(i));
+                }
+                rows.add(row);
+            }
+
+            JsonStreamWriter json = new JsonStreamWriter(outputStream);
+            FeatureEncoder.statisticsToJson(schema, groupBy, resolved, rows, exceededTransferLimit, json);
+            json.flush();
+            outputStream.close();
+        }
+
+        /**
+         * Collects the combinations of the distinct values of the group by fields from
+         * {@code index} on, stopping once there are more than {@code maxRecordCount} of them
+         */
+        private void groups(FeatureSource<? extends FeatureType, ? extends Feature> source, Filter filter, List<String> groupBy, Object[] group, int index, List<Object[]> groups) throws IOException {
+            if (index == groupBy.size()) {
+                groups.add(group.clone());
+                return;
+            }
+            UniqueVisitor visitor = new UniqueVisitor(FILTERS.property(groupBy.get(index)));
+            source.getFeatures(new Query(featureType.getName(), filter)).accepts(visitor, null);
+            List<Object> values = new ArrayList<Object>(visitor.getUnique());
+            Collections.sort(values, NULLS_FIRST);
+            for (Object value : values) {
+                if (groups.size() > maxRecordCount) {
+                    return;
+                }
+                group[index] = value;
+                groups(source, FILTERS.and(filter, equalTo(groupBy.get(index), value)), groupBy, group, index + 1, groups);
+            }
+        }
+
+        private static Filter equalTo(String property, Object value) {
+            if (value == null) {
+                return FILTERS.isNull(FILTERS.property(property));
+            }
+            return FILTERS.equal(FILTERS.property(property), FILTERS.literal(value), true);
+        }
+
+        private static String resolveProperty(String name, FeatureType schema) {
+            List<String> candidates = new ArrayList<String>();
+            for (PropertyDescriptor d : schema.getDescriptors()) {
+                String pname = d.getName().getLocalPart();
+                if (pname.equals(name)) {
+                    return name;
+                } else if (pname.equalsIgnoreCase(name)) {
+                    candidates.add(pname);
+                }
+            }
+            if (candidates.size() == 1) return candidates.get(0);
+            if (candidates.size() == 0) throw new NoSuchElementException("No property " + name + " in " + schema);
+            throw new NoSuchElementException("Ambiguous request: " + name + " corresponds to " + candidates);
+        }
+    }
+
+    /**
+     * Sorts group by values, nulls first, values of different classes by their string
+     * representation
+     */
+    private static final Comparator<Object> NULLS_FIRST = new Comparator<Object>() {
+        @SuppressWarnings({ "unchecked", "rawtypes" })
+        @Override
+        public int compare(Object a, Object b) {
+            if (a == null || b == null) {
+                return a == null ? (b == null ? 0 : -1) : 1;
+            }
+            if (a instanceof Comparable && a.getClass().equals(b.getClass())) {
+                return ((Comparable) a).compareTo(b);
+            }
+            return a.toString().compareTo(b.toString());
+        }
+    };
+
     private static Filter buildGeometryFilter(String geometryType, String geometryProperty, String geometryText, SpatialRelationship spatialRel, String relationPattern, CoordinateReferenceSystem requestCRS, CoordinateReferenceSystem nativeCRS) {
         LOG.info("Transforming geometry filter: " + requestCRS + " => " + nativeCRS);
         final MathTransform mathTx;
@@ -0,0 +1,160 @@
+/* Copyright (c) 2013 - 2014 Boundless - http://boundlessgeo.com All rights reserved.
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.opengeo.gsr.core.feature;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Date;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import net.sf.json.util.JSONBuilder;
+
+import org.geotools.data.DataUtilities;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.feature.SchemaException;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.opengeo.gsr.core.format.JsonStreamWriter;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+
+/**
+ * Compares the {@code JSONBuilder} and {@link JsonStreamWriter} feature encoders on a page of
+ * query results (2000 features, the default ArcGIS page size) of points, lines and polygons.
+ * <p>
+ * Not run by the build, run it with {@code mvn test-compile exec:java
+ * -Dexec.classpathScope=test -Dexec.mainClass=org.opengeo.gsr.core.feature.FeatureEncoderBenchmark}
+ * or from the IDE.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class FeatureEncoderBenchmark {
+
+    @Param({ "point", "line", "polygon" })
+    public String geometryType;
+
+    @Param({ "2000" })
+    public int features;
+
+    private SimpleFeatureCollection collection;
+
+    @Setup
+    public void setup() throws SchemaException {
+        collection = collection(geometryType, features, 20);
+    }
+
+    @Benchmark
+    public void jsonBuilder() throws IOException {
+        Writer writer = new OutputStreamWriter(new NullOutputStream(), "UTF-8");
+        JSONBuilder json = new JSONBuilder(writer);
+        FeatureEncoder.featuresToJson(collection, json, true);
+        writer.flush();
+    }
+
+    @Benchmark
+    public void jsonStreamWriter() throws IOException {
+        JsonStreamWriter json = new JsonStreamWriter(new NullOutputStream());
+        FeatureEncoder.featuresToJson(collection, json, true);
+        json.flush();
+    }
+
+    /**
+     * Builds a collection of features with a string, date, boolean, integer, double and float
+     * attributes, and a geometry of the given type, with {@code vertices} vertices for lines and
+     * polygons
+     */
+    static SimpleFeatureCollection collection(String geometryType, int count, int vertices)
+            throws SchemaException {
+        final String binding;
+        if ("point".equals(geometryType)) {
+            binding = "Point";
+        } else if ("line".equals(geometryType)) {
+            binding = "LineString";
+        } else if ("polygon".equals(geometryType)) {
+            binding = "Polygon";
+        } else {
+            throw new IllegalArgumentException(geometryType);
+        }
+        SimpleFeatureType type = DataUtilities.createType(geometryType, "geom:" + binding
+                + ",name:String,updated:java.util.Date,active:Boolean,count:Integer,value:Double,ratio:Float");
+        SimpleFeatureBuilder builder = new SimpleFeatureBuilder(type);
+        GeometryFactory factory = new GeometryFactory();
+        Random random = new Random(1);
+        SimpleFeature[] features = new SimpleFeature[count];
+        for (int i = 0; i < count; i++) {
+            double x = -180 + 360 * random.nextDouble();
+            double y = -90 + 180 * random.nextDouble();
+            final Geometry geometry;
+            if ("point".equals(geometryType)) {
+                geometry = factory.createPoint(new Coordinate(x, y));
+            } else if ("line".equals(geometryType)) {
+                Coordinate[] coords = new Coordinate[vertices];
+                for (int j = 0; j < vertices; j++) {
+                    coords[j] = new Coordinate(x + j * 0.001, y + random.nextDouble() * 0.001);
+                }
+                geometry = factory.createLineString(coords);
+            } else {
+                Coordinate[] coords = new Coordinate[vertices + 1];
+                for (int j = 0; j < vertices; j++) {
+                    double angle = 2 * Math.PI * j / vertices;
+                    double r = 0.01 + random.nextDouble() * 0.001;
+                    coords[j] = new Coordinate(x + r * Math.cos(angle), y + r * Math.sin(angle));
+                }
+                coords[vertices] = coords[0];
+                geometry = factory.createPolygon(factory.createLinearRing(coords), null);
+            }
+            builder.add(geometry);
+            builder.add("feature \"" + i + "\"");
+            builder.add(new Date(1400000000000L + i * 1000L));
+            builder.add(i % 2 == 0);
+            builder.add(i);
+            builder.add(random.nextDouble() * 1000);
+            builder.add(random.nextFloat() * 100);
+            features[i] = builder.buildFeature(geometryType + "." + i);
+        }
+        return DataUtilities.collection(features);
+    }
+
+    private static class NullOutputStream extends OutputStream {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(FeatureEncoderBenchmark.class.getSimpleName()).build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,105 @@
+/* Copyright (c) 2013 - 2014 Boundless - http://boundlessgeo.com All rights reserved.
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.opengeo.gsr.core.feature;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.StringWriter;
+
+import net.sf.json.JSONObject;
+import net.sf.json.util.JSONBuilder;
+
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.junit.Test;
+import org.opengeo.gsr.core.format.JsonStreamWriter;
+
+/**
+ * Checks the {@link JsonStreamWriter} based encoding produces the same output as the
+ * {@link JSONBuilder} one
+ */
+public class FeatureEncoderTest {
+
+    @Test
+    public void testPoints() throws Exception {
+        assertSameOutput(FeatureEncoderBenchmark.collection("point", 50, 0));
+    }
+
+    @Test
+    public void testLines() throws Exception {
+        assertSameOutput(FeatureEncoderBenchmark.collection("line", 50, 10));
+    }
+
+    @Test
+    public void testPolygons() throws Exception {
+        assertSameOutput(FeatureEncoderBenchmark.collection("polygon", 50, 10));
+    }
+
+    @Test
+    public void testExceededTransferLimit() throws Exception {
+        SimpleFeatureCollection collection = FeatureEncoderBenchmark.collection("point", 10, 0);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        JsonStreamWriter json = new JsonStreamWriter(out);
+        FeatureEncoder.featuresToJson(collection, json, true, 5);
+        json.flush();
+        JSONObject limited = JSONObject.fromObject(out.toString("UTF-8"));
+        assertEquals(5, limited.getJSONArray("features").size());
+        assertTrue(limited.getBoolean("exceededTransferLimit"));
+
+        out = new ByteArrayOutputStream();
+        json = new JsonStreamWriter(out);
+        FeatureEncoder.featuresToJson(collection, json, true, 10);
+        json.flush();
+        JSONObject complete = JSONObject.fromObject(out.toString("UTF-8"));
+        assertEquals(10, complete.getJSONArray("features").size());
+        assertFalse(complete.containsKey("exceededTransferLimit"));
+    }
+
+    @Test
+    public void testFeatureIds() throws Exception {
+        SimpleFeatureCollection collection = FeatureEncoderBenchmark.collection("point", 10, 0);
+
+        StringWriter expected = new StringWriter();
+        FeatureEncoder.featureIdSetToJson(collection, new JSONBuilder(expected));
+
+        ByteArrayOutputStream actual = new ByteArrayOutputStream();
+        JsonStreamWriter json = new JsonStreamWriter(actual);
+        FeatureEncoder.featureIdSetToJson(collection, json);
+        json.flush();
+
+        assertEquals(expected.toString(), actual.toString("UTF-8"));
+    }
+
+    @Test
+    public void testStrings() throws Exception {
+        String value = "quote \" backslash \\ </script> \t\n control \u0001 accent \u00e9 \u20ac \ud83d\ude00";
+        StringWriter expected = new StringWriter();
+        new JSONBuilder(expected).array().value(value).value(1.0).value(-2.5).value(1e21)
+                .value(123456789L).value(Float.valueOf(1.1f)).value(Float.valueOf(3e10f)).endArray();
+
+        ByteArrayOutputStream actual = new ByteArrayOutputStream();
+        JsonStreamWriter json = new JsonStreamWriter(actual, 16);
+        json.array().value(value).value(1.0).value(-2.5).value(1e21).value(123456789L)
+                .value(Float.valueOf(1.1f)).value(Float.valueOf(3e10f)).endArray();
+        json.flush();
+
+        assertEquals(expected.toString(), actual.toString("UTF-8"));
+    }
+
+    private void assertSameOutput(SimpleFeatureCollection collection) throws Exception {
+        StringWriter expected = new StringWriter();
+        FeatureEncoder.featuresToJson(collection, new JSONBuilder(expected), true);
+
+        ByteArrayOutputStream actual = new ByteArrayOutputStream();
+        JsonStreamWriter json = new JsonStreamWriter(actual);
+        FeatureEncoder.featuresToJson(collection, json, true);
+        json.flush();
+
+        assertEquals(expected.toString(), actual.toString("UTF-8"));
+    }
+}
@@ -0,0 +1,153 @@
+/* Copyright (c) 2013 - 2014 Boundless - http://boundlessgeo.com All rights reserved.
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.opengeo.gsr.core.feature;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.geotools.data.DataUtilities;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.factory.CommonFactoryFinder;
+import org.geotools.feature.collection.DecoratingSimpleFeatureCollection;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.feature.visitor.AverageVisitor;
+import org.geotools.feature.visitor.CountVisitor;
+import org.geotools.feature.visitor.MaxVisitor;
+import org.geotools.feature.visitor.MinVisitor;
+import org.geotools.feature.visitor.SumVisitor;
+import org.junit.Test;
+import org.opengis.feature.FeatureVisitor;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.filter.Filter;
+import org.opengis.filter.FilterFactory2;
+import org.opengis.filter.expression.Expression;
+import org.opengis.util.ProgressListener;
+
+public class StatisticTypeTest {
+    private static final FilterFactory2 FILTERS = CommonFactoryFinder.getFilterFactory2();
+
+    private static final Expression VALUE = FILTERS.property("value");
+
+    /**
+     * @return features with the given values, which may be null, of a {@code value} attribute
+     */
+    private static SimpleFeatureCollection features(Number... values) throws Exception {
+        SimpleFeatureType type = DataUtilities.createType("stats", "value:java.lang.Double");
+        SimpleFeature[] features = new SimpleFeature[values.length];
+        for (int i = 0; i < values.length; i++) {
+            Double value = values[i] == null ? null : values[i].doubleValue();
+            features[i] = SimpleFeatureBuilder.build(type, new Object[] { value }, "stats." + i);
+        }
+        return DataUtilities.collection(features);
+    }
+
+    /**
+     * Features of a store that computes the visitors itself, like the JDBC ones do in SQL, and
+     * fails when they are read one by one
+     */
+    private static class AggregatingCollection extends DecoratingSimpleFeatureCollection {
+        private final List<Class<?>> visitors;
+
+        AggregatingCollection(SimpleFeatureCollection delegate, List<Class<?>> visitors) {
+            super(delegate);
+            this.visitors = visitors;
+        }
+
+        @Override
+        public void accepts(FeatureVisitor visitor, ProgressListener progress) throws IOException {
+            visitors.add(visitor.getClass());
+            delegate.accepts(visitor, progress);
+        }
+
+        @Override
+        public SimpleFeatureCollection subCollection(Filter filter) {
+            return new AggregatingCollection(delegate.subCollection(filter), visitors);
+        }
+
+        @Override
+        public SimpleFeatureIterator features() {
+            throw new UnsupportedOperationException("features should be aggregated by the store");
+        }
+    }
+
+    @Test
+    public void testVisitorsPushedDown() throws Exception {
+        List<Class<?>> visitors = new ArrayList<Class<?>>();
+        SimpleFeatureCollection features = new AggregatingCollection(features(0, 1, 2, 3, null), visitors);
+
+        assertEquals(5, ((Number) StatisticType.COUNT.compute(features, null)).intValue());
+        assertEquals(4, ((Number) StatisticType.COUNT.compute(features, VALUE)).intValue());
+        assertEquals(6, ((Number) StatisticType.SUM.compute(features, VALUE)).doubleValue(), 0);
+        assertEquals(0, ((Number) StatisticType.MIN.compute(features, VALUE)).intValue());
+        assertEquals(3, ((Number) StatisticType.MAX.compute(features, VALUE)).intValue());
+        assertEquals(1.5, ((Number) StatisticType.AVG.compute(features, VALUE)).doubleValue(), 1e-9);
+        assertEquals(Arrays.<Class<?>> asList(CountVisitor.class, CountVisitor.class, SumVisitor.class,
+                MinVisitor.class, MaxVisitor.class, AverageVisitor.class), visitors);
+    }
+
+    @Test
+    public void testStatistics() throws Exception {
+        SimpleFeatureCollection features = features(0, 1, 2, 3, 4, 5, 6, 7, 8, 9, null);
+
+        assertEquals(11, ((Number) StatisticType.COUNT.compute(features, null)).intValue());
+        assertEquals(10, ((Number) StatisticType.COUNT.compute(features, VALUE)).intValue());
+        assertEquals(45, ((Number) StatisticType.SUM.compute(features, VALUE)).doubleValue(), 0);
+        assertEquals(0, ((Number) StatisticType.MIN.compute(features, VALUE)).intValue());
+        assertEquals(9, ((Number) StatisticType.MAX.compute(features, VALUE)).intValue());
+        assertEquals(4.5, ((Number) StatisticType.AVG.compute(features, VALUE)).doubleValue(), 1e-9);
+        assertEquals(55d / 6, ((Number) StatisticType.VAR.compute(features, VALUE)).doubleValue(), 1e-9);
+        assertEquals(Math.sqrt(55d / 6), ((Number) StatisticType.STDDEV.compute(features, VALUE)).doubleValue(), 1e-9);
+    }
+
+    @Test
+    public void testVarianceOfLargeValues() throws Exception {
+        // the sum of squares would be around 4e18, where doubles are 512 apart
+        SimpleFeatureCollection features = features(1e9 + 4, 1e9 + 7, 1e9 + 13, 1e9 + 16);
+
+        assertEquals(30, ((Number) StatisticType.VAR.compute(features, VALUE)).doubleValue(), 1e-6);
+        assertEquals(Math.sqrt(30), ((Number) StatisticType.STDDEV.compute(features, VALUE)).doubleValue(), 1e-6);
+    }
+
+    @Test
+    public void testSingleValue() throws Exception {
+        SimpleFeatureCollection features = features(42);
+
+        assertEquals(0, ((Number) StatisticType.VAR.compute(features, VALUE)).doubleValue(), 0);
+        assertEquals(42, ((Number) StatisticType.AVG.compute(features, VALUE)).doubleValue(), 0);
+    }
+
+    @Test
+    public void testEmpty() throws Exception {
+        SimpleFeatureCollection features = features();
+
+        assertEquals(0, ((Number) StatisticType.COUNT.compute(features, VALUE)).intValue());
+        assertNull(StatisticType.SUM.compute(features, VALUE));
+        assertNull(StatisticType.MIN.compute(features, VALUE));
+        assertNull(StatisticType.VAR.compute(features, VALUE));
+    }
+
+    @Test
+    public void testParse() {
+        List<OutStatistic> statistics = OutStatistic.fromJson("[{statisticType:'sum',onStatisticField:'count',outStatisticFieldName:'total'},"
+                + "{statisticType:'COUNT',onStatisticField:'objectid'}]");
+        assertEquals(2, statistics.size());
+        assertEquals(StatisticType.SUM, statistics.get(0).getStatisticType());
+        assertEquals("total", statistics.get(0).getOutStatisticFieldName());
+        assertEquals(StatisticType.COUNT, statistics.get(1).getStatisticType());
+        assertEquals("count_objectid", statistics.get(1).getOutStatisticFieldName());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownType() {
+        OutStatistic.fromJson("[{statisticType:'median',onStatisticField:'count'}]");
+    }
+}
@@ -0,0 +1,72 @@
+/* Copyright (c) 2013 - 2014 Boundless - http://boundlessgeo.com All rights reserved.
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.opengeo.gsr.core.geometry;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+
+import org.junit.Test;
+import org.opengeo.gsr.core.format.JsonStreamWriter;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.GeometryFactory;
+
+public class QuantizationTest {
+
+    private final GeometryFactory factory = new GeometryFactory();
+
+    @Test
+    public void testParse() {
+        Quantization quantization = Quantization.fromJson("{\"mode\":\"view\",\"originPosition\":\"upperLeft\",\"tolerance\":2,"
+                + "\"extent\":{\"xmin\":0,\"ymin\":0,\"xmax\":100,\"ymax\":100}}");
+        assertTrue(quantization.isViewMode());
+        assertEquals(2, quantization.getTolerance(), 0);
+        assertEquals(5, quantization.x(10));
+        assertEquals(45, quantization.y(10));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMissingExtent() {
+        Quantization.fromJson("{\"mode\":\"view\",\"tolerance\":2}");
+    }
+
+    @Test
+    public void testPoint() throws Exception {
+        Quantization quantization = new Quantization(false, false, 0.5, new com.vividsolutions.jts.geom.Envelope(10, 20, 10, 20));
+        assertEquals("{\"x\":3,\"y\":5}",
+                toJson(factory.createPoint(new Coordinate(11.4, 12.6)), quantization));
+    }
+
+    @Test
+    public void testDeltaEncodedPath() throws Exception {
+        Quantization quantization = new Quantization(true, true, 1, new com.vividsolutions.jts.geom.Envelope(0, 100, 0, 100));
+        Coordinate[] coordinates = new Coordinate[] { new Coordinate(10, 90), new Coordinate(12, 90),
+                new Coordinate(12.2, 89.9), new Coordinate(15, 85) };
+        // the third vertex falls in the same cell as the second one
+        assertEquals("{\"paths\":[[[10,10],[2,0],[3,5]]]}",
+                toJson(factory.createLineString(coordinates), quantization));
+    }
+
+    @Test
+    public void testTransform() throws Exception {
+        Quantization quantization = new Quantization(true, true, 0.25, new com.vividsolutions.jts.geom.Envelope(-10, 10, -5, 5));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        JsonStreamWriter json = new JsonStreamWriter(out);
+        quantization.transformToJson(json);
+        json.flush();
+        assertEquals("{\"originPosition\":\"upperLeft\",\"scale\":[0.25,0.25,0,0],\"translate\":[-10,5,0,0]}",
+                out.toString("UTF-8"));
+    }
+
+    private static String toJson(com.vividsolutions.jts.geom.Geometry geometry, Quantization quantization) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        JsonStreamWriter json = new JsonStreamWriter(out);
+        GeometryEncoder.toJson(geometry, quantization, json);
+        json.flush();
+        return out.toString("UTF-8");
+    }
+}
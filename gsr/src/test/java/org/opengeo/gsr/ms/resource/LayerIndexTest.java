@@ -0,0 +1,177 @@
+/* Copyright (c) 2013 - 2014 Boundless - http://boundlessgeo.com All rights reserved.
+ * This code is licensed under the GPL 2.0 license, available at the root
+ * application directory.
+ */
+package org.opengeo.gsr.ms.resource;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.geoserver.catalog.Catalog;
+import org.geoserver.catalog.LayerInfo;
+import org.geoserver.catalog.event.impl.CatalogAddEventImpl;
+import org.geoserver.catalog.event.impl.CatalogModifyEventImpl;
+import org.geoserver.catalog.event.impl.CatalogRemoveEventImpl;
+import org.geoserver.data.test.MockData;
+import org.geoserver.data.test.SystemTestData;
+import org.geoserver.security.AccessMode;
+import org.geoserver.test.GeoServerSystemTestSupport;
+import org.junit.After;
+import org.junit.Test;
+
+public class LayerIndexTest extends GeoServerSystemTestSupport {
+
+    @Override
+    protected void setUpTestData(SystemTestData testData) throws Exception {
+        testData.setUpDefault();
+    }
+
+    @Override
+    protected void onSetUp(SystemTestData testData) throws Exception {
+        addLayerAccessRule(MockData.CITE_PREFIX, MockData.BUILDINGS.getLocalPart(), AccessMode.READ, "ROLE_BUILDINGS");
+    }
+
+    @After
+    public void logoutAfter() {
+        logout();
+    }
+
+    private Catalog rawCatalog() {
+        return (Catalog) applicationContext.getBean("rawCatalog");
+    }
+
+    private static List<String> names(List<LayerOrTable> entries) {
+        List<String> names = new ArrayList<String>();
+        for (LayerOrTable entry : entries) {
+            names.add(entry == null ? null : entry.layer.getName());
+        }
+        return names;
+    }
+
+    @Test
+    public void testIndex() throws Exception {
+        Catalog catalog = rawCatalog();
+        LayerIndex index = new LayerIndex();
+        LayerIndex.Workspace cite = index.workspace(catalog, MockData.CITE_PREFIX);
+
+        List<String> expected = new ArrayList<String>();
+        for (LayerInfo layer : catalog.getLayers()) {
+            if (layer.enabled() && layer.getType() == LayerInfo.Type.VECTOR
+                    && MockData.CITE_PREFIX.equals(layer.getResource().getStore().getWorkspace().getName())) {
+                expected.add(layer.getName());
+            }
+        }
+        assertFalse(expected.isEmpty());
+        assertEquals(expected.size(), cite.entries.size());
+        assertTrue(names(cite.entries).containsAll(expected));
+        for (int id = 0; id < cite.entries.size(); id++) {
+            assertEquals(id, cite.get(id).id);
+            if (id > 0) {
+                assertTrue(LayerNameComparator.INSTANCE.compare(cite.get(id - 1).layer, cite.get(id).layer) <= 0);
+            }
+        }
+        assertNull(cite.get(-1));
+        assertNull(cite.get(cite.entries.size()));
+
+        // indexed once
+        assertSame(cite, index.workspace(catalog, MockData.CITE_PREFIX));
+        assertTrue(index.workspace(catalog, "notAWorkspace").entries.isEmpty());
+    }
+
+    @Test
+    public void testInvalidation() throws Exception {
+        Catalog catalog = rawCatalog();
+        LayerIndex index = new LayerIndex();
+        LayerInfo buildings = catalog.getLayerByName(getLayerId(MockData.BUILDINGS));
+
+        LayerIndex.Workspace cite = index.workspace(catalog, MockData.CITE_PREFIX);
+        LayerIndex.Workspace sf = index.workspace(catalog, MockData.SF_PREFIX);
+
+        CatalogAddEventImpl add = new CatalogAddEventImpl();
+        add.setSource(buildings);
+        index.handleAddEvent(add);
+        assertNotSame(cite, cite = index.workspace(catalog, MockData.CITE_PREFIX));
+        // other workspaces are kept
+        assertSame(sf, index.workspace(catalog, MockData.SF_PREFIX));
+
+        CatalogModifyEventImpl modify = new CatalogModifyEventImpl();
+        modify.setSource(buildings.getResource());
+        index.handleModifyEvent(modify);
+        assertNotSame(cite, cite = index.workspace(catalog, MockData.CITE_PREFIX));
+
+        CatalogRemoveEventImpl remove = new CatalogRemoveEventImpl();
+        remove.setSource(buildings.getResource().getStore());
+        index.handleRemoveEvent(remove);
+        assertNotSame(cite, cite = index.workspace(catalog, MockData.CITE_PREFIX));
+        assertSame(sf, index.workspace(catalog, MockData.SF_PREFIX));
+
+        // any other change drops all workspaces
+        CatalogModifyEventImpl style = new CatalogModifyEventImpl();
+        style.setSource(catalog.getStyleByName("Default"));
+        index.handleModifyEvent(style);
+        assertNotSame(sf, index.workspace(catalog, MockData.SF_PREFIX));
+    }
+
+    @Test
+    public void testCatalogChanges() throws Exception {
+        Catalog catalog = rawCatalog();
+        LayerIndex index = new LayerIndex();
+        catalog.addListener(index);
+        try {
+            LayerInfo buildings = catalog.getLayerByName(getLayerId(MockData.BUILDINGS));
+            assertTrue(names(index.workspace(catalog, MockData.CITE_PREFIX).entries).contains(buildings.getName()));
+
+            buildings.setEnabled(false);
+            catalog.save(buildings);
+            try {
+                assertFalse(names(index.workspace(catalog, MockData.CITE_PREFIX).entries).contains(buildings.getName()));
+            } finally {
+                buildings = catalog.getLayerByName(getLayerId(MockData.BUILDINGS));
+                buildings.setEnabled(true);
+                catalog.save(buildings);
+            }
+            assertTrue(names(index.workspace(catalog, MockData.CITE_PREFIX).entries).contains(buildings.getName()));
+        } finally {
+            catalog.removeListener(index);
+        }
+    }
+
+    @Test
+    public void testSecuredCatalog() throws Exception {
+        // the secured catalog
+        Catalog catalog = getCatalog();
+        String buildings = MockData.BUILDINGS.getLocalPart();
+
+        login("admin", "geoserver", "ROLE_ADMINISTRATOR");
+        LayersAndTables all = LayersAndTables.find(catalog, MockData.CITE_PREFIX);
+        LayerOrTable entry = null;
+        for (LayerOrTable e : all.layers) {
+            if (buildings.equals(e.layer.getName())) {
+                entry = e;
+            }
+        }
+        assertNotNull(entry);
+
+        login("cite", "cite", "ROLE_OTHER");
+        LayersAndTables visible = LayersAndTables.find(catalog, MockData.CITE_PREFIX);
+        assertFalse(names(visible.layers).contains(buildings));
+        assertEquals(all.layers.size() - 1, visible.layers.size());
+        assertNull(LayersAndTables.find(catalog, MockData.CITE_PREFIX, entry.id));
+        // ids don't depend on what the user can see
+        for (LayerOrTable e : visible.layers) {
+            assertEquals(e.layer.getName(), LayersAndTables.find(catalog, MockData.CITE_PREFIX, e.id).layer.getName());
+            assertEquals(e.id, LayersAndTables.find(rawCatalog(), MockData.CITE_PREFIX, e.id).id);
+        }
+
+        login("buildings", "buildings", "ROLE_BUILDINGS");
+        assertNotNull(LayersAndTables.find(catalog, MockData.CITE_PREFIX, entry.id));
+    }
+}
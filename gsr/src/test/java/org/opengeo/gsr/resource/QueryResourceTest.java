@@ -4,7 +4,15 @@
  */
 package org.opengeo.gsr.resource;
 
+import java.util.ArrayList;
+import java.util.List;
+
+import org.geoserver.catalog.FeatureTypeInfo;
+import org.geotools.feature.FeatureIterator;
 import org.opengeo.gsr.JsonSchemaTest;
+import org.opengeo.gsr.ms.resource.LayerOrTable;
+import org.opengeo.gsr.ms.resource.LayersAndTables;
+import org.opengis.feature.Feature;
 
 import net.sf.json.JSON;
 import net.sf.json.JSONArray;
@@ -215,4 +223,149 @@ public class QueryResourceTest extends ResourceTest {
         features = json.getJSONArray("features");
         assertTrue("Should have results for envelope query at 0,0. JSON was: " + result, features.size() == 1);
     }
+
+    @Test
+    public void testPaging() throws Exception {
+        String result = getAsString(query("cite", 11, "?f=json&geometryType=esriGeometryEnvelope&geometry=-180,-90,180,90&resultRecordCount=1"));
+        assertTrue("Request with resultRecordCount; returned " + result, JsonSchemaTest.validateJSON(result, "/gsr/1.0/featureSet.json"));
+        JSONObject json = JSONObject.fromObject(result);
+        assertEquals("First page should have one feature; JSON was: " + result, 1, json.getJSONArray("features").size());
+        assertTrue("First page should exceed the transfer limit; JSON was: " + result, json.getBoolean("exceededTransferLimit"));
+        Object first = json.getJSONArray("features").getJSONObject(0).getJSONObject("attributes").get("objectid");
+
+        result = getAsString(query("cite", 11, "?f=json&geometryType=esriGeometryEnvelope&geometry=-180,-90,180,90&resultRecordCount=1&resultOffset=1"));
+        json = JSONObject.fromObject(result);
+        assertEquals("Second page should have one feature; JSON was: " + result, 1, json.getJSONArray("features").size());
+        assertFalse("Second page is the last one; JSON was: " + result, json.containsKey("exceededTransferLimit"));
+        Object second = json.getJSONArray("features").getJSONObject(0).getJSONObject("attributes").get("objectid");
+        assertFalse("Pages should not overlap", first.equals(second));
+
+        result = getAsString(query("cite", 11, "?f=json&geometryType=esriGeometryEnvelope&geometry=-180,-90,180,90&resultOffset=-1"));
+        assertTrue("Request with negative offset produces error; returned " + result, JsonSchemaTest.validateJSON(result, "/gsr/1.0/exception.json"));
+    }
+
+    @Test
+    public void testGeneralization() throws Exception {
+        String result = getAsString(query("cite", 11, "?f=json&geometryType=esriGeometryEnvelope&geometry=-180,-90,180,90&maxAllowableOffset=0.001"));
+        assertTrue("Request with maxAllowableOffset; returned " + result, JsonSchemaTest.validateJSON(result, "/gsr/1.0/featureSet.json"));
+        JSONObject json = JSONObject.fromObject(result);
+        assertEquals("Generalization should not drop features; JSON was: " + result, 2, json.getJSONArray("features").size());
+
+        result = getAsString(query("cite", 11, "?f=json&geometryType=esriGeometryEnvelope&geometry=-180,-90,180,90"
+                + "&quantizationParameters={mode:view,originPosition:upperLeft,tolerance:0.0001,extent:{xmin:-1,ymin:-1,xmax:1,ymax:1}}"));
+        assertTrue("Request with quantizationParameters; returned " + result, JsonSchemaTest.validateJSON(result, "/gsr/1.0/featureSet.json"));
+        json = JSONObject.fromObject(result);
+        assertEquals("upperLeft", json.getJSONObject("transform").get("originPosition"));
+        assertEquals("Quantization should not drop features; JSON was: " + result, 2, json.getJSONArray("features").size());
+
+        result = getAsString(query("cite", 11, "?f=json&geometryType=esriGeometryEnvelope&geometry=-180,-90,180,90&quantizationParameters={mode:view}"));
+        assertTrue("Quantization without an extent produces error; returned " + result, JsonSchemaTest.validateJSON(result, "/gsr/1.0/exception.json"));
+    }
+
+    @Test
+    public void testStatistics() throws Exception {
+        String result = getAsString(query("cite", 11, "?f=json&where=1=1"
+                + "&outStatistics=[{statisticType:'count',onStatisticField:'objectid',outStatisticFieldName:'total'}]"));
+        JSONObject json = JSONObject.fromObject(result);
+        JSONArray features = json.getJSONArray("features");
+        assertEquals("Statistics without group by should have one row; JSON was: " + result, 1, features.size());
+        assertEquals(2, features.getJSONObject(0).getJSONObject("attributes").getInt("total"));
+        assertEquals("esriFieldTypeInteger", json.getJSONArray("fields").getJSONObject(0).get("type"));
+
+        result = getAsString(query("cite", 11, "?f=json&where=1=1&groupByFieldsForStatistics=NAME"
+                + "&outStatistics=[{statisticType:'count',onStatisticField:'NAME',outStatisticFieldName:'streams'}]"));
+        json = JSONObject.fromObject(result);
+        features = json.getJSONArray("features");
+        int total = 0;
+        for (int i = 0; i < features.size(); i++) {
+            JSONObject attributes = features.getJSONObject(i).getJSONObject("attributes");
+            assertTrue("Group rows should have the group by field; JSON was: " + result, attributes.containsKey("NAME"));
+            total += attributes.getInt("streams");
+        }
+        assertEquals("Groups should cover all the features; JSON was: " + result, 2, total);
+
+        result = getAsString(query("cite", 11, "?f=json&where=1=1&outStatistics=[{statisticType:'median',onStatisticField:'NAME'}]"));
+        assertTrue("Unknown statistic produces error; returned " + result, JsonSchemaTest.validateJSON(result, "/gsr/1.0/exception.json"));
+    }
+
+    @Test
+    public void testStatisticsGroups() throws Exception {
+        String result = getAsString(query("cite", 11, "?f=json&where=1=1&groupByFieldsForStatistics=FID"
+                + "&outStatistics=[{statisticType:'count',onStatisticField:'FID',outStatisticFieldName:'streams'}]"));
+        JSONObject json = JSONObject.fromObject(result);
+        JSONArray features = json.getJSONArray("features");
+        assertEquals("One row per distinct FID; JSON was: " + result, 2, features.size());
+        String first = features.getJSONObject(0).getJSONObject("attributes").getString("FID");
+        String second = features.getJSONObject(1).getJSONObject("attributes").getString("FID");
+        assertTrue("Groups should be sorted; JSON was: " + result, first.compareTo(second) < 0);
+        for (int i = 0; i < features.size(); i++) {
+            assertEquals(1, features.getJSONObject(i).getJSONObject("attributes").getInt("streams"));
+        }
+        assertFalse(json.containsKey("exceededTransferLimit"));
+    }
+
+    @Test
+    public void testStatisticsExceededTransferLimit() throws Exception {
+        System.setProperty("GSR_MAX_RECORD_COUNT", "1");
+        try {
+            String result = getAsString(query("cite", 11, "?f=json&where=1=1&groupByFieldsForStatistics=FID"
+                    + "&outStatistics=[{statisticType:'count',onStatisticField:'FID',outStatisticFieldName:'streams'}]"));
+            JSONObject json = JSONObject.fromObject(result);
+            JSONArray features = json.getJSONArray("features");
+            assertEquals("Only maxRecordCount groups; JSON was: " + result, 1, features.size());
+            assertTrue(json.getBoolean("exceededTransferLimit"));
+        } finally {
+            System.clearProperty("GSR_MAX_RECORD_COUNT");
+        }
+    }
+
+    @Test
+    public void testStatisticsVariance() throws Exception {
+        int layerId = -1;
+        LayersAndTables sf = LayersAndTables.find(catalog, "sf");
+        for (LayerOrTable entry : sf.layers) {
+            if ("PrimitiveGeoFeature".equals(entry.layer.getName())) {
+                layerId = entry.id;
+            }
+        }
+        assertTrue(layerId >= 0);
+
+        // expected values, computed the textbook way
+        List<Double> values = new ArrayList<Double>();
+        FeatureTypeInfo featureType = catalog.getFeatureTypeByName("sf", "PrimitiveGeoFeature");
+        FeatureIterator<? extends Feature> it = featureType.getFeatureSource(null, null).getFeatures().features();
+        try {
+            while (it.hasNext()) {
+                Object value = it.next().getProperty("intProperty").getValue();
+                if (value != null) {
+                    values.add(((Number) value).doubleValue());
+                }
+            }
+        } finally {
+            it.close();
+        }
+        assertTrue(values.size() > 1);
+        double mean = 0;
+        for (double value : values) {
+            mean += value / values.size();
+        }
+        double variance = 0;
+        for (double value : values) {
+            variance += (value - mean) * (value - mean) / (values.size() - 1);
+        }
+
+        String result = getAsString(query("sf", layerId, "?f=json&where=1=1&outStatistics=["
+                + "{statisticType:'var',onStatisticField:'intProperty',outStatisticFieldName:'var'},"
+                + "{statisticType:'stddev',onStatisticField:'intProperty',outStatisticFieldName:'stddev'},"
+                + "{statisticType:'avg',onStatisticField:'intProperty',outStatisticFieldName:'avg'},"
+                + "{statisticType:'count',onStatisticField:'intProperty',outStatisticFieldName:'count'}]"));
+        JSONObject json = JSONObject.fromObject(result);
+        JSONArray features = json.getJSONArray("features");
+        assertEquals("Statistics without group by should have one row; JSON was: " + result, 1, features.size());
+        JSONObject attributes = features.getJSONObject(0).getJSONObject("attributes");
+        assertEquals(values.size(), attributes.getInt("count"));
+        assertEquals(mean, attributes.getDouble("avg"), 1e-9 * Math.abs(mean));
+        assertEquals(variance, attributes.getDouble("var"), 1e-9 * variance);
+        assertEquals(Math.sqrt(variance), attributes.getDouble("stddev"), 1e-9 * Math.sqrt(variance));
+    }
 }
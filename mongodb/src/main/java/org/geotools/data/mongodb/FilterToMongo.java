@@ -7,9 +7,12 @@ import com.mongodb.DBObject;
 import com.vividsolutions.jts.geom.Envelope;
 import com.vividsolutions.jts.geom.Geometry;
 import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.regex.Pattern;
+import org.bson.BSONObject;
 import org.bson.types.ObjectId;
 import static org.geotools.util.Converters.convert;
 import org.opengis.filter.And;
@@ -57,6 +60,7 @@ import org.opengis.filter.temporal.AnyInteracts;
 import org.opengis.filter.temporal.Before;
 import org.opengis.filter.temporal.Begins;
 import org.opengis.filter.temporal.BegunBy;
+import org.opengis.filter.temporal.BinaryTemporalOperator;
 import org.opengis.filter.temporal.During;
 import org.opengis.filter.temporal.EndedBy;
 import org.opengis.filter.temporal.Ends;
@@ -66,6 +70,8 @@ import org.opengis.filter.temporal.OverlappedBy;
 import org.opengis.filter.temporal.TContains;
 import org.opengis.filter.temporal.TEquals;
 import org.opengis.filter.temporal.TOverlaps;
+import org.opengis.temporal.Instant;
+import org.opengis.temporal.Period;
 
 /**
  * @author Gerald Gay, Data Tactics Corp.
@@ -131,15 +137,32 @@ public class FilterToMongo implements FilterVisitor, ExpressionVisitor {
     //
     
     // Expressions like ((A == 1) AND (B == 2)) are basically
-    // implied. So just build up all sub expressions
+    // implied. So just build up all sub expressions, unless two of
+    // them constrain the same key in which case $and is required
     @Override
     public Object visit(And filter, Object extraData) {
         BasicDBObject output = asDBObject(extraData);
     
         List<Filter> children = filter.getChildren();
         if (children != null) {
+          List<BasicDBObject> encoded = new ArrayList<BasicDBObject>(children.size());
+          boolean collision = false;
+          Set<String> keys = new HashSet<String>(output.keySet());
           for (Filter child : children) {
-            child.accept(this, output);
+            BasicDBObject item = (BasicDBObject) child.accept(this, null);
+            for (String key : item.keySet()) {
+              collision |= !keys.add(key);
+            }
+            encoded.add(item);
+          }
+          if (collision) {
+            BasicDBList andList = new BasicDBList();
+            andList.addAll(encoded);
+            output.put("$and", andList);
+          } else {
+            for (BasicDBObject item : encoded) {
+              output.putAll((BSONObject) item);
+            }
           }
         }
     
@@ -165,7 +188,10 @@ public class FilterToMongo implements FilterVisitor, ExpressionVisitor {
     public Object visit(Not filter, Object extraData) {
         BasicDBObject output = asDBObject(extraData);
         BasicDBObject expr = (BasicDBObject) filter.getFilter().accept(this, null);
-        output.put("$not", expr);
+        // $not only applies to field expressions, $nor negates a whole query
+        BasicDBList norList = new BasicDBList();
+        norList.add(expr);
+        output.put("$nor", norList);
         return output;
     }
 
@@ -184,7 +210,7 @@ public class FilterToMongo implements FilterVisitor, ExpressionVisitor {
         dbo.put("$gte", lower);
         dbo.put("$lte", upper);
         output.put(propName, dbo);
-        return propName;
+        return output;
     }
 
     @Override
@@ -239,30 +265,56 @@ public class FilterToMongo implements FilterVisitor, ExpressionVisitor {
     //
     // filter.getWildCard() returns SQL-like '%'
     // filter.getSingleChar() returns SQL-like '_'
-    // So I'm converting "foo_bar%" to /foo.bar.*/
+    // So I'm converting "foo_bar%" to /^foo.bar.*$/, anchored so that
+    // a prefix match can use an index
     @Override
     public Object visit(PropertyIsLike filter, Object extraData) {
         BasicDBObject output = asDBObject(extraData);
-        String expr = convert(filter.accept(this, null), String.class);
+        String expr = convert(filter.getExpression().accept(this, null), String.class);
 
-        String multi = filter.getWildCard();
-        String single = filter.getSingleChar();
         int flags = (filter.isMatchingCase()) ? 0 : Pattern.CASE_INSENSITIVE;
-
-        String regex = filter.getLiteral().replaceAll(multi, ".*").replaceAll(single, ".");
-        Pattern p = Pattern.compile(regex, flags);
-        output.put((String) expr, p);
+        Pattern p = Pattern.compile(likeToRegex(filter.getLiteral(), 
+                filter.getWildCard(), filter.getSingleChar(), filter.getEscape()), flags);
+        output.put(expr, p);
         
         return output;
     }
 
+    static String likeToRegex(String like, String multi, String single, String escape) {
+        StringBuilder regex = new StringBuilder("^");
+        int i = 0;
+        while (i < like.length()) {
+            if (escape != null && !escape.isEmpty() && like.startsWith(escape, i) 
+                    && i + escape.length() < like.length()) {
+                i += escape.length();
+                appendQuoted(regex, like.charAt(i++));
+            } else if (like.startsWith(multi, i)) {
+                regex.append(".*");
+                i += multi.length();
+            } else if (like.startsWith(single, i)) {
+                regex.append(".");
+                i += single.length();
+            } else {
+                appendQuoted(regex, like.charAt(i++));
+            }
+        }
+        return regex.append("$").toString();
+    }
+
+    static void appendQuoted(StringBuilder regex, char c) {
+        if ("\\.[]{}()*+-?^$|".indexOf(c) >= 0) {
+            regex.append('\\');
+        }
+        regex.append(c);
+    }
+
     // There is no "NULL" in MongoDB, but I assume that TODO add null support
     // the non-existence of a column is the same...
     @Override
     public Object visit(PropertyIsNull filter, Object extraData) {
         BasicDBObject output = asDBObject(extraData);
 
-        String prop = convert(filter.accept(this, null), String.class);
+        String prop = convert(filter.getExpression().accept(this, null), String.class);
         output.put(prop, new BasicDBObject("$exists", false));
         return output;
     }
@@ -273,13 +325,14 @@ public class FilterToMongo implements FilterVisitor, ExpressionVisitor {
         
         Set<Identifier> ids = filter.getIdentifiers();
         
-        List<ObjectId> objectIds = new ArrayList<ObjectId>(ids.size());
+        BasicDBList objectIds = new BasicDBList();
         for (Identifier id : ids) {
-            objectIds.add(new ObjectId(id.toString()));
+            String value = id.getID().toString();
+            objectIds.add(ObjectId.isValid(value) ? new ObjectId(value) : value);
         }
         
-        Object objectIdDBO = (objectIds.size() > 1) ?
-                new BasicDBObject("$in", objectIds) : objectIds.get(0);
+        Object objectIdDBO = (objectIds.size() == 1) ?
+                objectIds.get(0) : new BasicDBObject("$in", objectIds);
         
         output.put("_id", objectIdDBO);
         return output;
@@ -424,9 +477,12 @@ public class FilterToMongo implements FilterVisitor, ExpressionVisitor {
         throw new UnsupportedOperationException();
     }
     
+    //
+    // temporal, encoded as range queries on date fields
+    //
     @Override
     public Object visit(After after, Object extraData) {
-        throw new UnsupportedOperationException();
+        return encodeTemporalRange(after, "$gt", null, extraData);
     }
     
     @Override
@@ -436,7 +492,7 @@ public class FilterToMongo implements FilterVisitor, ExpressionVisitor {
 
     @Override
     public Object visit(Before before, Object extraData) {
-        throw new UnsupportedOperationException();
+        return encodeTemporalRange(before, null, "$lt", extraData);
     }
 
     @Override
@@ -451,7 +507,7 @@ public class FilterToMongo implements FilterVisitor, ExpressionVisitor {
     
     @Override
     public Object visit(During during, Object extraData) {
-        throw new UnsupportedOperationException();
+        return encodeTemporalRange(during, "$gt", "$lt", extraData);
     }
     
     @Override
@@ -486,7 +542,7 @@ public class FilterToMongo implements FilterVisitor, ExpressionVisitor {
 
     @Override
     public Object visit(TEquals equals, Object extraData) {
-        throw new UnsupportedOperationException();
+        return encodeTemporalRange(equals, "$gte", "$lte", extraData);
     }
     
 
@@ -495,6 +551,66 @@ public class FilterToMongo implements FilterVisitor, ExpressionVisitor {
         throw new UnsupportedOperationException();
     }
 
+    /**
+     * Whether a temporal operator has the shape {@link #encodeTemporalRange} handles: a property
+     * compared to a literal instant, period (but for {@link TEquals}, an instant can't equal a
+     * period) or value convertible to a date. Other shapes, e.g. literal first or two properties,
+     * have to be evaluated in memory.
+     */
+    static boolean isSupported(BinaryTemporalOperator filter) {
+        if (!(filter.getExpression1() instanceof PropertyName)
+                || !(filter.getExpression2() instanceof Literal)) {
+            return false;
+        }
+        Object time = filter.getExpression2().evaluate(null);
+        if (time instanceof Period) {
+            Period period = (Period) time;
+            return !(filter instanceof TEquals)
+                    && period.getBeginning().getPosition().getDate() != null
+                    && period.getEnding().getPosition().getDate() != null;
+        } else if (time instanceof Instant) {
+            return ((Instant) time).getPosition().getDate() != null;
+        }
+        return time != null && convert(time, Date.class) != null;
+    }
+
+    /**
+     * Encodes a temporal operator with a property as first operand as a range query.  With
+     * both operators the property is compared to the beginning of the literal instant/period 
+     * with <tt>lowerOp</tt> and to its end with <tt>upperOp</tt>.  With a single operator the
+     * property is compared to the far side of the literal (after the end, before the beginning).
+     */
+    BasicDBObject encodeTemporalRange(BinaryTemporalOperator filter, String lowerOp, 
+            String upperOp, Object extraData) {
+        BasicDBObject output = asDBObject(extraData);
+
+        if (!isSupported(filter)) {
+            throw new UnsupportedOperationException("Unable to encode temporal filter " + filter);
+        }
+        String propName = (String) filter.getExpression1().accept(this, null);
+        Object time = filter.getExpression2().evaluate(null);
+
+        Date begin, end;
+        if (time instanceof Period) {
+            begin = ((Period) time).getBeginning().getPosition().getDate();
+            end = ((Period) time).getEnding().getPosition().getDate();
+        } else if (time instanceof Instant) {
+            begin = end = ((Instant) time).getPosition().getDate();
+        } else {
+            begin = end = convert(time, Date.class);
+        }
+
+        BasicDBObject range = new BasicDBObject();
+        if (lowerOp != null) {
+            range.put(lowerOp, upperOp == null ? end : begin);
+        }
+        if (upperOp != null) {
+            range.put(upperOp, lowerOp == null ? begin : end);
+        }
+        output.put(propName, range);
+        return output;
+    }
+
     Object encodeLiteral(Object literal) {
         if (literal instanceof Envelope) {
             return geometryBuilder.toObject((Envelope)literal);
@@ -502,6 +618,9 @@ public class FilterToMongo implements FilterVisitor, ExpressionVisitor {
         else if (literal instanceof Geometry) {
             return geometryBuilder.toObject((Geometry)literal);
         }
+        else if (literal instanceof Date) {
+            return literal;
+        }
         else {
             return literal.toString();
         }
@@ -3,17 +3,26 @@ package org.geotools.data.mongodb;
 import com.mongodb.BasicDBObject;
 import com.mongodb.DB;
 import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
 import com.mongodb.MongoClient;
 import com.mongodb.MongoClientURI;
+import com.mongodb.MongoException;
+import com.mongodb.WriteConcern;
 import java.io.IOException;
 import java.net.URISyntaxException;
 import java.net.UnknownHostException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import org.geotools.data.FeatureWriter;
 import org.geotools.data.Transaction;
@@ -21,6 +30,7 @@ import org.geotools.data.store.ContentDataStore;
 import org.geotools.data.store.ContentEntry;
 import org.geotools.data.store.ContentFeatureSource;
 import org.geotools.data.store.ContentState;
+import org.geotools.factory.Hints;
 import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
 import org.geotools.filter.FilterCapabilities;
 import org.geotools.referencing.CRS;
@@ -29,15 +39,19 @@ import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
 import org.opengis.feature.type.AttributeDescriptor;
 import org.opengis.feature.type.Name;
-import org.opengis.filter.And;
 import org.opengis.filter.Filter;
 import org.opengis.filter.Id;
-import org.opengis.filter.Not;
 import org.opengis.filter.PropertyIsBetween;
+import org.opengis.filter.PropertyIsLike;
 import org.opengis.filter.PropertyIsNull;
 import org.opengis.filter.spatial.BBOX;
 import org.opengis.filter.spatial.Intersects;
 import org.opengis.filter.spatial.Within;
+import org.opengis.filter.temporal.After;
+import org.opengis.filter.temporal.Before;
+import org.opengis.filter.temporal.BinaryTemporalOperator;
+import org.opengis.filter.temporal.During;
+import org.opengis.filter.temporal.TEquals;
 import org.opengis.referencing.crs.CoordinateReferenceSystem;
 
 public class MongoDataStore extends ContentDataStore {
@@ -45,6 +59,11 @@ public class MongoDataStore extends ContentDataStore {
     final static String KEY_mapping = "mapping";
     final static String KEY_encoding = "encoding";
     final static String KEY_collection = "collection";
+    
+    /**
+     * Query hint setting the number of documents fetched per cursor round trip.
+     */
+    public static final Hints.Key CURSOR_BATCH_SIZE = new Hints.Key(Integer.class);
 
     final MongoSchemaStore schemaStore;
     
@@ -53,6 +72,44 @@ public class MongoDataStore extends ContentDataStore {
     
     FilterCapabilities filterCapabilities;
     
+    // cache the bounds of the whole collection in the entry state until the next write
+    boolean cacheBounds = false;
+    
+    // number of features buffered by writers before a bulk insert is sent
+    int insertBatchSize = 1000;
+    
+    // write concern for bulk inserts, null to use the collection default
+    WriteConcern writeConcern;
+    
+    // read features through MongoLazyFeatureReader
+    boolean lazyFeatures = false;
+    
+    // default cursor batch size, 0 to use the driver default
+    int cursorBatchSize = 0;
+    
+    // documents sampled to infer schemas of unmapped collections, 0 to use the first document
+    int schemaSampleSize = 0;
+    int schemaSamplePartitions = 4;
+    boolean schemaSampleStage = false;
+    
+    // positions reached by sorted pages, see MongoKeysetPage
+    final Map<String, DBObject> keysetCache = Collections.synchronizedMap(
+        new LinkedHashMap<String, DBObject>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, DBObject> eldest) {
+                return size() > 1000;
+            }
+        });
+    
+    final MongoIndexAdvisor indexAdvisor = new MongoIndexAdvisor();
+    
+    // "collection/geometry path" keys for which the 2dsphere index is known to exist
+    final Set<String> geometryIndices = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    
+    // writers holding buffered inserts, flushed before their collection is read
+    final Set<MongoFeatureWriter> openWriters = Collections.synchronizedSet(
+        Collections.newSetFromMap(new WeakHashMap<MongoFeatureWriter, Boolean>()));
+    
     public MongoDataStore(String dataStoreURI) {
         this(dataStoreURI, null);
     }
@@ -71,11 +128,12 @@ public class MongoDataStore extends ContentDataStore {
             throw new IllegalArgumentException("Unknown mongodb database, \"" + dataStoreClientURI.getDatabase() + "\"");
         }
         
-        schemaStore = createSchemaStore(schemaStoreURI);
-        if (schemaStore == null) {
+        MongoSchemaStore store = createSchemaStore(schemaStoreURI);
+        if (store == null) {
             dataStoreClient.close(); // This smells bad too...
             throw new IllegalArgumentException("Unable to initialize schema store with URI \"" + schemaStoreURI + "\"");
         }
+        schemaStore = new MongoSchemaStoreCache(store);
         
         filterCapabilities = createFilterCapabilties();
     }
@@ -125,20 +183,28 @@ public class MongoDataStore extends ContentDataStore {
         return null;
     }
 
-    final FilterCapabilities createFilterCapabilties() {
-        FilterCapabilities capabilities = new FilterCapabilities();
+    static FilterCapabilities createFilterCapabilties() {
+        FilterCapabilities capabilities = new FilterCapabilities() {
+            @Override
+            public boolean supports(Filter filter) {
+                // temporal filters are only encoded for some operands, see FilterToMongo
+                if (filter instanceof BinaryTemporalOperator
+                        && !FilterToMongo.isSupported((BinaryTemporalOperator) filter)) {
+                    return false;
+                }
+                return super.supports(filter);
+            }
+        };
 
-        /* disable FilterCapabilities.LOGICAL_OPENGIS since it contains
-            Or.class (in addtions to And.class and Not.class.  MongodB 2.4
-            doesn't supprt '$or' with spatial operations.
+        /* '$or' with spatial operations requires MongoDB 2.6 or later, 
+           earlier servers reject such queries.
         */
-//        capabilities.addAll(FilterCapabilities.LOGICAL_OPENGIS);
-        capabilities.addType(And.class);
-        capabilities.addType(Not.class);
+        capabilities.addAll(FilterCapabilities.LOGICAL_OPENGIS);
         
         capabilities.addAll(FilterCapabilities.SIMPLE_COMPARISONS_OPENGIS);
         capabilities.addType(PropertyIsNull.class);
         capabilities.addType(PropertyIsBetween.class);
+        capabilities.addType(PropertyIsLike.class);
        
         capabilities.addType(BBOX.class);
         capabilities.addType(Intersects.class);
@@ -146,16 +212,18 @@ public class MongoDataStore extends ContentDataStore {
         
         capabilities.addType(Id.class);
         
+        //temporal filters
+        capabilities.addType(After.class);
+        capabilities.addType(Before.class);
+        capabilities.addType(During.class);
+        capabilities.addType(TEquals.class);
+        
         /*
         capabilities.addType(IncludeFilter.class);
         capabilities.addType(ExcludeFilter.class);
         
-        //temporal filters
-        capabilities.addType(After.class);
-        capabilities.addType(Before.class);
         capabilities.addType(Begins.class);
         capabilities.addType(BegunBy.class);
-        capabilities.addType(During.class);
         capabilities.addType(Ends.class);
         capabilities.addType(EndedBy.class);*/
 
@@ -166,6 +234,137 @@ public class MongoDataStore extends ContentDataStore {
         return filterCapabilities;
     }
 
+    public boolean isCacheBounds() {
+        return cacheBounds;
+    }
+
+    public void setCacheBounds(boolean cacheBounds) {
+        this.cacheBounds = cacheBounds;
+    }
+
+    public int getInsertBatchSize() {
+        return insertBatchSize;
+    }
+
+    public void setInsertBatchSize(int insertBatchSize) {
+        this.insertBatchSize = insertBatchSize;
+    }
+
+    public WriteConcern getWriteConcern() {
+        return writeConcern;
+    }
+
+    public void setWriteConcern(WriteConcern writeConcern) {
+        this.writeConcern = writeConcern;
+    }
+
+    public boolean isLazyFeatures() {
+        return lazyFeatures;
+    }
+
+    public void setLazyFeatures(boolean lazyFeatures) {
+        this.lazyFeatures = lazyFeatures;
+    }
+
+    public int getCursorBatchSize() {
+        return cursorBatchSize;
+    }
+
+    public void setCursorBatchSize(int cursorBatchSize) {
+        this.cursorBatchSize = cursorBatchSize;
+    }
+
+    public int getSchemaSampleSize() {
+        return schemaSampleSize;
+    }
+
+    public void setSchemaSampleSize(int schemaSampleSize) {
+        this.schemaSampleSize = schemaSampleSize;
+    }
+
+    public int getSchemaSamplePartitions() {
+        return schemaSamplePartitions;
+    }
+
+    public void setSchemaSamplePartitions(int schemaSamplePartitions) {
+        this.schemaSamplePartitions = schemaSamplePartitions;
+    }
+
+    public boolean isSchemaSampleStage() {
+        return schemaSampleStage;
+    }
+
+    public void setSchemaSampleStage(boolean schemaSampleStage) {
+        this.schemaSampleStage = schemaSampleStage;
+    }
+
+    /**
+     * Creates the mapper used for collections without a stored schema.
+     */
+    CollectionMapper createInferredMapper() {
+        return schemaSampleSize > 0 ?
+                new MongoInferredMapper(new MongoSchemaSampler(
+                        schemaSampleSize, schemaSamplePartitions, schemaSampleStage)) :
+                new MongoInferredMapper();
+    }
+
+    /**
+     * Report of the queries run without index support.
+     */
+    public MongoIndexAdvisor getIndexAdvisor() {
+        return indexAdvisor;
+    }
+
+    Map<String, DBObject> getKeysetCache() {
+        return keysetCache;
+    }
+
+    /**
+     * Drops the page positions of a collection, positions shift once documents are written.
+     */
+    void clearKeysets(DBCollection collection) {
+        String prefix = collection.getName() + ":";
+        synchronized (keysetCache) {
+            for (Iterator<String> it = keysetCache.keySet().iterator(); it.hasNext();) {
+                if (it.next().startsWith(prefix)) {
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Sends the inserts buffered by the open writers of a collection, so that reads see 
+     * every feature written so far.
+     */
+    void flushWriters(DBCollection collection) throws IOException {
+        List<MongoFeatureWriter> writers;
+        synchronized (openWriters) {
+            if (openWriters.isEmpty()) {
+                return;
+            }
+            writers = new ArrayList<MongoFeatureWriter>(openWriters);
+        }
+        for (MongoFeatureWriter writer : writers) {
+            if (writer.getCollection().getName().equals(collection.getName())) {
+                writer.flush();
+            }
+        }
+    }
+
+    /**
+     * Ensures the 2dsphere index on the geometry path of a collection, only talking to the 
+     * server the first time for a given collection/path.
+     */
+    void ensureGeometryIndex(DBCollection collection, String geometryPath) {
+        String key = collection.getName() + "/" + geometryPath;
+        if (!geometryIndices.contains(key)) {
+            collection.ensureIndex(new BasicDBObject(geometryPath, "2dsphere"));
+            geometryIndices.add(key);
+            indexAdvisor.invalidate(collection);
+        }
+    }
+
     @Override
     public void createSchema(SimpleFeatureType incoming) throws IOException {
 
@@ -198,8 +397,8 @@ public class MongoDataStore extends ContentDataStore {
         incoming.getUserData().put(KEY_collection, incoming.getTypeName());
         
         // Collection needs to exist (with index) so that it's returned with createTypeNames()
-        dataStoreDB.createCollection(incoming.getTypeName(), new BasicDBObject())
-                .ensureIndex(new BasicDBObject(geometryMapping, "2dsphere"));
+        ensureGeometryIndex(dataStoreDB.createCollection(incoming.getTypeName(), new BasicDBObject()),
+                geometryMapping);
        
         // Store FeatureType instance since it can't be inferred (no documents)
         ContentEntry entry = entry (incoming.getName());
@@ -219,6 +418,7 @@ public class MongoDataStore extends ContentDataStore {
         
         Set<String> collectionNames = new LinkedHashSet<String>(dataStoreDB.getCollectionNames());
         Set<String> typeNameSet = new LinkedHashSet();
+        Map<String, Set<String>> indexedGeometries = findIndexedGeometries();
         
         for (String candidateTypeName : getSchemaStore().typeNames()) {
             try {
@@ -235,8 +435,8 @@ public class MongoDataStore extends ContentDataStore {
                     String geometryMapping = (String)candidateSchema.getDescriptor(geometryName).getUserData().get(KEY_mapping);
                     if (geometryMapping != null) {
                         DBCollection collection = dataStoreDB.getCollection(candidateCollectionName);
-                        Set<String> geometryIndices =  MongoUtil.findIndexedGeometries(
-                                collection);
+                        Set<String> geometryIndices = findIndexedGeometries(
+                                indexedGeometries, collection);
                         // verify geometry mapping is indexed...
                         if (geometryIndices.contains(geometryMapping)) {
                             typeNameSet.add(candidateTypeName);
@@ -267,8 +467,8 @@ public class MongoDataStore extends ContentDataStore {
             // make sure it's not system collection
             if (!collectionName.startsWith("system.")) {
                 DBCollection collection = dataStoreDB.getCollection(collectionName);
-                Set<String> geometryIndexSet = MongoUtil.findIndexedGeometries(
-                        collection);
+                Set<String> geometryIndexSet = findIndexedGeometries(
+                        indexedGeometries, collection);
                 // verify collection has an indexed geometry property
                 if(!geometryIndexSet.isEmpty()) {
                     typeNameSet.add(collectionName);
@@ -287,6 +487,26 @@ public class MongoDataStore extends ContentDataStore {
         return typeNameList;
     }
 
+    /**
+     * Indexed geometries of all collections in one round trip, empty if not available.
+     */
+    Map<String, Set<String>> findIndexedGeometries() {
+        try {
+            return MongoUtil.findIndexedGeometries(dataStoreDB);
+        } catch (MongoException e) {
+            LOGGER.log(Level.FINE, "Unable to list indexes of " + dataStoreDB.getName(), e);
+            return Collections.emptyMap();
+        }
+    }
+
+    Set<String> findIndexedGeometries(Map<String, Set<String>> indexedGeometries, DBCollection collection) {
+        if (indexedGeometries.isEmpty()) {
+            return MongoUtil.findIndexedGeometries(collection);
+        }
+        Set<String> fields = indexedGeometries.get(collection.getName());
+        return fields != null ? fields : Collections.<String>emptySet();
+    }
+
     @Override
     protected ContentFeatureSource createFeatureSource(ContentEntry entry) throws IOException {
         ContentState state = entry.getState(null);
@@ -1,5 +1,6 @@
 package org.geotools.data.mongodb;
 
+import com.mongodb.WriteConcern;
 import java.io.IOException;
 import java.io.Serializable;
 import java.util.Map;
@@ -10,6 +11,14 @@ public class MongoDataStoreFactory extends AbstractDataStoreFactory {
 
     public static final Param DATASTORE_URI = new Param("data_store", String.class, "MongoDB URI", true, "mongodb://localhost/<database name>");
     public static final Param SCHEMASTORE_URI = new Param("schema_store", String.class, "Schema Store URI", true, "file://<absolute path>");
+    public static final Param INSERT_BATCH_SIZE = new Param("insert_batch_size", Integer.class, "Number of features sent per bulk insert", false, 1000);
+    public static final Param WRITE_CONCERN = new Param("write_concern", String.class, "Write concern for inserts (ACKNOWLEDGED, UNACKNOWLEDGED, JOURNALED, ...)", false);
+    public static final Param SCHEMA_SAMPLE_SIZE = new Param("schema_sample_size", Integer.class, "Number of documents sampled to infer a collection schema, 0 to use the first document", false, 0);
+    public static final Param SCHEMA_SAMPLE_PARTITIONS = new Param("schema_sample_partitions", Integer.class, "Number of collection partitions sampled in parallel", false, 4);
+    public static final Param SCHEMA_SAMPLE_STAGE = new Param("schema_sample_stage", Boolean.class, "Sample with the $sample aggregation stage (MongoDB 3.2+)", false, Boolean.FALSE);
+    public static final Param LAZY_FEATURES = new Param("lazy_features", Boolean.class, "Read projected features with geometries decoded on demand", false, Boolean.FALSE);
+    public static final Param CURSOR_BATCH_SIZE = new Param("cursor_batch_size", Integer.class, "Number of documents fetched per cursor round trip, 0 for the driver default", false, 0);
+    public static final Param CACHE_BOUNDS = new Param("cache_bounds", Boolean.class, "Cache collection bounds until the next write", false, Boolean.FALSE);
     
     @Override
     public String getDisplayName() {
@@ -23,13 +32,53 @@ public class MongoDataStoreFactory extends AbstractDataStoreFactory {
     
     @Override
     public Param[] getParametersInfo() {
-        return new Param[]{DATASTORE_URI, SCHEMASTORE_URI};
+        return new Param[]{DATASTORE_URI, SCHEMASTORE_URI, CACHE_BOUNDS, INSERT_BATCH_SIZE, WRITE_CONCERN,
+            SCHEMA_SAMPLE_SIZE, SCHEMA_SAMPLE_PARTITIONS, SCHEMA_SAMPLE_STAGE, LAZY_FEATURES, 
+            CURSOR_BATCH_SIZE};
     }
 
     @Override
     public MongoDataStore createDataStore(Map<String, Serializable> params) throws IOException {
-        return new MongoDataStore(
+        MongoDataStore dataStore = new MongoDataStore(
                 (String)DATASTORE_URI.lookUp(params), (String)SCHEMASTORE_URI.lookUp(params));
+        Boolean cacheBounds = (Boolean)CACHE_BOUNDS.lookUp(params);
+        if (cacheBounds != null) {
+            dataStore.setCacheBounds(cacheBounds);
+        }
+        Integer insertBatchSize = (Integer)INSERT_BATCH_SIZE.lookUp(params);
+        if (insertBatchSize != null) {
+            dataStore.setInsertBatchSize(insertBatchSize);
+        }
+        Integer sampleSize = (Integer)SCHEMA_SAMPLE_SIZE.lookUp(params);
+        if (sampleSize != null) {
+            dataStore.setSchemaSampleSize(sampleSize);
+        }
+        Integer samplePartitions = (Integer)SCHEMA_SAMPLE_PARTITIONS.lookUp(params);
+        if (samplePartitions != null) {
+            dataStore.setSchemaSamplePartitions(samplePartitions);
+        }
+        Boolean sampleStage = (Boolean)SCHEMA_SAMPLE_STAGE.lookUp(params);
+        if (sampleStage != null) {
+            dataStore.setSchemaSampleStage(sampleStage);
+        }
+        Boolean lazyFeatures = (Boolean)LAZY_FEATURES.lookUp(params);
+        if (lazyFeatures != null) {
+            dataStore.setLazyFeatures(lazyFeatures);
+        }
+        Integer cursorBatchSize = (Integer)CURSOR_BATCH_SIZE.lookUp(params);
+        if (cursorBatchSize != null) {
+            dataStore.setCursorBatchSize(cursorBatchSize);
+        }
+        String writeConcern = (String)WRITE_CONCERN.lookUp(params);
+        if (writeConcern != null) {
+            WriteConcern wc = WriteConcern.valueOf(writeConcern.toUpperCase());
+            if (wc == null) {
+                dataStore.dispose();
+                throw new IOException("Unknown write concern \"" + writeConcern + "\"");
+            }
+            dataStore.setWriteConcern(wc);
+        }
+        return dataStore;
     }
 
     @Override
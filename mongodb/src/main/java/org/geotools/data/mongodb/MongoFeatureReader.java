@@ -15,10 +15,16 @@ public class MongoFeatureReader implements SimpleFeatureReader {
     DBCursor cursor;
     MongoFeatureSource featureSource;
     CollectionMapper mapper;
+    MongoKeysetPage page;
 
     public MongoFeatureReader(DBCursor cursor, MongoFeatureSource featureSource) {
+        this(cursor, featureSource, null);
+    }
+
+    public MongoFeatureReader(DBCursor cursor, MongoFeatureSource featureSource, MongoKeysetPage page) {
         this.cursor = cursor;
         this.featureSource = featureSource;
+        this.page = page;
         mapper = featureSource.getMapper();
     }
 
@@ -35,6 +41,9 @@ public class MongoFeatureReader implements SimpleFeatureReader {
     @Override
     public SimpleFeature next() throws IOException, IllegalArgumentException, NoSuchElementException {
         DBObject obj = cursor.next();
+        if (page != null) {
+            page.visit(obj);
+        }
 
         return mapper.buildFeature(obj, featureSource.getSchema());
     }
@@ -42,6 +51,9 @@ public class MongoFeatureReader implements SimpleFeatureReader {
     @Override
     public void close() throws IOException {
         cursor.close();
+        if (page != null) {
+            page.close();
+        }
     }
 
 }
@@ -1,26 +1,52 @@
 package org.geotools.data.mongodb;
 
+import com.mongodb.AggregationOutput;
+import com.mongodb.BasicDBList;
 import com.mongodb.BasicDBObject;
+import com.mongodb.BasicDBObjectBuilder;
 import com.mongodb.DBCollection;
 import com.mongodb.DBCursor;
 import com.mongodb.DBObject;
+import com.mongodb.MongoException;
+import com.vividsolutions.jts.geom.Envelope;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.geotools.data.FeatureReader;
 import org.geotools.data.Query;
+import org.geotools.data.ReTypeFeatureReader;
 import org.geotools.data.simple.FilteringSimpleFeatureReader;
 import org.geotools.data.simple.SimpleFeatureReader;
 import org.geotools.data.store.ContentEntry;
 import org.geotools.data.store.ContentFeatureSource;
+import org.geotools.data.store.ContentState;
+import org.geotools.factory.Hints.Key;
+import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
+import org.geotools.feature.visitor.BoundsVisitor;
+import org.geotools.feature.visitor.CountVisitor;
+import org.geotools.feature.visitor.MaxVisitor;
+import org.geotools.feature.visitor.MinVisitor;
+import org.geotools.feature.visitor.SumVisitor;
+import org.geotools.feature.visitor.UniqueVisitor;
 import org.geotools.filter.visitor.PostPreProcessFilterSplittingVisitor;
 import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.util.Converters;
 import org.geotools.util.logging.Logging;
+import org.opengis.feature.FeatureVisitor;
 import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.AttributeDescriptor;
+import org.opengis.feature.type.GeometryDescriptor;
 import org.opengis.filter.Filter;
+import org.opengis.filter.expression.Expression;
+import org.opengis.filter.expression.PropertyName;
 import org.opengis.filter.sort.SortBy;
 import org.opengis.filter.sort.SortOrder;
 
@@ -28,6 +54,20 @@ public class MongoFeatureSource extends ContentFeatureSource {
 
     static Logger LOG = Logging.getLogger("org.geotools.data.mongodb");
 
+    /**
+     * Nesting depth of the GeoJSON "coordinates" array for each geometry type, a depth of one
+     * meaning the array is a single position.
+     */
+    static final Map<String, Integer> GEOJSON_COORDINATE_DEPTH = new HashMap<String, Integer>();
+    static {
+        GEOJSON_COORDINATE_DEPTH.put("Point", 1);
+        GEOJSON_COORDINATE_DEPTH.put("MultiPoint", 2);
+        GEOJSON_COORDINATE_DEPTH.put("LineString", 2);
+        GEOJSON_COORDINATE_DEPTH.put("MultiLineString", 3);
+        GEOJSON_COORDINATE_DEPTH.put("Polygon", 3);
+        GEOJSON_COORDINATE_DEPTH.put("MultiPolygon", 4);
+    }
+
     final DBCollection collection;
     CollectionMapper  mapper;
 
@@ -40,7 +80,7 @@ public class MongoFeatureSource extends ContentFeatureSource {
     final void initMapper() {
         // use schema with mapping info if it exists
         SimpleFeatureType type = entry.getState(null).getFeatureType();
-        setMapper(type != null ? new MongoSchemaMapper(type) : new MongoInferredMapper());
+        setMapper(type != null ? new MongoSchemaMapper(type) : getDataStore().createInferredMapper());
     }
 
     public DBCollection getCollection() {
@@ -69,6 +109,123 @@ public class MongoFeatureSource extends ContentFeatureSource {
 
     @Override
     protected ReferencedEnvelope getBoundsInternal(Query query) throws IOException {
+        getDataStore().flushWriters(collection);
+        Filter f = query.getFilter();
+        // the aggregation covers all matching documents, paged queries are only a part of them
+        boolean paged = query.getStartIndex() != null && query.getStartIndex() > 0
+                || !query.isMaxFeaturesUnlimited();
+        boolean cache = !paged && isAll(f) && getDataStore().isCacheBounds();
+
+        ContentState state = getState();
+        if (cache && state.getBounds() != null) {
+            return new ReferencedEnvelope(state.getBounds());
+        }
+
+        ReferencedEnvelope bounds = null;
+        if (!paged && (isAll(f) || isAll(splitFilter(f)[1]))) {
+            bounds = getBoundsAggregate(toQuery(f));
+        }
+        if (bounds == null) {
+            bounds = getBoundsFromReader(query);
+        }
+
+        if (cache) {
+            state.setBounds(new ReferencedEnvelope(bounds));
+        }
+        return bounds;
+    }
+
+    /**
+     * Computes the bounds of the features matching <tt>query</tt> with the aggregation framework
+     * so that only the envelope is returned to the client.
+     * <p>
+     * One pipeline is run per GeoJSON geometry type since the nesting depth of the coordinate 
+     * arrays depends on the type. Returns <code>null</code> when the bounds can not be computed 
+     * server side (geometry collections, aggregation errors) and the caller should fall back to 
+     * iterating over the features.
+     * </p>
+     */
+    ReferencedEnvelope getBoundsAggregate(DBObject query) {
+        //TODO: crs?
+        ReferencedEnvelope bounds = new ReferencedEnvelope();
+
+        // mapper paths are only available once the schema has been built
+        getSchema();
+        String geometryPath = mapper.getGeometryPath();
+        try {
+            for (Object type : collection.distinct(geometryPath + ".type", query)) {
+                Integer depth = type instanceof String ? 
+                        GEOJSON_COORDINATE_DEPTH.get(type) : null;
+                if (depth == null) {
+                    if (LOG.isLoggable(Level.FINE)) {
+                        LOG.fine("Unable to aggregate bounds for geometry type " + type);
+                    }
+                    return null;
+                }
+
+                BasicDBObject match = new BasicDBObject(query.toMap());
+                match.put(geometryPath + ".type", type);
+
+                for (DBObject result : aggregate(boundsPipeline(match, geometryPath, depth))) {
+                    Object minx = result.get("minx"), miny = result.get("miny"),
+                           maxx = result.get("maxx"), maxy = result.get("maxy");
+                    if (minx instanceof Number && miny instanceof Number 
+                            && maxx instanceof Number && maxy instanceof Number) {
+                        bounds.expandToInclude(new Envelope(
+                                ((Number)minx).doubleValue(), ((Number)maxx).doubleValue(), 
+                                ((Number)miny).doubleValue(), ((Number)maxy).doubleValue()));
+                    }
+                }
+            }
+        } catch (MongoException e) {
+            LOG.log(Level.WARNING, "Unable to aggregate bounds, falling back to feature iteration", e);
+            return null;
+        }
+        return bounds;
+    }
+
+    /**
+     * Builds the pipeline: unwind the coordinates down to single positions, project the first two
+     * ordinates of each position (ignoring z and m), then reduce to min/max.
+     */
+    static List<DBObject> boundsPipeline(DBObject match, String geometryPath, int depth) {
+        List<DBObject> pipeline = new ArrayList<DBObject>();
+        pipeline.add(new BasicDBObject("$match", match));
+        pipeline.add(new BasicDBObject("$project", 
+                new BasicDBObject("c", "$" + geometryPath + ".coordinates")));
+        for (int i = 1; i < depth; i++) {
+            pipeline.add(new BasicDBObject("$unwind", "$c"));
+        }
+        pipeline.add(new BasicDBObject("$project", BasicDBObjectBuilder.start()
+                .add("x", new BasicDBObject("$arrayElemAt", list("$c", 0)))
+                .add("y", new BasicDBObject("$arrayElemAt", list("$c", 1))).get()));
+        pipeline.add(new BasicDBObject("$group", BasicDBObjectBuilder.start()
+                .add("_id", null)
+                .push("minx").add("$min", "$x").pop()
+                .push("miny").add("$min", "$y").pop()
+                .push("maxx").add("$max", "$x").pop()
+                .push("maxy").add("$max", "$y").pop().get()));
+        return pipeline;
+    }
+
+    static BasicDBList list(Object... values) {
+        BasicDBList list = new BasicDBList();
+        for (Object v : values) {
+            list.add(v);
+        }
+        return list;
+    }
+
+    Iterable<DBObject> aggregate(List<DBObject> pipeline) {
+        if (LOG.isLoggable(Level.FINE)) {
+            LOG.fine("aggregate(" + pipeline + ")");
+        }
+        AggregationOutput output = collection.aggregate(pipeline.get(0), 
+                pipeline.subList(1, pipeline.size()).toArray(new DBObject[pipeline.size() - 1]));
+        return output.results();
+    }
+
+    ReferencedEnvelope getBoundsFromReader(Query query) throws IOException {
         //TODO: crs?
         FeatureReader r = getReader(query);
         try {
@@ -88,6 +245,7 @@ public class MongoFeatureSource extends ContentFeatureSource {
 
     @Override
     protected int getCountInternal(Query query) throws IOException {
+        getDataStore().flushWriters(collection);
         Filter f = query.getFilter();
         if (isAll(f)) {
             LOG.fine("count(all)");
@@ -106,13 +264,138 @@ public class MongoFeatureSource extends ContentFeatureSource {
         return (int) collection.count(q);
     }
 
+    /**
+     * Maps count, sum, min, max, unique and bounds visitors onto aggregation pipelines when the
+     * query filter can be fully translated and no paging is requested.
+     */
+    @Override
+    protected boolean handleVisitor(Query query, FeatureVisitor visitor) throws IOException {
+        getDataStore().flushWriters(collection);
+        Filter f = query.getFilter();
+        if (!isAll(f) && !isAll(splitFilter(f)[1])) {
+            return false;
+        }
+        if ((query.getStartIndex() != null && query.getStartIndex() > 0) 
+                || query.getMaxFeatures() != Integer.MAX_VALUE) {
+            return false;
+        }
+        DBObject match = toQuery(f);
+
+        try {
+            if (visitor instanceof CountVisitor) {
+                ((CountVisitor) visitor).setValue((int) (isAll(f) ? 
+                        collection.count() : collection.count(match)));
+                return true;
+            }
+            if (visitor instanceof BoundsVisitor) {
+                ReferencedEnvelope bounds = getBoundsAggregate(match);
+                if (bounds == null) {
+                    return false;
+                }
+                ((BoundsVisitor) visitor).getBounds().expandToInclude(bounds);
+                return true;
+            }
+
+            if (visitor instanceof UniqueVisitor) {
+                AttributeDescriptor descriptor = visitorAttribute(((UniqueVisitor) visitor).getExpression());
+                if (descriptor == null) {
+                    return false;
+                }
+                String path = mapper.getPropertyPath(descriptor.getLocalName());
+                Set<Object> values = new HashSet<Object>();
+                for (DBObject result : aggregate(groupPipeline(match, "$" + path, null))) {
+                    values.add(convert(result.get("_id"), descriptor));
+                }
+                ((UniqueVisitor) visitor).setValue(values);
+                return true;
+            }
+
+            String op = visitor instanceof MinVisitor ? "$min" : visitor instanceof MaxVisitor ? 
+                    "$max" : visitor instanceof SumVisitor ? "$sum" : null;
+            if (op == null) {
+                return false;
+            }
+            Expression expression = visitor instanceof MinVisitor ? 
+                    ((MinVisitor) visitor).getExpression() : visitor instanceof MaxVisitor ?
+                    ((MaxVisitor) visitor).getExpression() : ((SumVisitor) visitor).getExpression();
+            AttributeDescriptor descriptor = visitorAttribute(expression);
+            if (descriptor == null) {
+                return false;
+            }
+            String path = mapper.getPropertyPath(descriptor.getLocalName());
+
+            Object value = null;
+            for (DBObject result : aggregate(groupPipeline(match, null, 
+                    new BasicDBObject(op, "$" + path)))) {
+                value = result.get("v");
+            }
+            if (value == null) {
+                // no matching features, let the visitor report its own empty result
+                return true;
+            }
+            if (visitor instanceof MinVisitor) {
+                ((MinVisitor) visitor).setValue(convert(value, descriptor));
+            } else if (visitor instanceof MaxVisitor) {
+                ((MaxVisitor) visitor).setValue(convert(value, descriptor));
+            } else {
+                ((SumVisitor) visitor).setValue(value);
+            }
+            return true;
+        } catch (MongoException e) {
+            LOG.log(Level.WARNING, "Unable to aggregate visitor, falling back to feature iteration", e);
+            return false;
+        }
+    }
+
+    /**
+     * The mapped, non geometry attribute a visitor expression refers to, or null.
+     */
+    AttributeDescriptor visitorAttribute(Expression expression) {
+        if (!(expression instanceof PropertyName)) {
+            return null;
+        }
+        AttributeDescriptor descriptor = 
+                getSchema().getDescriptor(((PropertyName) expression).getPropertyName());
+        if (descriptor == null || descriptor instanceof GeometryDescriptor 
+                || mapper.getPropertyPath(descriptor.getLocalName()) == null) {
+            return null;
+        }
+        return descriptor;
+    }
+
+    Object convert(Object value, AttributeDescriptor descriptor) {
+        return value == null ? null : Converters.convert(value, descriptor.getType().getBinding());
+    }
+
+    /**
+     * Single $group stage grouping on <tt>key</tt> (null for the whole collection) with an 
+     * optional accumulator stored as "v".
+     */
+    static List<DBObject> groupPipeline(DBObject match, String key, DBObject accumulator) {
+        List<DBObject> pipeline = new ArrayList<DBObject>();
+        pipeline.add(new BasicDBObject("$match", match));
+        BasicDBObject group = new BasicDBObject("_id", key);
+        if (accumulator != null) {
+            group.put("v", accumulator);
+        }
+        pipeline.add(new BasicDBObject("$group", group));
+        return pipeline;
+    }
+
     @Override
     protected FeatureReader<SimpleFeatureType, SimpleFeature> getReaderInternal(Query query) 
             throws IOException {
 
+        getDataStore().flushWriters(collection);
+        if (getDataStore().isLazyFeatures()) {
+            return getLazyReader(query);
+        }
+
         List<Filter> postFilter = new ArrayList();
-        DBCursor cursor = toCursor(query, postFilter);
-        SimpleFeatureReader r = new MongoFeatureReader(cursor, this);
+        List<MongoKeysetPage> pages = new ArrayList<MongoKeysetPage>();
+        DBCursor cursor = toCursor(query, postFilter, pages);
+        SimpleFeatureReader r = new MongoFeatureReader(cursor, this, 
+                pages.isEmpty() ? null : pages.get(0));
 
         if (!postFilter.isEmpty()) {
             r = new FilteringSimpleFeatureReader(r, postFilter.get(0));
@@ -120,6 +403,38 @@ public class MongoFeatureSource extends ContentFeatureSource {
         return r;
     }
 
+    /**
+     * Reader returning features of the retyped query type, with attribute paths compiled once 
+     * per query and geometries decoded on demand.
+     */
+    FeatureReader<SimpleFeatureType, SimpleFeature> getLazyReader(Query query) {
+        SimpleFeatureType schema = getSchema();
+        SimpleFeatureType type = query.getPropertyNames() != Query.ALL_NAMES ?
+                SimpleFeatureTypeBuilder.retype(schema, query.getPropertyNames()) : schema;
+
+        Filter f = query.getFilter();
+        List<Filter> postFilter = new ArrayList();
+        if (isAll(f) || isAll(splitFilter(f)[1])) {
+            List<MongoKeysetPage> pages = new ArrayList<MongoKeysetPage>();
+            DBCursor cursor = toCursor(query, postFilter, pages);
+            return new MongoLazyFeatureReader(cursor, type, mapper, 
+                    pages.isEmpty() ? null : pages.get(0));
+        }
+
+        // post filter may need attributes outside of the projection, read them all and
+        // retype once filtered
+        Query q = new Query(query);
+        q.setPropertyNames(Query.ALL_NAMES);
+        SimpleFeatureReader r = new FilteringSimpleFeatureReader(
+                new MongoLazyFeatureReader(toCursor(q, postFilter), schema, mapper), postFilter.get(0));
+        return type == schema ? r : new ReTypeFeatureReader(r, type, false);
+    }
+
+    @Override
+    protected void addHints(Set<Key> hints) {
+        hints.add(MongoDataStore.CURSOR_BATCH_SIZE);
+    }
+
     @Override
     protected boolean canOffset() {
         return true;
@@ -146,6 +461,15 @@ public class MongoFeatureSource extends ContentFeatureSource {
     }
 
     DBCursor toCursor(Query q, List<Filter> postFilter) {
+        return toCursor(q, postFilter, new ArrayList<MongoKeysetPage>());
+    }
+
+    /**
+     * Builds the cursor for a query. Filters that can't be translated are added to 
+     * <tt>postFilter</tt>; when the page can be tracked for keyset paging the tracker is added
+     * to <tt>pages</tt> and must be fed the documents read.
+     */
+    DBCursor toCursor(Query q, List<Filter> postFilter, List<MongoKeysetPage> pages) {
         DBObject query = new BasicDBObject();
 
         Filter f = q.getFilter();
@@ -157,6 +481,40 @@ public class MongoFeatureSource extends ContentFeatureSource {
             }
         }
 
+        BasicDBObject orderBy = toOrderBy(q.getSortBy());
+        int startIndex = q.getStartIndex() != null ? q.getStartIndex() : 0;
+
+        MongoIndexAdvisor advisor = getDataStore().getIndexAdvisor();
+        advisor.check(collection, query, orderBy);
+
+        // keyset paging, single indexed sort key (plus the _id tie breaker), page positions
+        // only match the documents read when no post filter drops some of them
+        String keysetPath = null;
+        Class<?> keysetType = null;
+        if (postFilter.isEmpty() && orderBy != null && orderBy.size() <= 2) {
+            String first = orderBy.keySet().iterator().next();
+            keysetType = keysetType(first);
+            if (keysetType != null && advisor.isIndexed(collection, first)) {
+                keysetPath = first;
+            }
+        }
+        boolean skip = startIndex > 0;
+        if (keysetPath != null) {
+            String signature = collection.getName() + ":" + query + ":" + orderBy;
+            if (startIndex > 0) {
+                DBObject last = getDataStore().getKeysetCache().get(
+                        MongoKeysetPage.key(signature, startIndex));
+                if (last != null && !hasMissing(query, keysetPath)) {
+                    query = keysetQuery(query, keysetPath, 
+                            ((Number)orderBy.get(keysetPath)).intValue(), 
+                            ((Number)orderBy.get("_id")).intValue(), last);
+                    skip = false;
+                }
+            }
+            pages.add(new MongoKeysetPage(getDataStore().getKeysetCache(), signature, 
+                    keysetPath, keysetType, startIndex));
+        }
+
         DBCursor c;
         if (q.getPropertyNames() != Query.ALL_NAMES) {
             BasicDBObject keys = new BasicDBObject();
@@ -166,6 +524,9 @@ public class MongoFeatureSource extends ContentFeatureSource {
             if (!keys.containsField(mapper.getGeometryPath())) {
                 keys.put(mapper.getGeometryPath(), 1);
             }
+            if (keysetPath != null && !keys.containsField(keysetPath)) {
+                keys.put(keysetPath, 1);
+            }
             if (LOG.isLoggable(Level.FINE)) {
                 LOG.fine(String.format("find(%s, %s)", query, keys));
             }
@@ -178,25 +539,131 @@ public class MongoFeatureSource extends ContentFeatureSource {
             c = collection.find(query);
         }
 
-        if (q.getStartIndex() != null && q.getStartIndex() != 0) {
-            c = c.skip(q.getStartIndex());
+        Integer batchSize = q.getHints() != null ? 
+                (Integer) q.getHints().get(MongoDataStore.CURSOR_BATCH_SIZE) : null;
+        if (batchSize == null && getDataStore().getCursorBatchSize() > 0) {
+            batchSize = getDataStore().getCursorBatchSize();
+        }
+        if (batchSize != null) {
+            c = c.batchSize(batchSize);
+        }
+
+        if (skip) {
+            c = c.skip(startIndex);
         }
         if (q.getMaxFeatures() != Integer.MAX_VALUE) {
             c = c.limit(q.getMaxFeatures());
         }
 
-        if (q.getSortBy() != null) {
-            BasicDBObject orderBy = new BasicDBObject();
-            for (SortBy sortBy : q.getSortBy()) {
-                String propName = sortBy.getPropertyName().getPropertyName();
-                orderBy.append(propName, sortBy.getSortOrder() == SortOrder.ASCENDING ? 1 : -1);
-            }
+        if (orderBy != null) {
             c = c.sort(orderBy);
         }
 
         return c;
     }
 
+    /**
+     * Maps the sort properties to document paths, natural order being the <tt>_id</tt> order.
+     * An ascending <tt>_id</tt> is appended to break ties so pages are stable.
+     */
+    BasicDBObject toOrderBy(SortBy[] sortBys) {
+        if (sortBys == null || sortBys.length == 0) {
+            return null;
+        }
+        BasicDBObject orderBy = new BasicDBObject();
+        for (SortBy sortBy : sortBys) {
+            int order = sortBy.getSortOrder() == SortOrder.DESCENDING ? -1 : 1;
+            String path;
+            if (sortBy.getPropertyName() == null) {
+                path = "_id";
+            } else {
+                path = mapper.getPropertyPath(sortBy.getPropertyName().getPropertyName());
+                if (path == null) {
+                    LOG.warning("Ignoring sort on unmapped property " + sortBy.getPropertyName());
+                    continue;
+                }
+            }
+            if (!orderBy.containsField(path)) {
+                orderBy.append(path, order);
+            }
+        }
+        if (orderBy.isEmpty()) {
+            return null;
+        }
+        if (!orderBy.containsField("_id")) {
+            orderBy.append("_id", 1);
+        }
+        return orderBy;
+    }
+
+    /**
+     * The type of the values of a sort key for keyset paging, <tt>null</tt> if it can't be used.
+     * Range queries only match values of the same type as the boundary, so the key must be 
+     * mapped to an attribute whose values all fall in a single BSON type: numbers, strings, 
+     * dates or booleans.
+     */
+    Class<?> keysetType(String path) {
+        if ("_id".equals(path)) {
+            return Object.class;
+        }
+        for (AttributeDescriptor d : getSchema().getAttributeDescriptors()) {
+            if (d instanceof GeometryDescriptor || !path.equals(mapper.getPropertyPath(d.getLocalName()))) {
+                continue;
+            }
+            Class<?> binding = d.getType().getBinding();
+            for (Class<?> type : new Class<?>[] { Number.class, String.class, Date.class, Boolean.class }) {
+                if (type.isAssignableFrom(binding)) {
+                    return type;
+                }
+            }
+            return null;
+        }
+        return null;
+    }
+
+    /**
+     * Whether some documents matching <tt>query</tt> have no value for <tt>path</tt>. A range 
+     * on the sort key never matches them, so paging by keyset would drop them.
+     */
+    boolean hasMissing(DBObject query, String path) {
+        if ("_id".equals(path)) {
+            return false;
+        }
+        // null also matches the documents where the field doesn't exist
+        DBObject missing = new BasicDBObject(path, null);
+        if (!query.keySet().isEmpty()) {
+            BasicDBList and = new BasicDBList();
+            and.add(query);
+            and.add(missing);
+            missing = new BasicDBObject("$and", and);
+        }
+        return collection.findOne(missing, new BasicDBObject("_id", 1)) != null;
+    }
+
+    /**
+     * Restricts <tt>query</tt> to the documents sorting after <tt>last</tt>.
+     */
+    static DBObject keysetQuery(DBObject query, String path, int order, int idOrder, DBObject last) {
+        String op = order < 0 ? "$lt" : "$gt";
+        DBObject range;
+        if ("_id".equals(path)) {
+            range = new BasicDBObject("_id", new BasicDBObject(op, last.get("_id")));
+        } else {
+            BasicDBList or = new BasicDBList();
+            or.add(new BasicDBObject(path, new BasicDBObject(op, last.get("v"))));
+            or.add(new BasicDBObject(path, last.get("v"))
+                    .append("_id", new BasicDBObject(idOrder < 0 ? "$lt" : "$gt", last.get("_id"))));
+            range = new BasicDBObject("$or", or);
+        }
+        if (query.keySet().isEmpty()) {
+            return range;
+        }
+        BasicDBList and = new BasicDBList();
+        and.add(query);
+        and.add(range);
+        return new BasicDBObject("$and", and);
+    }
+
     DBObject toQuery(Filter f) {
         if (isAll(f)) {
             return new BasicDBObject(); 
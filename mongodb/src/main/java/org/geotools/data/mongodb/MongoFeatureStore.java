@@ -2,12 +2,15 @@ package org.geotools.data.mongodb;
 
 import com.mongodb.DBCollection;
 import java.io.IOException;
+import java.util.Set;
 import org.geotools.data.FeatureReader;
 import org.geotools.data.FeatureWriter;
 import org.geotools.data.Query;
 import org.geotools.data.store.ContentEntry;
 import org.geotools.data.store.ContentFeatureStore;
+import org.geotools.factory.Hints.Key;
 import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.opengis.feature.FeatureVisitor;
 import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
 
@@ -54,6 +57,16 @@ public class MongoFeatureStore extends ContentFeatureStore {
         return delegate.getReaderInternal(query);
     }
 
+    @Override
+    protected boolean handleVisitor(Query query, FeatureVisitor visitor) throws IOException {
+        return delegate.handleVisitor(query, visitor);
+    }
+
+    @Override
+    protected void addHints(Set<Key> hints) {
+        delegate.addHints(hints);
+    }
+
     @Override
     protected boolean canOffset() {
         return delegate.canOffset();
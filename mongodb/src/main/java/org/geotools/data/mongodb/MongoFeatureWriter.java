@@ -1,32 +1,66 @@
 package org.geotools.data.mongodb;
 
 import com.mongodb.BasicDBObject;
+import com.mongodb.BulkWriteError;
+import com.mongodb.BulkWriteException;
+import com.mongodb.BulkWriteOperation;
 import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+import com.mongodb.MongoException;
+import com.mongodb.WriteConcern;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.bson.types.ObjectId;
 import org.geotools.data.simple.SimpleFeatureWriter;
+import org.geotools.data.store.ContentState;
 import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
 
+/**
+ * Writer that buffers new features and sends them to the collection as unordered bulk inserts
+ * of {@link MongoDataStore#getInsertBatchSize()} documents.
+ * <p>
+ * Identifiers are assigned on the client when a feature is written so that callers can
+ * report the feature id before the batch is flushed.
+ * </p>
+ */
 public class MongoFeatureWriter implements SimpleFeatureWriter {
 
     private final DBCollection collection;
     private final SimpleFeatureType featureType;
 
     private final CollectionMapper mapper;
+    private final ContentState state;
+    private final MongoDataStore dataStore;
+
+    private final int batchSize;
+    private final List<DBObject> batch;
+
     private MongoDBObjectFeature current;
+    private boolean written;
 
-    public MongoFeatureWriter(DBCollection collection, SimpleFeatureType featureType, 
+    public MongoFeatureWriter(DBCollection collection, SimpleFeatureType featureType,
         MongoFeatureStore featureStore) {
         this.collection = collection;
         this.featureType = featureType;
         mapper = featureStore.getMapper();
+        state = featureStore.getState();
+        dataStore = featureStore.getDataStore();
+        batchSize = Math.max(1, dataStore.getInsertBatchSize());
+        batch = new ArrayList<DBObject>(batchSize);
+        dataStore.openWriters.add(this);
+    }
+
+    DBCollection getCollection() {
+        return collection;
     }
 
     @Override
     public SimpleFeatureType getFeatureType() {
         return featureType;
     }
-    
+
     @Override
     public boolean hasNext() throws IOException {
         return false;
@@ -36,23 +70,86 @@ public class MongoFeatureWriter implements SimpleFeatureWriter {
     public SimpleFeature next() throws IOException {
         return current = new MongoDBObjectFeature(new BasicDBObject(), featureType, mapper);
     }
-    
+
     @Override
-    public void write() throws IOException {
+    public synchronized void write() throws IOException {
         if (current == null) {
             throw new IllegalStateException("No current feature, must call next() before write()");
         }
-        collection.save(current.getObject());
+        DBObject dbo = current.getObject();
+        if (dbo.get("_id") == null) {
+            dbo.put("_id", new ObjectId());
+        }
+        batch.add(dbo);
+        current = null;
+
+        if (batch.size() >= batchSize) {
+            flush();
+        }
+    }
+
+    /**
+     * Sends the buffered documents as a single unordered bulk insert.
+     *
+     * @throws IOException reporting every document of the batch that failed to insert
+     */
+    synchronized void flush() throws IOException {
+        if (batch.isEmpty()) {
+            return;
+        }
+        List<DBObject> toWrite = new ArrayList<DBObject>(batch);
+        batch.clear();
+
+        // cached bounds and page positions no longer valid
+        state.setBounds(null);
+        dataStore.clearKeysets(collection);
+        written = true;
+
+        BulkWriteOperation bulk = collection.initializeUnorderedBulkOperation();
+        for (DBObject dbo : toWrite) {
+            bulk.insert(dbo);
+        }
+
+        WriteConcern writeConcern = dataStore.getWriteConcern();
+        try {
+            if (writeConcern != null) {
+                bulk.execute(writeConcern);
+            } else {
+                bulk.execute();
+            }
+        } catch (BulkWriteException e) {
+            StringBuilder msg = new StringBuilder();
+            msg.append(e.getWriteErrors().size()).append(" of ").append(toWrite.size())
+                .append(" features failed to insert into ").append(collection.getFullName());
+            for (BulkWriteError error : e.getWriteErrors()) {
+                msg.append("\n  ").append(toWrite.get(error.getIndex()).get("_id"))
+                    .append(": ").append(error.getMessage());
+            }
+            if (e.getWriteConcernError() != null) {
+                msg.append("\n  write concern: ").append(e.getWriteConcernError().getMessage());
+            }
+            throw new IOException(msg.toString(), e);
+        } catch (MongoException e) {
+            throw new IOException("Unable to insert " + toWrite.size() + " features into "
+                + collection.getFullName(), e);
+        }
     }
 
     @Override
     public void remove() throws IOException {
         throw new UnsupportedOperationException();
     }
-    
+
     @Override
     public void close() throws IOException {
-        collection.ensureIndex(new BasicDBObject(mapper.getGeometryPath(), "2dsphere"));
+        try {
+            flush();
+        } finally {
+            dataStore.openWriters.remove(this);
+            if (written) {
+                dataStore.ensureGeometryIndex(collection, mapper.getGeometryPath());
+            }
+        }
     }
 
 }
@@ -0,0 +1,153 @@
+package org.geotools.data.mongodb;
+
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records the shape of the queries issued against the data store that had no index to 
+ * support them, based on the indexed fields reported by 
+ * {@link MongoUtil#findIndexedFields(DBCollection)}.
+ * <p>
+ * Only field names are recorded, values are never kept. The indexed fields of each 
+ * collection, and whether each query shape is supported by them, are cached and refreshed 
+ * through {@link #invalidate(DBCollection)}.
+ * </p>
+ */
+public class MongoIndexAdvisor {
+
+    final ConcurrentMap<String, Set<String>> indexedFields = new ConcurrentHashMap<String, Set<String>>();
+    final ConcurrentMap<String, AtomicLong> unindexedQueries = new ConcurrentHashMap<String, AtomicLong>();
+    // collection name -> query shape -> supported by an index
+    final ConcurrentMap<String, ConcurrentMap<String, Boolean>> checkedQueries = 
+        new ConcurrentHashMap<String, ConcurrentMap<String, Boolean>>();
+
+    public Set<String> getIndexedFields(DBCollection dbc) {
+        Set<String> fields = indexedFields.get(dbc.getName());
+        if (fields == null) {
+            fields = Collections.unmodifiableSet(MongoUtil.findIndexedFields(dbc));
+            indexedFields.put(dbc.getName(), fields);
+        }
+        return fields;
+    }
+
+    public boolean isIndexed(DBCollection dbc, String path) {
+        return "_id".equals(path) || getIndexedFields(dbc).contains(path);
+    }
+
+    public void invalidate(DBCollection dbc) {
+        checkedQueries.remove(dbc.getName());
+        indexedFields.remove(dbc.getName());
+    }
+
+    /**
+     * Records the query unless one of the fields it constrains, or the first sort key for 
+     * unconstrained queries, is indexed.
+     */
+    public void check(DBCollection dbc, DBObject query, DBObject orderBy) {
+        Set<String> queryFields = new TreeSet<String>();
+        collectFields(query, queryFields);
+
+        Set<String> sortFields = orderBy == null ? 
+                Collections.<String>emptySet() : orderBy.keySet();
+        if (queryFields.isEmpty() && sortFields.isEmpty()) {
+            // plain collection scan, nothing an index could help with
+            return;
+        }
+
+        String shape = "find" + queryFields + " sort" + sortFields;
+        ConcurrentMap<String, Boolean> checked = checkedQueries.get(dbc.getName());
+        if (checked == null) {
+            ConcurrentMap<String, Boolean> existing = checkedQueries.putIfAbsent(dbc.getName(), 
+                checked = new ConcurrentHashMap<String, Boolean>());
+            if (existing != null) {
+                checked = existing;
+            }
+        }
+        Boolean supported = checked.get(shape);
+        if (supported == null) {
+            supported = isSupported(getIndexedFields(dbc), queryFields, sortFields);
+            checked.put(shape, supported);
+        }
+        if (supported) {
+            return;
+        }
+
+        String key = dbc.getName() + " " + shape;
+        AtomicLong count = unindexedQueries.get(key);
+        if (count == null) {
+            AtomicLong existing = unindexedQueries.putIfAbsent(key, count = new AtomicLong());
+            if (existing != null) {
+                count = existing;
+            }
+        }
+        count.incrementAndGet();
+    }
+
+    static boolean isSupported(Set<String> indexed, Set<String> queryFields, Set<String> sortFields) {
+        for (String field : queryFields) {
+            if ("_id".equals(field) || indexed.contains(field)) {
+                return true;
+            }
+        }
+        if (queryFields.isEmpty()) {
+            String first = sortFields.iterator().next();
+            if ("_id".equals(first) || indexed.contains(first)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static void collectFields(Object o, Set<String> fields) {
+        if (!(o instanceof DBObject)) {
+            return;
+        }
+        DBObject dbo = (DBObject) o;
+        for (String key : dbo.keySet()) {
+            if (key.startsWith("$")) {
+                // logical operators hold nested queries
+                if ("$and".equals(key) || "$or".equals(key) || "$nor".equals(key)) {
+                    Object list = dbo.get(key);
+                    if (list instanceof Iterable) {
+                        for (Object child : (Iterable<?>) list) {
+                            collectFields(child, fields);
+                        }
+                    }
+                }
+            } else {
+                fields.add(key);
+            }
+        }
+    }
+
+    /**
+     * Query shapes without index support and the number of times each was run.
+     */
+    public Map<String, Long> getUnindexedQueries() {
+        Map<String, Long> report = new TreeMap<String, Long>();
+        for (Map.Entry<String, AtomicLong> e : unindexedQueries.entrySet()) {
+            report.put(e.getKey(), e.getValue().get());
+        }
+        return report;
+    }
+
+    public String getReport() {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, Long> e : getUnindexedQueries().entrySet()) {
+            sb.append(e.getValue()).append("\t").append(e.getKey()).append("\n");
+        }
+        return sb.toString();
+    }
+
+    public void reset() {
+        unindexedQueries.clear();
+    }
+}
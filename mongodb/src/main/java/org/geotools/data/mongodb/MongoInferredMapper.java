@@ -25,10 +25,24 @@ public class MongoInferredMapper extends AbstractCollectionMapper {
     
     public final static Logger LOG = Logging.getLogger(MongoInferredMapper.class);
 
+    final static String KEY_frequency = "frequency";
+    final static String KEY_sampleSize = "sampleSize";
+
     MongoGeometryBuilder geomBuilder = new MongoGeometryBuilder();
 
     SimpleFeatureType schema;
     
+    // null to infer the schema from the first document of the collection
+    final MongoSchemaSampler sampler;
+    
+    public MongoInferredMapper() {
+        this(null);
+    }
+    
+    public MongoInferredMapper(MongoSchemaSampler sampler) {
+        this.sampler = sampler;
+    }
+    
     @Override
     public String getGeometryPath() {
         String gdName = schema.getGeometryDescriptor().getLocalName();
@@ -64,7 +78,16 @@ public class MongoInferredMapper extends AbstractCollectionMapper {
         
         Set<String> indexedGeometries = MongoUtil.findIndexedGeometries(collection);
         Set<String> indexedFields = MongoUtil.findIndexedFields(collection);
-        Map<String, Class<?>> mappedFields = MongoUtil.findMappableFields(collection);
+        MongoSchemaSampler.Sample sample = null;
+        Map<String, Class<?>> mappedFields;
+        if (sampler != null) {
+            sample = sampler.sample(collection);
+            mappedFields = sample.getBindings();
+            LOG.log(Level.INFO, "building type {0}: sampled {1} documents from collection {2}",
+                    new Object[] {name, sample.getDocuments(), collection.getFullName() });
+        } else {
+            mappedFields = MongoUtil.findMappableFields(collection);
+        }
         
         // don't need to worry about indexed properties we've found in our scan...
         indexedFields.removeAll(mappedFields.keySet());
@@ -99,6 +122,9 @@ public class MongoInferredMapper extends AbstractCollectionMapper {
             String field = mappedField.getKey();
             Class<?> binding = mappedField.getValue();
             ftBuilder.userData(MongoDataStore.KEY_mapping, field);
+            if (sample != null) {
+                ftBuilder.userData(KEY_frequency, String.valueOf(sample.getFrequency(field)));
+            }
             ftBuilder.add(field, binding);
             LOG.log(Level.INFO, "building type \"{0}\": mapping field \"{1}\" with binding {2} from collection {3}",
                     new Object[] {name, field, binding.getName(), collection.getFullName() });
@@ -113,6 +139,10 @@ public class MongoInferredMapper extends AbstractCollectionMapper {
         
         SimpleFeatureType featureType = ftBuilder.buildFeatureType();
         featureType.getUserData().put(MongoDataStore.KEY_collection, collection.getName());
+        if (sample != null) {
+            // persisted with the schema so a stored type records how it was inferred
+            featureType.getUserData().put(KEY_sampleSize, String.valueOf(sample.getDocuments()));
+        }
         
         this.schema = featureType;
         
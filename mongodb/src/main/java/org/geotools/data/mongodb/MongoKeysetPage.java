@@ -0,0 +1,61 @@
+package org.geotools.data.mongodb;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import java.util.Map;
+
+/**
+ * Tracks the last document read from a page sorted on a single key so that a request for 
+ * the following page can be answered with a range query on the sort key rather than by
+ * skipping over every previous page.
+ * <p>
+ * The position reached is stored in the datastore keyset cache under 
+ * <tt>signature@offset</tt> as a document holding the sort key value ("v") and the 
+ * <tt>_id</tt> used to break ties. Nothing is stored if a document of the page has no sort 
+ * key value or one of another type than expected, range queries would skip such documents.
+ * </p>
+ */
+public class MongoKeysetPage {
+
+    final Map<String, DBObject> cache;
+    final String signature;
+    final String path;
+    final Class<?> type;
+    final int offset;
+
+    DBObject last;
+    int read;
+    boolean mixed;
+
+    public MongoKeysetPage(Map<String, DBObject> cache, String signature, String path, 
+            Class<?> type, int offset) {
+        this.cache = cache;
+        this.signature = signature;
+        this.path = path;
+        this.type = type;
+        this.offset = offset;
+    }
+
+    static String key(String signature, int offset) {
+        return signature + "@" + offset;
+    }
+
+    public void visit(DBObject dbo) {
+        if (!type.isInstance(MongoUtil.getDBOValue(dbo, path))) {
+            mixed = true;
+        }
+        last = dbo;
+        read++;
+    }
+
+    public void close() {
+        if (last == null || mixed) {
+            return;
+        }
+        Object value = MongoUtil.getDBOValue(last, path);
+        Object id = last.get("_id");
+        if (value != null && id != null) {
+            cache.put(key(signature, offset + read), new BasicDBObject("v", value).append("_id", id));
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package org.geotools.data.mongodb;
+
+import com.mongodb.DBObject;
+import java.util.Collection;
+import java.util.List;
+import org.opengis.feature.GeometryAttribute;
+import org.opengis.feature.Property;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.Name;
+import org.opengis.geometry.BoundingBox;
+
+/**
+ * Feature whose default geometry is only decoded from the backing document the first time 
+ * it is accessed.
+ * 
+ * @see MongoLazyFeatureReader
+ */
+public class MongoLazyFeature extends MongoFeature {
+
+    final DBObject dbo;
+    final CollectionMapper mapper;
+    final int geometryIndex;
+    
+    boolean decoded;
+
+    public MongoLazyFeature(Object[] values, SimpleFeatureType featureType, String id, 
+            DBObject dbo, CollectionMapper mapper, int geometryIndex) {
+        super(values, featureType, id);
+        this.dbo = dbo;
+        this.mapper = mapper;
+        this.geometryIndex = geometryIndex;
+        this.decoded = geometryIndex < 0;
+    }
+
+    void decode() {
+        if (!decoded) {
+            decoded = true;
+            values[geometryIndex] = mapper.getGeometry(dbo);
+        }
+    }
+
+    @Override
+    public Object getAttribute(int index) throws IndexOutOfBoundsException {
+        if (index == geometryIndex) {
+            decode();
+        }
+        return super.getAttribute(index);
+    }
+
+    @Override
+    public Object getAttribute(String name) {
+        int index = featureType.indexOf(name);
+        return index < 0 ? null : getAttribute(index);
+    }
+
+    @Override
+    public Object getAttribute(Name name) {
+        int index = featureType.indexOf(name);
+        return index < 0 ? null : getAttribute(index);
+    }
+
+    @Override
+    public void setAttribute(int index, Object value) throws IndexOutOfBoundsException {
+        super.setAttribute(index, value);
+        if (index == geometryIndex) {
+            decoded = true;
+        }
+    }
+
+    @Override
+    public void setAttribute(String name, Object value) {
+        decode();
+        super.setAttribute(name, value);
+    }
+
+    @Override
+    public void setAttribute(Name name, Object value) {
+        decode();
+        super.setAttribute(name, value);
+    }
+
+    @Override
+    public Object getDefaultGeometry() {
+        decode();
+        return super.getDefaultGeometry();
+    }
+
+    @Override
+    public void setDefaultGeometry(Object geometry) {
+        decode();
+        super.setDefaultGeometry(geometry);
+    }
+
+    @Override
+    public GeometryAttribute getDefaultGeometryProperty() {
+        decode();
+        return super.getDefaultGeometryProperty();
+    }
+
+    @Override
+    public BoundingBox getBounds() {
+        decode();
+        return super.getBounds();
+    }
+
+    @Override
+    public List<Object> getAttributes() {
+        decode();
+        return super.getAttributes();
+    }
+
+    @Override
+    public Collection<Property> getProperties() {
+        decode();
+        return super.getProperties();
+    }
+
+    @Override
+    public Collection<Property> getProperties(Name name) {
+        decode();
+        return super.getProperties(name);
+    }
+
+    @Override
+    public Collection<Property> getProperties(String name) {
+        decode();
+        return super.getProperties(name);
+    }
+
+    @Override
+    public Property getProperty(Name name) {
+        decode();
+        return super.getProperty(name);
+    }
+
+    @Override
+    public Property getProperty(String name) {
+        decode();
+        return super.getProperty(name);
+    }
+
+    @Override
+    public Collection<? extends Property> getValue() {
+        decode();
+        return super.getValue();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        decode();
+        if (obj instanceof MongoLazyFeature) {
+            ((MongoLazyFeature) obj).decode();
+        }
+        return super.equals(obj);
+    }
+
+    @Override
+    public int hashCode() {
+        decode();
+        return super.hashCode();
+    }
+}
@@ -0,0 +1,117 @@
+package org.geotools.data.mongodb;
+
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
+import java.io.IOException;
+import java.util.NoSuchElementException;
+import org.geotools.data.simple.SimpleFeatureReader;
+import org.geotools.util.Converters;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.AttributeDescriptor;
+import org.opengis.feature.type.GeometryDescriptor;
+
+/**
+ * Reader returning features of the (possibly retyped) query type only.
+ * <p>
+ * Document paths of the requested attributes are resolved through the mapper and split once
+ * per query, values are then looked up by attribute index without further allocation. The 
+ * default geometry is decoded on first access, see {@link MongoLazyFeature}.
+ * </p>
+ */
+public class MongoLazyFeatureReader implements SimpleFeatureReader {
+
+    final DBCursor cursor;
+    final SimpleFeatureType featureType;
+    final CollectionMapper mapper;
+
+    // split document path per attribute, null for the geometry or unmapped attributes
+    final String[][] paths;
+    final Class<?>[] bindings;
+    final int geometryIndex;
+
+    // tracks the page position for keyset paging, may be null
+    final MongoKeysetPage page;
+
+    public MongoLazyFeatureReader(DBCursor cursor, SimpleFeatureType featureType, 
+            CollectionMapper mapper) {
+        this(cursor, featureType, mapper, null);
+    }
+
+    public MongoLazyFeatureReader(DBCursor cursor, SimpleFeatureType featureType, 
+            CollectionMapper mapper, MongoKeysetPage page) {
+        this.cursor = cursor;
+        this.page = page;
+        this.featureType = featureType;
+        this.mapper = mapper;
+
+        int count = featureType.getAttributeCount();
+        paths = new String[count][];
+        bindings = new Class<?>[count];
+
+        GeometryDescriptor gd = featureType.getGeometryDescriptor();
+        int gIndex = -1;
+        for (int i = 0; i < count; i++) {
+            AttributeDescriptor ad = featureType.getDescriptor(i);
+            bindings[i] = ad.getType().getBinding();
+            if (gd != null && gd.getLocalName().equals(ad.getLocalName())) {
+                gIndex = i;
+            } else {
+                String path = mapper.getPropertyPath(ad.getLocalName());
+                paths[i] = path == null ? null : path.split("\\.");
+            }
+        }
+        geometryIndex = gIndex;
+    }
+
+    @Override
+    public SimpleFeatureType getFeatureType() {
+        return featureType;
+    }
+
+    @Override
+    public boolean hasNext() throws IOException {
+        return cursor.hasNext();
+    }
+
+    @Override
+    public SimpleFeature next() throws IOException, IllegalArgumentException, NoSuchElementException {
+        DBObject dbo = cursor.next();
+        if (page != null) {
+            page.visit(dbo);
+        }
+
+        Object[] values = new Object[paths.length];
+        for (int i = 0; i < paths.length; i++) {
+            if (paths[i] != null) {
+                Object o = value(dbo, paths[i]);
+                if (o != null && !bindings[i].isInstance(o)) {
+                    o = Converters.convert(o, bindings[i]);
+                }
+                values[i] = o;
+            }
+        }
+        return new MongoLazyFeature(values, featureType, dbo.get("_id").toString(), 
+                dbo, mapper, geometryIndex);
+    }
+
+    static Object value(DBObject dbo, String[] path) {
+        Object current = dbo;
+        for (String key : path) {
+            if (!(current instanceof DBObject)) {
+                return null;
+            }
+            current = ((DBObject) current).get(key);
+        }
+        return current;
+    }
+
+    @Override
+    public void close() throws IOException {
+        cursor.close();
+        if (page != null) {
+            page.close();
+        }
+    }
+
+}
@@ -13,7 +13,10 @@ import com.mongodb.MongoClient;
 import com.mongodb.MongoClientURI;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import org.bson.types.ObjectId;
 import org.opengis.feature.simple.SimpleFeatureType;
 import org.opengis.feature.type.Name;
 
@@ -21,10 +24,13 @@ import org.opengis.feature.type.Name;
  *
  * @author tkunicki@boundlessgeo.com
  */
-public class MongoSchemaDBStore implements MongoSchemaStore {
+public class MongoSchemaDBStore implements MongoSchemaStore, MongoSchemaStoreCache.Versioned {
 
     final static String DEFAULT_databaseName = "geotools";
     final static String DEFAULT_collectionName = "schemas";
+    
+    // changed on every write so that caches can detect updates made by other instances
+    final static String KEY_version = "version";
 
     final MongoClient client;
     final DBCollection collection;
@@ -57,9 +63,11 @@ public class MongoSchemaDBStore implements MongoSchemaStore {
         if (schema != null) {
             String typeName = schema.getTypeName();
             if (typeName != null) {
+                DBObject document = FeatureTypeDBObject.convert(schema);
+                document.put(KEY_version, new ObjectId());
                 collection.update(
                         new BasicDBObject(FeatureTypeDBObject.KEY_typeName, schema.getTypeName()),
-                        FeatureTypeDBObject.convert(schema),
+                        document,
                         true, false);
             }
         }
@@ -115,6 +123,27 @@ public class MongoSchemaDBStore implements MongoSchemaStore {
         return typeNames;
     }
 
+    @Override
+    public Map<String, Object> versions() throws IOException {
+        Map<String, Object> versions = new HashMap<String, Object>();
+        DBCursor cursor = collection.find(new BasicDBObject(),
+                new BasicDBObject(FeatureTypeDBObject.KEY_typeName, 1).append(KEY_version, 1));
+        try {
+            while (cursor.hasNext()) {
+                DBObject document = cursor.next();
+                Object typeName = document.get(FeatureTypeDBObject.KEY_typeName);
+                if (typeName instanceof String) {
+                    // schemas written before versioning never report a change
+                    Object version = document.get(KEY_version);
+                    versions.put((String)typeName, version != null ? version : "");
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+        return versions;
+    }
+
     @Override
     public void close() {
         client.close();
@@ -16,7 +16,9 @@ import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import org.opengis.feature.simple.SimpleFeatureType;
 import org.opengis.feature.type.Name;
 
@@ -24,7 +26,7 @@ import org.opengis.feature.type.Name;
  *
  * @author tkunicki@boundlessgeo.com
  */
-public class MongoSchemaFileStore implements MongoSchemaStore {
+public class MongoSchemaFileStore implements MongoSchemaStore, MongoSchemaStoreCache.Versioned {
    
     static final String SUFFIX_json = ".json";
     
@@ -102,6 +104,20 @@ public class MongoSchemaFileStore implements MongoSchemaStore {
         return typeNames;
     }
     
+    @Override
+    public Map<String, Object> versions() throws IOException {
+        Map<String, Object> versions = new HashMap<String, Object>();
+        File[] schemaFiles = schemaStoreFile.listFiles(new SchemaFilter());
+        if (schemaFiles == null) {
+            throw new IOException("Unable to list schema store directory: " + schemaStoreFile.getAbsolutePath());
+        }
+        for (File schemaFile : schemaFiles) {
+            // length catches rewrites within the file system timestamp resolution
+            versions.put(typeName(schemaFile), schemaFile.lastModified() + ":" + schemaFile.length());
+        }
+        return versions;
+    }
+    
     static String typeName(File schemaFile) {
         String typeName = schemaFile.getName();
         return typeName.substring(0, typeName.length() - SUFFIX_json.length());
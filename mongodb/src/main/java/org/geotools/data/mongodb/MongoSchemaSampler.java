@@ -0,0 +1,258 @@
+package org.geotools.data.mongodb;
+
+import com.mongodb.AggregationOutput;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCollection;
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
+import com.mongodb.MongoException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.bson.types.ObjectId;
+import org.geotools.util.logging.Logging;
+
+/**
+ * Infers field bindings from a sample of the documents of a collection rather than from a
+ * single document.
+ * <p>
+ * The sample is either drawn server side with the <tt>$sample</tt> aggregation stage
+ * (MongoDB 3.2+) or by splitting the <tt>_id</tt> range of the collection into partitions
+ * read in parallel, each at random offsets. Bindings found in different documents are merged with
+ * {@link MongoUtil#widenBinding(Class, Class)} and the number of documents containing each
+ * field is recorded.
+ * </p>
+ */
+public class MongoSchemaSampler {
+
+    public final static Logger LOG = Logging.getLogger(MongoSchemaSampler.class);
+
+    // documents read in a row at each random offset of a partition
+    static final int RUN_LENGTH = 10;
+
+    // partitions of all the samplers are read by a few shared daemon threads
+    static final ExecutorService EXECUTOR;
+    static {
+        final AtomicInteger threads = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(4, 4, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, "MongoSchemaSampler-" + threads.incrementAndGet());
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+        executor.allowCoreThreadTimeOut(true);
+        EXECUTOR = executor;
+    }
+
+    final Random random = new Random();
+
+    final int sampleSize;
+    final int partitions;
+    final boolean useSampleStage;
+
+    public MongoSchemaSampler(int sampleSize, int partitions, boolean useSampleStage) {
+        this.sampleSize = Math.max(1, sampleSize);
+        this.partitions = Math.max(1, partitions);
+        this.useSampleStage = useSampleStage;
+    }
+
+    public Sample sample(DBCollection dbc) {
+        if (useSampleStage) {
+            try {
+                AggregationOutput output = dbc.aggregate(
+                        new BasicDBObject("$sample", new BasicDBObject("size", sampleSize)));
+                Sample sample = new Sample();
+                for (DBObject dbo : output.results()) {
+                    sample.add(dbo);
+                }
+                return sample;
+            } catch (MongoException e) {
+                LOG.log(Level.FINE, "$sample not supported by server, falling back to partitioned scan", e);
+            }
+        }
+        return samplePartitions(dbc);
+    }
+
+    Sample samplePartitions(DBCollection dbc) {
+        List<DBObject> ranges = partitionRanges(dbc);
+        final int perPartition = Math.max(1, sampleSize / ranges.size());
+
+        if (ranges.size() == 1) {
+            return scan(dbc, ranges.get(0), perPartition);
+        }
+
+        List<Future<Sample>> futures = new ArrayList<Future<Sample>>();
+        try {
+            for (final DBObject range : ranges) {
+                final DBCollection collection = dbc;
+                futures.add(EXECUTOR.submit(new Callable<Sample>() {
+                    @Override
+                    public Sample call() throws Exception {
+                        return scan(collection, range, perPartition);
+                    }
+                }));
+            }
+            Sample sample = new Sample();
+            for (Future<Sample> future : futures) {
+                sample.merge(future.get());
+            }
+            return sample;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while sampling " + dbc.getFullName(), e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Unable to sample " + dbc.getFullName(), e.getCause());
+        } finally {
+            for (Future<Sample> future : futures) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * Samples <tt>limit</tt> documents of a range, in short runs starting at random offsets so
+     * that the sample isn't made of the oldest documents only.
+     */
+    Sample scan(DBCollection dbc, DBObject range, int limit) {
+        Sample sample = new Sample();
+        int runs = (limit + RUN_LENGTH - 1) / RUN_LENGTH;
+        long slots = dbc.count(range) / RUN_LENGTH;
+        if (slots <= runs) {
+            // the sample covers most of the range anyway
+            read(dbc, range, 0, limit, sample);
+            return sample;
+        }
+
+        TreeSet<Long> offsets = new TreeSet<Long>();
+        while (offsets.size() < runs) {
+            offsets.add((long) (random.nextDouble() * slots) * RUN_LENGTH);
+        }
+        int remaining = limit;
+        for (Long offset : offsets) {
+            if (remaining <= 0) {
+                break;
+            }
+            remaining -= read(dbc, range, offset.intValue(), Math.min(RUN_LENGTH, remaining), sample);
+        }
+        return sample;
+    }
+
+    int read(DBCollection dbc, DBObject range, int offset, int limit, Sample sample) {
+        DBCursor cursor = dbc.find(range).sort(new BasicDBObject("_id", 1)).skip(offset).limit(limit);
+        int read = 0;
+        try {
+            while (cursor.hasNext()) {
+                sample.add(cursor.next());
+                read++;
+            }
+        } finally {
+            cursor.close();
+        }
+        return read;
+    }
+
+    /**
+     * Splits the collection into <tt>_id</tt> ranges of equal creation time. Collections not
+     * keyed by ObjectId are scanned as a single partition.
+     */
+    List<DBObject> partitionRanges(DBCollection dbc) {
+        List<DBObject> ranges = new ArrayList<DBObject>();
+        if (partitions > 1) {
+            Object min = firstId(dbc, 1);
+            Object max = firstId(dbc, -1);
+            if (min instanceof ObjectId && max instanceof ObjectId) {
+                long lo = ((ObjectId)min).getTime();
+                long hi = ((ObjectId)max).getTime();
+                if (hi - lo >= partitions * 1000L) {
+                    long step = (hi - lo) / partitions;
+                    Object lower = min;
+                    for (int i = 1; i <= partitions; i++) {
+                        Object upper = i < partitions ?
+                                new ObjectId(new Date(lo + i * step), 0, 0) : max;
+                        String op = i < partitions ? "$lt" : "$lte";
+                        ranges.add(new BasicDBObject("_id",
+                                new BasicDBObject("$gte", lower).append(op, upper)));
+                        lower = upper;
+                    }
+                    return ranges;
+                }
+            }
+        }
+        ranges.add(new BasicDBObject());
+        return ranges;
+    }
+
+    Object firstId(DBCollection dbc, int order) {
+        DBCursor cursor = dbc.find(new BasicDBObject(), new BasicDBObject("_id", 1))
+                .sort(new BasicDBObject("_id", order)).limit(1);
+        try {
+            return cursor.hasNext() ? cursor.next().get("_id") : null;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Merged bindings and per field document counts of a sample.
+     */
+    public static class Sample {
+
+        int documents;
+        final Map<String, Class<?>> bindings = new LinkedHashMap<String, Class<?>>();
+        final Map<String, Integer> counts = new LinkedHashMap<String, Integer>();
+
+        void add(DBObject dbo) {
+            documents++;
+            for (Map.Entry<String, Class<?>> e : MongoUtil.findMappableFields(dbo).entrySet()) {
+                add(e.getKey(), e.getValue(), 1);
+            }
+        }
+
+        void merge(Sample other) {
+            documents += other.documents;
+            for (Map.Entry<String, Class<?>> e : other.bindings.entrySet()) {
+                add(e.getKey(), e.getValue(), other.counts.get(e.getKey()));
+            }
+        }
+
+        void add(String field, Class<?> binding, int count) {
+            bindings.put(field, MongoUtil.widenBinding(bindings.get(field), binding));
+            Integer current = counts.get(field);
+            counts.put(field, current == null ? count : current + count);
+        }
+
+        public int getDocuments() {
+            return documents;
+        }
+
+        public Map<String, Class<?>> getBindings() {
+            return bindings;
+        }
+
+        /**
+         * Fraction of the sampled documents containing the field.
+         */
+        public double getFrequency(String field) {
+            Integer count = counts.get(field);
+            return count == null || documents == 0 ? 0 : count / (double) documents;
+        }
+    }
+}
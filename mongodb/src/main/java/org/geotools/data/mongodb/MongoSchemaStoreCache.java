@@ -0,0 +1,216 @@
+package org.geotools.data.mongodb;
+
+import com.mongodb.DBObject;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.geotools.util.logging.Logging;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.Name;
+
+/**
+ * Caching decorator for a {@link MongoSchemaStore}.
+ * <p>
+ * Type names and schemas are served from memory. At most once every
+ * {@link #getCheckInterval() check interval} the cache asks a {@link Versioned} delegate for
+ * the version of every stored schema (file modification time, document version field) in a
+ * single cheap call and drops the entries changed by someone else. Storing a schema 
+ * identical to the cached one does not reach the delegate, so rebuilding feature types 
+ * doesn't rewrite every schema.
+ * </p>
+ */
+public class MongoSchemaStoreCache implements MongoSchemaStore {
+
+    static final Logger LOGGER = Logging.getLogger(MongoSchemaStoreCache.class);
+
+    /**
+     * Schema store able to report a version stamp for each stored schema without parsing it.
+     */
+    public interface Versioned {
+
+        /**
+         * Version of every stored schema keyed by type name, any change in value meaning the
+         * stored schema changed.
+         */
+        Map<String, Object> versions() throws IOException;
+    }
+
+    final MongoSchemaStore delegate;
+
+    long checkInterval = 1000;
+    long lastCheck;
+
+    // versions as of the last check, null until the first one
+    Map<String, Object> versions;
+
+    // encoded schemas, keyed by type name
+    final Map<String, DBObject> encoded = new HashMap<String, DBObject>();
+
+    // decoded schemas, keyed by the requested name since the namespace is taken from it
+    final Map<Name, SimpleFeatureType> decoded = new HashMap<Name, SimpleFeatureType>();
+
+    List<String> typeNames;
+
+    // type names written through the cache since the last check, their version change is ours
+    final Set<String> written = new HashSet<String>();
+
+    public MongoSchemaStoreCache(MongoSchemaStore delegate) {
+        this.delegate = delegate;
+    }
+
+    public MongoSchemaStore getDelegate() {
+        return delegate;
+    }
+
+    public long getCheckInterval() {
+        return checkInterval;
+    }
+
+    /**
+     * Minimum time in milliseconds between two checks of the delegate versions, 0 to check
+     * on every call.
+     */
+    public void setCheckInterval(long checkInterval) {
+        this.checkInterval = checkInterval;
+    }
+
+    @Override
+    public synchronized void storeSchema(SimpleFeatureType schema) throws IOException {
+        if (schema == null) {
+            return;
+        }
+        validate();
+        String typeName = schema.getTypeName();
+        DBObject dbo = FeatureTypeDBObject.convert(schema);
+        if (dbo.equals(encoded.get(typeName))) {
+            // unchanged, skip the write
+            return;
+        }
+        delegate.storeSchema(schema);
+        evict(typeName);
+        encoded.put(typeName, dbo);
+        written.add(typeName);
+        if (typeNames != null && !typeNames.contains(typeName)) {
+            typeNames.add(typeName);
+        }
+    }
+
+    @Override
+    public synchronized SimpleFeatureType retrieveSchema(Name name) throws IOException {
+        if (name == null) {
+            return null;
+        }
+        validate();
+        SimpleFeatureType schema = decoded.get(name);
+        if (schema == null && !decoded.containsKey(name)) {
+            DBObject dbo = encoded.get(name.getLocalPart());
+            if (dbo != null) {
+                schema = FeatureTypeDBObject.convert(dbo, name);
+            } else {
+                schema = delegate.retrieveSchema(name);
+                if (schema != null) {
+                    encoded.put(name.getLocalPart(), FeatureTypeDBObject.convert(schema));
+                }
+            }
+            decoded.put(name, schema);
+        }
+        return schema;
+    }
+
+    @Override
+    public synchronized void deleteSchema(Name name) throws IOException {
+        if (name == null) {
+            return;
+        }
+        delegate.deleteSchema(name);
+        evict(name.getLocalPart());
+        if (typeNames != null) {
+            typeNames.remove(name.getLocalPart());
+        }
+    }
+
+    @Override
+    public synchronized List<String> typeNames() {
+        validate();
+        if (typeNames == null) {
+            typeNames = new ArrayList<String>(delegate.typeNames());
+        }
+        return new ArrayList<String>(typeNames);
+    }
+
+    @Override
+    public synchronized void close() {
+        invalidate();
+        delegate.close();
+    }
+
+    /**
+     * Drops everything cached.
+     */
+    public synchronized void invalidate() {
+        encoded.clear();
+        decoded.clear();
+        written.clear();
+        typeNames = null;
+        versions = null;
+    }
+
+    void evict(String typeName) {
+        encoded.remove(typeName);
+        for (Name name : new ArrayList<Name>(decoded.keySet())) {
+            if (typeName.equals(name.getLocalPart())) {
+                decoded.remove(name);
+            }
+        }
+    }
+
+    /**
+     * Evicts the entries whose version changed since the last check.
+     */
+    void validate() {
+        if (!(delegate instanceof Versioned)) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        if (versions != null && now - lastCheck < checkInterval) {
+            return;
+        }
+        lastCheck = now;
+
+        Map<String, Object> current;
+        try {
+            current = ((Versioned) delegate).versions();
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Unable to check schema versions, dropping cache", e);
+            invalidate();
+            return;
+        }
+        if (versions == null) {
+            // first check, anything cached before can't be trusted
+            encoded.clear();
+            decoded.clear();
+        } else {
+            for (Map.Entry<String, Object> e : versions.entrySet()) {
+                if (!e.getValue().equals(current.get(e.getKey())) && !written.contains(e.getKey())) {
+                    evict(e.getKey());
+                }
+            }
+            for (String typeName : current.keySet()) {
+                if (!versions.containsKey(typeName) && !written.contains(typeName)) {
+                    evict(typeName);
+                }
+            }
+        }
+        if (versions == null || !versions.keySet().equals(current.keySet())) {
+            typeNames = null;
+        }
+        versions = current;
+        written.clear();
+    }
+}
@@ -4,11 +4,14 @@
 package org.geotools.data.mongodb;
 
 import com.mongodb.BasicDBObject;
+import com.mongodb.DB;
 import com.mongodb.DBCollection;
+import com.mongodb.DBCursor;
 import com.mongodb.DBObject;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
@@ -71,6 +74,45 @@ public class MongoUtil {
         return findIndexedFields(dbc, "2dsphere");
     } 
     
+    /**
+     * Finds the 2dsphere indexed fields of every collection of a database with a single query
+     * on <tt>system.indexes</tt>, keyed by collection name. Returns an empty map if the server
+     * doesn't expose index metadata this way (MongoDB 3.0+ storage engines), in which case
+     * {@link #findIndexedGeometries(DBCollection)} has to be used per collection.
+     */
+    public static Map<String, Set<String>> findIndexedGeometries(DB db) {
+        Map<String, Set<String>> indexed = new HashMap<String, Set<String>>();
+        String prefix = db.getName() + ".";
+        DBCursor cursor = db.getCollection("system.indexes").find(
+                new BasicDBObject(), new BasicDBObject("ns", 1).append("key", 1));
+        try {
+            while (cursor.hasNext()) {
+                DBObject index = cursor.next();
+                Object ns = index.get("ns");
+                Object key = index.get("key");
+                if (!(ns instanceof String) || !((String) ns).startsWith(prefix)) {
+                    continue;
+                }
+                String collectionName = ((String) ns).substring(prefix.length());
+                Set<String> fields = indexed.get(collectionName);
+                if (fields == null) {
+                    fields = new LinkedHashSet<String>();
+                    indexed.put(collectionName, fields);
+                }
+                if (key instanceof DBObject) {
+                    for (String field : ((DBObject) key).keySet()) {
+                        if ("2dsphere".equals(((DBObject) key).get(field))) {
+                            fields.add(field);
+                        }
+                    }
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+        return indexed;
+    }
+
     public static Set<String> findIndexedFields(DBCollection dbc) {
         return findIndexedFields(dbc, null);
     }
@@ -110,28 +152,51 @@ public class MongoUtil {
             return Collections.EMPTY_MAP;
         }
         Map<String, Class<?>> map = new LinkedHashMap<String, Class<?>>();
-        for (Map.Entry e : ((Map<?,?>)dbo.toMap()).entrySet()) {
-            Object k = e.getKey();
-            if (k instanceof String) {
-                String field = (String)k;
-                Object v = e.getValue();
-                if (v instanceof DBObject) {
-                    for (Map.Entry<String, Class<?>> childEntry : doFindMappableFields((DBObject)v).entrySet()) {
-                        map.put(field + "." + childEntry.getKey(), childEntry.getValue());
-                    }
-                } else if (v instanceof List) {
-                    // this is here as documentation/placeholder.  no array/list support yet.
-                } else {
-                    Class<?> binding = mapBSONObjectToJavaType(v);
-                    if (binding != null) {
-                        map.put(field, binding);
-                    }
+        doFindMappableFields(dbo, null, map);
+        return map;
+    }
+    
+    // walks the document in place rather than through DBObject.toMap() copies
+    private static void doFindMappableFields(DBObject dbo, String prefix, Map<String, Class<?>> map) {
+        for (String key : dbo.keySet()) {
+            String field = prefix == null ? key : prefix + "." + key;
+            Object v = dbo.get(key);
+            if (v instanceof DBObject) {
+                doFindMappableFields((DBObject)v, field, map);
+            } else if (v instanceof List) {
+                // this is here as documentation/placeholder.  no array/list support yet.
+            } else {
+                Class<?> binding = mapBSONObjectToJavaType(v);
+                if (binding != null) {
+                    map.put(field, binding);
                 }
             }
         }
-        return map;
     }
     
+    /**
+     * Returns the narrowest binding able to hold values of both <tt>a</tt> and <tt>b</tt>.  
+     * Numeric bindings widen from Integer to Long to Double, any other mismatch widens 
+     * to String.
+     */
+    public static Class<?> widenBinding(Class<?> a, Class<?> b) {
+        if (a == null) {
+            return b;
+        }
+        if (b == null || a.equals(b)) {
+            return a;
+        }
+        int aRank = NUMERIC_BINDINGS.indexOf(a);
+        int bRank = NUMERIC_BINDINGS.indexOf(b);
+        if (aRank >= 0 && bRank >= 0) {
+            return NUMERIC_BINDINGS.get(Math.max(aRank, bRank));
+        }
+        return String.class;
+    }
+    
+    private static final List<Class<?>> NUMERIC_BINDINGS = 
+            Arrays.<Class<?>>asList(Integer.class, Long.class, Double.class);
+    
     public static Class<?> mapBSONObjectToJavaType(Object o) {
         if (o instanceof String || 
             o instanceof Double ||
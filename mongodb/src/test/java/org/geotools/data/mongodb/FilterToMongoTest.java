@@ -1,11 +1,29 @@
 package org.geotools.data.mongodb;
 
+import java.util.Date;
+import java.util.regex.Pattern;
+
 import org.geotools.factory.CommonFactoryFinder;
+import org.geotools.filter.visitor.PostPreProcessFilterSplittingVisitor;
+import org.geotools.temporal.object.DefaultInstant;
+import org.geotools.temporal.object.DefaultPeriod;
+import org.geotools.temporal.object.DefaultPosition;
+import org.opengis.filter.Filter;
 import org.opengis.filter.FilterFactory;
 import org.opengis.filter.FilterFactory2;
+import org.opengis.filter.Id;
+import org.opengis.filter.Or;
 import org.opengis.filter.PropertyIsEqualTo;
+import org.opengis.filter.PropertyIsLike;
 import org.opengis.filter.spatial.BBOX;
+import org.opengis.filter.temporal.After;
+import org.opengis.filter.temporal.Before;
+import org.opengis.filter.temporal.During;
+import org.opengis.filter.temporal.TEquals;
+import org.opengis.temporal.Instant;
+import org.opengis.temporal.Period;
 
+import com.mongodb.BasicDBList;
 import com.mongodb.BasicDBObject;
 
 import junit.framework.TestCase;
@@ -38,4 +56,130 @@ public class FilterToMongoTest extends TestCase {
         assertNotNull(obj);
         System.out.println(obj);
     }
+
+    public void testAndSameProperty() throws Exception {
+        Filter and = ff.and(ff.greater(ff.property("foo"), ff.literal("a")), 
+                ff.less(ff.property("foo"), ff.literal("c")));
+        BasicDBObject obj = (BasicDBObject) and.accept(filterToMongo, null);
+
+        BasicDBList list = (BasicDBList) obj.get("$and");
+        assertNotNull(list);
+        assertEquals(2, list.size());
+        assertNoPostFilter(and);
+    }
+
+    public void testOr() throws Exception {
+        Or or = ff.or(ff.equals(ff.property("foo"), ff.literal("bar")), 
+                ff.equals(ff.property("foo"), ff.literal("baz")));
+        BasicDBObject obj = (BasicDBObject) or.accept(filterToMongo, null);
+
+        BasicDBList list = (BasicDBList) obj.get("$or");
+        assertNotNull(list);
+        assertEquals(2, list.size());
+        assertEquals("bar", ((BasicDBObject) list.get(0)).get("properties.foo"));
+        assertEquals("baz", ((BasicDBObject) list.get(1)).get("properties.foo"));
+        assertNoPostFilter(or);
+    }
+
+    public void testLike() throws Exception {
+        PropertyIsLike like = ff.like(ff.property("foo"), "a.b_c%", "%", "_", "\\");
+        BasicDBObject obj = (BasicDBObject) like.accept(filterToMongo, null);
+
+        Pattern p = (Pattern) obj.get("properties.foo");
+        assertEquals("^a\\.b.c.*$", p.pattern());
+        assertTrue(p.matcher("a.bxcyyy").matches());
+        assertFalse(p.matcher("xa.bxc").matches());
+        assertNoPostFilter(like);
+    }
+
+    public void testLikeEscape() throws Exception {
+        assertEquals("^100%$", FilterToMongo.likeToRegex("100\\%", "%", "_", "\\"));
+    }
+
+    public void testId() throws Exception {
+        Id id = ff.id(ff.featureId("5253a9f0a3e2a5d4b8f1c001"), ff.featureId("ft1.1"));
+        BasicDBObject obj = (BasicDBObject) id.accept(filterToMongo, null);
+
+        BasicDBList list = (BasicDBList) ((BasicDBObject) obj.get("_id")).get("$in");
+        assertEquals(2, list.size());
+        assertNoPostFilter(id);
+    }
+
+    public void testAfter() throws Exception {
+        Date date = new Date(1000);
+        After after = ff.after(ff.property("dateProperty"), ff.literal(instant(date)));
+        BasicDBObject obj = (BasicDBObject) after.accept(filterToMongo, null);
+
+        BasicDBObject range = (BasicDBObject) obj.get("properties.dateProperty");
+        assertEquals(date, range.get("$gt"));
+        assertEquals(1, range.keySet().size());
+        assertNoPostFilter(after);
+    }
+
+    public void testBefore() throws Exception {
+        Date date = new Date(1000);
+        Before before = ff.before(ff.property("dateProperty"), ff.literal(date));
+        BasicDBObject obj = (BasicDBObject) before.accept(filterToMongo, null);
+
+        BasicDBObject range = (BasicDBObject) obj.get("properties.dateProperty");
+        assertEquals(date, range.get("$lt"));
+        assertNoPostFilter(before);
+    }
+
+    public void testDuring() throws Exception {
+        Date begin = new Date(1000), end = new Date(2000);
+        Period period = new DefaultPeriod(instant(begin), instant(end));
+        During during = ff.during(ff.property("dateProperty"), ff.literal(period));
+        BasicDBObject obj = (BasicDBObject) during.accept(filterToMongo, null);
+
+        BasicDBObject range = (BasicDBObject) obj.get("properties.dateProperty");
+        assertEquals(begin, range.get("$gt"));
+        assertEquals(end, range.get("$lt"));
+        assertNoPostFilter(during);
+    }
+
+    public void testTEquals() throws Exception {
+        Date date = new Date(1000);
+        TEquals equals = ff.tequals(ff.property("dateProperty"), ff.literal(instant(date)));
+        BasicDBObject obj = (BasicDBObject) equals.accept(filterToMongo, null);
+
+        BasicDBObject range = (BasicDBObject) obj.get("properties.dateProperty");
+        assertEquals(date, range.get("$gte"));
+        assertEquals(date, range.get("$lte"));
+        assertNoPostFilter(equals);
+    }
+
+    public void testTemporalPostFilter() throws Exception {
+        Date begin = new Date(1000), end = new Date(2000);
+        Period period = new DefaultPeriod(instant(begin), instant(end));
+
+        // an instant property never equals a period
+        assertPostFilter(ff.tequals(ff.property("dateProperty"), ff.literal(period)));
+        // literal first
+        assertPostFilter(ff.after(ff.literal(instant(begin)), ff.property("dateProperty")));
+        // property against property
+        assertPostFilter(ff.before(ff.property("dateProperty"), ff.property("otherDate")));
+        // not a date
+        assertPostFilter(ff.during(ff.property("dateProperty"), ff.literal("not a date")));
+    }
+
+    Instant instant(Date date) {
+        return new DefaultInstant(new DefaultPosition(date));
+    }
+
+    void assertNoPostFilter(Filter f) {
+        PostPreProcessFilterSplittingVisitor splitter = new PostPreProcessFilterSplittingVisitor(
+                MongoDataStore.createFilterCapabilties(), null, null);
+        f.accept(splitter, null);
+        assertEquals(Filter.INCLUDE, splitter.getFilterPost());
+        assertEquals(f, splitter.getFilterPre());
+    }
+
+    void assertPostFilter(Filter f) {
+        PostPreProcessFilterSplittingVisitor splitter = new PostPreProcessFilterSplittingVisitor(
+                MongoDataStore.createFilterCapabilties(), null, null);
+        f.accept(splitter, null);
+        assertEquals(f, splitter.getFilterPost());
+        assertEquals(Filter.INCLUDE, splitter.getFilterPre());
+    }
 }
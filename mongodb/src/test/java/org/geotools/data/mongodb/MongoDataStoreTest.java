@@ -1,5 +1,6 @@
 package org.geotools.data.mongodb;
 
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.List;
 
@@ -16,6 +17,8 @@ import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
 
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCollection;
 import com.vividsolutions.jts.geom.Geometry;
 import com.vividsolutions.jts.geom.Point;
 
@@ -105,4 +108,64 @@ public abstract class MongoDataStoreTest extends MongoTestSupport {
         assertEquals(1, source.getCount(new Query("ft2")));
         
     }
+
+    public void testBatchedInserts() throws Exception {
+        dataStore.setInsertBatchSize(2);
+        DBCollection collection = dataStore.dataStoreDB.getCollection("ft1");
+        SimpleFeatureSource source = dataStore.getFeatureSource("ft1");
+
+        FeatureWriter w = dataStore.getFeatureWriterAppend("ft1", Transaction.AUTO_COMMIT);
+        try {
+            write(w, 3);
+            assertEquals(3, collection.count());
+
+            // batch size reached, sent in one bulk insert
+            write(w, 4);
+            assertEquals(5, collection.count());
+
+            // buffered, then flushed by the read
+            write(w, 5);
+            assertEquals(5, collection.count());
+            assertEquals(6, source.getCount(Query.ALL));
+            assertEquals(6, collection.count());
+
+            write(w, 6);
+        }
+        finally {
+            w.close();
+        }
+        assertEquals(7, collection.count());
+        assertEquals(7, source.getCount(Query.ALL));
+    }
+
+    public void testInsertErrorPropagation() throws Exception {
+        MongoFeatureSource source = (MongoFeatureSource) ((MongoFeatureStore) 
+                dataStore.getFeatureSource("ft1")).delegate;
+        source.getSchema();
+        DBCollection collection = dataStore.dataStoreDB.getCollection("ft1");
+        collection.ensureIndex(new BasicDBObject(source.mapper.getPropertyPath("intProperty"), 1),
+            new BasicDBObject("unique", true));
+
+        FeatureWriter w = dataStore.getFeatureWriterAppend("ft1", Transaction.AUTO_COMMIT);
+        write(w, 1);
+        write(w, 3);
+        try {
+            w.close();
+            fail("duplicate key should have been reported");
+        }
+        catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("1 of 2 features failed"));
+        }
+        // unordered, the rest of the batch is still inserted
+        assertEquals(4, collection.count());
+    }
+
+    void write(FeatureWriter w, int i) throws IOException {
+        SimpleFeature f = (SimpleFeature) w.next();
+        f.setDefaultGeometry(new GeometryBuilder().point(i, i));
+        f.setAttribute("intProperty", i);
+        f.setAttribute("doubleProperty", i + i * 0.1);
+        f.setAttribute("stringProperty", String.valueOf(i));
+        w.write();
+    }
 }
@@ -1,13 +1,27 @@
 package org.geotools.data.mongodb;
 
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCursor;
+import com.vividsolutions.jts.geom.Point;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import org.geotools.data.Query;
 import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.data.simple.SimpleFeatureIterator;
 import org.geotools.data.simple.SimpleFeatureSource;
 import org.geotools.factory.CommonFactoryFinder;
+import org.geotools.feature.visitor.CountVisitor;
+import org.geotools.feature.visitor.MaxVisitor;
+import org.geotools.feature.visitor.MinVisitor;
+import org.geotools.feature.visitor.UniqueVisitor;
 import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.filter.Filter;
 import org.opengis.filter.FilterFactory2;
 import org.opengis.filter.PropertyIsEqualTo;
+import org.opengis.filter.sort.SortBy;
+import org.opengis.filter.sort.SortOrder;
 import org.opengis.filter.spatial.BBOX;
 
 public abstract class MongoFeatureSourceTest extends MongoTestSupport {
@@ -16,6 +30,219 @@ public abstract class MongoFeatureSourceTest extends MongoTestSupport {
         super(testSetup);
     }
 
+    public void testBoundsAll() throws Exception {
+        SimpleFeatureSource source = dataStore.getFeatureSource("ft1");
+        assertEquals(new ReferencedEnvelope(0d,2d,0d,2d,null), source.getBounds(Query.ALL));
+    }
+
+    public void testBoundsCached() throws Exception {
+        dataStore.setCacheBounds(true);
+        MongoFeatureSource source = (MongoFeatureSource) ((MongoFeatureStore) 
+                dataStore.getFeatureSource("ft1")).delegate;
+
+        ReferencedEnvelope bounds = source.getBounds(Query.ALL);
+        assertEquals(new ReferencedEnvelope(0d,2d,0d,2d,null), bounds);
+        assertEquals(bounds, source.getState().getBounds());
+    }
+
+    public void testBounds3D() throws Exception {
+        MongoFeatureSource source = (MongoFeatureSource) ((MongoFeatureStore) 
+                dataStore.getFeatureSource("ft1")).delegate;
+        source.getSchema();
+        String coordinates = source.mapper.getGeometryPath() + ".coordinates";
+        // z ordinates well outside of the x/y range, must not leak into the bounds
+        for (int i = 0; i < 3; i++) {
+            source.collection.update(
+                    new BasicDBObject(source.mapper.getPropertyPath("intProperty"), i),
+                    new BasicDBObject("$set", new BasicDBObject(coordinates, 
+                            MongoFeatureSource.list(i, i, 100 + i))));
+        }
+        assertEquals(new ReferencedEnvelope(0d,2d,0d,2d,null), source.getBounds(Query.ALL));
+    }
+
+    public void testBoundsPaged() throws Exception {
+        FilterFactory2 ff = CommonFactoryFinder.getFilterFactory2();
+        SimpleFeatureSource source = dataStore.getFeatureSource("ft1");
+
+        Query q = new Query("ft1");
+        q.setSortBy(new SortBy[] { ff.sort("intProperty", SortOrder.ASCENDING) });
+        q.setMaxFeatures(2);
+        assertEquals(new ReferencedEnvelope(0d,1d,0d,1d,null), source.getBounds(q));
+
+        q.setStartIndex(1);
+        assertEquals(new ReferencedEnvelope(1d,2d,1d,2d,null), source.getBounds(q));
+    }
+
+    public void testLazyFeatures() throws Exception {
+        dataStore.setLazyFeatures(true);
+        SimpleFeatureSource source = dataStore.getFeatureSource("ft1");
+
+        Query q = new Query("ft1", Filter.INCLUDE, new String[] { "geometry", "intProperty" });
+        SimpleFeatureIterator it = source.getFeatures(q).features();
+        try {
+            assertTrue(it.hasNext());
+            SimpleFeature f = it.next();
+            assertEquals(2, f.getAttributeCount());
+            int i = (Integer) f.getAttribute("intProperty");
+            Point p = (Point) f.getDefaultGeometry();
+            assertEquals((double)i, p.getX(), 0.1);
+            assertEquals((double)i, p.getY(), 0.1);
+        }
+        finally {
+            it.close();
+        }
+    }
+
+    public void testAggregateVisitors() throws Exception {
+        MongoFeatureSource source = (MongoFeatureSource) ((MongoFeatureStore) 
+                dataStore.getFeatureSource("ft1")).delegate;
+        FilterFactory2 ff = CommonFactoryFinder.getFilterFactory2();
+
+        // handled by the store, i.e. computed by the server rather than by reading the features
+        MinVisitor min = new MinVisitor(ff.property("intProperty"));
+        assertTrue(source.handleVisitor(new Query("ft1"), min));
+        assertEquals(0, min.getResult().toInt());
+
+        MaxVisitor max = new MaxVisitor(ff.property("intProperty"));
+        assertTrue(source.handleVisitor(new Query("ft1"), max));
+        assertEquals(2, max.getResult().toInt());
+
+        UniqueVisitor unique = new UniqueVisitor(ff.property("stringProperty"));
+        assertTrue(source.handleVisitor(new Query("ft1"), unique));
+        assertEquals(3, unique.getResult().toSet().size());
+        assertTrue(unique.getResult().toSet().contains("one"));
+
+        CountVisitor count = new CountVisitor();
+        assertTrue(source.handleVisitor(new Query("ft1", 
+                ff.greater(ff.property("intProperty"), ff.literal(0))), count));
+        assertEquals(2, count.getResult().toInt());
+
+        // same results through the feature collection
+        MaxVisitor collectionMax = new MaxVisitor(ff.property("intProperty"));
+        source.getFeatures().accepts(collectionMax, null);
+        assertEquals(2, collectionMax.getResult().toInt());
+
+        // not translatable, left to feature iteration
+        CountVisitor postFiltered = new CountVisitor();
+        assertFalse(source.handleVisitor(new Query("ft1", ff.equals(ff.function("strToUpperCase", 
+                ff.property("stringProperty")), ff.literal("ONE"))), postFiltered));
+    }
+
+    public void testSortedPaging() throws Exception {
+        FilterFactory2 ff = CommonFactoryFinder.getFilterFactory2();
+        MongoFeatureSource source = (MongoFeatureSource) ((MongoFeatureStore) 
+                dataStore.getFeatureSource("ft1")).delegate;
+        source.getSchema();
+        String path = source.mapper.getPropertyPath("intProperty");
+        source.collection.ensureIndex(new BasicDBObject(path, 1));
+        dataStore.getIndexAdvisor().invalidate(source.collection);
+
+        Query q = new Query("ft1");
+        q.setSortBy(new SortBy[] { ff.sort("intProperty", SortOrder.DESCENDING) });
+        q.setMaxFeatures(2);
+
+        // first page records the position reached, second page continues from it
+        List<Integer> values = new ArrayList<Integer>();
+        for (int page = 0; page < 2; page++) {
+            q.setStartIndex(page * 2);
+            if (page > 0) {
+                assertEquals(1, dataStore.getKeysetCache().size());
+                List<MongoKeysetPage> pages = new ArrayList<MongoKeysetPage>();
+                DBCursor cursor = source.toCursor(q, new ArrayList<Filter>(), pages);
+                assertEquals(1, pages.size());
+                // a range on the sort key rather than a skip
+                assertTrue(cursor.getQuery().toString(), cursor.getQuery().toString().contains(path));
+                cursor.close();
+            }
+            SimpleFeatureIterator it = source.getFeatures(q).features();
+            try {
+                while (it.hasNext()) {
+                    values.add((Integer) it.next().getAttribute("intProperty"));
+                }
+            }
+            finally {
+                it.close();
+            }
+        }
+        assertEquals(Arrays.asList(2, 1, 0), values);
+    }
+
+    public void testSortedPagingNullsAscending() throws Exception {
+        // nulls sort first
+        assertSortedPagingWithNulls(SortOrder.ASCENDING, Arrays.asList(null, null, 0, 1, 2));
+    }
+
+    public void testSortedPagingNullsDescending() throws Exception {
+        // nulls sort last, past the range of any keyset position
+        assertSortedPagingWithNulls(SortOrder.DESCENDING, Arrays.asList(2, 1, 0, null, null));
+    }
+
+    void assertSortedPagingWithNulls(SortOrder order, List<Integer> expected) throws Exception {
+        FilterFactory2 ff = CommonFactoryFinder.getFilterFactory2();
+        MongoFeatureSource source = (MongoFeatureSource) ((MongoFeatureStore) 
+                dataStore.getFeatureSource("ft1")).delegate;
+        source.getSchema();
+        String path = source.mapper.getPropertyPath("intProperty");
+        source.collection.ensureIndex(new BasicDBObject(path, 1));
+        dataStore.getIndexAdvisor().invalidate(source.collection);
+
+        // one document with a null sort key, one without it
+        String geometry = source.mapper.getGeometryPath();
+        BasicDBObject withNull = new BasicDBObject(geometry, new BasicDBObject("type", "Point")
+                .append("coordinates", MongoFeatureSource.list(3, 3)));
+        withNull.put(path, null);
+        source.collection.save(withNull);
+        source.collection.save(new BasicDBObject(geometry, new BasicDBObject("type", "Point")
+                .append("coordinates", MongoFeatureSource.list(4, 4))));
+
+        Query q = new Query("ft1");
+        q.setSortBy(new SortBy[] { ff.sort("intProperty", order) });
+        q.setMaxFeatures(2);
+
+        List<Integer> values = new ArrayList<Integer>();
+        for (int page = 0; page < 3; page++) {
+            q.setStartIndex(page * 2);
+            if (page > 0) {
+                // back to skip/limit, a range on the sort key would never match the nulls
+                DBCursor cursor = source.toCursor(q, new ArrayList<Filter>());
+                assertFalse(cursor.getQuery().toString(), cursor.getQuery().toString().contains(path));
+                cursor.close();
+            }
+            SimpleFeatureIterator it = source.getFeatures(q).features();
+            try {
+                while (it.hasNext()) {
+                    values.add((Integer) it.next().getAttribute("intProperty"));
+                }
+            }
+            finally {
+                it.close();
+            }
+        }
+        assertEquals(expected, values);
+    }
+
+    public void testSortedPagingPostFiltered() throws Exception {
+        FilterFactory2 ff = CommonFactoryFinder.getFilterFactory2();
+        MongoFeatureSource source = (MongoFeatureSource) ((MongoFeatureStore) 
+                dataStore.getFeatureSource("ft1")).delegate;
+        source.getSchema();
+        source.collection.ensureIndex(new BasicDBObject(source.mapper.getPropertyPath("intProperty"), 1));
+        dataStore.getIndexAdvisor().invalidate(source.collection);
+
+        // not translatable, page positions would not match the documents read
+        Query q = new Query("ft1", ff.equals(ff.function("strToUpperCase", 
+                ff.property("stringProperty")), ff.literal("ONE")));
+        q.setSortBy(new SortBy[] { ff.sort("intProperty", SortOrder.DESCENDING) });
+        q.setMaxFeatures(2);
+
+        List<Filter> postFilter = new ArrayList<Filter>();
+        List<MongoKeysetPage> pages = new ArrayList<MongoKeysetPage>();
+        source.toCursor(q, postFilter, pages).close();
+        assertEquals(1, postFilter.size());
+        assertTrue(pages.isEmpty());
+        assertEquals(1, source.getCount(q));
+    }
+
     public void testBBOXFilter() throws Exception {
       FilterFactory2 ff = CommonFactoryFinder.getFilterFactory2();
       BBOX f = ff.bbox(ff.property("geometry"),  0.5, 0.5, 1.5, 1.5, "epsg:4326");
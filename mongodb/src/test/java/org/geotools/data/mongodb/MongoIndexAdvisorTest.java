@@ -0,0 +1,72 @@
+package org.geotools.data.mongodb;
+
+import com.mongodb.BasicDBList;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCollection;
+import java.util.Map;
+
+public abstract class MongoIndexAdvisorTest extends MongoTestSupport {
+
+    protected MongoIndexAdvisorTest(MongoTestSetup testSetup) {
+        super(testSetup);
+    }
+
+    public void testUnindexedQuery() throws Exception {
+        MongoIndexAdvisor advisor = new MongoIndexAdvisor();
+        DBCollection ft1 = dataStore.dataStoreDB.getCollection("ft1");
+
+        advisor.check(ft1, new BasicDBObject("properties.intProperty", 1), null);
+        advisor.check(ft1, new BasicDBObject("properties.intProperty", 2), null);
+
+        Map<String, Long> report = advisor.getUnindexedQueries();
+        assertEquals(1, report.size());
+        assertEquals(Long.valueOf(2), report.get("ft1 find[properties.intProperty] sort[]"));
+    }
+
+    public void testIndexedQuery() throws Exception {
+        MongoIndexAdvisor advisor = new MongoIndexAdvisor();
+        DBCollection ft1 = dataStore.dataStoreDB.getCollection("ft1");
+
+        // collection scans and queries on _id or an indexed field are not reported
+        advisor.check(ft1, new BasicDBObject(), null);
+        advisor.check(ft1, new BasicDBObject("_id", 1), null);
+        advisor.check(ft1, new BasicDBObject(), new BasicDBObject("_id", -1));
+        advisor.check(ft1, new BasicDBObject("geometry.coordinates", 
+                new BasicDBObject("$near", MongoFeatureSource.list(0, 0))), null);
+        assertTrue(advisor.getUnindexedQueries().isEmpty());
+    }
+
+    public void testNestedQuery() throws Exception {
+        MongoIndexAdvisor advisor = new MongoIndexAdvisor();
+        DBCollection ft1 = dataStore.dataStoreDB.getCollection("ft1");
+
+        BasicDBList or = new BasicDBList();
+        or.add(new BasicDBObject("properties.intProperty", 1));
+        or.add(new BasicDBObject("properties.stringProperty", "one"));
+        advisor.check(ft1, new BasicDBObject("$or", or), new BasicDBObject("properties.doubleProperty", 1));
+
+        assertEquals(Long.valueOf(1), advisor.getUnindexedQueries().get(
+                "ft1 find[properties.intProperty, properties.stringProperty] sort[properties.doubleProperty]"));
+    }
+
+    public void testInvalidate() throws Exception {
+        MongoIndexAdvisor advisor = new MongoIndexAdvisor();
+        DBCollection ft1 = dataStore.dataStoreDB.getCollection("ft1");
+        BasicDBObject query = new BasicDBObject("properties.intProperty", 1);
+
+        advisor.check(ft1, query, null);
+        ft1.ensureIndex(new BasicDBObject("properties.intProperty", 1));
+
+        // the outcome is cached per query shape until the indexes are refreshed
+        advisor.check(ft1, query, null);
+        assertEquals(Long.valueOf(2), advisor.getUnindexedQueries().get(
+                "ft1 find[properties.intProperty] sort[]"));
+        assertFalse(advisor.isIndexed(ft1, "properties.intProperty"));
+
+        advisor.invalidate(ft1);
+        advisor.reset();
+        advisor.check(ft1, query, null);
+        assertTrue(advisor.getUnindexedQueries().isEmpty());
+        assertTrue(advisor.isIndexed(ft1, "properties.intProperty"));
+    }
+}
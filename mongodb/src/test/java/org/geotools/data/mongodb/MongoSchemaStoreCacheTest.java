@@ -0,0 +1,70 @@
+package org.geotools.data.mongodb;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import org.geotools.feature.NameImpl;
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.referencing.FactoryException;
+
+/**
+ * Runs the schema store tests through the cache, backed by a file store.
+ */
+public class MongoSchemaStoreCacheTest extends MongoSchemaStoreTest<MongoSchemaStoreCache> {
+
+    Map<MongoSchemaStoreCache, File> directories = new HashMap<MongoSchemaStoreCache, File>();
+
+    @Override
+    MongoSchemaStoreCache createUniqueStore() throws IOException {
+        File directory = MongoSchemaFileStoreTest.createUniqueTempDirectory();
+        MongoSchemaStoreCache store = new MongoSchemaStoreCache(new MongoSchemaFileStore(directory));
+        store.setCheckInterval(0);
+        directories.put(store, directory);
+        return store;
+    }
+
+    @Override
+    void destroyUniqueStore(MongoSchemaStoreCache store) {
+        if (store != null) {
+            File directory = directories.get(store);
+            if (directory != null) {
+                File[] files = directory.listFiles();
+                if (files != null) { for (File f : files) { f.delete(); } }
+                directory.delete();
+            }
+        }
+    }
+
+    @Test
+    public void testExternalChange() throws FactoryException, IOException {
+        MongoSchemaStoreCache store = createUniqueStore();
+        try {
+            SimpleFeatureType dummy0 = FeatureTypeDBObjectTest.buildDummyFeatureType("dummy0");
+            store.storeSchema(dummy0);
+            FeatureTypeDBObjectTest.compareFeatureTypes(
+                    store.retrieveSchema(new NameImpl("dummy0")), dummy0, false);
+
+            // another store writing to the same directory
+            MongoSchemaFileStore other = new MongoSchemaFileStore(directories.get(store));
+            SimpleFeatureType changed = FeatureTypeDBObjectTest.buildDummyFeatureType("dummy0");
+            changed.getUserData().put("dummyKey", "changed behind the cache");
+            other.storeSchema(changed);
+            SimpleFeatureType dummy1 = FeatureTypeDBObjectTest.buildDummyFeatureType("dummy1");
+            other.storeSchema(dummy1);
+
+            FeatureTypeDBObjectTest.compareFeatureTypes(
+                    store.retrieveSchema(new NameImpl("dummy0")), changed, false);
+            assertThat(store.retrieveSchema(new NameImpl("dummy0")).getUserData().get("dummyKey"),
+                    is(equalTo((Object) "changed behind the cache")));
+            assertThat(store.typeNames().size(), is(equalTo(2)));
+            assertTrue(store.typeNames().containsAll(Arrays.asList("dummy0", "dummy1")));
+        } finally {
+            destroyUniqueStore(store);
+        }
+    }
+}
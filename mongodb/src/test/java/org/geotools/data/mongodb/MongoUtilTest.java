@@ -44,4 +44,26 @@ public class MongoUtilTest {
         assertThat(result, is(nullValue()));
     }
     
+    @Test
+    public void widenBinding() {
+        assertThat(MongoUtil.widenBinding(null, Integer.class), is(equalTo((Object)Integer.class)));
+        assertThat(MongoUtil.widenBinding(Integer.class, Integer.class), is(equalTo((Object)Integer.class)));
+        assertThat(MongoUtil.widenBinding(Integer.class, Long.class), is(equalTo((Object)Long.class)));
+        assertThat(MongoUtil.widenBinding(Double.class, Long.class), is(equalTo((Object)Double.class)));
+        assertThat(MongoUtil.widenBinding(Boolean.class, Integer.class), is(equalTo((Object)String.class)));
+    }
+    
+    @Test
+    public void sampleMerge() {
+        MongoSchemaSampler.Sample sample = new MongoSchemaSampler.Sample();
+        sample.add(new BasicDBObject("a", 1).append("b", new BasicDBObject("c", "x")));
+        sample.add(new BasicDBObject("a", 2.5));
+        
+        assertThat(sample.getDocuments(), is(equalTo(2)));
+        assertThat(sample.getBindings().get("a"), is(equalTo((Object)Double.class)));
+        assertThat(sample.getBindings().get("b.c"), is(equalTo((Object)String.class)));
+        assertThat(sample.getFrequency("a"), is(equalTo(1d)));
+        assertThat(sample.getFrequency("b.c"), is(equalTo(0.5d)));
+    }
+    
 }
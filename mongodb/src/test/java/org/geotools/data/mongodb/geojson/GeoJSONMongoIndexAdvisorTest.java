@@ -0,0 +1,11 @@
+package org.geotools.data.mongodb.geojson;
+
+import org.geotools.data.mongodb.MongoIndexAdvisorTest;
+
+public class GeoJSONMongoIndexAdvisorTest extends MongoIndexAdvisorTest {
+
+    public GeoJSONMongoIndexAdvisorTest() {
+        super(new GeoJSONMongoTestSetup());
+    }
+
+}